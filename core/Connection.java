@@ -138,6 +138,21 @@ public abstract class Connection {
 	 */
 	public abstract boolean isMessageTransferred();
 
+	/**
+	 * Returns the simulation time when the current message transfer will be
+	 * ready, given that the connection's speed doesn't change. Connections
+	 * whose transfers advance on every update (instead of by time) return the
+	 * current time while a transfer is ongoing.
+	 * @return The time when the transfer is done, or Double.MAX_VALUE if
+	 * there is no ongoing transfer
+	 */
+	public double getTransferDoneTime() {
+		if (this.msgOnFly == null) {
+			return Double.MAX_VALUE;
+		}
+		return SimClock.getTime();
+	}
+
 	/**
 	 * Returns true if the connection is ready to transfer a message (connection
 	 * is up and there is no message being transferred).
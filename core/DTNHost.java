@@ -5,7 +5,9 @@
 package core;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 
 import movement.MovementModel;
@@ -35,7 +37,19 @@ public class DTNHost implements Comparable<DTNHost> {
     private List<MessageListener> msgListeners;
     private List<MovementListener> movListeners;
     private List<NetworkInterface> net;
+    /**
+     * read-only list of the connections of all the interfaces, or null if
+     * the connections have changed since the list was built
+     */
+    private List<Connection> connections;
     private ModuleCommunicationBus comBus;
+    /**
+     * turning points of the last move as (time offset, x, y) triples, or null
+     * if moves are not traced
+     */
+    private double[] moveTrace;
+    /** number of values in {@link #moveTrace} */
+    private int moveTraceLength;
     
     //tambahan
     private List<String> socialProfile;
@@ -179,18 +193,92 @@ public class DTNHost implements Comparable<DTNHost> {
     }
 
     /**
-     * Returns a copy of the list of connections this host has with other hosts
+     * Informs the host that the connections of one of its interfaces have
+     * changed (a connection was added or removed)
+     */
+    public void connectionsChanged() {
+        this.connections = null;
+    }
+
+    /**
+     * Returns a read-only list of the connections this host has with other
+     * hosts. The list is a snapshot that is built again only after the
+     * connections have changed (see {@link #connectionsChanged()}), so the
+     * same list is returned until then.
      *
-     * @return a copy of the list of connections this host has with other hosts
+     * @return a read-only list of the connections this host has with other
+     * hosts
      */
     public List<Connection> getConnections() {
-        List<Connection> lc = new ArrayList<Connection>();
+        if (this.connections == null) {
+            List<Connection> lc = new ArrayList<Connection>();
+
+            for (NetworkInterface i : net) {
+                lc.addAll(i.getConnections());
+            }
 
-        for (NetworkInterface i : net) {
-            lc.addAll(i.getConnections());
+            this.connections = Collections.unmodifiableList(lc);
         }
 
-        return lc;
+        return this.connections;
+    }
+
+    /**
+     * Sets whether the moves of this host are traced. When tracing is on, the
+     * turning points of every move (see {@link #getMoveTrace()}) are stored
+     * so that the exact path of the last move can be reconstructed.
+     *
+     * @param tracing True if moves should be traced
+     */
+    public void setMoveTracing(boolean tracing) {
+        if (!tracing) {
+            this.moveTrace = null;
+        } else if (this.moveTrace == null) {
+            this.moveTrace = new double[4 * 3];
+        }
+        this.moveTraceLength = 0;
+    }
+
+    /**
+     * Returns the trace of the last move as (time offset, x, y) triples. The
+     * first triple is the location where the move started (time offset 0),
+     * the following ones are the waypoints that were passed and the last one
+     * is the location where the move ended (time offset = the move's time
+     * increment). The host moved in a straight line at constant speed
+     * between the points. Only the first {@link #getMoveTraceLength()} values
+     * are valid.
+     *
+     * @return The move trace or null if moves are not traced
+     */
+    public double[] getMoveTrace() {
+        return this.moveTrace;
+    }
+
+    /**
+     * Returns the number of valid values in the move trace
+     *
+     * @return The number of values (0 if there is no trace)
+     */
+    public int getMoveTraceLength() {
+        return this.moveTraceLength;
+    }
+
+    /**
+     * Adds the current location to the move trace (if tracing is on)
+     *
+     * @param timeOffset Time from the start of the move
+     */
+    private void traceMove(double timeOffset) {
+        if (this.moveTrace == null) {
+            return;
+        }
+        if (this.moveTraceLength + 3 > this.moveTrace.length) {
+            this.moveTrace = Arrays.copyOf(this.moveTrace,
+                    2 * this.moveTrace.length);
+        }
+        this.moveTrace[this.moveTraceLength++] = timeOffset;
+        this.moveTrace[this.moveTraceLength++] = this.location.getX();
+        this.moveTrace[this.moveTraceLength++] = this.location.getY();
     }
 
     /**
@@ -360,6 +448,47 @@ public class DTNHost implements Comparable<DTNHost> {
         this.router.update();
     }
 
+    /**
+     * Returns the next simulation time when something may happen in this host
+     * on its own, i.e., without external events or changes in other hosts.
+     * The time is the earliest of the router's next update need, the next
+     * change in activeness, the time when the node starts moving or reaches
+     * its next waypoint and (if connections are simulated) the next scanning
+     * round of the interfaces. If the node is moving and connections are
+     * simulated, the current time is returned since contacts are found only
+     * by checking them on every update.
+     *
+     * @param simulateConnections Are connections simulated
+     * @return The time of the next activity (current time if the host should
+     * be updated on every update interval)
+     */
+    public double getNextActivityTime(boolean simulateConnections) {
+        double now = SimClock.getTime();
+        double next = this.movement.getNextActivenessChangeTime();
+
+        if (!isActive()) {
+            return next; // nothing happens in inactive nodes
+        }
+
+        next = Math.min(next, this.router.getNextUpdateTime());
+        if (now < this.nextTimeToMove) {
+            next = Math.min(next, this.nextTimeToMove);
+        } else if (this.destination == null || simulateConnections) {
+            return now; // needs new waypoints or contact checks
+        } else {
+            next = Math.min(next, now + this.location.distance(
+                    this.destination) / this.speed);
+        }
+
+        if (simulateConnections) {
+            for (NetworkInterface i : net) {
+                next = Math.min(next, i.getNextScanTime());
+            }
+        }
+
+        return next;
+    }
+
     /**
      * Moves the node towards the next waypoint or waits if it is not time to
      * move yet
@@ -367,13 +496,70 @@ public class DTNHost implements Comparable<DTNHost> {
      * @param timeIncrement How long time the node moves
      */
     public void move(double timeIncrement) {
+        startMoveTrace();
+        if (isActive() && SimClock.getTime() >= this.nextTimeToMove) {
+            moveTowardsWaypoints(timeIncrement);
+        }
+        traceMove(timeIncrement);
+    }
+
+    /**
+     * Starts a new move trace (if tracing is on)
+     */
+    private void startMoveTrace() {
+        this.moveTraceLength = 0;
+        traceMove(0);
+    }
+
+    /**
+     * Moves the node like {@link #move(double)} unless the whole move happens
+     * along the current path segment (no new waypoints are needed). In that
+     * case nothing is done and the caller must finish the move by calling
+     * {@link #moveOnSegment(double)}. Segment moves touch only this host's
+     * own state so they can be run concurrently for different hosts, while
+     * waypoint changes (that use the shared movement model RNG and movement
+     * listeners) are done here, in the order the caller uses.
+     *
+     * @param timeIncrement How long time the node moves
+     * @return True if the move was left for {@link #moveOnSegment(double)},
+     * false if the move was already done (or the node didn't move at all)
+     */
+    public boolean moveUnlessOnSegment(double timeIncrement) {
+        startMoveTrace();
+        if (!isActive() || SimClock.getTime() < this.nextTimeToMove) {
+            traceMove(timeIncrement);
+            return false;
+        }
+        if (this.destination != null && timeIncrement * speed
+                < this.location.distance(this.destination)) {
+            return true;
+        }
+        moveTowardsWaypoints(timeIncrement);
+        traceMove(timeIncrement);
+        return false;
+    }
+
+    /**
+     * Moves the node along its current path segment. Must only be called for
+     * a move that {@link #moveUnlessOnSegment(double)} left undone.
+     *
+     * @param timeIncrement How long time the node moves
+     */
+    public void moveOnSegment(double timeIncrement) {
+        moveTowardsWaypoints(timeIncrement);
+        traceMove(timeIncrement);
+    }
+
+    /**
+     * Moves an active node towards its next waypoint(s)
+     *
+     * @param timeIncrement How long time the node moves
+     */
+    private void moveTowardsWaypoints(double timeIncrement) {
         double possibleMovement;
         double distance;
         double dx, dy;
 
-        if (!isActive() || SimClock.getTime() < this.nextTimeToMove) {
-            return;
-        }
         if (this.destination == null) {
             if (!setNextWaypoint()) {
                 return;
@@ -382,11 +568,16 @@ public class DTNHost implements Comparable<DTNHost> {
 
         possibleMovement = timeIncrement * speed;
         distance = this.location.distance(this.destination);
+        double totalMovement = possibleMovement;
 
         while (possibleMovement >= distance) {
             // node can move past its next destination
             this.location.setLocation(this.destination); // snap to destination
             possibleMovement -= distance;
+            if (this.moveTrace != null) {
+                traceMove(totalMovement > 0 ? timeIncrement
+                        * (1 - possibleMovement / totalMovement) : 0);
+            }
             if (!setNextWaypoint()) { // get a new waypoint
                 return; // no more waypoints left
             }
@@ -0,0 +1,293 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package core;
+
+import java.util.AbstractCollection;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Hash map with primitive long keys. The keys are not boxed and looking up
+ * a value doesn't create any objects. Iteration order is the insertion order
+ * of the keys (replacing the value of an existing key doesn't change the
+ * order). Null values are not supported.
+ * @param <V> Type of the values
+ */
+public class LongHashMap<V> {
+	/** minimum size of the hash table */
+	private static final int MIN_CAPACITY = 8;
+	/** multiplier for hashing the keys (golden ratio) */
+	private static final long HASH_MULTIPLIER = 0x9E3779B97F4A7C15L;
+
+	/** keys of the entries in insertion order */
+	private long[] keys;
+	/** values of the entries in insertion order (null for removed entry) */
+	private Object[] values;
+	/** hash table with entry index + 1 for each slot (0 = empty slot) */
+	private int[] table;
+	/** number of bits in the hash table index */
+	private int bits;
+	/** number of entries used (including the removed ones) */
+	private int used;
+	/** number of mappings in the map */
+	private int size;
+	/** how many times the entry arrays have been rebuilt */
+	private int rebuilds;
+
+	/**
+	 * Creates an empty map
+	 */
+	public LongHashMap() {
+		this(MIN_CAPACITY);
+	}
+
+	/**
+	 * Creates an empty map with room for the given number of mappings
+	 * @param capacity The initial capacity
+	 */
+	public LongHashMap(int capacity) {
+		init(Math.max(capacity, MIN_CAPACITY / 2));
+	}
+
+	/**
+	 * Initializes the arrays for the given number of entries
+	 */
+	private void init(int capacity) {
+		this.bits = 1;
+		while ((1 << this.bits) < capacity * 2) {
+			this.bits++;
+		}
+		this.keys = new long[capacity];
+		this.values = new Object[capacity];
+		this.table = new int[1 << this.bits];
+		this.used = 0;
+		this.size = 0;
+		this.rebuilds++;
+	}
+
+	/**
+	 * Returns the hash table slot where the search of a key starts
+	 */
+	private int slotOf(long key) {
+		return (int)((key * HASH_MULTIPLIER) >>> (64 - this.bits));
+	}
+
+	/**
+	 * Returns the slot of the hash table that refers to the key or -1 if
+	 * the key is not in the map
+	 */
+	private int find(long key) {
+		int mask = this.table.length - 1;
+		for (int slot = slotOf(key); ; slot = (slot + 1) & mask) {
+			int e = this.table[slot];
+			if (e == 0) {
+				return -1;
+			}
+			if (this.keys[e - 1] == key) {
+				return slot;
+			}
+		}
+	}
+
+	/**
+	 * Returns the value for the key
+	 * @param key The key
+	 * @return The value or null if there's no mapping for the key
+	 */
+	@SuppressWarnings("unchecked")
+	public V get(long key) {
+		int slot = find(key);
+		return slot < 0 ? null : (V)this.values[this.table[slot] - 1];
+	}
+
+	/**
+	 * Returns true if the map contains a mapping for the key
+	 * @param key The key
+	 * @return true if the key is in the map, false if not
+	 */
+	public boolean containsKey(long key) {
+		return find(key) >= 0;
+	}
+
+	/**
+	 * Maps a key to a value
+	 * @param key The key
+	 * @param value The value (not null)
+	 * @return The previous value for the key or null if there was none
+	 */
+	@SuppressWarnings("unchecked")
+	public V put(long key, V value) {
+		if (value == null) {
+			throw new NullPointerException("Null values are not supported");
+		}
+		int slot = find(key);
+		if (slot >= 0) {
+			int e = this.table[slot] - 1;
+			V old = (V)this.values[e];
+			this.values[e] = value;
+			return old;
+		}
+
+		if (this.used == this.keys.length) {
+			rehash();
+		}
+		int mask = this.table.length - 1;
+		slot = slotOf(key);
+		while (this.table[slot] != 0) {
+			slot = (slot + 1) & mask;
+		}
+		this.keys[this.used] = key;
+		this.values[this.used] = value;
+		this.used++;
+		this.table[slot] = this.used;
+		this.size++;
+		return null;
+	}
+
+	/**
+	 * Removes the mapping of a key
+	 * @param key The key
+	 * @return The removed value or null if there was no mapping for the key
+	 */
+	@SuppressWarnings("unchecked")
+	public V remove(long key) {
+		int slot = find(key);
+		if (slot < 0) {
+			return null;
+		}
+		int e = this.table[slot] - 1;
+		V old = (V)this.values[e];
+		this.values[e] = null;
+		this.size--;
+
+		/* shift the following entries of the probe sequence backwards */
+		int mask = this.table.length - 1;
+		int hole = slot;
+		for (int next = (slot + 1) & mask; this.table[next] != 0;
+				next = (next + 1) & mask) {
+			int home = slotOf(this.keys[this.table[next] - 1]);
+			if (((next - home) & mask) >= ((next - hole) & mask)) {
+				this.table[hole] = this.table[next];
+				hole = next;
+			}
+		}
+		this.table[hole] = 0;
+		return old;
+	}
+
+	/**
+	 * Rebuilds the arrays without the removed entries (and with more room
+	 * if most of the entries are in use)
+	 */
+	private void rehash() {
+		long[] oldKeys = this.keys;
+		Object[] oldValues = this.values;
+		int oldUsed = this.used;
+		int capacity = oldKeys.length;
+		if (this.size >= capacity / 2) {
+			capacity *= 2;
+		}
+
+		init(capacity);
+		for (int i = 0; i < oldUsed; i++) {
+			if (oldValues[i] != null) {
+				int mask = this.table.length - 1;
+				int slot = slotOf(oldKeys[i]);
+				while (this.table[slot] != 0) {
+					slot = (slot + 1) & mask;
+				}
+				this.keys[this.used] = oldKeys[i];
+				this.values[this.used] = oldValues[i];
+				this.used++;
+				this.table[slot] = this.used;
+				this.size++;
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of mappings in the map
+	 * @return The number of mappings
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * Returns true if there are no mappings in the map
+	 * @return true if the map is empty
+	 */
+	public boolean isEmpty() {
+		return this.size == 0;
+	}
+
+	/**
+	 * Removes all the mappings
+	 */
+	public void clear() {
+		init(this.keys.length);
+	}
+
+	/**
+	 * Returns a collection view of the values. Removing values through the
+	 * view's iterator removes the mappings from the map. Mappings may also be
+	 * removed from the map directly while iterating but adding new mappings
+	 * may cause a ConcurrentModificationException.
+	 * @return The values in the insertion order of their keys
+	 */
+	public Collection<V> values() {
+		return new AbstractCollection<V>() {
+			public Iterator<V> iterator() {
+				return new ValueIterator();
+			}
+			public int size() {
+				return LongHashMap.this.size;
+			}
+		};
+	}
+
+	/**
+	 * Iterator over the values of the map
+	 */
+	private class ValueIterator implements Iterator<V> {
+		/** the entry array version this iterator is valid for */
+		private int expectedRebuilds = rebuilds;
+		/** index of the next entry */
+		private int next = 0;
+		/** key of the last returned entry */
+		private long lastKey;
+		private boolean canRemove = false;
+
+		public boolean hasNext() {
+			if (rebuilds != this.expectedRebuilds) {
+				throw new ConcurrentModificationException();
+			}
+			while (this.next < used && values[this.next] == null) {
+				this.next++;
+			}
+			return this.next < used;
+		}
+
+		@SuppressWarnings("unchecked")
+		public V next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			this.lastKey = keys[this.next];
+			this.canRemove = true;
+			return (V)values[this.next++];
+		}
+
+		public void remove() {
+			if (!this.canRemove) {
+				throw new IllegalStateException();
+			}
+			LongHashMap.this.remove(this.lastKey);
+			this.canRemove = false;
+		}
+	}
+}
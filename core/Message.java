@@ -5,49 +5,68 @@
 package core;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 
 /**
  * A message that is created at a node or passed between nodes.
+ * The replicates of a message share the data that is common to all of them
+ * (and the beginning of the path) and copy it only when some replicate
+ * changes it (copy-on-write).
  */
 public class Message implements Comparable<Message> {
 	/** Value for infinite TTL of message */
 	public static final int INFINITE_TTL = -1;
-	private DTNHost from;
-	private DTNHost to;
-	/** Identifier of the message */
-	private String id;
-	/** Size of the message (bytes) */
-	private int size;
-	/** List of nodes this message has passed */
-	private List<DTNHost> path; 
+	/** Data that is (possibly) shared with the replicates */
+	private Body body;
+	/** Is the body shared with other replicates (i.e., must be copied 
+	 * before modifying) */
+	private boolean bodyShared;
+	/** The last node of the path this message has passed */
+	private PathNode path;
+	/** List of nodes this message has passed (created on request) */
+	private List<DTNHost> hops;
 	/** Next unique identifier to be given */
 	private static int nextUniqueId;
+	/** Integer keys of the message IDs */
+	private static Map<String, Integer> messageKeys;
 	/** Unique ID of this message */
 	private int uniqueId;
 	/** The time this message was received */
 	private double timeReceived;
-	/** The time when this message was created */
-	private double timeCreated;
-	/** Initial TTL of the message */
-	private int initTtl;
-	
-	/** if a response to this message is required, this is the size of the 
-	 * response message (or 0 if no response is requested) */
-	private int responseSize;
-	/** if this message is a response message, this is set to the request msg*/
-	private Message requestMsg;
 	
 	/** Container for generic message properties. Note that all values
 	 * stored in the properties should be immutable because only a shallow
 	 * copy of the properties is made when replicating messages */
 	private Map<String, Object> properties;
+	/** Are the property containers shared with other replicates (i.e., 
+	 * must be copied before modifying) */
+	private boolean propertiesShared;
+	/** Values of the registered integer properties by slot index */
+	private int[] intValues;
+	/** Bit mask of the integer property slots that have a value */
+	private long intValuesSet;
+	/** Values of the registered object properties by slot index */
+	private Object[] objectValues;
+	
+	/** Maximum number of registered integer properties */
+	public static final int MAX_INT_PROPERTIES = 64;
+	/** Keys of the registered integer properties by slot index */
+	private static List<String> intKeys = new ArrayList<String>();
+	/** Slot indexes of the registered integer properties by key */
+	private static Map<String, Integer> intSlots = 
+		new HashMap<String, Integer>();
+	/** Keys of the registered object properties by slot index */
+	private static List<String> objectKeys = new ArrayList<String>();
+	/** Slot indexes of the registered object properties by key */
+	private static Map<String, Integer> objectSlots = 
+		new HashMap<String, Integer>();
 	
-	/** Application ID of the application that created the message */
-	private String	appID;
+	/** Listener that is informed about property updates (or null) */
+	private MessagePropertyListener propertyListener;
 	
 	static {
 		reset();
@@ -63,31 +82,42 @@ public class Message implements Comparable<Message> {
 	 * @param size Size of the message (in bytes)
 	 */
 	public Message(DTNHost from, DTNHost to, String id, int size) {
-		this.from = from;
-		this.to = to;
-		this.id = id;
-		this.size = size;
-		this.path = new ArrayList<DTNHost>();
+		this.body = new Body(from, to, id, getKey(id), size,
+				SimClock.getTime());
+		this.bodyShared = false;
+		this.path = null;
+		this.hops = null;
 		this.uniqueId = nextUniqueId;
 		
-		this.timeCreated = SimClock.getTime();
-		this.timeReceived = this.timeCreated;
-		this.initTtl = INFINITE_TTL;
-		this.responseSize = 0;
-		this.requestMsg = null;
+		this.timeReceived = this.body.timeCreated;
 		this.properties = null;
-		this.appID = null;
+		this.intValues = null;
+		this.intValuesSet = 0;
+		this.objectValues = null;
+		this.propertiesShared = false;
+		this.propertyListener = null;
 		
 		Message.nextUniqueId++;
 		addNodeOnPath(from);
 	}
 	
+	/**
+	 * Creates a replicate of a message.
+	 * @param m The message to replicate
+	 */
+	private Message(Message m) {
+		this.uniqueId = nextUniqueId;
+		this.propertyListener = null;
+		Message.nextUniqueId++;
+		copyFrom(m);
+	}
+	
 	/**
 	 * Returns the node this message is originally from
 	 * @return the node this message is originally from
 	 */
 	public DTNHost getFrom() {
-		return this.from;
+		return this.body.from;
 	}
 
 	/**
@@ -95,7 +125,7 @@ public class Message implements Comparable<Message> {
 	 * @return the node this message is originally to
 	 */
 	public DTNHost getTo() {
-		return this.to;
+		return this.body.to;
 	}
 
 	/**
@@ -103,7 +133,46 @@ public class Message implements Comparable<Message> {
 	 * @return The message id
 	 */
 	public String getId() {
-		return this.id;
+		return this.body.id;
+	}
+	
+	/**
+	 * Returns an integer key that is unique for the message ID (i.e., the 
+	 * same for all replicates of the message). The key can be used instead
+	 * of the string ID, e.g., as a map key.
+	 * @return The message key
+	 */
+	public int getKey() {
+		return this.body.key;
+	}
+	
+	/**
+	 * Returns the integer key for a message ID. A new key is created if
+	 * the ID doesn't have a key yet. Not thread safe: messages are created
+	 * and routed only in the simulation thread (parallel updates only move
+	 * hosts and find interfaces in range).
+	 * @param id The message ID
+	 * @return The key of the ID
+	 * @see #getKey()
+	 */
+	public static int getKey(String id) {
+		Integer key = messageKeys.get(id);
+		if (key == null) {
+			key = messageKeys.size();
+			messageKeys.put(id, key);
+		}
+		return key;
+	}
+	
+	/**
+	 * Returns the integer key of an existing message ID
+	 * @param id The message ID
+	 * @return The key of the ID or -1 if no message has had the ID
+	 * @see #getKey()
+	 */
+	public static int findKey(String id) {
+		Integer key = messageKeys.get(id);
+		return key == null ? -1 : key;
 	}
 	
 	/**
@@ -120,7 +189,7 @@ public class Message implements Comparable<Message> {
 	 * @return the size of the message
 	 */
 	public int getSize() {
-		return this.size;
+		return this.body.size;
 	}
 
 	/**
@@ -128,15 +197,23 @@ public class Message implements Comparable<Message> {
 	 * @param node The node to add
 	 */
 	public void addNodeOnPath(DTNHost node) {
-		this.path.add(node);
+		this.path = new PathNode(node, this.path);
+		this.hops = null;
 	}
 	
 	/**
 	 * Returns a list of nodes this message has passed so far
-	 * @return The list as vector
+	 * @return The (unmodifiable) list of nodes
 	 */
 	public List<DTNHost> getHops() {
-		return this.path;
+		if (this.hops == null) {
+			DTNHost[] nodes = new DTNHost[this.path.length];
+			for (PathNode n = this.path; n != null; n = n.previous) {
+				nodes[n.length - 1] = n.host;
+			}
+			this.hops = Collections.unmodifiableList(Arrays.asList(nodes));
+		}
+		return this.hops;
 	}
 	
 	/**
@@ -144,7 +221,7 @@ public class Message implements Comparable<Message> {
 	 * @return the amount of hops this message has passed
 	 */
 	public int getHopCount() {
-		return this.path.size() -1;
+		return this.path.length - 1;
 	}
 	
 	/** 
@@ -154,16 +231,30 @@ public class Message implements Comparable<Message> {
 	 * @return The TTL (minutes)
 	 */
 	public int getTtl() {
-		if (this.initTtl == INFINITE_TTL) {
+		if (this.body.initTtl == INFINITE_TTL) {
 			return Integer.MAX_VALUE;
 		}
 		else {
-			return (int)( ((this.initTtl * 60) -
-					(SimClock.getTime()-this.timeCreated)) /60.0 );
+			return (int)( ((this.body.initTtl * 60) -
+					(SimClock.getTime()-this.body.timeCreated)) /60.0 );
 		}
 	}
 	
 	
+	/**
+	 * Returns the simulation time when the initial TTL of the message has
+	 * passed completely or Double.POSITIVE_INFINITY if the TTL is infinite.
+	 * Note that {@link #getTtl()} rounds the remaining minutes down so it
+	 * returns zero already during the last minute before this time.
+	 * @return The expiry time
+	 */
+	public double getExpiryTime() {
+		if (this.body.initTtl == INFINITE_TTL) {
+			return Double.POSITIVE_INFINITY;
+		}
+		return this.body.timeCreated + this.body.initTtl * 60;
+	}
+	
 	/**
 	 * Sets the initial TTL (time-to-live) for this message. The initial
 	 * TTL is the TTL when the original message was created. The current TTL
@@ -171,7 +262,7 @@ public class Message implements Comparable<Message> {
 	 * @param ttl The time-to-live to set
 	 */
 	public void setTtl(int ttl) {
-		this.initTtl = ttl;
+		getWritableBody().initTtl = ttl;
 	}
 	
 	/**
@@ -195,7 +286,7 @@ public class Message implements Comparable<Message> {
 	 * @return the time when this message was created
 	 */
 	public double getCreationTime() {
-		return this.timeCreated;
+		return this.body.timeCreated;
 	}
 	
 	/**
@@ -203,7 +294,7 @@ public class Message implements Comparable<Message> {
 	 * @param request The request message
 	 */
 	public void setRequest(Message request) {
-		this.requestMsg = request;
+		getWritableBody().requestMsg = request;
 	}
 	
 	/**
@@ -212,7 +303,7 @@ public class Message implements Comparable<Message> {
 	 * @return the message this message is response to
 	 */
 	public Message getRequest() {
-		return this.requestMsg;
+		return this.body.requestMsg;
 	}
 	
 	/**
@@ -220,7 +311,7 @@ public class Message implements Comparable<Message> {
 	 * @return true if this message is a response message
 	 */
 	public boolean isResponse() {
-		return this.requestMsg != null;
+		return this.body.requestMsg != null;
 	}
 	
 	/**
@@ -229,7 +320,7 @@ public class Message implements Comparable<Message> {
 	 * @param size Size of the response message
 	 */
 	public void setResponseSize(int size) {
-		this.responseSize = size;
+		getWritableBody().responseSize = size;
 	}
 	
 	/**
@@ -238,7 +329,7 @@ public class Message implements Comparable<Message> {
 	 * @return the size of the requested response message
 	 */
 	public int getResponseSize() {
-		return responseSize;
+		return this.body.responseSize;
 	}
 	
 	/**
@@ -246,31 +337,246 @@ public class Message implements Comparable<Message> {
 	 * @return a string representation of the message
 	 */
 	public String toString () {
-		return id + " " + properties;
+		if (this.intValuesSet == 0 && this.objectValues == null) {
+			return getId() + " " + properties;
+		}
+		
+		/* show the registered properties like the generic ones */
+		Map<String, Object> all = new HashMap<String, Object>();
+		if (this.properties != null) {
+			all.putAll(this.properties);
+		}
+		for (int i = 0; i < intKeys.size(); i++) {
+			if (hasIntProperty(i)) {
+				all.put(intKeys.get(i), this.intValues[i]);
+			}
+		}
+		for (int i = 0; this.objectValues != null && 
+				i < this.objectValues.length; i++) {
+			if (this.objectValues[i] != null) {
+				all.put(objectKeys.get(i), this.objectValues[i]);
+			}
+		}
+		return getId() + " " + all;
 	}
 
 	/**
-	 * Deep copies message data from other message. If new fields are
-	 * introduced to this class, most likely they should be copied here too
-	 * (unless done in constructor).
+	 * Copies message data from other message. The data is shared with the
+	 * other message until either of the messages modifies it. If new fields
+	 * are introduced to this class, most likely they should be copied here
+	 * too (unless done in constructor).
 	 * @param m The message where the data is copied
 	 */
 	protected void copyFrom(Message m) {
-		this.path = new ArrayList<DTNHost>(m.path);
-		this.timeCreated = m.timeCreated;
-		this.responseSize = m.responseSize;
-		this.requestMsg  = m.requestMsg;
-		this.initTtl = m.initTtl;
-		this.appID = m.appID;
+		this.body = m.body;
+		this.bodyShared = true;
+		m.bodyShared = true;
+		this.path = m.path;
+		this.hops = m.hops;
                 
                 // tambahan 
                 this.timeReceived = SimClock.getTime();
 		
-		if (m.properties != null) {
-			Set<String> keys = m.properties.keySet();
-			for (String key : keys) {
-				updateProperty(key, m.getProperty(key));
-			}
+		this.properties = m.properties;
+		this.intValues = m.intValues;
+		this.intValuesSet = m.intValuesSet;
+		this.objectValues = m.objectValues;
+		this.propertiesShared = true;
+		m.propertiesShared = true;
+	}
+	
+	/**
+	 * Returns the body of this message for modifying it. If the body is
+	 * shared with other replicates, it is copied first.
+	 * @return The body
+	 */
+	private Body getWritableBody() {
+		if (this.bodyShared) {
+			this.body = this.body.copy();
+			this.bodyShared = false;
+		}
+		return this.body;
+	}
+	
+	/**
+	 * Copies the property containers of this message if they are shared 
+	 * with other replicates
+	 */
+	private void unshareProperties() {
+		if (!this.propertiesShared) {
+			return;
+		}
+		if (this.properties != null) {
+			this.properties = new HashMap<String, Object>(this.properties);
+		}
+		if (this.intValues != null) {
+			this.intValues = this.intValues.clone();
+		}
+		if (this.objectValues != null) {
+			this.objectValues = this.objectValues.clone();
+		}
+		this.propertiesShared = false;
+	}
+	
+	/**
+	 * Registers an integer valued message property. Values of registered
+	 * properties are stored in a primitive array instead of the generic
+	 * property map and they can be accessed without boxing using the
+	 * returned slot index (see {@link #getIntProperty(int)}). The string
+	 * based property methods work for the registered properties too (as long
+	 * as the values are Integers). Registering the same key again returns
+	 * the same slot index.
+	 * @param key The key of the property
+	 * @return The slot index of the property
+	 * @throws SimError if the key is already registered as an object property
+	 * or there are too many integer properties
+	 */
+	public static synchronized int registerIntProperty(String key) {
+		Integer slot = intSlots.get(key);
+		if (slot != null) {
+			return slot;
+		}
+		if (objectSlots.containsKey(key)) {
+			throw new SimError("Property " + key + " is already registered " +
+					"as an object property");
+		}
+		if (intKeys.size() == MAX_INT_PROPERTIES) {
+			throw new SimError("Can't register more than " + 
+					MAX_INT_PROPERTIES + " integer properties");
+		}
+		
+		slot = intKeys.size();
+		intKeys.add(key);
+		intSlots.put(key, slot);
+		return slot;
+	}
+	
+	/**
+	 * Registers an object valued message property. Values of registered
+	 * properties are stored in an array instead of the generic property map
+	 * and they can be accessed using the returned slot index (see 
+	 * {@link #getObjectProperty(int)}). Registering the same key again returns
+	 * the same slot index.
+	 * @param key The key of the property
+	 * @return The slot index of the property
+	 * @throws SimError if the key is already registered as an integer property
+	 */
+	public static synchronized int registerObjectProperty(String key) {
+		Integer slot = objectSlots.get(key);
+		if (slot != null) {
+			return slot;
+		}
+		if (intSlots.containsKey(key)) {
+			throw new SimError("Property " + key + " is already registered " +
+					"as an integer property");
+		}
+		
+		slot = objectKeys.size();
+		objectKeys.add(key);
+		objectSlots.put(key, slot);
+		return slot;
+	}
+	
+	/**
+	 * Returns the key of a registered integer property
+	 * @param slot Slot index of the property
+	 * @return The key of the property
+	 */
+	public static String getIntPropertyKey(int slot) {
+		return intKeys.get(slot);
+	}
+	
+	/**
+	 * Returns the key of a registered object property
+	 * @param slot Slot index of the property
+	 * @return The key of the property
+	 */
+	public static String getObjectPropertyKey(int slot) {
+		return objectKeys.get(slot);
+	}
+	
+	/**
+	 * Returns true if this message has a value for the given registered 
+	 * integer property
+	 * @param slot Slot index of the property
+	 * @return true if the property has a value, false if not
+	 */
+	public boolean hasIntProperty(int slot) {
+		return (this.intValuesSet & (1L << slot)) != 0;
+	}
+	
+	/**
+	 * Returns the value of a registered integer property
+	 * @param slot Slot index of the property
+	 * @return The value of the property
+	 * @throws SimError if the message has no value for the property
+	 */
+	public int getIntProperty(int slot) throws SimError {
+		if (!hasIntProperty(slot)) {
+			throw new SimError("Message " + this + " has no value for " + 
+					"property " + getIntPropertyKey(slot));
+		}
+		return this.intValues[slot];
+	}
+	
+	/**
+	 * Sets (adds or updates) the value of a registered integer property
+	 * @param slot Slot index of the property
+	 * @param value The value to set
+	 */
+	public void setIntProperty(int slot, int value) {
+		unshareProperties();
+		if (this.intValues == null || this.intValues.length <= slot) {
+			int length = Math.max(slot + 1, intKeys.size());
+			this.intValues = (this.intValues == null ? new int[length] :
+				Arrays.copyOf(this.intValues, length));
+		}
+		this.intValues[slot] = value;
+		this.intValuesSet |= (1L << slot);
+		
+		if (this.properties != null) {
+			/* a non-integer value may have been stored by updateProperty */
+			this.properties.remove(getIntPropertyKey(slot));
+		}
+		propertyUpdated(getIntPropertyKey(slot));
+	}
+	
+	/**
+	 * Returns the value of a registered object property
+	 * @param slot Slot index of the property
+	 * @return The value of the property or null if there's no value
+	 */
+	public Object getObjectProperty(int slot) {
+		if (this.objectValues == null || this.objectValues.length <= slot) {
+			return null;
+		}
+		return this.objectValues[slot];
+	}
+	
+	/**
+	 * Sets (adds or updates) the value of a registered object property
+	 * @param slot Slot index of the property
+	 * @param value The value to set (null removes the value)
+	 */
+	public void setObjectProperty(int slot, Object value) {
+		unshareProperties();
+		if (this.objectValues == null || this.objectValues.length <= slot) {
+			int length = Math.max(slot + 1, objectKeys.size());
+			this.objectValues = (this.objectValues == null ? 
+					new Object[length] : 
+					Arrays.copyOf(this.objectValues, length));
+		}
+		this.objectValues[slot] = value;
+		propertyUpdated(getObjectPropertyKey(slot));
+	}
+	
+	/**
+	 * Informs the property listener (if any) about an updated property
+	 * @param key Key of the property
+	 */
+	private void propertyUpdated(String key) {
+		if (this.propertyListener != null) {
+			this.propertyListener.propertyUpdated(this, key);
 		}
 	}
 	
@@ -285,7 +591,7 @@ public class Message implements Comparable<Message> {
 	 * @throws SimError if the message already has a value for the given key
 	 */
 	public void addProperty(String key, Object value) throws SimError {
-		if (this.properties != null && this.properties.containsKey(key)) {
+		if (hasProperty(key)) {
 			/* check to prevent accidental name space collisions */
 			throw new SimError("Message " + this + " already contains value " + 
 					"for a key " + key);
@@ -301,12 +607,37 @@ public class Message implements Comparable<Message> {
 	 * @return The stored object or null if it isn't found
 	 */
 	public Object getProperty(String key) {
+		Integer slot = intSlots.get(key);
+		if (slot != null && hasIntProperty(slot)) {
+			return this.intValues[slot];
+		}
+		slot = objectSlots.get(key);
+		if (slot != null) {
+			return getObjectProperty(slot);
+		}
 		if (this.properties == null) {
 			return null;
 		}
 		return this.properties.get(key);
 	}
 	
+	/**
+	 * Returns true if this message has a value for the given key
+	 * @param key The key of the property
+	 * @return true if a value has been stored for the key
+	 */
+	private boolean hasProperty(String key) {
+		Integer slot = intSlots.get(key);
+		if (slot != null && hasIntProperty(slot)) {
+			return true;
+		}
+		slot = objectSlots.get(key);
+		if (slot != null) {
+			return getObjectProperty(slot) != null;
+		}
+		return this.properties != null && this.properties.containsKey(key);
+	}
+	
 	/**
 	 * Updates a value for an existing property. For storing the value first 
 	 * time, {@link #addProperty(String, Object)} should be used which
@@ -315,6 +646,21 @@ public class Message implements Comparable<Message> {
 	 * @param value The new value to store
 	 */
 	public void updateProperty(String key, Object value) throws SimError {
+		Integer slot = intSlots.get(key);
+		if (slot != null) {
+			if (value instanceof Integer) {
+				setIntProperty(slot, (Integer)value);
+				return;
+			}
+			this.intValuesSet &= ~(1L << slot);
+		}
+		slot = objectSlots.get(key);
+		if (slot != null) {
+			setObjectProperty(slot, value);
+			return;
+		}
+		
+		unshareProperties();
 		if (this.properties == null) {
 			/* lazy creation to prevent performance overhead for classes
 			   that don't use the property feature  */
@@ -322,6 +668,26 @@ public class Message implements Comparable<Message> {
 		}		
 
 		this.properties.put(key, value);
+		propertyUpdated(key);
+	}
+	
+	/**
+	 * Sets the listener that is informed when a property of this message
+	 * is added or updated. A message has only one such listener (usually the
+	 * router whose buffer the message is in) and it is not copied to the
+	 * replicates of the message.
+	 * @param listener The listener or null to remove the listener
+	 */
+	public void setPropertyListener(MessagePropertyListener listener) {
+		this.propertyListener = listener;
+	}
+	
+	/**
+	 * Returns the listener that is informed about property updates
+	 * @return The listener or null if no listener is set
+	 */
+	public MessagePropertyListener getPropertyListener() {
+		return this.propertyListener;
 	}
 	
 	/**
@@ -329,9 +695,7 @@ public class Message implements Comparable<Message> {
 	 * @return A replicate of the message
 	 */
 	public Message replicate() {
-		Message m = new Message(from, to, id, size);
-		m.copyFrom(this);
-		return m;
+		return new Message(this);
 	}
 	
 	/**
@@ -339,7 +703,7 @@ public class Message implements Comparable<Message> {
 	 * @see String#compareTo(String)
 	 */
 	public int compareTo(Message m) {
-		return toString().compareTo(m.toString());
+		return getId().compareTo(m.getId());
 	}
 	
 	/**
@@ -347,20 +711,92 @@ public class Message implements Comparable<Message> {
 	 */
 	public static void reset() {
 		nextUniqueId = 0;
+		messageKeys = new HashMap<String, Integer>();
 	}
 
 	/**
 	 * @return the appID
 	 */
 	public String getAppID() {
-		return appID;
+		return this.body.appID;
 	}
 
 	/**
 	 * @param appID the appID to set
 	 */
 	public void setAppID(String appID) {
-		this.appID = appID;
+		getWritableBody().appID = appID;
+	}
+	
+	/**
+	 * The data of a message that is common to all its replicates
+	 */
+	private static class Body {
+		private DTNHost from;
+		private DTNHost to;
+		/** Identifier of the message */
+		private String id;
+		/** Integer key of the identifier */
+		private int key;
+		/** Size of the message (bytes) */
+		private int size;
+		/** The time when this message was created */
+		private double timeCreated;
+		/** Initial TTL of the message */
+		private int initTtl;
+		/** if a response to this message is required, this is the size of 
+		 * the response message (or 0 if no response is requested) */
+		private int responseSize;
+		/** if this message is a response message, this is set to the 
+		 * request msg*/
+		private Message requestMsg;
+		/** Application ID of the application that created the message */
+		private String appID;
+		
+		public Body(DTNHost from, DTNHost to, String id, int key, int size, 
+				double timeCreated) {
+			this.from = from;
+			this.to = to;
+			this.id = id;
+			this.key = key;
+			this.size = size;
+			this.timeCreated = timeCreated;
+			this.initTtl = INFINITE_TTL;
+			this.responseSize = 0;
+			this.requestMsg = null;
+			this.appID = null;
+		}
+		
+		/**
+		 * Returns a copy of this body
+		 * @return The copy
+		 */
+		public Body copy() {
+			Body b = new Body(from, to, id, key, size, timeCreated);
+			b.initTtl = this.initTtl;
+			b.responseSize = this.responseSize;
+			b.requestMsg = this.requestMsg;
+			b.appID = this.appID;
+			return b;
+		}
+	}
+	
+	/**
+	 * A node of the path the message has passed. The nodes form a linked 
+	 * list from the last node towards the first one, so the replicates 
+	 * share the beginning of the path.
+	 */
+	private static class PathNode {
+		private final DTNHost host;
+		private final PathNode previous;
+		/** the number of nodes on the path up to this node */
+		private final int length;
+		
+		public PathNode(DTNHost host, PathNode previous) {
+			this.host = host;
+			this.previous = previous;
+			this.length = (previous == null ? 1 : previous.length + 1);
+		}
 	}
 	
 }
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package core;
+
+import java.util.Arrays;
+
+/**
+ * Set of messages stored as a bitmap of the message keys (see
+ * {@link Message#getKey()}). Since the keys are consecutive integers given
+ * to the message IDs in creation order, the set takes at most one bit for
+ * every message of the simulation, no matter how many messages are added,
+ * and the union of two sets is a single pass over their bitmap words.
+ */
+public class MessageKeySet {
+	private static final long[] EMPTY = new long[0];
+
+	/** bitmap of the keys in the set */
+	private long[] words;
+	/** number of keys in the set */
+	private int size;
+
+	/**
+	 * Creates an empty set
+	 */
+	public MessageKeySet() {
+		this.words = EMPTY;
+		this.size = 0;
+	}
+
+	/**
+	 * Adds a message key to the set
+	 * @param key The key to add
+	 * @return true if the key was added, false if it already was in the set
+	 */
+	public boolean add(int key) {
+		if (key < 0) {
+			throw new IllegalArgumentException("Invalid message key " + key);
+		}
+		int word = key >>> 6;
+		if (word >= this.words.length) {
+			grow(word + 1);
+		}
+		long bit = 1L << key;
+		if ((this.words[word] & bit) != 0) {
+			return false;
+		}
+		this.words[word] |= bit;
+		this.size++;
+		return true;
+	}
+
+	/**
+	 * Returns true if the set contains the key
+	 * @param key The key to look for
+	 * @return true if the key is in the set
+	 */
+	public boolean contains(int key) {
+		int word = key >>> 6;
+		return word < this.words.length && (this.words[word] & (1L << key)) != 0;
+	}
+
+	/**
+	 * Adds all the keys of another set to this set
+	 * @param other The set whose keys to add
+	 * @return true if this set changed
+	 */
+	public boolean addAll(MessageKeySet other) {
+		long[] otherWords = other.words;
+		if (otherWords.length > this.words.length) {
+			grow(otherWords.length);
+		}
+		int oldSize = this.size;
+		for (int i=0; i < otherWords.length; i++) {
+			long added = otherWords[i] & ~this.words[i];
+			if (added != 0) {
+				this.words[i] |= added;
+				this.size += Long.bitCount(added);
+			}
+		}
+		return this.size != oldSize;
+	}
+
+	/**
+	 * Returns the number of keys in the set
+	 * @return The number of keys
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * Returns true if the set is empty
+	 * @return true if there are no keys in the set
+	 */
+	public boolean isEmpty() {
+		return this.size == 0;
+	}
+
+	/**
+	 * Makes room for at least the given number of bitmap words
+	 */
+	private void grow(int minWords) {
+		int length = Math.max(minWords, this.words.length * 2);
+		this.words = Arrays.copyOf(this.words, length);
+	}
+}
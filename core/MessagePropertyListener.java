@@ -0,0 +1,21 @@
+/* 
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package core;
+
+/**
+ * Interface for classes that want to be informed when the properties of
+ * a message change (e.g., routers that keep the messages of their buffer
+ * ordered by some property).
+ */
+public interface MessagePropertyListener {
+
+	/**
+	 * Method is called when a property of a message is added or updated.
+	 * @param m The message whose property changed
+	 * @param key The key of the property
+	 */
+	public void propertyUpdated(Message m, String key);
+
+}
@@ -6,8 +6,10 @@ package core;
 
 import interfaces.ConnectivityGrid;
 import interfaces.ConnectivityOptimizer;
+import interfaces.KineticConnectivityOptimizer;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Random;
 
@@ -21,6 +23,27 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 	public static final String TRANSMIT_SPEED_S = "transmitSpeed";
 	/** scanning interval -setting id ({@value})*/
 	public static final String SCAN_INTERVAL_S = "scanInterval";
+	/**
+	 * Pair scan -setting id ({@value}). Boolean. If true, the connections
+	 * of all the interfaces of this type are updated by the connectivity 
+	 * grid, which checks every nearby pair of interfaces only once per 
+	 * update, instead of every interface checking its own neighbors in its
+	 * update. The connections are then updated for all hosts before any
+	 * of the hosts' routers are updated. Only supported by interfaces 
+	 * whose {@link #supportsManagedConnections()} returns true. 
+	 * Default = false.
+	 */
+	public static final String PAIR_SCAN_S = "pairScan";
+	/**
+	 * Kinetic contacts -setting id ({@value}). Boolean. If true, the 
+	 * connections of all the interfaces of this type are updated by the
+	 * {@link KineticConnectivityOptimizer}, which computes the exact times
+	 * when the hosts come within and leave range from their movement 
+	 * during every update interval. Requires continuous scanning (no scan
+	 * interval) and is only supported by interfaces whose
+	 * {@link #supportsManagedConnections()} returns true. Default = false.
+	 */
+	public static final String KINETIC_CONTACTS_S = "kineticContacts";
 	
 	/** {@link ModuleCommunicationBus} identifier for the "scanning interval" 
     variable. */
@@ -36,10 +59,13 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 	private static final int CON_DOWN = 2;
 	private static int nextAddress = 0;
 	private static Random rng;
+	/** round of the in-range hints that are currently valid */
+	private static int inRangeHintRound;
 	protected DTNHost host = null;
 
 	protected String interfacetype;
-	protected List<Connection> connections; // connected hosts
+	/** connected hosts; call {@link #connectionsChanged()} after changes */
+	protected List<Connection> connections;
 	private List<ConnectionListener> cListeners = null; // list of listeners
 	private int address; // network interface address
 	protected double transmitRange;
@@ -48,6 +74,23 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 	/** scanning interval, or 0.0 if n/a */
 	private double scanInterval;
 	private double lastScanTime;
+	/** sorted addresses of the interfaces within range (or null) */
+	private int[] inRangeHint;
+	/** the hint round {@link #inRangeHint} was set at */
+	private int inRangeHintSetRound;
+	/** are the connections updated by the connectivity grid's pair scan */
+	private boolean pairScan;
+	/** are the connections updated by the kinetic optimizer */
+	private boolean kineticContacts;
+	/** index of the optimizer's cell this interface is in (-1 if none) */
+	private int optimizerCell = -1;
+	/** visitor that tries to connect to the interfaces it visits */
+	private final ConnectivityOptimizer.InterfaceVisitor connectVisitor =
+		new ConnectivityOptimizer.InterfaceVisitor() {
+			public void visit(NetworkInterface ni) {
+				connect(ni);
+			}
+		};
 
 
 	static {
@@ -61,6 +104,7 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 	public static void reset() {
 		nextAddress = 0;
 		rng = new Random(0);
+		inRangeHintRound = 0;
 	}
 	
 	/**
@@ -80,6 +124,22 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 		} else {
 			this.scanInterval = 0;
 		}
+		if (s.contains(PAIR_SCAN_S)) {
+			this.pairScan = s.getBoolean(PAIR_SCAN_S);
+		}
+		if (s.contains(KINETIC_CONTACTS_S)) {
+			this.kineticContacts = s.getBoolean(KINETIC_CONTACTS_S);
+			if (this.kineticContacts && this.scanInterval > 0) {
+				throw new SettingsError(s.getFullPropertyName(
+						KINETIC_CONTACTS_S) + " can't be used with " + 
+						s.getFullPropertyName(SCAN_INTERVAL_S));
+			}
+		}
+		if (hasManagedConnections() && !supportsManagedConnections()) {
+			throw new SettingsError(getClass().getSimpleName() + 
+					" doesn't support " + s.getFullPropertyName(PAIR_SCAN_S) +
+					" or " + s.getFullPropertyName(KINETIC_CONTACTS_S));
+		}
 	}
 	
 	/**
@@ -102,6 +162,8 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 		this.interfacetype = ni.interfacetype;
 		this.transmitRange = ni.transmitRange;
 		this.transmitSpeed = ni.transmitSpeed;
+		this.pairScan = ni.pairScan;
+		this.kineticContacts = ni.kineticContacts;
 		
 		/* draw lastScanTime of [0 -- scanInterval] */
 		this.lastScanTime = rng.nextDouble() * scanInterval;
@@ -124,9 +186,20 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 		comBus.subscribe(RANGE_ID, this);
 		comBus.subscribe(SPEED_ID, this);
 		
-		optimizer = ConnectivityGrid.ConnectivityGridFactory(
+		if (this.kineticContacts) {
+			optimizer = KineticConnectivityOptimizer.getOptimizer(
+					this.interfacetype.hashCode());
+			optimizer.addInterface(this);
+			return;
+		}
+		
+		ConnectivityGrid grid = ConnectivityGrid.ConnectivityGridFactory(
 				this.interfacetype.hashCode(), transmitRange);
-		optimizer.addInterface(this);		
+		grid.addInterface(this);
+		if (this.pairScan) {
+			grid.setPairScan(true);
+		}
+		optimizer = grid;
 	}
 
 	/**
@@ -208,6 +281,20 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 		return true;
 	}
 
+	/**
+	 * Returns the simulation time when the next scanning round of this 
+	 * interface starts
+	 * @return The start time of the next scanning round or Double.MAX_VALUE
+	 * if the interface is scanning all the time
+	 * @see #isScanning()
+	 */
+	public double getNextScanTime() {
+		if (scanInterval > 0.0) {
+			return lastScanTime + scanInterval;
+		}
+		return Double.MAX_VALUE;
+	}
+
 	/**
 	 * Connects the interface to another interface.
 	 * 
@@ -218,6 +305,38 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 	 */
 	public abstract void connect(NetworkInterface anotherInterface);
 
+	/**
+	 * Returns true if this interface's connections can be updated by a 
+	 * connectivity optimizer (see {@link #PAIR_SCAN_S} and 
+	 * {@link #KINETIC_CONTACTS_S}). That is the case if 
+	 * {@link #connect(NetworkInterface)} connects (by calling 
+	 * {@link #createConnection(NetworkInterface)}) exactly when this 
+	 * interface is scanning, both hosts are active and the interfaces are 
+	 * within range and if connections are torn down only when the interfaces
+	 * get out of range. This implementation returns false.
+	 * @return true if managed connections are supported
+	 */
+	public boolean supportsManagedConnections() {
+		return false;
+	}
+	
+	/**
+	 * Returns true if the connections of this interface are updated by a 
+	 * connectivity optimizer instead of the interface's own update
+	 * @return true if pair scan or kinetic contacts are used
+	 */
+	public boolean hasManagedConnections() {
+		return this.pairScan || this.kineticContacts;
+	}
+
+	/**
+	 * Tries to connect (using {@link #connect(NetworkInterface)}) to all the 
+	 * interfaces that the connectivity optimizer finds near this interface
+	 */
+	protected void connectToNearInterfaces() {
+		optimizer.visitNearInterfaces(this, this.connectVisitor);
+	}
+
 	/**
 	 * Connects this host to another host. The derived class should check 
 	 * that all pre-requisites for making a connection are satisfied before 
@@ -232,6 +351,8 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 
 		// set up bidirectional connection
 		anotherInterface.getConnections().add(con);
+		this.connectionsChanged();
+		anotherInterface.connectionsChanged();
 
 		// inform routers about the connection
 		this.host.connectionUp(con);
@@ -253,6 +374,7 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 			throw new SimError("No connection " + con + " found in " +
 					anotherInterface);	
 		}
+		anotherInterface.connectionsChanged();
 
 		this.host.connectionDown(con);
 		anotherInterface.getHost().connectionDown(con);
@@ -265,6 +387,22 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 	 * @return True if the interface is within range, false if not
 	 */
 	protected boolean isWithinRange(NetworkInterface anotherInterface) {
+		if (this.inRangeHint != null && 
+				this.inRangeHintSetRound == inRangeHintRound) {
+			return Arrays.binarySearch(this.inRangeHint, 
+					anotherInterface.getAddress()) >= 0;
+		}
+		return computeWithinRange(anotherInterface);
+	}
+	
+	/**
+	 * Does the actual range check of {@link #isWithinRange(NetworkInterface)}
+	 * ignoring any in-range hint. Only reads the locations and ranges of the
+	 * interfaces so it is safe to call concurrently while hosts don't move.
+	 * @param anotherInterface The another interface
+	 * @return True if the interface is within range, false if not
+	 */
+	public boolean computeWithinRange(NetworkInterface anotherInterface) {
 		double smallerRange = anotherInterface.getTransmitRange();
 		double myRange = getTransmitRange();
 		if (myRange < smallerRange) {
@@ -275,12 +413,52 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 				anotherInterface.getHost().getLocation()) <= smallerRange;
 	}
 	
+	/**
+	 * Returns the index of the connectivity optimizer's cell where this 
+	 * interface currently is
+	 * @return The cell index or -1 if the interface is not in any cell
+	 */
+	public int getOptimizerCell() {
+		return this.optimizerCell;
+	}
+	
+	/**
+	 * Sets the index of the connectivity optimizer's cell where this
+	 * interface currently is. Only for the connectivity optimizer's use.
+	 * @param cell The cell index or -1 if the interface is not in any cell
+	 */
+	public void setOptimizerCell(int cell) {
+		this.optimizerCell = cell;
+	}
+	
+	/**
+	 * Sets the interfaces that are within range of this interface at the
+	 * current locations. Until the hints are cleared, range checks of this 
+	 * interface are answered from the hint instead of computing distances.
+	 * @param addresses Addresses of the interfaces within range in ascending
+	 * order
+	 * @see #clearInRangeHints()
+	 */
+	public void setInRangeHint(int[] addresses) {
+		this.inRangeHint = addresses;
+		this.inRangeHintSetRound = inRangeHintRound;
+	}
+	
+	/**
+	 * Invalidates the in-range hints of all interfaces. Must be called 
+	 * whenever hosts may have moved (or ranges changed) since the hints 
+	 * were set.
+	 */
+	public static void clearInRangeHints() {
+		inRangeHintRound++;
+	}
+	
 	/**
 	 * Returns true if the given NetworkInterface is connected to this host. 
 	 * @param netinterface The other NetworkInterface to check 
 	 * @return True if the two hosts are connected
 	 */
-	protected boolean isConnected(NetworkInterface netinterface) {
+	public boolean isConnected(NetworkInterface netinterface) {
 		for (int i = 0; i < this.connections.size(); i++) {
 			if (this.connections.get(i).getOtherInterface(this) == 
 				netinterface) {
@@ -347,6 +525,7 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 		}
 		else if (key.equals(RANGE_ID)) {
 			this.transmitRange = (Double)newValue;	
+			clearInRangeHints(); /* hints were computed with the old range */
 		}
 		else {
 			throw new SimError("Unexpected combus ID " + key);
@@ -394,11 +573,25 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 			throw new SimError("No connection " + con + " found in " +
 					anotherNode);   
 		}
+		anotherInterface.connectionsChanged();
 
 		this.host.connectionDown(con);
 		anotherNode.connectionDown(con);
 
 		connections.remove(index);
+		connectionsChanged();
+	}
+
+	/**
+	 * Informs the host of this interface that the connections of the
+	 * interface have changed. Must be called after modifying
+	 * {@link #connections} so that the host's connection list
+	 * (see {@link DTNHost#getConnections()}) is up to date.
+	 */
+	protected void connectionsChanged() {
+		if (this.host != null) {
+			this.host.connectionsChanged();
+		}
 	}
 
 	/**
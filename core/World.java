@@ -8,11 +8,16 @@ import input.EventQueue;
 import input.ExternalEvent;
 import input.ScheduledUpdatesQueue;
 import interfaces.ConnectivityGrid;
+import interfaces.KineticConnectivityOptimizer;
 
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 /**
  * World contains all the nodes and is responsible for updating their
@@ -37,11 +42,50 @@ public class World {
 	 * Default is @link {@link #DEF_RANDOMIZE_UPDATES}.
 	 */
 	public static final String RANDOMIZE_UPDATES_S = "randomizeUpdateOrder";
+	/**
+	 * Should the hosts be updated using the parallel phase-split update
+	 * engine -setting id ({@value}). Boolean (true/false) variable. If true,
+	 * every update interval first moves all hosts concurrently, then finds
+	 * the hosts within range of each other concurrently in stripes of the
+	 * connectivity grid, and finally updates the connections and routers in
+	 * the same (deterministic) order as the serial engine. Results are
+	 * identical to the serial engine's results. Default is 
+	 * {@link #DEF_PARALLEL_UPDATE}.
+	 */
+	public static final String PARALLEL_UPDATE_S = "parallelUpdate";
+	/**
+	 * Number of threads the parallel update engine uses -setting id 
+	 * ({@value}). Default is the number of available processors.
+	 * @see #PARALLEL_UPDATE_S
+	 */
+	public static final String PARALLEL_THREADS_S = "parallelThreads";
+	/**
+	 * Should update intervals where nothing can happen be skipped -setting
+	 * id ({@value}). Boolean (true/false) variable. If true, the world 
+	 * finds out the next time when something can happen (next external or 
+	 * scheduled event, transfer completion, waypoint arrival, etc., see 
+	 * {@link DTNHost#getNextActivityTime(boolean)}) and advances the time
+	 * straight to the update interval preceding it. Time still advances in 
+	 * multiples of the update interval. Most useful for trace based 
+	 * scenarios where connections are not simulated. Update listeners are
+	 * informed only of the updates that are actually done and, if the update
+	 * order is randomized, the order differs from a run without skipping.
+	 * Default is {@link #DEF_SKIP_IDLE_UPDATES}.
+	 */
+	public static final String SKIP_IDLE_UPDATES_S = "skipIdleUpdates";
 	/** default value for cell size multiplier ({@value}) */
 	public static final int DEF_CON_CELL_SIZE_MULT = 5;
 	/** should the update order of nodes be randomized -setting's default value
 	 * ({@value}) */
 	public static final boolean DEF_RANDOMIZE_UPDATES = true;
+	/** should the parallel update engine be used -setting's default value
+	 * ({@value}) */
+	public static final boolean DEF_PARALLEL_UPDATE = false;
+	/** should idle update intervals be skipped -setting's default value
+	 * ({@value}) */
+	public static final boolean DEF_SKIP_IDLE_UPDATES = false;
+	/** how many connectivity grid stripes there are per update thread */
+	private static final int STRIPES_PER_THREAD = 4;
 
 	private int sizeX;
 	private int sizeY;
@@ -64,6 +108,12 @@ public class World {
 
 	/** single ConnectivityCell's size is biggest radio range times this */
 	private int conCellSizeMult;
+	/** pool of the parallel update engine (null if the engine is not used)*/
+	private ForkJoinPool updatePool;
+	/** should the update intervals where nothing happens be skipped */
+	private boolean skipIdleUpdates;
+	/** end time of the simulation (idle intervals are not skipped past it) */
+	private double endTime;
 
 	/**
 	 * Constructor.
@@ -117,6 +167,37 @@ public class World {
 			throw new SettingsError("Too small value (" + conCellSizeMult +
 					") for " + SETTINGS_NS + "." + CELL_SIZE_MULT_S);
 		}
+		
+		boolean parallelUpdate = DEF_PARALLEL_UPDATE;
+		if (s.contains(PARALLEL_UPDATE_S)) {
+			parallelUpdate = s.getBoolean(PARALLEL_UPDATE_S);
+		}
+		if (parallelUpdate) {
+			int nrofThreads = Runtime.getRuntime().availableProcessors();
+			if (s.contains(PARALLEL_THREADS_S)) {
+				nrofThreads = s.getInt(PARALLEL_THREADS_S);
+			}
+			if (nrofThreads < 1) {
+				throw new SettingsError("Too small value (" + nrofThreads +
+						") for " + SETTINGS_NS + "." + PARALLEL_THREADS_S);
+			}
+			this.updatePool = new ForkJoinPool(nrofThreads);
+		}
+		else {
+			this.updatePool = null;
+		}
+		
+		this.skipIdleUpdates = DEF_SKIP_IDLE_UPDATES;
+		if (s.contains(SKIP_IDLE_UPDATES_S)) {
+			this.skipIdleUpdates = s.getBoolean(SKIP_IDLE_UPDATES_S);
+		}
+		Settings scen = new Settings(SimScenario.SCENARIO_NS);
+		if (scen.contains(SimScenario.END_TIME_S)) {
+			this.endTime = scen.getDouble(SimScenario.END_TIME_S);
+		}
+		else {
+			this.endTime = Double.MAX_VALUE;
+		}
 	}
 
 	/**
@@ -167,9 +248,15 @@ public class World {
 	 * this method is called and after one update interval.
 	 */
 	public void update () {
-		double runUntil = SimClock.getTime() + this.updateInterval;
+		double start = SimClock.getTime();
+		double runUntil = start + this.updateInterval;
+		double moveTime = this.updateInterval;
 
 		setNextEventQueue();
+		if (this.skipIdleUpdates) {
+			runUntil = getIdleIntervalsEnd(runUntil);
+			moveTime = runUntil - start;
+		}
 
 		/* process all events that are due until next interval update */
 		while (this.nextQueueEventTime <= runUntil) {
@@ -180,10 +267,24 @@ public class World {
 			setNextEventQueue();
 		}
 
-		moveHosts(this.updateInterval);
+		moveHosts(moveTime);
+		if (simulateConnections) {
+			/* exact contact times of the moves (if kinetic contacts are used)*/
+			KineticConnectivityOptimizer.updateAllConnections(start, runUntil);
+		}
 		simClock.setTime(runUntil);
 
-		updateHosts();
+		if (this.updatePool != null && simulateConnections) {
+			/* hosts stay put until the next move -> range checks of this
+			   update can be answered from concurrently computed hints */
+			ConnectivityGrid.findAllInRangeInterfaces(this.updatePool, 
+					this.updatePool.getParallelism() * STRIPES_PER_THREAD);
+			updateHosts();
+			NetworkInterface.clearInRangeHints();
+		}
+		else {
+			updateHosts();
+		}
 
 		/* inform all update listeners */
 		for (UpdateListener ul : this.updateListeners) {
@@ -191,12 +292,64 @@ public class World {
 		}
 	}
 
+	/**
+	 * Returns the end time of the update interval(s) that can be passed in a
+	 * single update when idle update intervals are skipped. An interval is 
+	 * idle if it ends before the interval preceding the next activity in the 
+	 * world. Idle intervals are merged (if there are at least two of them) 
+	 * so that the next update processes the interval preceding the activity
+	 * and the activity itself just like without skipping. 
+	 * @param nextIntervalEnd End time of the next normal update interval
+	 * @return End time of the next update
+	 */
+	private double getIdleIntervalsEnd(double nextIntervalEnd) {
+		double now = SimClock.getTime();
+		double nextActivity = getNextActivityTime(
+				now + 3 * this.updateInterval);
+		
+		double idleIntervals = Math.ceil(
+				(nextActivity - now) / this.updateInterval) - 2;
+		if (idleIntervals < 2) {
+			return nextIntervalEnd;
+		}
+		
+		double runUntil = now + idleIntervals * this.updateInterval;
+		if (runUntil > this.endTime) { 
+			/* don't jump past the end but keep the interval multiples */
+			runUntil = now + Math.max(1, Math.ceil((this.endTime - now) / 
+					this.updateInterval)) * this.updateInterval;
+		}
+		return runUntil;
+	}
+	
+	/**
+	 * Returns the next time when something can happen in the world, i.e., 
+	 * the next external or scheduled event or the next activity in any of 
+	 * the hosts (see {@link DTNHost#getNextActivityTime(boolean)}).
+	 * @param notSkippable If the activity is found to happen before this
+	 * time, the search is stopped (and some time before this is returned)
+	 * @return The time of the next activity
+	 */
+	private double getNextActivityTime(double notSkippable) {
+		double next = this.nextQueueEventTime;
+		
+		for (int i=0, n = hosts.size(); i < n && next >= notSkippable; i++) {
+			next = Math.min(next, 
+					hosts.get(i).getNextActivityTime(simulateConnections));
+		}
+		
+		return next;
+	}
+
 	/**
 	 * Updates all hosts (calls update for every one of them). If update
 	 * order randomizing is on (updateOrder array is defined), the calls
 	 * are made in random order.
 	 */
 	private void updateHosts() {
+		if (simulateConnections) {
+			ConnectivityGrid.updateAllPairScanned();
+		}
 		if (this.updateOrder == null) { // randomizing is off
 			for (int i=0, n = hosts.size();i < n; i++) {
 				if (this.isCancelled) {
@@ -224,11 +377,61 @@ public class World {
 	 * @param timeIncrement The time how long all nodes should move
 	 */
 	private void moveHosts(double timeIncrement) {
+		if (this.updatePool != null) {
+			moveHostsInParallel(timeIncrement);
+			return;
+		}
+		
 		for (int i=0,n = hosts.size(); i<n; i++) {
 			DTNHost host = hosts.get(i);
 			host.move(timeIncrement);			
 		}		
 	}
+	
+	/**
+	 * Moves all hosts in the world for a given amount of time using the 
+	 * parallel update engine. Moves that need new waypoints (and therefore
+	 * use the shared movement model RNG) are done first in the host order,
+	 * just like in {@link #moveHosts(double)}, and the rest of the moves,
+	 * that only advance hosts along their current path segments, are then 
+	 * done concurrently.
+	 * @param timeIncrement The time how long all nodes should move
+	 */
+	private void moveHostsInParallel(final double timeIncrement) {
+		final List<DTNHost> onSegment = new ArrayList<DTNHost>();
+		for (int i=0,n = hosts.size(); i<n; i++) {
+			DTNHost host = hosts.get(i);
+			if (host.moveUnlessOnSegment(timeIncrement)) {
+				onSegment.add(host);
+			}
+		}
+		
+		int nrofTasks = this.updatePool.getParallelism();
+		int chunkSize = (onSegment.size() + nrofTasks - 1) / nrofTasks;
+		List<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+		for (int first = 0; first < onSegment.size(); first += chunkSize) {
+			final List<DTNHost> chunk = onSegment.subList(first, 
+					Math.min(onSegment.size(), first + chunkSize));
+			tasks.add(new Callable<Object>() {
+				public Object call() {
+					for (int i=0, n = chunk.size(); i < n; i++) {
+						chunk.get(i).moveOnSegment(timeIncrement);
+					}
+					return null;
+				}
+			});
+		}
+		
+		try {
+			for (Future<Object> f : this.updatePool.invokeAll(tasks)) {
+				f.get();
+			}
+		} catch (InterruptedException e) {
+			throw new SimError("Interrupted while moving hosts", e);
+		} catch (ExecutionException e) {
+			throw new SimError("Failed to move hosts: " + e.getCause(), e);
+		}
+	}
 
 	/**
 	 * Asynchronously cancels the currently running simulation
@@ -5,15 +5,23 @@
 package interfaces;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 import movement.MovementModel;
 
+import core.Connection;
 import core.Coord;
 import core.DTNSim;
 import core.NetworkInterface;
 import core.Settings;
+import core.SimError;
 
 /**
  * <P>
@@ -33,16 +41,34 @@ import core.Settings;
  * connectivity. 
  * </P>
  * <P>
+ * The index of the cell where an interface is stored is kept in the 
+ * interface itself (see {@link NetworkInterface#getOptimizerCell()}) so 
+ * finding and visiting the near interfaces needs no lookups or allocation.
+ * </P>
+ * <P>
  * <strong>Note:</strong> this class does NOT support negative
  * coordinates. Also, it makes sense to normalize the coordinates to start
  * from zero to conserve memory. 
  */
 public class ConnectivityGrid extends ConnectivityOptimizer {
-	private GridCell[][] cells;
-	private HashMap<NetworkInterface,GridCell> ginterfaces;
+	/** the cells in row-major order (including the empty border cells) */
+	private GridCell[] cells;
+	private ArrayList<NetworkInterface> ginterfaces;
 	private int cellSize;
 	private int rows;
 	private int cols;
+	/** number of cells in a row (including the empty border cells) */
+	private int width;
+	/** offsets of the neighbor cells that are checked from a cell when 
+	 * every pair of cells is checked only once (E, SW, S and SE) */
+	private int[] forwardNeighbors;
+	/** are the connections of the interfaces updated by pair scan */
+	private boolean pairScan;
+	/** stamps of the pair scan by interface address; the peers of the 
+	 * interface that is being scanned have the current stamp */
+	private int[] peerStamps = new int[0];
+	/** the stamp of the interface that is being scanned */
+	private int stamp;
 	private static int worldSizeX;
 	private static int worldSizeY;
 
@@ -72,15 +98,15 @@ public class ConnectivityGrid extends ConnectivityOptimizer {
 		this.rows = worldSizeY/cellSize + 1;
 		this.cols = worldSizeX/cellSize + 1;
 		// leave empty cells on both sides to make neighbor search easier 
-		this.cells = new GridCell[rows+2][cols+2];
+		this.width = cols + 2;
+		this.forwardNeighbors = new int[] {1, width - 1, width, width + 1};
+		this.cells = new GridCell[(rows+2) * width];
 		this.cellSize = cellSize;
 
-		for (int i=0; i<rows+2; i++) {
-			for (int j=0; j<cols+2; j++) {
-				this.cells[i][j] = new GridCell();
-			}
+		for (int i=0; i<cells.length; i++) {
+			this.cells[i] = new GridCell();
 		}
-		ginterfaces = new HashMap<NetworkInterface,GridCell>();
+		ginterfaces = new ArrayList<NetworkInterface>();
 	}
 
 	/**
@@ -103,13 +129,18 @@ public class ConnectivityGrid extends ConnectivityOptimizer {
 	}
 
 	/**
-	 * Adds a network interface to the overlay grid
+	 * Adds a network interface to the overlay grid (unless it is already 
+	 * in a cell)
 	 * @param ni The new network interface
 	 */
 	public void addInterface(NetworkInterface ni) {
-		GridCell c = cellFromCoord(ni.getLocation());
-		c.addInterface(ni);
-		ginterfaces.put(ni,c);
+		if (ni.getOptimizerCell() >= 0) {
+			return;
+		}
+		int c = cellIndexFromCoord(ni.getLocation());
+		cells[c].addInterface(ni);
+		ni.setOptimizerCell(c);
+		ginterfaces.add(ni);
 	}
 
 	/** 
@@ -117,9 +148,10 @@ public class ConnectivityGrid extends ConnectivityOptimizer {
 	 * @param ni The interface to be removed
 	 */
 	public void removeInterface(NetworkInterface ni) {
-		GridCell c = ginterfaces.get(ni);
-		if (c != null) {
-			c.removeInterface(ni);
+		int c = ni.getOptimizerCell();
+		if (c >= 0) {
+			cells[c].removeInterface(ni);
+			ni.setOptimizerCell(-1);
 		}
 		ginterfaces.remove(ni);
 	}
@@ -139,48 +171,21 @@ public class ConnectivityGrid extends ConnectivityOptimizer {
 	 * @param ni The interface to update
 	 */
 	public void updateLocation(NetworkInterface ni) {
-		GridCell oldCell = (GridCell)ginterfaces.get(ni);
-		GridCell newCell = cellFromCoord(ni.getLocation());
+		int oldCell = ni.getOptimizerCell();
+		int newCell = cellIndexFromCoord(ni.getLocation());
 
 		if (newCell != oldCell) {
-			oldCell.moveInterface(ni, newCell);
-			ginterfaces.put(ni,newCell);
+			cells[oldCell].moveInterface(ni, cells[newCell]);
+			ni.setOptimizerCell(newCell);
 		}
 	}
 
 	/**
-	 * Finds all neighboring cells and the cell itself based on the coordinates
-	 * @param c The coordinates
-	 * @return Array of neighboring cells 
-	 */
-	private GridCell[] getNeighborCellsByCoord(Coord c) {
-		// +1 due empty cells on both sides of the matrix
-		int row = (int)(c.getY()/cellSize) + 1;
-		int col = (int)(c.getX()/cellSize) + 1;
-		return getNeighborCells(row,col);
-	}
-
-	/**
-	 * Returns an array of Cells that contains the neighbors of a certain
-	 * cell and the cell itself.
-	 * @param row Row index of the cell
-	 * @param col Column index of the cell
-	 * @return Array of neighboring Cells
-	 */
-	private GridCell[] getNeighborCells(int row, int col) {
-		return new GridCell[] {
-			cells[row-1][col-1],cells[row-1][col],cells[row-1][col+1],//1st row
-			cells[row][col-1],cells[row][col],cells[row][col+1],//2nd row
-			cells[row+1][col-1],cells[row+1][col],cells[row+1][col+1]//3rd row
-		};
-	}
-
-	/**
-	 * Get the cell having the specific coordinates
+	 * Get the index of the cell having the specific coordinates
 	 * @param c Coordinates
-	 * @return The cell
+	 * @return The cell's index in the cell array
 	 */
-	private GridCell cellFromCoord(Coord c) {
+	private int cellIndexFromCoord(Coord c) {
 		// +1 due empty cells on both sides of the matrix
 		int row = (int)(c.getY()/cellSize) + 1; 
 		int col = (int)(c.getX()/cellSize) + 1;
@@ -188,14 +193,14 @@ public class ConnectivityGrid extends ConnectivityOptimizer {
 		assert row > 0 && row <= rows && col > 0 && col <= cols : "Location " + 
 		c + " is out of world's bounds";
 		
-		return this.cells[row][col];
+		return row * width + col;
 	}
 
 	/**
 	 * Returns all interfaces that use the same technology and channel
 	 */
 	public Collection<NetworkInterface> getAllInterfaces() {
-		return (Collection<NetworkInterface>)ginterfaces.keySet();
+		return ginterfaces;
 	}
 
 	/**
@@ -205,19 +210,281 @@ public class ConnectivityGrid extends ConnectivityOptimizer {
 	public Collection<NetworkInterface> getNearInterfaces(
 			NetworkInterface netinterf) {
 		ArrayList<NetworkInterface> ni = new ArrayList<NetworkInterface>();
-		ni.clear();
-
-		GridCell loc = (GridCell)ginterfaces.get(netinterf);
-		if (loc != null) {	
-			GridCell[] neighbors = 
-				getNeighborCellsByCoord(netinterf.getLocation());
-			for (int i=0; i < neighbors.length; i++) {
-				ni.addAll(neighbors[i].getInterfaces());
+		int cell = netinterf.getOptimizerCell();
+		if (cell >= 0) {
+			for (int r = cell - width; r <= cell + width; r += width) {
+				for (int c = r - 1; c <= r + 1; c++) {
+					ni.addAll(cells[c].getInterfaces());
+				}
 			}
 		}
 		return ni;
 	}
 
+	/**
+	 * Calls the visitor for all interfaces that are in the same cell as the
+	 * given interface or in the neighboring cells. Nothing is allocated.
+	 */
+	@Override
+	public void visitNearInterfaces(NetworkInterface netinterf,
+			InterfaceVisitor visitor) {
+		int cell = netinterf.getOptimizerCell();
+		if (cell < 0) {
+			return;
+		}
+		for (int r = cell - width; r <= cell + width; r += width) {
+			for (int c = r - 1; c <= r + 1; c++) {
+				ArrayList<NetworkInterface> cellInterfaces = 
+					cells[c].getInterfaces();
+				for (int i=0, n = cellInterfaces.size(); i < n; i++) {
+					visitor.visit(cellInterfaces.get(i));
+				}
+			}
+		}
+	}
+
+
+	/**
+	 * Sets whether the connections of the interfaces in this grid are
+	 * updated using pair scan (see {@link #updateConnections()})
+	 * @param pairScan True if pair scan should be used
+	 */
+	public void setPairScan(boolean pairScan) {
+		this.pairScan = pairScan;
+	}
+
+	/**
+	 * Updates the connections of the interfaces in all the connectivity 
+	 * grids that use pair scan
+	 * @see #updateConnections()
+	 */
+	public static void updateAllPairScanned() {
+		for (ConnectivityGrid grid : gridobjects.values()) {
+			if (grid.pairScan) {
+				grid.updateConnections();
+			}
+		}
+	}
+
+	/**
+	 * Updates the connections of all the interfaces in this grid by checking
+	 * every nearby pair of interfaces only once. First the interfaces of the
+	 * active hosts are moved to their current cells. Then every cell is 
+	 * checked against itself and the forward half of its neighbor cells: 
+	 * before the pairs of an interface are checked, its connections that 
+	 * have gone out of range are torn down and its remaining peers are 
+	 * stamped, and the pairs that are within range and not connected yet 
+	 * get connected (by the scanning interface of the pair) if both hosts 
+	 * are active.
+	 */
+	public void updateConnections() {
+		for (int i=0, n = ginterfaces.size(); i < n; i++) {
+			NetworkInterface ni = ginterfaces.get(i);
+			if (ni.getHost().isActive()) {
+				updateLocation(ni);
+				ni.isScanning(); // start the scan round like update() does
+			}
+		}
+		
+		for (int c=0; c < cells.length; c++) {
+			ArrayList<NetworkInterface> here = cells[c].getInterfaces();
+			for (int i=0, n = here.size(); i < n; i++) {
+				NetworkInterface ni = here.get(i);
+				disconnectOutOfRange(ni);
+				for (int j = i + 1; j < n; j++) {
+					connectIfInRange(ni, here.get(j));
+				}
+				for (int offset : forwardNeighbors) {
+					ArrayList<NetworkInterface> there = 
+						cells[c + offset].getInterfaces();
+					for (int j=0, m = there.size(); j < m; j++) {
+						connectIfInRange(ni, there.get(j));
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Tears down the connections of an interface that have gone out of range
+	 * and stamps the peers of the remaining connections with a new stamp 
+	 * (see {@link #connectIfInRange(NetworkInterface, NetworkInterface)}).
+	 * Every connection is checked only from the interface with the smaller
+	 * address. A connection that is left for the other interface to tear 
+	 * down is out of range so its stamp is never checked.
+	 * @param ni The interface whose connections to check
+	 */
+	private void disconnectOutOfRange(NetworkInterface ni) {
+		List<Connection> connections = ni.getConnections();
+		stamp++;
+		for (int i=0; i < connections.size(); ) {
+			NetworkInterface other = connections.get(i).getOtherInterface(ni);
+			if (ni.getAddress() < other.getAddress() && 
+					(ni.getHost().isActive() || other.getHost().isActive()) &&
+					!ni.computeWithinRange(other)) {
+				ni.destroyConnection(other);
+			}
+			else {
+				int address = other.getAddress();
+				if (address >= peerStamps.length) {
+					peerStamps = Arrays.copyOf(peerStamps, 
+							Math.max(2 * peerStamps.length, address + 1));
+				}
+				peerStamps[address] = stamp;
+				i++;
+			}
+		}
+	}
+
+	/**
+	 * Connects two interfaces if their hosts are active, they are within 
+	 * range, they are not connected yet and at least one of them is 
+	 * scanning. The scanning interface (the first one if both are) creates
+	 * the connection. The peers of the first interface must have been 
+	 * stamped by {@link #disconnectOutOfRange(NetworkInterface)} (the pair 
+	 * is checked only once per scan, so the connections created during the
+	 * scan don't need stamps).
+	 * @param a The first interface
+	 * @param b The second interface
+	 */
+	private void connectIfInRange(NetworkInterface a, NetworkInterface b) {
+		if (!a.getHost().isActive() || !b.getHost().isActive() || 
+				!a.computeWithinRange(b)) {
+			return;
+		}
+		int address = b.getAddress();
+		if (address < peerStamps.length && peerStamps[address] == stamp) {
+			return; /* already connected */
+		}
+		boolean aScanning = a.isScanning();
+		if (aScanning || b.isScanning()) {
+			if (aScanning) {
+				a.createConnection(b);
+			}
+			else {
+				b.createConnection(a);
+			}
+		}
+	}
+
+	/**
+	 * Finds the in-range interfaces of all interfaces in all connectivity
+	 * grids (except the ones using pair scan, which check the ranges 
+	 * themselves).
+	 * @see #findInRangeInterfaces(ForkJoinPool, int)
+	 */
+	public static void findAllInRangeInterfaces(ForkJoinPool pool, 
+			int nrofStripes) {
+		for (ConnectivityGrid grid : gridobjects.values()) {
+			if (!grid.pairScan) {
+				grid.findInRangeInterfaces(pool, nrofStripes);
+			}
+		}
+	}
+
+	/**
+	 * Finds, for every interface in this grid, the interfaces that are within
+	 * range of it at their current locations and stores them as the 
+	 * interface's in-range hint (see 
+	 * {@link NetworkInterface#setInRangeHint(int[])}). The interfaces are 
+	 * bucketed to cells by their current locations and the rows of cells 
+	 * are then checked as parallel stripes. Every task only sets the hints 
+	 * of the interfaces in its own stripe so the result does not depend on 
+	 * the number of threads or the scheduling of the tasks. The grid itself 
+	 * is not modified.
+	 * @param pool The pool that runs the stripe tasks
+	 * @param nrofStripes Number of stripes to divide the rows to
+	 */
+	public void findInRangeInterfaces(ForkJoinPool pool, int nrofStripes) {
+		NetworkInterface[] all = ginterfaces.toArray(new NetworkInterface[0]);
+		final int[] cellStart = new int[(this.rows + 2) * width + 1];
+		int[] cellOf = new int[all.length];
+		
+		/* counting sort of the interfaces to cells by current locations */
+		for (int i=0; i < all.length; i++) {
+			Coord c = all[i].getLocation();
+			// +1 due empty cells on both sides of the matrix
+			int row = (int)(c.getY()/cellSize) + 1;
+			int col = (int)(c.getX()/cellSize) + 1;
+			cellOf[i] = row * width + col;
+			cellStart[cellOf[i] + 1]++;
+		}
+		for (int i=1; i < cellStart.length; i++) {
+			cellStart[i] += cellStart[i-1];
+		}
+		final NetworkInterface[] bucketed = new NetworkInterface[all.length];
+		int[] next = Arrays.copyOf(cellStart, cellStart.length);
+		for (int i=0; i < all.length; i++) {
+			bucketed[next[cellOf[i]]++] = all[i];
+		}
+		
+		List<Callable<Object>> stripes = new ArrayList<Callable<Object>>();
+		int rowsPerStripe = Math.max(1, 
+				(this.rows + nrofStripes - 1) / nrofStripes);
+		for (int first = 1; first <= this.rows; first += rowsPerStripe) {
+			final int firstRow = first;
+			final int lastRow = Math.min(this.rows, first + rowsPerStripe - 1);
+			stripes.add(new Callable<Object>() {
+				public Object call() {
+					findInRangeInterfaces(bucketed, cellStart, firstRow, 
+							lastRow);
+					return null;
+				}
+			});
+		}
+		
+		try {
+			for (Future<Object> f : pool.invokeAll(stripes)) {
+				f.get();
+			}
+		} catch (InterruptedException e) {
+			throw new SimError("Interrupted while finding contacts", e);
+		} catch (ExecutionException e) {
+			throw new SimError("Failed to find contacts: " + e.getCause(), e);
+		}
+	}
+	
+	/**
+	 * Sets the in-range hints of interfaces in a stripe of rows
+	 * @param bucketed The interfaces ordered by their cells
+	 * @param cellStart Index of each cell's first interface in the bucketed
+	 * array (and the end index as the last value)
+	 * @param firstRow The first row of the stripe
+	 * @param lastRow The last row of the stripe (inclusive)
+	 */
+	private void findInRangeInterfaces(NetworkInterface[] bucketed, 
+			int[] cellStart, int firstRow, int lastRow) {
+		int[] found = new int[16];
+		
+		for (int row = firstRow; row <= lastRow; row++) {
+			for (int col = 1; col <= this.cols; col++) {
+				int cell = row * width + col;
+				for (int i = cellStart[cell]; i < cellStart[cell+1]; i++) {
+					NetworkInterface ni = bucketed[i];
+					int nrofFound = 0;
+					for (int r = row - 1; r <= row + 1; r++) {
+						for (int c = r * width + col - 1; 
+								c <= r * width + col + 1; c++) {
+							for (int j = cellStart[c]; j < cellStart[c+1]; j++) {
+								NetworkInterface other = bucketed[j];
+								if (other == ni || 
+										!ni.computeWithinRange(other)) {
+									continue;
+								}
+								if (nrofFound == found.length) {
+									found = Arrays.copyOf(found, 2*nrofFound);
+								}
+								found[nrofFound++] = other.getAddress();
+							}
+						}
+					}
+					int[] hint = Arrays.copyOf(found, nrofFound);
+					Arrays.sort(hint);
+					ni.setInRangeHint(hint);
+				}
+			}
+		}
+	}
 
 	/**
 	 * Returns a string representation of the ConnectivityCells object
@@ -40,9 +40,41 @@ abstract public class ConnectivityOptimizer {
 	abstract public Collection<NetworkInterface> getNearInterfaces(
 			NetworkInterface ni);
 
+	/**
+	 * Calls the visitor for all network interfaces that might be located so
+	 * that they can be connected with the network interface. The interfaces
+	 * are the same, and in the same order, as the ones 
+	 * {@link #getNearInterfaces(NetworkInterface)} returns. This 
+	 * implementation simply iterates over that collection but optimizers
+	 * can override it to avoid creating the collection. The visitor must not
+	 * add, remove or move interfaces of this optimizer.
+	 * 
+	 * @param ni network interface that needs to be connected
+	 * @param visitor The visitor to call for every near interface
+	 */
+	public void visitNearInterfaces(NetworkInterface ni,
+			InterfaceVisitor visitor) {
+		for (NetworkInterface other : getNearInterfaces(ni)) {
+			visitor.visit(other);
+		}
+	}
+
 	/**
 	 * Finds all other interfaces that are registered to the
 	 * ConnectivityOptimizer
 	 */
 	abstract public Collection<NetworkInterface> getAllInterfaces();
+
+	/**
+	 * Interface for classes that want to go through the near interfaces
+	 * @see ConnectivityOptimizer#visitNearInterfaces(NetworkInterface, 
+	 * InterfaceVisitor)
+	 */
+	public interface InterfaceVisitor {
+		/**
+		 * Called for a near network interface
+		 * @param ni The network interface
+		 */
+		public void visit(NetworkInterface ni);
+	}
 }
@@ -4,8 +4,6 @@
  */
 package interfaces;
 
-import java.util.Collection;
-
 import core.Connection;
 import core.DTNHost;
 import core.NetworkInterface;
@@ -73,32 +71,19 @@ public class InterferenceLimitedInterface extends NetworkInterface {
 		}
 	}
 
+	@Override
+	public boolean supportsManagedConnections() {
+		return true;
+	}
+
 	/**
 	 * Updates the state of current connections (i.e., tears down connections
 	 * that are out of range).
 	 */
 	public void update() {
-		// First break the old ones
-		optimizer.updateLocation(this);
-		for (int i=0; i<this.connections.size(); ) {
-			Connection con = this.connections.get(i);
-			NetworkInterface anotherInterface = con.getOtherInterface(this);
-
-			// all connections should be up at this stage
-			assert con.isUp() : "Connection " + con + " was down!";
-
-			if (!isWithinRange(anotherInterface)) {
-				disconnect(con,anotherInterface);
-				connections.remove(i);
-			} else {
-				i++;
-			}
+		if (!hasManagedConnections()) {
+			updateConnections();
 		}
-		// Then find new possible connections
-		Collection<NetworkInterface> interfaces = 
-			optimizer.getNearInterfaces(this);
-		for (NetworkInterface i : interfaces) 
-			connect(i);
 
 		// Find the current number of transmissions
 		// (to calculate the current transmission speed
@@ -145,6 +130,32 @@ public class InterferenceLimitedInterface extends NetworkInterface {
 		}
 	}
 
+	/**
+	 * Tears down the connections that are out of range and finds new 
+	 * possible connections
+	 */
+	private void updateConnections() {
+		// First break the old ones
+		optimizer.updateLocation(this);
+		for (int i=0; i<this.connections.size(); ) {
+			Connection con = this.connections.get(i);
+			NetworkInterface anotherInterface = con.getOtherInterface(this);
+
+			// all connections should be up at this stage
+			assert con.isUp() : "Connection " + con + " was down!";
+
+			if (!isWithinRange(anotherInterface)) {
+				disconnect(con,anotherInterface);
+				connections.remove(i);
+				connectionsChanged();
+			} else {
+				i++;
+			}
+		}
+		// Then find new possible connections
+		connectToNearInterfaces();
+	}
+
 	/**
 	 * Returns true if this interface is actually transmitting data
 	 */
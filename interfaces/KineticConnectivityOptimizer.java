@@ -0,0 +1,437 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package interfaces;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.PriorityQueue;
+
+import core.Coord;
+import core.DTNHost;
+import core.DTNSim;
+import core.NetworkInterface;
+import core.SimClock;
+
+/**
+ * <P>
+ * Connectivity optimizer that finds the exact contact times of the
+ * interfaces instead of polling their distances once per update interval.
+ * Between waypoints the hosts move in straight lines at constant speed, so
+ * after every move (see {@link DTNHost#getMoveTrace()}) the times when two
+ * hosts came within, or left, each other's range during the update
+ * interval can be solved from a quadratic equation. The resulting
+ * connection up and down events are put to a priority queue and processed
+ * in time order, with the simulation clock set to the time of each event,
+ * so contacts (and reports like {@link report.ContactTimesReport}) get the
+ * exact times even if the update interval is long. </P>
+ *
+ * <P>The interfaces whose connections are updated by this optimizer are
+ * selected with the {@link NetworkInterface#KINETIC_CONTACTS_S} setting.
+ * Like with the interfaces' own updates, two interfaces are connected when
+ * both hosts are active and the interfaces are within the smaller one of
+ * their ranges. Activeness, ranges and external events are only checked at
+ * the update intervals. If an external event was processed during the same
+ * update interval, contact events preceding it are processed at the
+ * event's time.</P>
+ */
+public class KineticConnectivityOptimizer extends ConnectivityOptimizer {
+	/** tolerance for contact times when joining contacts of consecutive
+	 * path segments */
+	private static final double TIME_EPSILON = 1e-9;
+
+	private static HashMap<Integer, KineticConnectivityOptimizer> optimizers;
+	private ArrayList<NetworkInterface> interfaces;
+
+	static {
+		DTNSim.registerForReset(
+				KineticConnectivityOptimizer.class.getCanonicalName());
+		reset();
+	}
+
+	public static void reset() {
+		optimizers = new HashMap<Integer, KineticConnectivityOptimizer>();
+	}
+
+	private KineticConnectivityOptimizer() {
+		this.interfaces = new ArrayList<NetworkInterface>();
+	}
+
+	/**
+	 * Returns the kinetic optimizer for a specific kind of interfaces
+	 * @param key A hash value that separates different interfaces from each
+	 * other
+	 * @return The optimizer for the interfaces
+	 */
+	public static KineticConnectivityOptimizer getOptimizer(int key) {
+		KineticConnectivityOptimizer o = optimizers.get(key);
+		if (o == null) {
+			o = new KineticConnectivityOptimizer();
+			optimizers.put(key, o);
+		}
+		return o;
+	}
+
+	/**
+	 * Adds a network interface to the optimizer (unless it is already present)
+	 * and starts tracing the moves of its host
+	 */
+	@Override
+	public void addInterface(NetworkInterface ni) {
+		if (!this.interfaces.contains(ni)) {
+			this.interfaces.add(ni);
+			ni.getHost().setMoveTracing(true);
+		}
+	}
+
+	@Override
+	public void addInterfaces(Collection<NetworkInterface> interfaces) {
+		for (NetworkInterface ni : interfaces) {
+			addInterface(ni);
+		}
+	}
+
+	/**
+	 * Does nothing; the locations are read from the hosts' move traces
+	 */
+	@Override
+	public void updateLocation(NetworkInterface ni) {
+	}
+
+	/**
+	 * Returns all the interfaces (this optimizer doesn't track locations
+	 * between the updates)
+	 */
+	@Override
+	public Collection<NetworkInterface> getNearInterfaces(NetworkInterface ni) {
+		return this.interfaces;
+	}
+
+	@Override
+	public Collection<NetworkInterface> getAllInterfaces() {
+		return this.interfaces;
+	}
+
+	/**
+	 * Updates the connections of the interfaces of all the kinetic
+	 * optimizers according to the hosts' last moves. The events of all
+	 * optimizers are processed in time order and the simulation clock is
+	 * set to the time of each event.
+	 * @param start The time when the last moves started
+	 * @param end The time when the last moves ended
+	 */
+	public static void updateAllConnections(double start, double end) {
+		if (optimizers.isEmpty()) {
+			return;
+		}
+
+		PriorityQueue<ContactEvent> events = new PriorityQueue<ContactEvent>();
+		for (KineticConnectivityOptimizer o : optimizers.values()) {
+			o.findContactEvents(start, end - start, events);
+		}
+
+		SimClock clock = SimClock.getInstance();
+		while (!events.isEmpty()) {
+			ContactEvent e = events.poll();
+			if (e.time > SimClock.getTime()) {
+				clock.setTime(e.time);
+			}
+			if (e.up) {
+				e.from.createConnection(e.to);
+			}
+			else {
+				e.from.destroyConnection(e.to);
+			}
+		}
+	}
+
+	/**
+	 * Finds the contact events of the interfaces of this optimizer. Pairs
+	 * that can't have been within range during the moves are skipped by
+	 * bucketing the interfaces to a grid by their (range-expanded) bounding
+	 * boxes of the moves.
+	 * @param start The time when the moves started
+	 * @param duration Duration of the moves
+	 * @param events The queue where to put the events
+	 */
+	private void findContactEvents(double start, double duration,
+			PriorityQueue<ContactEvent> events) {
+		int n = this.interfaces.size();
+		double[][] traces = new double[n][];
+		int[] traceLengths = new int[n];
+		double[] minX = new double[n];
+		double[] minY = new double[n];
+		double[] maxX = new double[n];
+		double[] maxY = new double[n];
+		double maxRange = 0;
+
+		for (int i=0; i < n; i++) {
+			NetworkInterface ni = this.interfaces.get(i);
+			maxRange = Math.max(maxRange, ni.getTransmitRange());
+			DTNHost host = ni.getHost();
+			traces[i] = host.getMoveTrace();
+			traceLengths[i] = host.getMoveTraceLength();
+			if (traceLengths[i] < 6) { // no moves yet -> stationary
+				Coord c = host.getLocation();
+				traces[i] = new double[] {0, c.getX(), c.getY(),
+						duration, c.getX(), c.getY()};
+				traceLengths[i] = traces[i].length;
+			}
+			double[] t = traces[i];
+			minX[i] = maxX[i] = t[1];
+			minY[i] = maxY[i] = t[2];
+			for (int k = 3; k < traceLengths[i]; k += 3) {
+				minX[i] = Math.min(minX[i], t[k+1]);
+				maxX[i] = Math.max(maxX[i], t[k+1]);
+				minY[i] = Math.min(minY[i], t[k+2]);
+				maxY[i] = Math.max(maxY[i], t[k+2]);
+			}
+		}
+		if (n < 2) {
+			return;
+		}
+
+		/* bucket the bounding boxes (expanded with half of the range) to
+		   cells so that only the boxes sharing a cell need to be checked */
+		double margin = maxRange / 2;
+		double cellSize = Math.max(maxRange, 1);
+		double originX = Double.MAX_VALUE;
+		double originY = Double.MAX_VALUE;
+		double farX = -Double.MAX_VALUE;
+		double farY = -Double.MAX_VALUE;
+		for (int i=0; i < n; i++) {
+			minX[i] -= margin;
+			minY[i] -= margin;
+			maxX[i] += margin;
+			maxY[i] += margin;
+			originX = Math.min(originX, minX[i]);
+			originY = Math.min(originY, minY[i]);
+			farX = Math.max(farX, maxX[i]);
+			farY = Math.max(farY, maxY[i]);
+		}
+		int cols = (int)((farX - originX) / cellSize) + 1;
+		int rows = (int)((farY - originY) / cellSize) + 1;
+		int[] col0 = new int[n];
+		int[] row0 = new int[n];
+		int[] col1 = new int[n];
+		int[] row1 = new int[n];
+		int[] cellStart = new int[rows * cols + 1];
+		for (int i=0; i < n; i++) {
+			col0[i] = (int)((minX[i] - originX) / cellSize);
+			row0[i] = (int)((minY[i] - originY) / cellSize);
+			col1[i] = (int)((maxX[i] - originX) / cellSize);
+			row1[i] = (int)((maxY[i] - originY) / cellSize);
+			for (int r = row0[i]; r <= row1[i]; r++) {
+				for (int c = col0[i]; c <= col1[i]; c++) {
+					cellStart[r * cols + c + 1]++;
+				}
+			}
+		}
+		for (int i=1; i < cellStart.length; i++) {
+			cellStart[i] += cellStart[i-1];
+		}
+		int[] members = new int[cellStart[cellStart.length - 1]];
+		int[] next = new int[rows * cols];
+		System.arraycopy(cellStart, 0, next, 0, next.length);
+		for (int i=0; i < n; i++) {
+			for (int r = row0[i]; r <= row1[i]; r++) {
+				for (int c = col0[i]; c <= col1[i]; c++) {
+					members[next[r * cols + c]++] = i;
+				}
+			}
+		}
+
+		for (int r = 0; r < rows; r++) {
+			for (int c = 0; c < cols; c++) {
+				int cell = r * cols + c;
+				for (int p = cellStart[cell]; p < cellStart[cell+1]; p++) {
+					int i = members[p];
+					for (int q = p + 1; q < cellStart[cell+1]; q++) {
+						int j = members[q];
+						/* check every pair only in the first shared cell */
+						if (c != Math.max(col0[i], col0[j]) ||
+								r != Math.max(row0[i], row0[j]) ||
+								maxX[i] < minX[j] || maxX[j] < minX[i] ||
+								maxY[i] < minY[j] || maxY[j] < minY[i]) {
+							continue;
+						}
+						findContactEvents(i, j, traces, traceLengths, start,
+								duration, events);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Finds the contact events of a pair of interfaces
+	 * @param i Index of the first interface
+	 * @param j Index of the second interface
+	 * @param traces The move traces of all the interfaces' hosts
+	 * @param traceLengths Lengths of the move traces
+	 * @param start The time when the moves started
+	 * @param duration Duration of the moves
+	 * @param events The queue where to put the events
+	 */
+	private void findContactEvents(int i, int j, double[][] traces,
+			int[] traceLengths, double start, double duration,
+			PriorityQueue<ContactEvent> events) {
+		NetworkInterface a = this.interfaces.get(i);
+		NetworkInterface b = this.interfaces.get(j);
+		if (a.getAddress() > b.getAddress()) {
+			NetworkInterface tmp = a;
+			a = b;
+			b = tmp;
+		}
+		boolean connected = a.isConnected(b);
+		boolean canConnect = a.getHost().isActive() &&
+			b.getHost().isActive();
+		if (!connected && !canConnect) {
+			return;
+		}
+
+		double range = Math.min(a.getTransmitRange(), b.getTransmitRange());
+		double[] ta = traces[i];
+		double[] tb = traces[j];
+		int ia = 0;
+		int ib = 0;
+		double s0 = 0;
+		boolean inRange = connected;
+
+		/* go through the segments where both hosts move linearly */
+		while (s0 < duration) {
+			while (ia + 6 < traceLengths[i] && ta[ia+3] <= s0) {
+				ia += 3;
+			}
+			while (ib + 6 < traceLengths[j] && tb[ib+3] <= s0) {
+				ib += 3;
+			}
+			double s1 = Math.min(Math.min(ta[ia+3], tb[ib+3]), duration);
+			if (s1 <= s0) { // no more time left in the traces
+				s1 = duration;
+			}
+
+			/* relative location d(s) = d0 + v * (s - s0) */
+			double dx0 = position(ta, ia, s0, 1) - position(tb, ib, s0, 1);
+			double dy0 = position(ta, ia, s0, 2) - position(tb, ib, s0, 2);
+			double vx = (position(ta, ia, s1, 1) - position(tb, ib, s1, 1) -
+					dx0) / (s1 - s0);
+			double vy = (position(ta, ia, s1, 2) - position(tb, ib, s1, 2) -
+					dy0) / (s1 - s0);
+
+			/* solve |d(s)|^2 = range^2 for the in-range part [lo, hi] */
+			double qa = vx * vx + vy * vy;
+			double qb = 2 * (dx0 * vx + dy0 * vy);
+			double qc = dx0 * dx0 + dy0 * dy0 - range * range;
+			double lo, hi;
+			if (qa == 0) { // no relative movement
+				lo = qc <= 0 ? 0 : Double.MAX_VALUE;
+				hi = qc <= 0 ? s1 - s0 : -1;
+			}
+			else {
+				double disc = qb * qb - 4 * qa * qc;
+				if (disc <= 0) { // never (or only tangentially) in range
+					lo = Double.MAX_VALUE;
+					hi = -1;
+				}
+				else {
+					double root = Math.sqrt(disc);
+					lo = Math.max(0, (-qb - root) / (2 * qa));
+					hi = Math.min(s1 - s0, (-qb + root) / (2 * qa));
+				}
+			}
+
+			if (lo < hi) {
+				if (inRange && lo > TIME_EPSILON) { // out of range at first
+					addEvent(events, a, b, false, s0, start);
+					inRange = false;
+				}
+				if (!inRange && canConnect) {
+					addEvent(events, a, b, true,
+							lo <= TIME_EPSILON ? s0 : s0 + lo, start);
+					inRange = true;
+				}
+				if (inRange && hi < s1 - s0 - TIME_EPSILON) {
+					addEvent(events, a, b, false, s0 + hi, start);
+					inRange = false;
+				}
+			}
+			else if (inRange) { // out of range for the whole segment
+				addEvent(events, a, b, false, s0, start);
+				inRange = false;
+			}
+			s0 = s1;
+		}
+	}
+
+	/**
+	 * Returns a coordinate of a traced host's location at some time
+	 * @param trace The move trace of the host
+	 * @param index Index of the trace's point that starts the segment
+	 * @param s Time offset (within the segment)
+	 * @param axis 1 for the X coordinate, 2 for the Y coordinate
+	 * @return The coordinate value
+	 */
+	private static double position(double[] trace, int index, double s,
+			int axis) {
+		double t0 = trace[index];
+		double t1 = trace[index+3];
+		if (s <= t0 || t1 <= t0) {
+			return trace[index+axis];
+		}
+		if (s >= t1) {
+			return trace[index+3+axis];
+		}
+		return trace[index+axis] + (trace[index+3+axis] - trace[index+axis]) *
+			(s - t0) / (t1 - t0);
+	}
+
+	/**
+	 * Adds a new contact event to the queue
+	 */
+	private static void addEvent(PriorityQueue<ContactEvent> events,
+			NetworkInterface a, NetworkInterface b, boolean up, double offset,
+			double start) {
+		events.add(new ContactEvent(a, b, up, start + offset, events.size()));
+	}
+
+	/**
+	 * Connection up or down event of two interfaces
+	 */
+	private static class ContactEvent implements Comparable<ContactEvent> {
+		private NetworkInterface from;
+		private NetworkInterface to;
+		private boolean up;
+		private double time;
+		/** order of the event among the events of the same pair */
+		private int order;
+
+		public ContactEvent(NetworkInterface from, NetworkInterface to,
+				boolean up, double time, int order) {
+			this.from = from;
+			this.to = to;
+			this.up = up;
+			this.time = time;
+			this.order = order;
+		}
+
+		/**
+		 * Compares the events by time, then by the interface addresses and
+		 * then by the order they were created in
+		 */
+		public int compareTo(ContactEvent other) {
+			if (this.time != other.time) {
+				return this.time < other.time ? -1 : 1;
+			}
+			if (this.from.getAddress() != other.from.getAddress()) {
+				return this.from.getAddress() - other.from.getAddress();
+			}
+			if (this.to.getAddress() != other.to.getAddress()) {
+				return this.to.getAddress() - other.to.getAddress();
+			}
+			return this.order - other.order;
+		}
+	}
+}
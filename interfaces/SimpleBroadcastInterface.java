@@ -4,8 +4,6 @@
  */
 package interfaces;
 
-import java.util.Collection;
-
 import core.CBRConnection;
 import core.Connection;
 import core.DTNHost;
@@ -61,11 +59,19 @@ public class SimpleBroadcastInterface extends NetworkInterface {
 		}
 	}
 
+	@Override
+	public boolean supportsManagedConnections() {
+		return true;
+	}
+
 	/**
 	 * Updates the state of current connections (ie tears down connections
 	 * that are out of range).
 	 */
 	public void update() {
+		if (hasManagedConnections()) {
+			return; // the connectivity optimizer updates the connections
+		}
 		// First break the old ones
 		optimizer.updateLocation(this);
 		for (int i=0; i<this.connections.size(); ) {
@@ -78,17 +84,14 @@ public class SimpleBroadcastInterface extends NetworkInterface {
 			if (!isWithinRange(anotherInterface)) {
 				disconnect(con,anotherInterface);
 				connections.remove(i);
+				connectionsChanged();
 			}
 			else {
 				i++;
 			}
 		}
 		// Then find new possible connections
-		Collection<NetworkInterface> interfaces =
-			optimizer.getNearInterfaces(this);
-		for (NetworkInterface i : interfaces) {
-			connect(i);
-		}
+		connectToNearInterfaces();
 	}
 
 	/** 
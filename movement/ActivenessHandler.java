@@ -93,6 +93,27 @@ public class ActivenessHandler {
 		
 		return curRange.isInRange(time);
 	}
+	
+	/**
+	 * Returns the next simulation time when the activeness of the node may
+	 * change (i.e., the start or end of the current active time range)
+	 * @return The time of the next change or Double.MAX_VALUE if the 
+	 * activeness doesn't change anymore
+	 */
+	public double getNextChangeTime() {
+		if (this.activeTimes == null || curRange == null) {
+			return Double.MAX_VALUE;
+		}
+		
+		double time = SimClock.getTime();
+		if (time < curRange.start) {
+			return curRange.start;
+		}
+		else if (!curRange.isOut(time)) {
+			return curRange.end;
+		}
+		return time; // time for the next time range
+	}
 
 	/**
 	 * Class for handling time ranges
@@ -220,6 +220,19 @@ public abstract class MovementModel {
 	public boolean isActive() {
 		return ah.isActive();
 	}
+	
+	/**
+	 * Returns the next sim time when the node's activeness may change
+	 * @return The time of the next change or Double.MAX_VALUE if the 
+	 * activeness doesn't change anymore
+	 * @see #isActive()
+	 */
+	public double getNextActivenessChangeTime() {
+		if (ah == null) {
+			return Double.MAX_VALUE;
+		}
+		return ah.getNextChangeTime();
+	}
 		
 	/**
 	 * Returns a sim time when the next path is available. This implementation
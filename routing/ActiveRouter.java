@@ -5,8 +5,8 @@
 package routing;
 
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Random;
 
@@ -36,23 +36,69 @@ public abstract class ActiveRouter extends MessageRouter {
      * message buffer
      */
     protected boolean deleteDelivered;
+    /**
+     * Summary vectors -setting id ({@value}). Boolean valued. If set to true,
+     * the router gets a summary of the messages each peer has when a
+     * connection comes up and doesn't offer the peer messages it (probably)
+     * already has. Default=false.
+     */
+    public static final String SUMMARY_VECTORS_S = "summaryVectors";
+    /**
+     * should messages the peers already have be skipped using summary vectors
+     */
+    protected boolean summaryVectors;
 
     /**
      * prefix of all response message IDs
      */
     public static final String RESPONSE_PREFIX = "R_";
     /**
-     * how often TTL check (discarding old messages) is performed
+     * if all the buffered messages have a priority above this value, the
+     * oldest (instead of the lowest priority) message is dropped first
      */
-    public static int TTL_CHECK_INTERVAL = 60;
+    public static final int DROP_OLDEST_PRIORITY = 10;
     /**
      * connection(s) that are currently used for sending
      */
     protected ArrayList<Connection> sendingConnections;
     /**
-     * sim time when the last TTL check was done
+     * sim time when the last update of this router started
+     */
+    private double lastUpdateTime;
+    /**
+     * sim time when the connections, messages or transfers of this router
+     * changed last time (in a way that may let new transfers start)
+     */
+    private double lastChangeTime;
+    /**
+     * buffered messages sorted by receive time
+     */
+    private MessageIndex receiveTimeIndex;
+    /**
+     * buffered messages sorted by priority
+     */
+    private MessageIndex priorityIndex;
+    /**
+     * buffered messages sorted by TTL
+     */
+    private MessageIndex ttlIndex;
+    /**
+     * summaries of the peers' messages per connection (if summary vectors
+     * are used)
+     */
+    private HashMap<Connection, SummaryVector> peerSummaries;
+    /**
+     * how many times a peer's summary has been checked
      */
-    private double lastTtlCheck;
+    private int nrofSummaryChecks;
+    /**
+     * how many messages were not offered because of the peer's summary
+     */
+    private int nrofSummarySkips;
+    /**
+     * how many of the skipped messages the peer didn't actually have
+     */
+    private int nrofSummaryFalsePositives;
 
     /**
      * Constructor. Creates a new message router based on the settings in the
@@ -68,6 +114,11 @@ public abstract class ActiveRouter extends MessageRouter {
         } else {
             this.deleteDelivered = false;
         }
+        if (s.contains(SUMMARY_VECTORS_S)) {
+            this.summaryVectors = s.getBoolean(SUMMARY_VECTORS_S);
+        } else {
+            this.summaryVectors = false;
+        }
 
     }
 
@@ -79,21 +130,139 @@ public abstract class ActiveRouter extends MessageRouter {
     protected ActiveRouter(ActiveRouter r) {
         super(r);
         this.deleteDelivered = r.deleteDelivered;
+        this.summaryVectors = r.summaryVectors;
     }
 
     @Override
     public void init(DTNHost host, List<MessageListener> mListeners) {
         super.init(host, mListeners);
         this.sendingConnections = new ArrayList<Connection>(1);
-        this.lastTtlCheck = 0;
+        this.lastUpdateTime = Double.NEGATIVE_INFINITY;
+        this.lastChangeTime = 0;
+        this.receiveTimeIndex = addMessageIndex(
+                new MessageIndex.ByReceiveTime());
+        this.priorityIndex = addMessageIndex(
+                new MessageIndex.ByIntProperty(PRIORITY_SLOT));
+        this.ttlIndex = addMessageIndex(new MessageIndex.ByTtl());
+        if (this.summaryVectors) {
+            this.peerSummaries = new HashMap<Connection, SummaryVector>();
+        }
     }
 
     /**
      * Called when a connection's state changes. This version doesn't do
-     * anything but subclasses may want to override this.
+     * anything (except for bookkeeping for {@link 
+     * #getNextTransferOrTtlCheckTime()}) but subclasses may want to override
+     * this.
      */
     @Override
     public void changedConnection(Connection con) {
+        stateChanged();
+        exchangeSummaryVectors(con);
+    }
+
+    /**
+     * Gets the summary vector of the peer when a connection comes up and
+     * discards it when the connection goes down. Does nothing if summary
+     * vectors are not used. Subclasses that override
+     * {@link #changedConnection(Connection)} should call this.
+     *
+     * @param con The connection that changed
+     */
+    protected void exchangeSummaryVectors(Connection con) {
+        if (this.peerSummaries == null) {
+            return;
+        }
+        if (!con.isUp()) {
+            this.peerSummaries.remove(con);
+            return;
+        }
+        MessageRouter other = con.getOtherNode(getHost()).getRouter();
+        if (other instanceof ActiveRouter) {
+            this.peerSummaries.put(con,
+                    ((ActiveRouter) other).createSummaryVector());
+        }
+    }
+
+    /**
+     * Creates a summary vector of the messages this router has in its buffer
+     * and the messages that have been delivered to it.
+     *
+     * @return The summary vector
+     */
+    public SummaryVector createSummaryVector() {
+        SummaryVector sv = new SummaryVector(getNrofMessages()
+                + this.deliveredMessages.size());
+        for (Message m : getMessageCollection()) {
+            sv.add(m);
+        }
+        for (Message m : this.deliveredMessages.values()) {
+            sv.add(m);
+        }
+        return sv;
+    }
+
+    /**
+     * Returns true if the summary vector of the peer behind the connection
+     * says the peer already has the message. Messages for the peer itself
+     * are never skipped if delivered messages are deleted, since the peer's
+     * reply tells whether the message can be deleted. Always returns false
+     * if summary vectors are not used.
+     *
+     * @param m The message
+     * @param con The connection to the peer
+     * @return true if the message should not be offered to the peer
+     */
+    protected boolean isKnownByPeer(Message m, Connection con) {
+        if (this.peerSummaries == null) {
+            return false;
+        }
+        SummaryVector sv = this.peerSummaries.get(con);
+        DTNHost peer = con.getOtherNode(getHost());
+        if (sv == null || (this.deleteDelivered && m.getTo() == peer)) {
+            return false;
+        }
+
+        this.nrofSummaryChecks++;
+        if (!sv.mightContain(m)) {
+            return false;
+        }
+        this.nrofSummarySkips++;
+        MessageRouter other = peer.getRouter();
+        if (!other.hasMessage(m.getKey()) && !other.isDeliveredMessage(m)) {
+            this.nrofSummaryFalsePositives++;
+        }
+        return true;
+    }
+
+    /**
+     * Returns how many times peers' summary vectors have been checked
+     *
+     * @return The number of checks
+     */
+    public int getNrofSummaryChecks() {
+        return this.nrofSummaryChecks;
+    }
+
+    /**
+     * Returns how many message offers were skipped because of the peers'
+     * summary vectors
+     *
+     * @return The number of skipped offers
+     */
+    public int getNrofSummarySkips() {
+        return this.nrofSummarySkips;
+    }
+
+    /**
+     * Returns how many of the skipped messages the peer didn't actually have
+     * (i.e., the summary gave a false positive or the peer lost the message
+     * after giving the summary). The rest of the skips were offers saved.
+     *
+     * @return The number of false positives
+     */
+    public int getNrofSummaryFalsePositives() {
+        return this.nrofSummaryFalsePositives;
     }
 
     @Override
@@ -103,15 +272,10 @@ public abstract class ActiveRouter extends MessageRouter {
         }
 
         DTNHost other = con.getOtherNode(getHost());
-        /* do a copy to avoid concurrent modification exceptions 
-		 * (startTransfer may remove messages) */
-        ArrayList<Message> temp
-                = new ArrayList<Message>(this.getMessageCollection());
-        for (Message m : temp) {
-            if (other == m.getTo()) {
-                if (startTransfer(m, con) == RCV_OK) {
-                    return true;
-                }
+        /* startTransfer may remove messages, which the view tolerates */
+        for (Message m : getMessagesFor(other)) {
+            if (startTransfer(m, con) == RCV_OK) {
+                return true;
             }
         }
         return false;
@@ -119,6 +283,7 @@ public abstract class ActiveRouter extends MessageRouter {
 
     @Override
     public boolean createNewMessage(Message m) {
+        stateChanged();
         makeRoomForNewMessage(m.getSize());
         return super.createNewMessage(m);
     }
@@ -131,12 +296,14 @@ public abstract class ActiveRouter extends MessageRouter {
         }
 
         // seems OK, start receiving the message
+        stateChanged();
         return super.receiveMessage(m, from);
     }
 
     @Override
     public Message messageTransferred(String id, DTNHost from) {
         Message m = super.messageTransferred(id, from);
+        stateChanged();
 
         /**
          * N.B. With application support the following if-block becomes
@@ -170,7 +337,9 @@ public abstract class ActiveRouter extends MessageRouter {
      * @param m The message to transfer
      * @param con The connection to use
      * @return the value returned by
-     * {@link Connection#startTransfer(DTNHost, Message)}
+     * {@link Connection#startTransfer(DTNHost, Message)} or DENIED_OLD if the
+     * message was not offered because the peer already has it (see
+     * {@link #isKnownByPeer(Message, Connection)})
      */
     protected int startTransfer(Message m, Connection con) {
         int retVal;
@@ -178,14 +347,20 @@ public abstract class ActiveRouter extends MessageRouter {
         if (!con.isReadyForTransfer()) {
             return TRY_LATER_BUSY;
         }
+        if (isKnownByPeer(m, con)) {
+            return DENIED_OLD; // don't bother offering
+        }
 
         retVal = con.startTransfer(getHost(), m);
+        if (retVal != DENIED_OLD && retVal != DENIED_TTL) {
+            stateChanged(); // started or may be accepted later
+        }
         if (retVal == RCV_OK) { // started transfer
             addToSendingConnections(con);
         } else if (deleteDelivered && retVal == DENIED_OLD
                 && m.getTo() == con.getOtherNode(this.getHost())) {
             /* final recipient has already received the msg -> delete it */
-            this.deleteMessage(m.getId(), false);
+            this.deleteMessage(m.getKey(), false);
         }
 
         return retVal;
@@ -225,7 +400,7 @@ public abstract class ActiveRouter extends MessageRouter {
             return TRY_LATER_BUSY; // only one connection at a time
         }
 
-        if (hasMessage(m.getId()) || isDeliveredMessage(m)) {
+        if (hasMessage(m.getKey()) || isDeliveredMessage(m)) {
             return DENIED_OLD; // already seen this message -> reject it
         }
 
@@ -243,8 +418,11 @@ public abstract class ActiveRouter extends MessageRouter {
     }
 
     /**
-     * Removes messages from the buffer (oldest first) until there's enough
-     * space for the new message.
+     * Removes messages from the buffer until there's enough space for the new
+     * message. If all the messages have a priority above
+     * {@link #DROP_OLDEST_PRIORITY}, or some have no priority at all, the
+     * oldest message is removed first. Otherwise the message with the lowest
+     * priority is removed first.
      *
      * @param size Size of the new message transferred, the transfer is aborted
      * before message is removed
@@ -258,16 +436,8 @@ public abstract class ActiveRouter extends MessageRouter {
         int freeBuffer = this.getFreeBufferSize();
         /* delete messages from the buffer until there's enough space */
         while (freeBuffer < size) {
-            Collection<Message> messages = this.getMessageCollection();
-            boolean priority = false;
-            for (Message m : messages) {
-                if ((int) m.getProperty("Priority") > 10) {
-                    priority = true;
-                } else {
-                    priority = false;
-                    break;
-                }
-            }
+            boolean priority = this.priorityIndex.getNrofUnkeyed() > 0
+                    || this.priorityIndex.getFirstKey() > DROP_OLDEST_PRIORITY;
 
             Message m = null;
             if (priority) {
@@ -281,7 +451,7 @@ public abstract class ActiveRouter extends MessageRouter {
             }
 
             /* delete message from the buffer as "drop" */
-            deleteMessage(m.getId(), true);
+            deleteMessage(m.getKey(), true);
             freeBuffer += m.getSize();
         }
 
@@ -299,42 +469,61 @@ public abstract class ActiveRouter extends MessageRouter {
 //
 //            /* delete message from the buffer as "drop" */
 ////            System.out.println(m.getFrom()+":"+m.toString() + ":" + m.getHopCount()+":"+m.getTo());
-//            deleteMessage(m.getId(), true);
+//            deleteMessage(m.getKey(), true);
 //            freeBuffer += m.getSize();
 //        }
 //        System.out.println("\n");
         return true;
     }
 
+    /**
+     * Returns the message with the lowest priority in the message buffer (that
+     * is not being sent if excludeMsgBeingSent is true). Messages without
+     * priority are ignored.
+     *
+     * @param excludeMsgBeingSent If true, excludes message(s) that are being
+     * sent from the lowest priority check
+     * @return The lowest priority message or null if no message could be
+     * returned
+     */
     protected Message getLowestMessage(boolean excludeMsgBeingSent) {
-        Collection<Message> messages = this.getMessageCollection();
-        Message lowest = null;
-        for (Message m : messages) {
+        return getFirstMessage(this.priorityIndex, excludeMsgBeingSent);
+    }
 
-            if (excludeMsgBeingSent && isSending(m.getId())) {
+    /**
+     * Returns the first message of a message index
+     *
+     * @param index The index
+     * @param excludeMsgBeingSent If true, skips the message(s) that are being
+     * sent
+     * @return The first message or null if no message could be returned
+     */
+    private Message getFirstMessage(MessageIndex index,
+            boolean excludeMsgBeingSent) {
+        for (Message m : index) {
+            if (excludeMsgBeingSent && isSending(m.getKey())) {
                 continue; // skip the message(s) that router is sending
             }
-
-            if (lowest == null) {
-                lowest = m;
-            } else if ((int) lowest.getProperty("Priority") > (int) m.getProperty("Priority")) {
-                lowest = m;
-            }
+            return m;
         }
 
-        return lowest;
+        return null;
     }
 
     /**
-     * Drops messages whose TTL is less than zero.
+     * Drops messages whose TTL has expired (see {@link Message#getExpiryTime()}).
      */
     protected void dropExpiredMessages() {
-        Message[] messages = getMessageCollection().toArray(new Message[0]);
-        for (int i = 0; i < messages.length; i++) {
-            int ttl = messages[i].getTtl();
-            if (ttl <= 0) {
-                deleteMessage(messages[i].getId(), true);
+        double now = SimClock.getTime();
+        List<Message> expired = new ArrayList<Message>();
+        for (Message m : this.ttlIndex) {
+            if (m.getExpiryTime() > now) {
+                break; // the rest of the messages expire later
             }
+            expired.add(m);
+        }
+        for (Message m : expired) {
+            deleteMessage(m.getKey(), true);
         }
     }
 
@@ -362,27 +551,14 @@ public abstract class ActiveRouter extends MessageRouter {
      * exludeMsgBeingSent is true)
      */
     protected Message getOldestMessage(boolean excludeMsgBeingSent) {
-        Collection<Message> messages = this.getMessageCollection();
-        Message oldest = null;
-        for (Message m : messages) {
-
-            if (excludeMsgBeingSent && isSending(m.getId())) {
-                continue; // skip the message(s) that router is sending
-            }
-
-            if (oldest == null) {
-                oldest = m;
-            } else if (oldest.getReceiveTime() > m.getReceiveTime()) {
-                oldest = m;
-            }
-        }
-
-        return oldest;
+        return getFirstMessage(this.receiveTimeIndex, excludeMsgBeingSent);
     }
 
     /**
      * Returns a list of message-connections tuples of the messages whose
-     * recipient is some host that we're connected to at the moment.
+     * recipient is some host that we're connected to at the moment. The
+     * tuples are in the order of the connections and, for each connection,
+     * in the order the messages were added to the buffer.
      *
      * @return a list of message-connections tuples
      */
@@ -394,12 +570,10 @@ public abstract class ActiveRouter extends MessageRouter {
 
         List<Tuple<Message, Connection>> forTuples
                 = new ArrayList<Tuple<Message, Connection>>();
-        for (Message m : getMessageCollection()) {
-            for (Connection con : getConnections()) {
-                DTNHost to = con.getOtherNode(getHost());
-                if (m.getTo() == to) {
-                    forTuples.add(new Tuple<Message, Connection>(m, con));
-                }
+        for (Connection con : getConnections()) {
+            DTNHost to = con.getOtherNode(getHost());
+            for (Message m : getMessagesFor(to)) {
+                forTuples.add(new Tuple<Message, Connection>(m, con));
             }
         }
 
@@ -438,11 +612,12 @@ public abstract class ActiveRouter extends MessageRouter {
      * included in the list of sending connections.
      *
      * @param con Connection trough which the messages are sent
-     * @param messages A list of messages to try
+     * @param messages The messages to try
      * @return The message whose transfer was started or null if no transfer was
      * started.
      */
-    protected Message tryAllMessages(Connection con, List<Message> messages) {
+    protected Message tryAllMessages(Connection con,
+            Iterable<Message> messages) {
         for (Message m : messages) {
             int retVal = startTransfer(m, con);
             if (retVal == RCV_OK) {
@@ -458,16 +633,16 @@ public abstract class ActiveRouter extends MessageRouter {
     /**
      * Tries to send all given messages to all given connections. Connections
      * are first iterated in the order they are in the list and for every
-     * connection, the messages are tried in the order they are in the list.
+     * connection, the messages are tried in their iteration order.
      * Once an accepting connection is found, no other connections or messages
      * are tried.
      *
-     * @param messages The list of Messages to try
+     * @param messages The Messages to try
      * @param connections The list of Connections to try
      * @return The connections that started a transfer or null if no connection
      * accepted a message.
      */
-    protected Connection tryMessagesToConnections(List<Message> messages,
+    protected Connection tryMessagesToConnections(Iterable<Message> messages,
             List<Connection> connections) {
         for (int i = 0, n = connections.size(); i < n; i++) {
             Connection con = connections.get(i);
@@ -482,9 +657,9 @@ public abstract class ActiveRouter extends MessageRouter {
 
     /**
      * Tries to send all messages that this router is carrying to all
-     * connections this node has. Messages are ordered using the
-     * {@link MessageRouter#sortByQueueMode(List)}. See
-     * {@link #tryMessagesToConnections(List, List)} for sending details.
+     * connections this node has. Messages are tried in the order of the
+     * {@link MessageRouter#getSendQueue()}. See
+     * {@link #tryMessagesToConnections(Iterable, List)} for sending details.
      *
      * @return The connections that started a transfer or null if no connection
      * accepted a message.
@@ -497,11 +672,7 @@ public abstract class ActiveRouter extends MessageRouter {
             return null;
         }
 
-        List<Message> messages
-                = new ArrayList<Message>(this.getMessageCollection());
-        this.sortByQueueMode(messages);
-
-        return tryMessagesToConnections(messages, connections);
+        return tryMessagesToConnections(getSendQueue(), connections);
     }
 
     /**
@@ -597,11 +768,22 @@ public abstract class ActiveRouter extends MessageRouter {
      * @return True if the message is being sent false if not
      */
     public boolean isSending(String msgId) {
+        return isSending(Message.findKey(msgId));
+    }
+
+    /**
+     * Returns true if this router is currently sending a message with the
+     * given key.
+     *
+     * @param msgKey Key of the message (see {@link Message#getKey()})
+     * @return True if the message is being sent false if not
+     */
+    protected boolean isSending(int msgKey) {
         for (Connection con : this.sendingConnections) {
             if (con.getMessage() == null) {
                 continue; // transmission is finalized
             }
-            if (con.getMessage().getId().equals(msgId)) {
+            if (con.getMessage().getKey() == msgKey) {
                 return true;
             }
         }
@@ -610,8 +792,8 @@ public abstract class ActiveRouter extends MessageRouter {
 
     /**
      * Checks out all sending connections to finalize the ready ones and abort
-     * those whose connection went down. Also drops messages whose TTL <= 0
-     * (checking every one simulated minute). @see
+     * those whose connection went down. Also drops messages whose TTL has
+     * expired (when nothing is being sent). @see
      * #addToSendingConnections(Connecti
      *
      * on)
@@ -620,6 +802,7 @@ public abstract class ActiveRouter extends MessageRouter {
     public void update() {
 
         super.update();
+        this.lastUpdateTime = SimClock.getTime();
 
         /* in theory we can have multiple sending connections even though
 		  currently all routers allow only one concurrent sending connection */
@@ -644,6 +827,7 @@ public abstract class ActiveRouter extends MessageRouter {
             }
 
             if (removeCurrent) {
+                stateChanged();
                 // if the message being sent was holding excess buffer, free it
                 if (this.getFreeBufferSize() < 0) {
                     this.makeRoomForMessage(0);
@@ -655,12 +839,76 @@ public abstract class ActiveRouter extends MessageRouter {
             }
         }
 
-        /* time to do a TTL check and drop old messages? Only if not sending */
-        if (SimClock.getTime() - lastTtlCheck >= TTL_CHECK_INTERVAL
+        /* has some message expired? Drop them only if not sending */
+        if (getNextExpiryTime() <= SimClock.getTime()
                 && sendingConnections.size() == 0) {
             dropExpiredMessages();
-            lastTtlCheck = SimClock.getTime();
+            stateChanged();
+        }
+    }
+
+    /**
+     * Returns the simulation time when the first buffered message expires.
+     *
+     * @return The expiry time or Double.POSITIVE_INFINITY if none of the
+     * messages expire
+     */
+    private double getNextExpiryTime() {
+        double first = this.ttlIndex.getFirstKey();
+        return Double.isNaN(first) ? Double.POSITIVE_INFINITY : first;
+    }
+
+    /**
+     * Marks that the state of this router changed so that the next update
+     * may be able to start new transfers.
+     */
+    private void stateChanged() {
+        this.lastChangeTime = SimClock.getTime();
+    }
+
+    /**
+     * Returns true if the state of this router has changed since (or during)
+     * the given time.
+     *
+     * @param time The time to check against
+     * @return true if the state has changed since the time
+     */
+    private boolean hasChangedSince(double time) {
+        return this.lastChangeTime >= time;
+    }
+
+    /**
+     * Returns the next simulation time when the {@link #update()} of this
+     * class changes something on its own: an ongoing transfer of one of the
+     * connections is done or a buffered message expires. If this router
+     * or any of the connected routers has changed (e.g., got a new message
+     * or finished a transfer) since the last update, the current time is
+     * returned since new transfers may be possible. Subclasses whose own
+     * update only tries to start transfers can use this as their
+     * {@link MessageRouter#getNextUpdateTime()}.
+     *
+     * @return The time when the next update is needed at the latest
+     */
+    protected double getNextTransferOrTtlCheckTime() {
+        double now = SimClock.getTime();
+        if (hasApplications() || hasChangedSince(this.lastUpdateTime)) {
+            return now; // applications and new transfers need an update
+        }
+
+        double next = getNextExpiryTime();
+        for (Connection con : getConnections()) {
+            MessageRouter other = con.getOtherNode(getHost()).getRouter();
+            if (!(other instanceof ActiveRouter) ||
+                    ((ActiveRouter) other).hasChangedSince(
+                    this.lastUpdateTime)) {
+                return now;
+            }
+            if (con.getMessage() != null) {
+                next = Math.min(next, con.getTransferDoneTime());
+            }
         }
+
+        return next;
     }
 
     /**
@@ -11,19 +11,20 @@ import core.*;
  *
  * <strong>Forwarding Logic:</strong>
  *
- * A DecisionEngineRouter maintains a List of Tuple<Message, Connection> in
- * support of a call to ActiveRouter.tryMessagesForConnected() in
+ * A DecisionEngineRouter maintains a queue of Tuple<Message, Connection>
+ * (an {@link OutgoingMessageQueue}) whose messages are tried in
  * DecisionEngineRouter.update(). Since update() is called so frequently, we'd
- * like as little computation done in it as possible; hence the List that gets
- * updated when events happen. Four events cause the List to be updated: a new
+ * like as little computation done in it as possible; hence the queue that gets
+ * updated when events happen. Four events cause the queue to be updated: a new
  * message from this host, a new received message, a connection goes up, or a
  * connection goes down. On a new message (either from this host or received
  * from a peer), the collection of open connections is examined to see if the
  * message should be forwarded along them. If so, a new Tuple is added to the
- * List. When a connection goes up, the collection of messages is examined to
+ * queue. When a connection goes up, the collection of messages is examined to
  * determine to determine if any should be sent to this new peer, adding a Tuple
- * to the list if so. When a connection goes down, any Tuple in the list
- * associated with that connection is removed from the List.
+ * to the queue if so. When a connection goes down, any Tuple in the queue
+ * associated with that connection is removed from the queue. Tuples of a
+ * message are also removed when the message is deleted.
  *
  * <strong>Decision Engines</strong>
  *
@@ -88,9 +89,12 @@ public class DecisionEngineRouter extends ActiveRouter {
 
     protected boolean tombstoning;
     protected RoutingDecisionEngine decider;
-    protected List<Tuple<Message, Connection>> outgoingMessages;
+    protected OutgoingMessageQueue outgoingMessages;
 
-    protected Set<String> tombstones;
+    /**
+     * keys of the tombstoned messages
+     */
+    protected MessageKeySet tombstones;
 
     /**
      * Used to save state machine when new connections are made. See comment in
@@ -103,7 +107,7 @@ public class DecisionEngineRouter extends ActiveRouter {
 
         Settings routeSettings = new Settings(PUBSUB_NS);
 
-        outgoingMessages = new LinkedList<Tuple<Message, Connection>>();
+        outgoingMessages = new OutgoingMessageQueue();
 
         decider = (RoutingDecisionEngine) routeSettings.createIntializedObject(
                 "routing." + routeSettings.getSetting(ENGINE_SETTING));
@@ -115,19 +119,19 @@ public class DecisionEngineRouter extends ActiveRouter {
         }
 
         if (tombstoning) {
-            tombstones = new HashSet<String>(10);
+            tombstones = new MessageKeySet();
         }
         conStates = new HashMap<Connection, Integer>(4);
     }
 
     public DecisionEngineRouter(DecisionEngineRouter r) {
         super(r);
-        outgoingMessages = new LinkedList<Tuple<Message, Connection>>();
+        outgoingMessages = new OutgoingMessageQueue();
         decider = r.decider.replicate();
         tombstoning = r.tombstoning;
 
         if (this.tombstoning) {
-            tombstones = new HashSet<String>(10);
+            tombstones = new MessageKeySet();
         }
         conStates = new HashMap<Connection, Integer>(4);
     }
@@ -225,6 +229,7 @@ public class DecisionEngineRouter extends ActiveRouter {
         DTNHost myHost = getHost();
         DTNHost otherNode = con.getOtherNode(myHost);
         DecisionEngineRouter otherRouter = (DecisionEngineRouter) otherNode.getRouter();
+        super.changedConnection(con);
         if (con.isUp()) {
             decider.connectionUp(myHost, otherNode);
 
@@ -256,10 +261,11 @@ public class DecisionEngineRouter extends ActiveRouter {
 * Once we have new information computed for the peer, we figure out if
 * there are any messages that should get sent to this peer.
              */
-            Collection<Message> msgs = getMessageCollection();
+            List<Message> msgs = decider.selectMessagesToSend(
+                    getMessageCollection(), otherNode, myHost);
             for (Message m : msgs) {
-                if (decider.shouldSendMessageToHost(m, otherNode, this.getHost())) {
-                    outgoingMessages.add(new Tuple<Message, Connection>(m, con));
+                if (!isKnownByPeer(m, con)) {
+                    outgoingMessages.add(m, con);
                 }
             }
         } else {
@@ -271,13 +277,7 @@ public class DecisionEngineRouter extends ActiveRouter {
 * If we  were trying to send message to this peer, we need to remove them
 * from the outgoing List.
              */
-            for (Iterator<Tuple<Message, Connection>> i = outgoingMessages.iterator();
-                    i.hasNext();) {
-                Tuple<Message, Connection> t = i.next();
-                if (t.getValue() == con) {
-                    i.remove();
-                }
-            }
+            outgoingMessages.removeConnection(con);
         }
     }
 
@@ -296,6 +296,18 @@ public class DecisionEngineRouter extends ActiveRouter {
         conStates.put(con, 1);
     }
 
+    /**
+     * Known messages are not skipped if tombstones are used or delivered
+     * messages are deleted since the decisions depend on the peer's replies.
+     */
+    @Override
+    protected boolean isKnownByPeer(Message m, Connection con) {
+        if (tombstoning || deleteDelivered) {
+            return false;
+        }
+        return super.isKnownByPeer(m, con);
+    }
+
     @Override
     protected int startTransfer(Message m, Connection con) {
         int retVal;
@@ -309,14 +321,14 @@ public class DecisionEngineRouter extends ActiveRouter {
         if (retVal == RCV_OK) { // started transfer
             addToSendingConnections(con);
         } else if (tombstoning && retVal == DENIED_DELIVERED) {
-            this.deleteMessage(m.getId(), false);
-            tombstones.add(m.getId());
+            this.deleteMessage(m.getKey(), false);
+            tombstones.add(m.getKey());
         } else if (deleteDelivered && (retVal == DENIED_OLD || retVal == DENIED_DELIVERED)
                 && decider.shouldDeleteOldMessage(m, con.getOtherNode(getHost()))) {
             /* final recipient has already received the msg -> delete it */
 // if(m.getId().equals("M14"))
 // System.out.println("Host: " + getHost() + " told to delete M14");
-            this.deleteMessage(m.getId(), false);
+            this.deleteMessage(m.getKey(), false);
         }
 
         return retVal;
@@ -324,7 +336,7 @@ public class DecisionEngineRouter extends ActiveRouter {
 
     @Override
     public int receiveMessage(Message m, DTNHost from) {
-        if (isDeliveredMessage(m) || (tombstoning && tombstones.contains(m.getId()))) {
+        if (isDeliveredMessage(m) || (tombstoning && tombstones.contains(m.getKey()))) {
             return DENIED_DELIVERED;
         }
 
@@ -368,7 +380,7 @@ public class DecisionEngineRouter extends ActiveRouter {
         }
 
         if (isFirstDelivery) {
-            this.deliveredMessages.put(id, aMessage);
+            this.deliveredMessages.put(incoming.getKey(), aMessage);
         }
 
         for (MessageListener ml : this.mListeners) {
@@ -381,22 +393,14 @@ public class DecisionEngineRouter extends ActiveRouter {
 
     @Override
     protected void transferDone(Connection con) {
-        Message transferred = this.getMessage(con.getMessage().getId());
-
-        for (Iterator<Tuple<Message, Connection>> i = outgoingMessages.iterator();
-                i.hasNext();) {
-            Tuple<Message, Connection> t = i.next();
-            if (t.getKey().getId().equals(transferred.getId())
-                    && t.getValue().equals(con)) {
-                i.remove();
-                break;
-            }
-        }
+        Message transferred = this.getMessage(con.getMessage().getKey());
+
+        outgoingMessages.remove(transferred.getKey(), con);
 
         if (decider.shouldDeleteSentMessage(transferred, con.getOtherNode(getHost()))) {
 // if(transferred.getId().equals("M14"))
 // System.out.println("Host: " + getHost() + " deleting M14 after transfer");
-            this.deleteMessage(transferred.getId(), false);
+            this.deleteMessage(transferred.getKey(), false);
 
 // for(Iterator<Tuple<Message, Connection>> i = outgoingMessages.iterator();
 // i.hasNext();)
@@ -411,16 +415,10 @@ public class DecisionEngineRouter extends ActiveRouter {
     }
 
     @Override
-    public void deleteMessage(String id, boolean drop) {
-        super.deleteMessage(id, drop);
-
-        for (Iterator<Tuple<Message, Connection>> i = outgoingMessages.iterator();
-                i.hasNext();) {
-            Tuple<Message, Connection> t = i.next();
-            if (t.getKey().getId().equals(id)) {
-                i.remove();
-            }
-        }
+    protected void deleteMessage(int msgKey, boolean drop) {
+        super.deleteMessage(msgKey, drop);
+
+        outgoingMessages.removeMessage(msgKey);
     }
 
     @Override
@@ -433,17 +431,37 @@ public class DecisionEngineRouter extends ActiveRouter {
             return; // nothing to transfer or is currently transferring
         }
 
-        tryMessagesForConnected(outgoingMessages);
-
-        for (Iterator<Tuple<Message, Connection>> i = outgoingMessages.iterator();
-                i.hasNext();) {
-            Tuple<Message, Connection> t = i.next();
-            if (!this.hasMessage(t.getKey().getId())) {
-                i.remove();
+        /* deleted messages are removed from the queue in deleteMessage() so
+           everything in the queue is still in the buffer */
+        for (Tuple<Message, Connection> t : outgoingMessages) {
+            if (startTransfer(t.getKey(), t.getValue()) == RCV_OK) {
+                break;
             }
         }
     }
 
+    /**
+     * Returns the current time while the outgoing queue has messages to try,
+     * since the queued messages are tried in every update. Otherwise the
+     * update only needs to run when the decision engine says so (see
+     * {@link ScheduledUpdateEngine}) or when a transfer may start, be done
+     * or a message may expire. The updates are never skipped if the engine
+     * doesn't tell when its update is needed.
+     */
+    @Override
+    public double getNextUpdateTime() {
+        double now = SimClock.getTime();
+        if (!(decider instanceof ScheduledUpdateEngine)) {
+            return now;
+        }
+        if (!outgoingMessages.isEmpty() && canStartTransfer()
+                && !isTransferring()) {
+            return now;
+        }
+        return Math.min(getNextTransferOrTtlCheckTime(),
+                ((ScheduledUpdateEngine) decider).getNextUpdateTime());
+    }
+
     public RoutingDecisionEngine getDecisionEngine() {
         return this.decider;
     }
@@ -457,10 +475,12 @@ public class DecisionEngineRouter extends ActiveRouter {
 // for(Connection c : getHost())
         for (Connection c : getConnections()) {
             DTNHost other = c.getOtherNode(getHost());
-            if (other != from && decider.shouldSendMessageToHost(m, other, this.getHost())) {
+            if (other != from
+                    && decider.shouldSendMessageToHost(m, other, getHost())
+                    && !isKnownByPeer(m, c)) {
 // if(m.getId().equals("M14"))
 // System.out.println("Adding attempt for M14 from: " + getHost() + " to: " + other);
-                outgoingMessages.add(new Tuple<Message, Connection>(m, c));
+                outgoingMessages.add(m, c);
             }
         }
     }
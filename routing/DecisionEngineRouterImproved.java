@@ -26,9 +26,12 @@ public class DecisionEngineRouterImproved extends ActiveRouter {
 
     protected boolean tombstoning;
     protected RoutingDecisionEngineImproved decider;
-    protected List<Tuple<Message, Connection>> outgoingMessages;
+    protected OutgoingMessageQueue outgoingMessages;
 
-    protected Set<String> tombstones;
+    /**
+     * keys of the tombstoned messages
+     */
+    protected MessageKeySet tombstones;
 
     protected Map<Connection, Integer> conStates;
 
@@ -37,7 +40,7 @@ public class DecisionEngineRouterImproved extends ActiveRouter {
 
         Settings routeSettings = new Settings(PUBSUB_NS);
 
-        outgoingMessages = new LinkedList<Tuple<Message, Connection>>();
+        outgoingMessages = new OutgoingMessageQueue();
 
         decider = (RoutingDecisionEngineImproved) routeSettings.createIntializedObject(
                 "routing." + routeSettings.getSetting(ENGINE_SETTING));
@@ -49,19 +52,19 @@ public class DecisionEngineRouterImproved extends ActiveRouter {
         }
 
         if (tombstoning) {
-            tombstones = new HashSet<String>(10);
+            tombstones = new MessageKeySet();
         }
         conStates = new HashMap<Connection, Integer>(4);
     }
 
     public DecisionEngineRouterImproved(DecisionEngineRouterImproved r) {
         super(r);
-        outgoingMessages = new LinkedList<Tuple<Message, Connection>>();
+        outgoingMessages = new OutgoingMessageQueue();
         decider = r.decider.replicate();
         tombstoning = r.tombstoning;
 
         if (this.tombstoning) {
-            tombstones = new HashSet<String>(10);
+            tombstones = new MessageKeySet();
         }
         conStates = new HashMap<Connection, Integer>(4);
     }
@@ -89,6 +92,7 @@ public class DecisionEngineRouterImproved extends ActiveRouter {
         DTNHost myHost = getHost();
         DTNHost otherNode = con.getOtherNode(myHost);
         DecisionEngineRouterImproved otherRouter = (DecisionEngineRouterImproved) otherNode.getRouter();
+        exchangeSummaryVectors(con);
         if (con.isUp()) {
             decider.connectionUp(myHost, otherNode);
 
@@ -99,8 +103,9 @@ public class DecisionEngineRouterImproved extends ActiveRouter {
 
             Collection<Message> msgs = getMessageCollection();
             for (Message m : msgs) {
-                if (decider.shouldSendMessageToHost(m, otherNode)) {
-                    outgoingMessages.add(new Tuple<Message, Connection>(m, con));
+                if (decider.shouldSendMessageToHost(m, otherNode)
+                        && !isKnownByPeer(m, con)) {
+                    outgoingMessages.add(m, con);
                 }
             }
         } else {
@@ -108,13 +113,7 @@ public class DecisionEngineRouterImproved extends ActiveRouter {
 
             conStates.remove(con);
 
-            for (Iterator<Tuple<Message, Connection>> i = outgoingMessages.iterator();
-                    i.hasNext();) {
-                Tuple<Message, Connection> t = i.next();
-                if (t.getValue() == con) {
-                    i.remove();
-                }
-            }
+            outgoingMessages.removeConnection(con);
         }
     }
 
@@ -127,6 +126,18 @@ public class DecisionEngineRouterImproved extends ActiveRouter {
         conStates.put(con, 1);
     }
 
+    /**
+     * Known messages are not skipped if tombstones are used or delivered
+     * messages are deleted since the decisions depend on the peer's replies.
+     */
+    @Override
+    protected boolean isKnownByPeer(Message m, Connection con) {
+        if (tombstoning || deleteDelivered) {
+            return false;
+        }
+        return super.isKnownByPeer(m, con);
+    }
+
     @Override
     protected int startTransfer(Message m, Connection con) {
         int retVal;
@@ -140,11 +151,11 @@ public class DecisionEngineRouterImproved extends ActiveRouter {
         if (retVal == RCV_OK) { // started transfer
             addToSendingConnections(con);
         } else if (tombstoning && retVal == DENIED_DELIVERED) {
-            this.deleteMessage(m.getId(), false);
-            tombstones.add(m.getId());
+            this.deleteMessage(m.getKey(), false);
+            tombstones.add(m.getKey());
         } else if (deleteDelivered && (retVal == DENIED_OLD || retVal == DENIED_DELIVERED)
                 && decider.shouldDeleteOldMessage(m, con.getOtherNode(getHost()))) {
-            this.deleteMessage(m.getId(), false);
+            this.deleteMessage(m.getKey(), false);
         }
 
         return retVal;
@@ -152,7 +163,7 @@ public class DecisionEngineRouterImproved extends ActiveRouter {
 
     @Override
     public int receiveMessage(Message m, DTNHost from) {
-        if (isDeliveredMessage(m) || (tombstoning && tombstones.contains(m.getId()))) {
+        if (isDeliveredMessage(m) || (tombstoning && tombstones.contains(m.getKey()))) {
             return DENIED_DELIVERED;
         }
 
@@ -194,7 +205,7 @@ public class DecisionEngineRouterImproved extends ActiveRouter {
         }
 
         if (isFirstDelivery) {
-            this.deliveredMessages.put(id, aMessage);
+            this.deliveredMessages.put(incoming.getKey(), aMessage);
         }
 
         for (MessageListener ml : this.mListeners) {
@@ -207,35 +218,21 @@ public class DecisionEngineRouterImproved extends ActiveRouter {
 
     @Override
     protected void transferDone(Connection con) {
-        Message transferred = this.getMessage(con.getMessage().getId());
-
-        for (Iterator<Tuple<Message, Connection>> i = outgoingMessages.iterator();
-                i.hasNext();) {
-            Tuple<Message, Connection> t = i.next();
-            if (t.getKey().getId().equals(transferred.getId())
-                    && t.getValue().equals(con)) {
-                i.remove();
-                break;
-            }
-        }
+        Message transferred = this.getMessage(con.getMessage().getKey());
+
+        outgoingMessages.remove(transferred.getKey(), con);
 
         if (decider.shouldDeleteSentMessage(transferred, con.getOtherNode(getHost()))) {
-            this.deleteMessage(transferred.getId(), false);
+            this.deleteMessage(transferred.getKey(), false);
 
         }
     }
 
     @Override
-    public void deleteMessage(String id, boolean drop) {
-        super.deleteMessage(id, drop);
-
-        for (Iterator<Tuple<Message, Connection>> i = outgoingMessages.iterator();
-                i.hasNext();) {
-            Tuple<Message, Connection> t = i.next();
-            if (t.getKey().getId().equals(id)) {
-                i.remove();
-            }
-        }
+    protected void deleteMessage(int msgKey, boolean drop) {
+        super.deleteMessage(msgKey, drop);
+
+        outgoingMessages.removeMessage(msgKey);
     }
 
     @Override
@@ -247,13 +244,11 @@ public class DecisionEngineRouterImproved extends ActiveRouter {
             return; // nothing to transfer or is currently transferring
         }
 
-        tryMessagesForConnected(outgoingMessages);
-
-        for (Iterator<Tuple<Message, Connection>> i = outgoingMessages.iterator();
-                i.hasNext();) {
-            Tuple<Message, Connection> t = i.next();
-            if (!this.hasMessage(t.getKey().getId())) {
-                i.remove();
+        /* deleted messages are removed from the queue in deleteMessage() so
+           everything in the queue is still in the buffer */
+        for (Tuple<Message, Connection> t : outgoingMessages) {
+            if (startTransfer(t.getKey(), t.getValue()) == RCV_OK) {
+                break;
             }
         }
     }
@@ -270,8 +265,9 @@ public class DecisionEngineRouterImproved extends ActiveRouter {
     protected void findConnectionsForNewMessage(Message m, DTNHost from) {
         for (Connection c : getConnections()) {
             DTNHost other = c.getOtherNode(getHost());
-            if (other != from && decider.shouldSendMessageToHost(m, other)) {
-                outgoingMessages.add(new Tuple<Message, Connection>(m, c));
+            if (other != from && decider.shouldSendMessageToHost(m, other)
+                    && !isKnownByPeer(m, c)) {
+                outgoingMessages.add(m, c);
             }
         }
     }
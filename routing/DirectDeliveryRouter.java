@@ -19,6 +19,11 @@ public class DirectDeliveryRouter extends ActiveRouter {
 		super(r);
 	}
 	
+	@Override
+	public double getNextUpdateTime() {
+		return getNextTransferOrTtlCheckTime();
+	}
+	
 	@Override
 	public void update() {
 		super.update();
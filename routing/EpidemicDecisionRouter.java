@@ -16,7 +16,7 @@ import java.util.LinkedList;
  *
  * @author Afra Rian
  */
-public class EpidemicDecisionRouter implements RoutingDecisionEngine{
+public class EpidemicDecisionRouter implements RoutingDecisionEngine, ScheduledUpdateEngine{
 
     /**
      * For Report purpose, maybe needed some variable
@@ -65,7 +65,7 @@ public class EpidemicDecisionRouter implements RoutingDecisionEngine{
 
     @Override
     public boolean shouldSaveReceivedMessage(Message m, DTNHost thisHost) {
-        return !thisHost.getRouter().hasMessage(m.getId());
+        return !thisHost.getRouter().hasMessage(m.getKey());
     }
 
     @Override
@@ -92,4 +92,9 @@ public class EpidemicDecisionRouter implements RoutingDecisionEngine{
     public void update(DTNHost thisHost) {
     }
 
+    @Override
+    public double getNextUpdateTime() {
+        return Double.POSITIVE_INFINITY; // update doesn't do anything
+    }
+
 }
@@ -19,14 +19,6 @@ import core.*;
  */
 public class EpidemicOracleRouter extends ActiveRouter {
 	
-	/** List of all routers in this node group */
-	private static List<EpidemicOracleRouter> allRouters;
-
-	static {
-		DTNSim.registerForReset(EpidemicOracleRouter.class.getCanonicalName());
-		reset();
-	}
-	
 	/**
 	 * Constructor. Creates a new message router based on the settings in
 	 * the given Settings object.
@@ -42,17 +34,17 @@ public class EpidemicOracleRouter extends ActiveRouter {
 	 */
 	protected EpidemicOracleRouter(EpidemicOracleRouter r) {
 		super(r);
-		allRouters.add(this);
 	}
 	
 	@Override
 	public void changedConnection(Connection con) {
+		super.changedConnection(con);
 		if (con.isUp()) {
 			DTNHost peer = con.getOtherNode(getHost());
 			List<Message> newMessages = new ArrayList<Message>();
 			
 			for (Message m : peer.getMessageCollection()) {
-				if (!this.hasMessage(m.getId())) {
+				if (!this.hasMessage(m.getKey())) {
 					newMessages.add(m);
 				}
 			}
@@ -94,14 +86,23 @@ public class EpidemicOracleRouter extends ActiveRouter {
 	 * @param id ID of the message to be removed
 	 */
 	public void removeDeliveredMessage(String id) {
-		if (this.hasMessage(id)) {
+		removeDeliveredMessage(Message.findKey(id));
+	}
+	
+	/**
+	 * Removes the message with the given key from this router (see
+	 * {@link #removeDeliveredMessage(String)}).
+	 * @param msgKey Key of the message to be removed
+	 */
+	public void removeDeliveredMessage(int msgKey) {
+		if (this.hasMessage(msgKey)) {
 			for (Connection c : this.sendingConnections) {
 				/* if sending the message-to-be-removed, cancel transfer */
-				if (c.getMessage().getId().equals(id)) {
+				if (c.getMessage().getKey() == msgKey) {
 					c.abortTransfer();
 				}
 			}
-			this.deleteMessage(id, false);			
+			this.deleteMessage(msgKey, false);			
 		}
 	}
 	
@@ -110,9 +111,14 @@ public class EpidemicOracleRouter extends ActiveRouter {
 		Message m = super.messageTransferred(id, from);
 
 		if (m.getTo() == this.getHost()) {
-			for (EpidemicOracleRouter r : allRouters) {
-				if (r != this && r != from.getRouter()) {
-					r.removeDeliveredMessage(id);
+			/* copy the holders since removing the messages changes them */
+			List<DTNHost> holders = 
+				new ArrayList<DTNHost>(MessageHolderIndex.getHolders(m.getKey()));
+			for (DTNHost h : holders) {
+				MessageRouter r = h.getRouter();
+				if (r instanceof EpidemicOracleRouter && r != this && 
+						r != from.getRouter()) {
+					((EpidemicOracleRouter)r).removeDeliveredMessage(m.getKey());
 				}
 			}
 		} else {
@@ -123,7 +129,7 @@ public class EpidemicOracleRouter extends ActiveRouter {
 	}
 	
 	protected int checkReceiving(Message m) {
-		if ( isIncomingMessage(m.getId()) || hasMessage(m.getId()) || 
+		if ( isIncomingMessage(m.getKey()) || hasMessage(m.getKey()) || 
 				isDeliveredMessage(m) ){
 			return DENIED_OLD; // already seen this message -> reject it
 		}
@@ -152,7 +158,7 @@ public class EpidemicOracleRouter extends ActiveRouter {
 		
 		/* was the message delivered to the final recipient? */
 		if (m.getTo() == con.getOtherNode(getHost())) { 
-			this.deleteMessage(m.getId(), false);
+			this.deleteMessage(m.getKey(), false);
 		}
 	}
 	
@@ -168,12 +174,5 @@ public class EpidemicOracleRouter extends ActiveRouter {
 	public EpidemicOracleRouter replicate() {
 		return new EpidemicOracleRouter(this);
 	}
-	
-	/**
-	 * Resets the static router list
-	 */
-	public static void reset() {
-		allRouters = new ArrayList<EpidemicOracleRouter>();
-	}
 
 }
\ No newline at end of file
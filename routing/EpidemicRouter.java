@@ -31,6 +31,13 @@ public class EpidemicRouter extends ActiveRouter {
 		//TODO: copy epidemic settings here (if any)
 	}
 			
+	@Override
+	public double getNextUpdateTime() {
+		/* tries to start transfers only -> nothing new can happen before
+		   connections, messages or transfers change */
+		return getNextTransferOrTtlCheckTime();
+	}
+	
 	@Override
 	public void update() {
 		super.update();
@@ -45,6 +45,11 @@ public class FirstContactRouter extends ActiveRouter {
 		return recvCheck;
 	}
 			
+	@Override
+	public double getNextUpdateTime() {
+		return getNextTransferOrTtlCheckTime();
+	}
+	
 	@Override
 	public void update() {
 		super.update();
@@ -52,7 +52,7 @@ public class LatihanDE implements RoutingDecisionEngine{
 
     @Override
     public boolean shouldSaveReceivedMessage(Message m, DTNHost thisHost) {
-        return !thisHost.getRouter().hasMessage(m.getId());
+        return !thisHost.getRouter().hasMessage(m.getKey());
     }
 
     @Override
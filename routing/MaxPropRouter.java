@@ -19,6 +19,7 @@ import routing.maxprop.MeetingProbabilitySet;
 import core.Connection;
 import core.DTNHost;
 import core.Message;
+import core.MessageKeySet;
 import core.Settings;
 import core.Tuple;
 
@@ -52,14 +53,8 @@ public class MaxPropRouter extends ActiveRouter {
 	private Map<Integer, MeetingProbabilitySet> allProbs;
 	/** the cost-to-node calculator */
 	private MaxPropDijkstra dijkstra;	
-	/** IDs of the messages that are known to have reached the final dst */
-	private Set<String> ackedMessageIds;
-	/** mapping of the current costs for all messages. This should be set to
-	 * null always when the costs should be updated (a host is met or a new
-	 * message is received) */
-	private Map<Integer, Double> costsForMessages;
-	/** From host of the last cost calculation */
-	private DTNHost lastCostFrom;
+	/** keys of the messages that are known to have reached the final dst */
+	private MessageKeySet ackedMessages;
 		
 	/** Over how many samples the "average number of bytes transferred per
 	 * transfer opportunity" is taken */
@@ -111,14 +106,15 @@ public class MaxPropRouter extends ActiveRouter {
 		this.probs = new MeetingProbabilitySet(probSetMaxSize, this.alpha);
 		this.allProbs = new HashMap<Integer, MeetingProbabilitySet>();
 		this.dijkstra = new MaxPropDijkstra(this.allProbs);
-		this.ackedMessageIds = new HashSet<String>();
+		this.ackedMessages = new MessageKeySet();
 		this.avgSamples = new int[BYTES_TRANSFERRED_AVG_SAMPLES];
 	}	
 
 	@Override
 	public void changedConnection(Connection con) {
+		super.changedConnection(con);
 		if (con.isUp()) { // new connection
-			this.costsForMessages = null; // invalidate old cost estimates
+			this.dijkstra.probsChanged(); // check old cost estimates
 			
 			if (con.isInitiator(getHost())) {
 				/* initiator performs all the actions on behalf of the
@@ -132,8 +128,8 @@ public class MaxPropRouter extends ActiveRouter {
 				MaxPropRouter otherRouter = (MaxPropRouter)mRouter;
 				
 				/* exchange ACKed message data */
-				this.ackedMessageIds.addAll(otherRouter.ackedMessageIds);
-				otherRouter.ackedMessageIds.addAll(this.ackedMessageIds);
+				this.ackedMessages.addAll(otherRouter.ackedMessages);
+				otherRouter.ackedMessages.addAll(this.ackedMessages);
 				deleteAckedMessages();
 				otherRouter.deleteAckedMessages();
 				
@@ -148,6 +144,7 @@ public class MaxPropRouter extends ActiveRouter {
 						otherRouter.probs.replicate());
 				otherRouter.allProbs.put(getHost().getAddress(),
 						this.probs.replicate());
+				otherRouter.dijkstra.probsChanged();
 			}
 		}
 		else {
@@ -159,7 +156,8 @@ public class MaxPropRouter extends ActiveRouter {
 	/**
 	 * Updates transitive probability values by replacing the current 
 	 * MeetingProbabilitySets with the values from the given mapping
-	 * if the given sets have more recent updates.
+	 * if the given sets have more recent updates. The sets of other hosts are
+	 * read-only replicas, so they are shared instead of copied.
 	 * @param p Mapping of the values of the other host
 	 */
 	private void updateTransitiveProbs(Map<Integer, MeetingProbabilitySet> p) {
@@ -176,20 +174,24 @@ public class MaxPropRouter extends ActiveRouter {
 	 * Deletes the messages from the message buffer that are known to be ACKed
 	 */
 	private void deleteAckedMessages() {
-		for (String id : this.ackedMessageIds) {
-			if (this.hasMessage(id) && !isSending(id)) {
-				this.deleteMessage(id, false);
+		if (this.ackedMessages.isEmpty()) {
+			return;
+		}
+		/* the buffer view allows removing messages while iterating */
+		for (Message m : getMessageCollection()) {
+			if (this.ackedMessages.contains(m.getKey()) && 
+					!isSending(m.getKey())) {
+				this.deleteMessage(m.getKey(), false);
 			}
 		}
 	}
 	
 	@Override
 	public Message messageTransferred(String id, DTNHost from) {
-		this.costsForMessages = null; // new message -> invalidate costs
 		Message m = super.messageTransferred(id, from);
 		/* was this node the final recipient of the message? */
 		if (isDeliveredMessage(m)) {
-			this.ackedMessageIds.add(id);
+			this.ackedMessages.add(m.getKey());
 		}
 		return m;
 	}
@@ -197,7 +199,7 @@ public class MaxPropRouter extends ActiveRouter {
 	/**
 	 * Method is called just before a transfer is finalized 
 	 * at {@link ActiveRouter#update()}. MaxProp makes book keeping of the
-	 * delivered messages so their IDs are stored.
+	 * delivered messages so their keys are stored.
 	 * @param con The connection whose transfer was finalized
 	 */
 	@Override
@@ -205,8 +207,8 @@ public class MaxPropRouter extends ActiveRouter {
 		Message m = con.getMessage();
 		/* was the message delivered to the final recipient? */
 		if (m.getTo() == con.getOtherNode(getHost())) { 
-			this.ackedMessageIds.add(m.getId()); // yes, add to ACKed messages
-			this.deleteMessage(m.getId(), false); // delete from buffer
+			this.ackedMessages.add(m.getKey()); // yes, add to ACKed messages
+			this.deleteMessage(m.getKey(), false); // delete from buffer
 		}
 	}
 	
@@ -255,7 +257,7 @@ public class MaxPropRouter extends ActiveRouter {
 		List<Message> validMessages = new ArrayList<Message>();
 
 		for (Message m : messages) {	
-			if (excludeMsgBeingSent && isSending(m.getId())) {
+			if (excludeMsgBeingSent && isSending(m.getKey())) {
 				continue; // skip the message(s) that router is sending
 			}
 			validMessages.add(m);
@@ -286,18 +288,25 @@ public class MaxPropRouter extends ActiveRouter {
 	 * Returns the message delivery cost between two hosts from this host's
 	 * point of view. If there is no path between "from" and "to" host, 
 	 * Double.MAX_VALUE is returned. Paths are calculated only to hosts
-	 * that this host has messages to.
+	 * that this host has messages to. The costs are cached per "from" host
+	 * until the meeting probabilities they were calculated from change.
 	 * @param from The host where a message is coming from
 	 * @param to The host where a message would be destined to
 	 * @return The cost of the cheapest path to the destination or 
 	 * Double.MAX_VALUE if such a path doesn't exist
 	 */
 	public double getCost(DTNHost from, DTNHost to) {
+		if (getMessagesFor(to).isEmpty()) {
+			return Double.MAX_VALUE; // no path is calculated to the host
+		}
+		
+		int fromIndex = from.getAddress();
+		double cost = dijkstra.getCost(fromIndex, to.getAddress());
+		
 		/* check if the cached values are OK */
-		if (this.costsForMessages == null || lastCostFrom != from) {
+		if (Double.isNaN(cost)) {
 			/* cached costs are invalid -> calculate new costs */
 			this.allProbs.put(getHost().getAddress(), this.probs);
-			int fromIndex = from.getAddress();
 			
 			/* calculate paths only to nodes we have messages to 
 			 * (optimization) */
@@ -305,18 +314,12 @@ public class MaxPropRouter extends ActiveRouter {
 			for (Message m : getMessageCollection()) {
 				toSet.add(m.getTo().getAddress());
 			}
-						
-			this.costsForMessages = dijkstra.getCosts(fromIndex, toSet);
-			this.lastCostFrom = from; // store source host for caching checks
+			
+			dijkstra.calculateCosts(fromIndex, toSet);
+			cost = dijkstra.getCost(fromIndex, to.getAddress());
 		}
 		
-		if (costsForMessages.containsKey(to.getAddress())) {
-			return costsForMessages.get(to.getAddress());
-		}
-		else {
-			/* there's no known path to the given host */
-			return Double.MAX_VALUE;
-		}
+		return cost; // Double.MAX_VALUE if there's no known path
 	}
 	
 	/**
@@ -343,7 +346,7 @@ public class MaxPropRouter extends ActiveRouter {
 			for (Message m : msgCollection) {
 				/* skip messages that the other host has or that have
 				 * passed the other host */
-				if (othRouter.hasMessage(m.getId()) ||
+				if (othRouter.hasMessage(m.getKey()) ||
 						m.getHops().contains(other)) {
 					continue; 
 				}
@@ -19,6 +19,7 @@ import routing.maxprop.MeetingProbabilitySet;
 import core.Connection;
 import core.DTNHost;
 import core.Message;
+import core.MessageKeySet;
 import core.Settings;
 import core.SimClock;
 import core.Tuple;
@@ -50,8 +51,8 @@ public class MaxPropRouterWithEstimation extends ActiveRouter {
 	private Map<Integer, MeetingProbabilitySet> allProbs;
 	/** the cost-to-node calculator */
 	private MaxPropDijkstra dijkstra;	
-	/** IDs of the messages that are known to have reached the final dst */
-	private Set<String> ackedMessageIds;
+	/** keys of the messages that are known to have reached the final dst */
+	private MessageKeySet ackedMessages;
 	/** mapping of the current costs for all messages. This should be set to
 	 * null always when the costs should be updated (a host is met or a new
 	 * message is received) */
@@ -121,7 +122,7 @@ public class MaxPropRouterWithEstimation extends ActiveRouter {
 				MeetingProbabilitySet.INFINITE_SET_SIZE, this.alpha);
 		this.allProbs = new HashMap<Integer, MeetingProbabilitySet>();
 		this.dijkstra = new MaxPropDijkstra(this.allProbs);
-		this.ackedMessageIds = new HashSet<String>();
+		this.ackedMessages = new MessageKeySet();
 		this.avgSamples = new int[BYTES_TRANSFERRED_AVG_SAMPLES];
 		initMeetings();
 	}	
@@ -141,6 +142,7 @@ public class MaxPropRouterWithEstimation extends ActiveRouter {
 	
 	@Override
 	public void changedConnection(Connection con) {
+		super.changedConnection(con);
 		if (con.isUp()) { // new connection
 			this.costsForMessages = null; // invalidate old cost estimates
 			
@@ -164,8 +166,8 @@ public class MaxPropRouterWithEstimation extends ActiveRouter {
 				}
 				
 				/* exchange ACKed message data */
-				this.ackedMessageIds.addAll(otherRouter.ackedMessageIds);
-				otherRouter.ackedMessageIds.addAll(this.ackedMessageIds);
+				this.ackedMessages.addAll(otherRouter.ackedMessages);
+				otherRouter.ackedMessages.addAll(this.ackedMessages);
 				deleteAckedMessages();
 				otherRouter.deleteAckedMessages();
 				
@@ -320,9 +322,14 @@ public class MaxPropRouterWithEstimation extends ActiveRouter {
 	 * Deletes the messages from the message buffer that are known to be ACKed
 	 */
 	private void deleteAckedMessages() {
-		for (String id : this.ackedMessageIds) {
-			if (this.hasMessage(id) && !isSending(id)) {
-				this.deleteMessage(id, false);
+		if (this.ackedMessages.isEmpty()) {
+			return;
+		}
+		/* the buffer view allows removing messages while iterating */
+		for (Message m : getMessageCollection()) {
+			if (this.ackedMessages.contains(m.getKey()) && 
+					!isSending(m.getKey())) {
+				this.deleteMessage(m.getKey(), false);
 			}
 		}
 	}
@@ -333,7 +340,7 @@ public class MaxPropRouterWithEstimation extends ActiveRouter {
 		Message m = super.messageTransferred(id, from);
 		/* was this node the final recipient of the message? */
 		if (isDeliveredMessage(m)) {
-			this.ackedMessageIds.add(id);
+			this.ackedMessages.add(m.getKey());
 		}
 		return m;
 	}
@@ -341,7 +348,7 @@ public class MaxPropRouterWithEstimation extends ActiveRouter {
 	/**
 	 * Method is called just before a transfer is finalized 
 	 * at {@link ActiveRouter#update()}. MaxProp makes book keeping of the
-	 * delivered messages so their IDs are stored.
+	 * delivered messages so their keys are stored.
 	 * @param con The connection whose transfer was finalized
 	 */
 	@Override
@@ -349,8 +356,8 @@ public class MaxPropRouterWithEstimation extends ActiveRouter {
 		Message m = con.getMessage();
 		/* was the message delivered to the final recipient? */
 		if (m.getTo() == con.getOtherNode(getHost())) { 
-			this.ackedMessageIds.add(m.getId()); // yes, add to ACKed messages
-			this.deleteMessage(m.getId(), false); // delete from buffer
+			this.ackedMessages.add(m.getKey()); // yes, add to ACKed messages
+			this.deleteMessage(m.getKey(), false); // delete from buffer
 		}
 	}
 	
@@ -398,7 +405,7 @@ public class MaxPropRouterWithEstimation extends ActiveRouter {
 		List<Message> validMessages = new ArrayList<Message>();
 
 		for (Message m : messages) {	
-			if (excludeMsgBeingSent && isSending(m.getId())) {
+			if (excludeMsgBeingSent && isSending(m.getKey())) {
 				continue; // skip the message(s) that router is sending
 			}
 			validMessages.add(m);
@@ -486,7 +493,7 @@ public class MaxPropRouterWithEstimation extends ActiveRouter {
 			for (Message m : msgCollection) {
 				/* skip messages that the other host has or that have
 				 * passed the other host */
-				if (othRouter.hasMessage(m.getId()) ||
+				if (othRouter.hasMessage(m.getKey()) ||
 						m.getHops().contains(other)) {
 					continue; 
 				}
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package routing;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import core.DTNHost;
+import core.DTNSim;
+import core.LongHashMap;
+import core.Message;
+
+/**
+ * Simulation wide index of the hosts that have a copy of a message in their
+ * router's message buffer. The index is kept up to date by the routers (see
+ * {@link MessageRouter#addToMessages(Message, boolean)} and
+ * {@link MessageRouter#removeFromMessages(int)}) so the holders of a
+ * message can be found without going through all the hosts.
+ */
+public class MessageHolderIndex {
+	/** holders of each message in the order they got the copy, keyed by
+	 * the message keys */
+	private static LongHashMap<Set<DTNHost>> holders;
+
+	static {
+		DTNSim.registerForReset(MessageHolderIndex.class.getCanonicalName());
+		reset();
+	}
+
+	private MessageHolderIndex() {}
+
+	/**
+	 * Resets the index
+	 */
+	public static void reset() {
+		holders = new LongHashMap<Set<DTNHost>>();
+	}
+
+	/**
+	 * Adds a host as a holder of a message
+	 * @param m The message
+	 * @param host The host that got a copy of the message
+	 */
+	static void addHolder(Message m, DTNHost host) {
+		Set<DTNHost> set = holders.get(m.getKey());
+		if (set == null) {
+			set = new LinkedHashSet<DTNHost>();
+			holders.put(m.getKey(), set);
+		}
+		set.add(host);
+	}
+
+	/**
+	 * Removes a host from the holders of a message
+	 * @param m The message
+	 * @param host The host that no longer has a copy of the message
+	 */
+	static void removeHolder(Message m, DTNHost host) {
+		Set<DTNHost> set = holders.get(m.getKey());
+		if (set != null && set.remove(host) && set.isEmpty()) {
+			holders.remove(m.getKey());
+		}
+	}
+
+	/**
+	 * Returns the hosts that have a copy of a message in their buffer, in
+	 * the order they got the copy. The returned collection is a read-only
+	 * view that changes when the message is added to or removed from
+	 * buffers, so a copy of it should be made before deleting messages.
+	 * @param id ID of the message
+	 * @return The holders of the message
+	 */
+	public static Collection<DTNHost> getHolders(String id) {
+		return getHolders(Message.findKey(id));
+	}
+
+	/**
+	 * Returns the hosts that have a copy of a message in their buffer (see
+	 * {@link #getHolders(String)})
+	 * @param msgKey Key of the message (see {@link Message#getKey()})
+	 * @return The holders of the message
+	 */
+	public static Collection<DTNHost> getHolders(int msgKey) {
+		Set<DTNHost> set = (msgKey < 0 ? null : holders.get(msgKey));
+		if (set == null) {
+			return Collections.emptySet();
+		}
+		return Collections.unmodifiableSet(set);
+	}
+
+	/**
+	 * Returns the number of hosts that have a copy of a message
+	 * @param id ID of the message
+	 * @return The number of copies in the message buffers
+	 */
+	public static int getNrofCopies(String id) {
+		return getHolders(id).size();
+	}
+}
@@ -0,0 +1,424 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package routing;
+
+import java.util.Iterator;
+import java.util.NavigableSet;
+import java.util.NoSuchElementException;
+import java.util.TreeSet;
+
+import core.LongHashMap;
+import core.Message;
+import core.SimClock;
+
+/**
+ * Sorted index of the messages in a router's message buffer. The messages
+ * are ordered by a numeric key (smallest first) so that, e.g., eviction
+ * candidates can be found without scanning the whole buffer. Messages with
+ * equal keys are in the order they were added to the index. Messages that
+ * have no key (see {@link #getKey(Message)}) are only counted.
+ * Indexes are kept up to date by the router they are added to (see
+ * {@link MessageRouter#addMessageIndex(MessageIndex)}).
+ */
+public abstract class MessageIndex implements Iterable<Message> {
+	/** the indexed messages in the key order */
+	private TreeSet<Entry> entries;
+	/** index entries of the messages by message key */
+	private LongHashMap<Entry> entryByKey;
+	/** how many messages without key are in the index */
+	private int nrofUnkeyed;
+	/** sequence number of the next entry */
+	private long nextSeq;
+	/** how many times the sorted entries have been modified */
+	private int modCount;
+
+	/**
+	 * Constructor.
+	 */
+	public MessageIndex() {
+		this.entries = new TreeSet<Entry>();
+		this.entryByKey = new LongHashMap<Entry>();
+		this.nrofUnkeyed = 0;
+		this.nextSeq = 0;
+	}
+
+	/**
+	 * Returns the key of the message in this index
+	 * @param m The message
+	 * @return The key or Double.NaN if the message has no key
+	 */
+	protected abstract double getKey(Message m);
+
+	/**
+	 * Returns true if the key of this index depends on the given message
+	 * property (i.e., the message needs to be re-indexed when the property
+	 * is updated). This implementation returns false.
+	 * @param key The key of the property
+	 * @return true if the property affects the index key, false if not
+	 */
+	public boolean dependsOn(String key) {
+		return false;
+	}
+
+	/**
+	 * Adds a message to the index
+	 * @param m The message to add
+	 */
+	public void add(Message m) {
+		add(m, this.nextSeq++);
+	}
+
+	/**
+	 * Adds a message to the index with the given sequence number
+	 */
+	private void add(Message m, long seq) {
+		Entry e = new Entry(m, getKey(m), seq);
+		this.entryByKey.put(m.getKey(), e);
+		if (Double.isNaN(e.key)) {
+			this.nrofUnkeyed++;
+		} else {
+			this.entries.add(e);
+			this.modCount++;
+		}
+	}
+
+	/**
+	 * Removes a message from the index
+	 * @param m The message to remove
+	 */
+	public void remove(Message m) {
+		Entry e = this.entryByKey.get(m.getKey());
+		if (e == null || e.message != m) {
+			return; /* not in this index */
+		}
+		this.entryByKey.remove(m.getKey());
+		if (Double.isNaN(e.key)) {
+			this.nrofUnkeyed--;
+		} else {
+			this.entries.remove(e);
+			this.modCount++;
+		}
+	}
+
+	/**
+	 * Updates the position of a message whose key may have changed. The
+	 * message keeps its place among the messages with an equal key.
+	 * @param m The message to update
+	 */
+	public void update(Message m) {
+		Entry e = this.entryByKey.get(m.getKey());
+		if (e == null || e.message != m) {
+			return;
+		}
+		double key = getKey(m);
+		if (key == e.key || (Double.isNaN(key) && Double.isNaN(e.key))) {
+			return; /* no change in the order */
+		}
+		remove(m);
+		add(m, e.seq);
+	}
+
+	/**
+	 * Returns the message with the smallest key
+	 * @return The message or null if there are no messages with a key
+	 */
+	public Message getFirst() {
+		if (this.entries.isEmpty()) {
+			return null;
+		}
+		return this.entries.first().message;
+	}
+
+	/**
+	 * Returns the smallest key in the index
+	 * @return The key or Double.NaN if there are no messages with a key
+	 */
+	public double getFirstKey() {
+		if (this.entries.isEmpty()) {
+			return Double.NaN;
+		}
+		return this.entries.first().key;
+	}
+
+	/**
+	 * Returns the number of messages in the index that have no key
+	 * @return The number of messages without key
+	 */
+	public int getNrofUnkeyed() {
+		return this.nrofUnkeyed;
+	}
+
+	/**
+	 * Returns an iterator over the messages with a key in ascending key
+	 * order. The index may be modified while the iterator is used (e.g.,
+	 * messages can be deleted from the buffer); the iteration continues
+	 * from the messages that come after the last returned message.
+	 */
+	public Iterator<Message> iterator() {
+		return new EntryIterator(null);
+	}
+
+	/**
+	 * Returns an iterator over the messages with a key that starts from the
+	 * first message whose key is not smaller than the given key and then 
+	 * wraps around to the messages with smaller keys. The index may be 
+	 * modified while the iterator is used (see {@link #iterator()}).
+	 * @param fromKey The key to start from
+	 * @return The iterator
+	 */
+	public Iterator<Message> iterator(double fromKey) {
+		return new EntryIterator(new Entry(null, fromKey, Long.MIN_VALUE));
+	}
+
+	/**
+	 * Iterator over the entries that may start from the middle of the index
+	 * and wrap around
+	 */
+	private class EntryIterator implements Iterator<Message> {
+		/** the entry to start from or null for the first entry */
+		private Entry start;
+		/** are the entries before the start being iterated */
+		private boolean wrapped;
+		private Iterator<Entry> i;
+		private int expectedModCount;
+		private Entry last;
+
+		public EntryIterator(Entry start) {
+			this.start = start;
+			this.wrapped = false;
+			this.last = null;
+			this.i = remaining().iterator();
+			this.expectedModCount = modCount;
+		}
+
+		/**
+		 * Returns the entries of the current lap that come after the last
+		 * returned entry
+		 */
+		private NavigableSet<Entry> remaining() {
+			NavigableSet<Entry> lap;
+			if (this.start == null) {
+				lap = entries;
+			} else if (!this.wrapped) {
+				lap = entries.tailSet(this.start, true);
+			} else {
+				lap = entries.headSet(this.start, false);
+			}
+			return this.last == null ? lap : lap.tailSet(this.last, false);
+		}
+
+		public boolean hasNext() {
+			if (this.expectedModCount != modCount) {
+				this.i = remaining().iterator();
+				this.expectedModCount = modCount;
+			}
+			if (!this.i.hasNext() && this.start != null && !this.wrapped) {
+				this.wrapped = true;
+				this.last = null;
+				this.i = remaining().iterator();
+			}
+			return this.i.hasNext();
+		}
+
+		public Message next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			this.last = this.i.next();
+			return this.last.message;
+		}
+
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+	}
+
+	/**
+	 * Index entry of a message
+	 */
+	private static class Entry implements Comparable<Entry> {
+		private Message message;
+		private double key;
+		private long seq;
+
+		public Entry(Message message, double key, long seq) {
+			this.message = message;
+			this.key = key;
+			this.seq = seq;
+		}
+
+		public int compareTo(Entry e) {
+			if (this.key != e.key) {
+				return this.key < e.key ? -1 : 1;
+			}
+			return this.seq < e.seq ? -1 : (this.seq > e.seq ? 1 : 0);
+		}
+	}
+
+	/**
+	 * Index that orders the messages by their receive time (oldest first).
+	 * The receive time must not change while the message is indexed.
+	 */
+	public static class ByReceiveTime extends MessageIndex {
+		@Override
+		protected double getKey(Message m) {
+			return m.getReceiveTime();
+		}
+	}
+
+	/**
+	 * Index that orders the messages by the time their TTL expires
+	 * (shortest TTL first). Messages with infinite TTL are last.
+	 * The TTL must not be set again while the message is indexed.
+	 */
+	public static class ByTtl extends MessageIndex {
+		@Override
+		protected double getKey(Message m) {
+			return m.getExpiryTime();
+		}
+	}
+
+	/**
+	 * Index that orders the messages by the value of a numeric message
+	 * property (smallest value first). Messages that don't have the property
+	 * have no key.
+	 */
+	public static class ByProperty extends MessageIndex {
+		private String property;
+
+		/**
+		 * Constructor.
+		 * @param property The key of the (java.lang.Number valued) property
+		 */
+		public ByProperty(String property) {
+			this.property = property;
+		}
+
+		@Override
+		protected double getKey(Message m) {
+			Object value = m.getProperty(this.property);
+			if (value == null) {
+				return Double.NaN;
+			}
+			return ((Number)value).doubleValue();
+		}
+
+		@Override
+		public boolean dependsOn(String key) {
+			return this.property.equals(key);
+		}
+	}
+
+	/**
+	 * Index that orders the messages by the value of a registered integer
+	 * property (see {@link Message#registerIntProperty(String)}). Messages
+	 * that don't have the property have no key.
+	 */
+	public static class ByIntProperty extends MessageIndex {
+		private int slot;
+		private String property;
+
+		/**
+		 * Constructor.
+		 * @param slot Slot index of the property
+		 */
+		public ByIntProperty(int slot) {
+			this.slot = slot;
+			this.property = Message.getIntPropertyKey(slot);
+		}
+
+		@Override
+		protected double getKey(Message m) {
+			if (!m.hasIntProperty(this.slot)) {
+				return Double.NaN;
+			}
+			return m.getIntProperty(this.slot);
+		}
+
+		@Override
+		public boolean dependsOn(String key) {
+			return this.property.equals(key);
+		}
+	}
+
+	/**
+	 * Index that orders the messages by the value of a registered integer
+	 * property, highest value first (see 
+	 * {@link Message#registerIntProperty(String)}). Messages that don't have
+	 * the property come after all the others.
+	 */
+	public static class ByPriority extends MessageIndex {
+		private int slot;
+		private String property;
+
+		/**
+		 * Constructor.
+		 * @param slot Slot index of the property
+		 */
+		public ByPriority(int slot) {
+			this.slot = slot;
+			this.property = Message.getIntPropertyKey(slot);
+		}
+
+		@Override
+		protected double getKey(Message m) {
+			if (!m.hasIntProperty(this.slot)) {
+				return Double.POSITIVE_INFINITY;
+			}
+			return -(double)m.getIntProperty(this.slot);
+		}
+
+		@Override
+		public boolean dependsOn(String key) {
+			return this.property.equals(key);
+		}
+	}
+
+	/**
+	 * Index that orders the messages in a pseudo random order. The position
+	 * of a message depends only on the message and the seed of the index, so
+	 * the order stays the same as messages come and go, and indexes with
+	 * different seeds have different orders. The iteration starts from a
+	 * pseudo random offset that changes every simulated second and wraps 
+	 * around, so every message gets to be the first one in its turn. 
+	 * {@link #getFirst()} is not affected by the offset.
+	 */
+	public static class ByRandomOrder extends MessageIndex {
+		private long seed;
+
+		/**
+		 * Constructor.
+		 * @param seed Seed for the order
+		 */
+		public ByRandomOrder(long seed) {
+			this.seed = seed * 0x9E3779B97F4A7C15L;
+		}
+
+		@Override
+		protected double getKey(Message m) {
+			return hash(m.getKey() ^ this.seed);
+		}
+
+		/**
+		 * Returns an iterator that starts from the offset of the current 
+		 * simulated second (see {@link MessageIndex#iterator(double)})
+		 */
+		@Override
+		public Iterator<Message> iterator() {
+			return iterator(hash(SimClock.getIntTime() + this.seed));
+		}
+
+		/**
+		 * Hashes a value to the range [0, 1)
+		 */
+		private static double hash(long value) {
+			long h = value * 0xD6E8FEB86659FD93L;
+			h ^= h >>> 32;
+			h *= 0xD6E8FEB86659FD93L;
+			h ^= h >>> 32;
+			return (h >>> 11) / (double)(1L << 53);
+		}
+	}
+}
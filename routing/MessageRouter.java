@@ -4,19 +4,21 @@
  */
 package routing;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Random;
 
 import core.Application;
 import core.Connection;
 import core.DTNHost;
+import core.LongHashMap;
 import core.Message;
 import core.MessageListener;
+import core.MessagePropertyListener;
 import core.Settings;
 import core.SettingsError;
 import core.SimClock;
@@ -57,6 +59,15 @@ public abstract class MessageRouter {
      *
      */
     public static final String NODE_RANDOM = "randomNode";
+    /**
+     * Message property that contains the (integer) priority of the message
+     */
+    public static final String PRIORITY_PROPERTY = "Priority";
+    /**
+     * Slot index of the {@link #PRIORITY_PROPERTY} message property
+     */
+    public static final int PRIORITY_SLOT
+            = Message.registerIntProperty(PRIORITY_PROPERTY);
 
     /**
      * Setting value for random queue mode
@@ -74,7 +85,7 @@ public abstract class MessageRouter {
     /**
      * Setting value for TTL queue mode
      */
-//    public static final int Q_MODE_TTL = 4;   
+    public static final int Q_MODE_TTL = 4;
     /**
      * Receive return value for OK
      */
@@ -102,17 +113,39 @@ public abstract class MessageRouter {
     public static final int DENIED_DELIVERED = -4;
     protected List<MessageListener> mListeners;
     /**
-     * The messages being transferred with msgID_hostName keys
+     * The messages being transferred keyed by the message key and the
+     * address of the sending host (see {@link #getIncomingKey(int, DTNHost)})
+     */
+    private LongHashMap<Message> incomingMessages;
+    /**
+     * The messages this router is carrying keyed by the message keys
+     */
+    private LongHashMap<Message> messages;
+    /**
+     * The buffered messages of each final recipient keyed by the message keys
+     */
+    private HashMap<DTNHost, LongHashMap<Message>> messagesByDestination;
+    /**
+     * Total size of the messages in the message buffer
+     */
+    private int occupancy;
+    /**
+     * Sorted indexes of the message buffer
+     */
+    private List<MessageIndex> messageIndexes;
+    /**
+     * Listener that re-indexes buffered messages when their properties change
      */
-    private HashMap<String, Message> incomingMessages;
+    private MessagePropertyListener indexUpdater;
     /**
-     * The messages this router is carrying
+     * The buffered messages in the order of the sending queue mode (created
+     * when first needed)
      */
-    private HashMap<String, Message> messages;
+    private MessageIndex sendQueue;
     /**
      * The messages this router has received as the final recipient
      */
-    protected HashMap<String, Message> deliveredMessages;
+    protected LongHashMap<Message> deliveredMessages;
     /**
      * Host where this router belongs to
      */
@@ -162,7 +195,7 @@ public abstract class MessageRouter {
         }
         if (s.contains(SEND_QUEUE_MODE_S)) {
             this.sendQueueMode = s.getInt(SEND_QUEUE_MODE_S);
-            if (sendQueueMode < 1 || sendQueueMode > 3) {
+            if (sendQueueMode < 1 || sendQueueMode > Q_MODE_TTL) {
                 throw new SettingsError("Invalid value for "
                         + s.getFullPropertyName(SEND_QUEUE_MODE_S));
             }
@@ -182,9 +215,22 @@ public abstract class MessageRouter {
      * @param mListeners The message listeners
      */
     public void init(DTNHost host, List<MessageListener> mListeners) {
-        this.incomingMessages = new HashMap<String, Message>();
-        this.messages = new HashMap<String, Message>();
-        this.deliveredMessages = new HashMap<String, Message>();
+        this.incomingMessages = new LongHashMap<Message>();
+        this.messages = new LongHashMap<Message>();
+        this.messagesByDestination = new HashMap<DTNHost, LongHashMap<Message>>();
+        this.occupancy = 0;
+        this.messageIndexes = new ArrayList<MessageIndex>();
+        this.indexUpdater = new MessagePropertyListener() {
+            public void propertyUpdated(Message m, String key) {
+                for (MessageIndex index : messageIndexes) {
+                    if (index.dependsOn(key)) {
+                        index.update(m);
+                    }
+                }
+            }
+        };
+        this.sendQueue = null;
+        this.deliveredMessages = new LongHashMap<Message>();
         this.mListeners = mListeners;
         this.host = host;
 //        Random rnd = new Random();
@@ -195,7 +241,6 @@ public abstract class MessageRouter {
 //                return;
 //            }
 //        }
-        System.setProperty("java.util.Arrays.useLegacyMergeSort", "true");
     }
 
     /**
@@ -229,6 +274,29 @@ public abstract class MessageRouter {
         }
     }
 
+    /**
+     * Returns the simulation time when this router needs to be updated next,
+     * given that nothing else (e.g., connections or messages) changes before
+     * that. Used for skipping update intervals when nothing can happen. This
+     * implementation returns the current time, i.e., the router is updated
+     * on every update interval. Routers whose updates don't do anything 
+     * unless something changes can return a later time.
+     *
+     * @return The time when the next update is needed at the latest
+     */
+    public double getNextUpdateTime() {
+        return SimClock.getTime();
+    }
+
+    /**
+     * Returns true if there are applications attached to this router
+     *
+     * @return true if there are applications attached to this router
+     */
+    protected boolean hasApplications() {
+        return !this.applications.isEmpty();
+    }
+
     /**
      * Informs the router about change in connections state.
      *
@@ -243,7 +311,17 @@ public abstract class MessageRouter {
      * @return The message
      */
     protected Message getMessage(String id) {
-        return this.messages.get(id);
+        return getMessage(Message.findKey(id));
+    }
+
+    /**
+     * Returns a message by message key.
+     *
+     * @param msgKey Key of the message (see {@link Message#getKey()})
+     * @return The message or null if there is no message with the key
+     */
+    protected Message getMessage(int msgKey) {
+        return this.messages.get(msgKey);
     }
 
     /**
@@ -253,7 +331,17 @@ public abstract class MessageRouter {
      * @return True if the router has message with this id, false if not
      */
     protected boolean hasMessage(String id) {
-        return this.messages.containsKey(id);
+        return hasMessage(Message.findKey(id));
+    }
+
+    /**
+     * Checks if this router has a message with certain key buffered.
+     *
+     * @param msgKey Key of the message (see {@link Message#getKey()})
+     * @return True if the router has message with this key, false if not
+     */
+    protected boolean hasMessage(int msgKey) {
+        return this.messages.containsKey(msgKey);
     }
 
     /**
@@ -266,7 +354,7 @@ public abstract class MessageRouter {
      * as the final recipient.
      */
     protected boolean isDeliveredMessage(Message m) {
-        return (this.deliveredMessages.containsKey(m.getId()));
+        return (this.deliveredMessages.containsKey(m.getKey()));
     }
 
     /**
@@ -309,17 +397,11 @@ public abstract class MessageRouter {
      * isn't defined)
      */
     public int getFreeBufferSize() {
-        int occupancy = 0;
-
         if (this.getBufferSize() == Integer.MAX_VALUE) {
             return Integer.MAX_VALUE;
         }
 
-        for (Message m : getMessageCollection()) {
-            occupancy += m.getSize();
-        }
-
-        return this.getBufferSize() - occupancy;
+        return this.getBufferSize() - this.occupancy;
     }
 
     /**
@@ -426,7 +508,7 @@ public abstract class MessageRouter {
             // -> put to buffer
             addToMessages(aMessage, false);
         } else if (isFirstDelivery) {
-            this.deliveredMessages.put(id, aMessage);
+            this.deliveredMessages.put(incoming.getKey(), aMessage);
         }
 
         for (MessageListener ml : this.mListeners) {
@@ -445,7 +527,18 @@ public abstract class MessageRouter {
      * @param from Who the message was from (previous hop).
      */
     protected void putToIncomingBuffer(Message m, DTNHost from) {
-        this.incomingMessages.put(m.getId() + "_" + from.toString(), m);
+        this.incomingMessages.put(getIncomingKey(m.getKey(), from), m);
+    }
+
+    /**
+     * Returns the incoming buffer key for a message from a host
+     *
+     * @param msgKey Key of the message (see {@link Message#getKey()})
+     * @param from The host that sent the message
+     * @return The key
+     */
+    private static long getIncomingKey(int msgKey, DTNHost from) {
+        return ((long) msgKey << 32) | (from.getAddress() & 0xFFFFFFFFL);
     }
 
     /**
@@ -457,7 +550,22 @@ public abstract class MessageRouter {
      * @return The found message or null if such message wasn't found
      */
     protected Message removeFromIncomingBuffer(String id, DTNHost from) {
-        return this.incomingMessages.remove(id + "_" + from.toString());
+        return removeFromIncomingBuffer(Message.findKey(id), from);
+    }
+
+    /**
+     * Removes and returns a message with a certain key from the incoming
+     * messages buffer or null if such message wasn't found.
+     *
+     * @param msgKey Key of the message (see {@link Message#getKey()})
+     * @param from The host that sent this message (previous hop)
+     * @return The found message or null if such message wasn't found
+     */
+    protected Message removeFromIncomingBuffer(int msgKey, DTNHost from) {
+        if (msgKey < 0) {
+            return null;
+        }
+        return this.incomingMessages.remove(getIncomingKey(msgKey, from));
     }
 
     /**
@@ -468,7 +576,23 @@ public abstract class MessageRouter {
      * @return True if such message is incoming right now
      */
     protected boolean isIncomingMessage(String id) {
-        return this.incomingMessages.containsKey(id);
+        return isIncomingMessage(Message.findKey(id));
+    }
+
+    /**
+     * Returns true if a message with the given key is one of the currently
+     * incoming messages, false if not
+     *
+     * @param msgKey Key of the message (see {@link Message#getKey()})
+     * @return True if such message is incoming right now
+     */
+    protected boolean isIncomingMessage(int msgKey) {
+        for (Message m : this.incomingMessages.values()) {
+            if (m.getKey() == msgKey) {
+                return true;
+            }
+        }
+        return false;
     }
 
     /**
@@ -480,7 +604,23 @@ public abstract class MessageRouter {
      * message, if false, nothing is informed.
      */
     protected void addToMessages(Message m, boolean newMessage) {
-        this.messages.put(m.getId(), m);
+        Message old = this.messages.put(m.getKey(), m);
+        LongHashMap<Message> forDest = this.messagesByDestination.get(m.getTo());
+        if (forDest == null) {
+            forDest = new LongHashMap<Message>();
+            this.messagesByDestination.put(m.getTo(), forDest);
+        }
+        forDest.put(m.getKey(), m); /* replacing keeps the position */
+        if (old != null) {
+            unindexMessage(old);
+        } else {
+            MessageHolderIndex.addHolder(m, this.host);
+        }
+        this.occupancy += m.getSize();
+        for (MessageIndex index : this.messageIndexes) {
+            index.add(m);
+        }
+        m.setPropertyListener(this.indexUpdater);
 
         if (newMessage) {
             for (MessageListener ml : this.mListeners) {
@@ -496,10 +636,83 @@ public abstract class MessageRouter {
      * @return The removed message or null if message for the ID wasn't found
      */
     protected Message removeFromMessages(String id) {
-        Message m = this.messages.remove(id);
+        return removeFromMessages(Message.findKey(id));
+    }
+
+    /**
+     * Removes and returns a message from the message buffer.
+     *
+     * @param msgKey Key of the message (see {@link Message#getKey()})
+     * @return The removed message or null if message for the key wasn't found
+     */
+    protected Message removeFromMessages(int msgKey) {
+        Message m = this.messages.remove(msgKey);
+        if (m != null) {
+            unindexMessage(m);
+            MessageHolderIndex.removeHolder(m, this.host);
+        }
         return m;
     }
 
+    /**
+     * Removes a message, that is no longer in the message buffer, from the
+     * buffer occupancy and the message indexes.
+     *
+     * @param m The removed message
+     */
+    private void unindexMessage(Message m) {
+        this.occupancy -= m.getSize();
+        for (MessageIndex index : this.messageIndexes) {
+            index.remove(m);
+        }
+        if (m.getPropertyListener() == this.indexUpdater) {
+            m.setPropertyListener(null);
+        }
+
+        LongHashMap<Message> forDest = this.messagesByDestination.get(m.getTo());
+        if (forDest != null && forDest.get(m.getKey()) == m) {
+            forDest.remove(m.getKey());
+            if (forDest.isEmpty()) {
+                this.messagesByDestination.remove(m.getTo());
+            }
+        }
+    }
+
+    /**
+     * Returns the buffered messages whose final recipient is the given host.
+     * The messages are in the order they were added to the buffer. The
+     * returned collection is a view of the buffer: messages may be removed
+     * from the buffer while iterating it, but not added.
+     *
+     * @param to The final recipient
+     * @return The messages for the recipient
+     */
+    protected Collection<Message> getMessagesFor(DTNHost to) {
+        LongHashMap<Message> forDest = this.messagesByDestination.get(to);
+        if (forDest == null) {
+            return Collections.emptyList();
+        }
+        return forDest.values();
+    }
+
+    /**
+     * Adds a sorted index that is kept up to date with the messages in the
+     * message buffer (see {@link #addToMessages(Message, boolean)} and
+     * {@link #removeFromMessages(int)}). Messages already in the buffer
+     * are added to the index too. Indexes are per router instance, so they
+     * should be added in (or after) {@link #init(DTNHost, List)}.
+     *
+     * @param index The index to add
+     * @return The added index
+     */
+    protected <T extends MessageIndex> T addMessageIndex(T index) {
+        for (Message m : this.messages.values()) {
+            index.add(m);
+        }
+        this.messageIndexes.add(index);
+        return index;
+    }
+
     /**
      * This method should be called (on the receiving host) when a message
      * transfer was aborted.
@@ -544,11 +757,31 @@ public abstract class MessageRouter {
      * because it was delivered to final destination.
      */
     public void deleteMessage(String id, boolean drop) {
-        Message removed = removeFromMessages(id);
-        if (removed == null) {
+        int key = Message.findKey(id);
+        if (!hasMessage(key)) {
             throw new SimError("no message for id "
                     + id + " to remove at " + this.host);
         }
+        deleteMessage(key, drop);
+    }
+
+    /**
+     * Deletes a message from the buffer and informs message listeners about
+     * the event. Subclasses that need to know about deleted messages should
+     * override this instead of {@link #deleteMessage(String, boolean)}, which
+     * calls this.
+     *
+     * @param msgKey Key of the message (see {@link Message#getKey()})
+     * @param drop If the message is dropped (e.g. because of full buffer) this
+     * should be set to true. False value indicates e.g. remove of message
+     * because it was delivered to final destination.
+     */
+    protected void deleteMessage(int msgKey, boolean drop) {
+        Message removed = removeFromMessages(msgKey);
+        if (removed == null) {
+            throw new SimError("no message for key "
+                    + msgKey + " to remove at " + this.host);
+        }
 
         for (MessageListener ml : this.mListeners) {
             ml.messageDeleted(removed, this.host, drop);
@@ -556,113 +789,76 @@ public abstract class MessageRouter {
     }
 
     /**
-     * Sorts/shuffles the given list according to the current sending queue
-     * mode. The list can contain either Message or Tuple<Message, Connection>
-     * objects. Other objects cause error.
+     * Returns the buffered messages in the order of the current sending queue
+     * mode. The queue is kept up to date as messages are added to and removed
+     * from the buffer, and it can be iterated while messages are deleted.
      *
-     * @param list The list to sort or shuffle
-     * @return The sorted/shuffled list
+     * @return The sending queue
      */
-    @SuppressWarnings(value = "unchecked")
-    /* ugly way to make this generic */
-    protected List sortByQueueMode(List list) {
+    protected MessageIndex getSendQueue() {
+        if (this.sendQueue == null) {
+            this.sendQueue = addMessageIndex(createSendQueue());
+        }
+        return this.sendQueue;
+    }
+
+    /**
+     * Creates the index that defines the order of the sending queue
+     *
+     * @return The index for the current sending queue mode
+     */
+    private MessageIndex createSendQueue() {
         switch (sendQueueMode) {
             case Q_MODE_RANDOM:
-                Collections.shuffle(list, new Random(SimClock.getIntTime()));
-                break;
+                return new MessageIndex.ByRandomOrder(this.host.getAddress());
             case Q_MODE_FIFO:
-                Collections.sort(list,
-                        new Comparator() {
-                    /**
-                     * Compares two tuples by their messages' receiving time
-                     */
-                    public int compare(Object o1, Object o2) {
-                        double diff;
-                        Message m1, m2;
-
-                        if (o1 instanceof Tuple) {
-                            m1 = ((Tuple<Message, Connection>) o1).getKey();
-                            m2 = ((Tuple<Message, Connection>) o2).getKey();
-                        } else if (o1 instanceof Message) {
-                            m1 = (Message) o1;
-                            m2 = (Message) o2;
-                        } else {
-                            throw new SimError("Invalid type of objects in "
-                                    + "the list");
-                        }
-
-                        diff = m1.getReceiveTime() - m2.getReceiveTime();
-                        if (diff == 0) {
-                            return 0;
-                        }
-                        return (diff < 0 ? -1 : 1);
-                    }
-                });
-                break;
-            /* add more queue modes here */
-            // tambahan
+                return new MessageIndex.ByReceiveTime();
             case Q_MODE_PRIORITIZED:
-                Collections.sort(list,
-                        new Comparator() {
-                    /**
-                     * Compares two tuples by their messages prioritized value
-                     */
-                    public int compare(Object o1, Object o2) {
-                        double diff;
-                        Message m1, m2;
-
-                        if (o1 instanceof Tuple) {
-                            m1 = ((Tuple<Message, Connection>) o1).getKey();
-                            m2 = ((Tuple<Message, Connection>) o2).getKey();
-                        } else if (o1 instanceof Message) {
-                            m1 = (Message) o1;
-                            m2 = (Message) o2;
-                        } else {
-                            throw new SimError("Invalid type of objects in "
-                                    + "the list");
-                        }
-                        // tambahan                        
-                        diff = (int) m1.getProperty("Priority") - (int) m2.getProperty("Priority");
-
-                        if (diff == 0) {
-                            return 0;
-                        }
-                        return (diff > 0 ? -1 : 1);
-                    }
-                });
-                break;
-//            case Q_MODE_TTL:
-//                Collections.sort(list,
-//                        new Comparator() {
-//                    /**
-//                     * Compares two tuples by their messages' receiving time
-//                     */
-//                    public int compare(Object o1, Object o2) {
-//                        double diff;
-//                        Message m1, m2;
-//
-//                        if (o1 instanceof Tuple) {
-//                            m1 = ((Tuple<Message, Connection>) o1).getKey();
-//                            m2 = ((Tuple<Message, Connection>) o2).getKey();
-//                        } else if (o1 instanceof Message) {
-//                            m1 = (Message) o1;
-//                            m2 = (Message) o2;
-//                        } else {
-//                            throw new SimError("Invalid type of objects in "
-//                                    + "the list");
-//                        }
-//
-//                        diff = m1.getTtl() - m2.getTtl();
-//                        if (diff == 0) {
-//                            return 0;
-//                        }
-//                        return (diff < 0 ? -1 : 1);
-//                    }
-//                });
-//                break;
+                /* highest priority first, messages without priority last */
+                return new MessageIndex.ByPriority(PRIORITY_SLOT);
+            case Q_MODE_TTL:
+                return new MessageIndex.ByTtl();
+            /* add more queue modes here */
             default:
                 throw new SimError("Unknown queue mode " + sendQueueMode);
         }
+    }
+
+    /**
+     * Sorts the given list according to the current sending queue mode (i.e.,
+     * into the order of {@link #getSendQueue()}). Messages that are equal in
+     * the order keep their order in the list. The list can contain either
+     * Message or Tuple<Message, Connection> objects. Other objects cause
+     * error.
+     *
+     * @param list The list to sort
+     * @return The sorted list
+     */
+    @SuppressWarnings(value = "unchecked")
+    /* ugly way to make this generic */
+    protected List sortByQueueMode(List list) {
+        Collections.sort(list,
+                new Comparator() {
+            /**
+             * Compares two messages or the messages of two tuples
+             */
+            public int compare(Object o1, Object o2) {
+                Message m1, m2;
+
+                if (o1 instanceof Tuple) {
+                    m1 = ((Tuple<Message, Connection>) o1).getKey();
+                    m2 = ((Tuple<Message, Connection>) o2).getKey();
+                } else if (o1 instanceof Message) {
+                    m1 = (Message) o1;
+                    m2 = (Message) o2;
+                } else {
+                    throw new SimError("Invalid type of objects in "
+                            + "the list");
+                }
+
+                return compareByQueueMode(m1, m2);
+            }
+        });
 
         return list;
     }
@@ -677,26 +873,13 @@ public abstract class MessageRouter {
      * message should come first, or 0 if the ordering isn't defined
      */
     protected int compareByQueueMode(Message m1, Message m2) {
-        switch (sendQueueMode) {
-            case Q_MODE_RANDOM:
-                /* return randomly (enough) but consistently -1, 0 or 1 */
-                return (m1.hashCode() / 2 + m2.hashCode() / 2) % 3 - 1;
-            case Q_MODE_FIFO:
-                double diff = m1.getReceiveTime() - m2.getReceiveTime();
-                if (diff == 0) {
-                    return 0;
-                }
-                return (diff < 0 ? -1 : 1);
-            /* add more queue modes here */
-//            case Q_MODE_TTL:
-//                double diff_TTL = m1.getTtl() - m2.getTtl();
-//                if (diff_TTL == 0) {
-//                    return 0;
-//                }
-//                return (diff_TTL < 0 ? -1 : 1);
-            default:
-                throw new SimError("Unknown queue mode " + sendQueueMode);
+        MessageIndex queue = getSendQueue();
+        double k1 = queue.getKey(m1);
+        double k2 = queue.getKey(m2);
+        if (k1 == k2) {
+            return 0;
         }
+        return (k1 < k2 ? -1 : 1);
     }
 
     /**
@@ -0,0 +1,236 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package routing;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import core.Connection;
+import core.LongHashMap;
+import core.Message;
+import core.Tuple;
+
+/**
+ * Queue of message-connection pairs that a router is going to try to send.
+ * The pairs are iterated in the order they were added, but they are also
+ * indexed per connection and per message so that the pairs of a message or
+ * a connection can be removed without going through the whole queue or all
+ * the connections.
+ * A message is queued at most once for each connection.
+ *
+ * Pairs may be removed while iterating the queue (e.g., when a transfer
+ * attempt causes the message to be deleted); the iteration continues from
+ * the next pair that is still in the queue.
+ */
+public class OutgoingMessageQueue implements Iterable<Tuple<Message, Connection>> {
+
+    /** First and last pair of the queue */
+    private Node head, tail;
+    /** Queued pairs of each connection keyed by the message keys */
+    private Map<Connection, LongHashMap<Node>> byConnection;
+    /** First queued pair of each message (the pairs of a message are linked
+     * to each other) keyed by the message keys */
+    private LongHashMap<Node> byMessage;
+    /** Number of pairs in the queue */
+    private int size;
+
+    public OutgoingMessageQueue() {
+        this.byConnection = new HashMap<Connection, LongHashMap<Node>>();
+        this.byMessage = new LongHashMap<Node>();
+        this.size = 0;
+    }
+
+    /**
+     * Adds a message-connection pair to the end of the queue
+     *
+     * @param m The message
+     * @param con The connection
+     * @return true if the pair was added, false if it was already queued
+     */
+    public boolean add(Message m, Connection con) {
+        LongHashMap<Node> nodes = this.byConnection.get(con);
+        if (nodes == null) {
+            nodes = new LongHashMap<Node>();
+            this.byConnection.put(con, nodes);
+        } else if (nodes.containsKey(m.getKey())) {
+            return false;
+        }
+
+        Node n = new Node(new Tuple<Message, Connection>(m, con));
+        nodes.put(m.getKey(), n);
+        Node first = this.byMessage.put(m.getKey(), n);
+        if (first != null) {
+            n.msgNext = first;
+            first.msgPrev = n;
+        }
+        if (this.tail == null) {
+            this.head = n;
+        } else {
+            this.tail.next = n;
+            n.prev = this.tail;
+        }
+        this.tail = n;
+        this.size++;
+        return true;
+    }
+
+    /**
+     * Removes the pair of a message and a connection
+     *
+     * @param msgKey Key of the message (see {@link Message#getKey()})
+     * @param con The connection
+     * @return true if the pair was in the queue, false if not
+     */
+    public boolean remove(int msgKey, Connection con) {
+        LongHashMap<Node> nodes = this.byConnection.get(con);
+        if (nodes == null) {
+            return false;
+        }
+        Node n = nodes.remove(msgKey);
+        if (n == null) {
+            return false;
+        }
+        if (nodes.isEmpty()) {
+            this.byConnection.remove(con);
+        }
+        unlinkMessage(n);
+        unlink(n);
+        return true;
+    }
+
+    /**
+     * Removes all the pairs of a message
+     *
+     * @param msgKey Key of the message (see {@link Message#getKey()})
+     */
+    public void removeMessage(int msgKey) {
+        for (Node n = this.byMessage.remove(msgKey); n != null;
+                n = n.msgNext) {
+            Connection con = n.tuple.getValue();
+            LongHashMap<Node> nodes = this.byConnection.get(con);
+            nodes.remove(msgKey);
+            if (nodes.isEmpty()) {
+                this.byConnection.remove(con);
+            }
+            unlink(n);
+        }
+    }
+
+    /**
+     * Removes all the pairs of a connection
+     *
+     * @param con The connection
+     */
+    public void removeConnection(Connection con) {
+        LongHashMap<Node> nodes = this.byConnection.remove(con);
+        if (nodes == null) {
+            return;
+        }
+        for (Node n : nodes.values()) {
+            unlinkMessage(n);
+            unlink(n);
+        }
+    }
+
+    /**
+     * Returns the number of pairs in the queue
+     *
+     * @return The number of pairs
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Returns true if the queue is empty
+     *
+     * @return true if the queue is empty
+     */
+    public boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    /**
+     * Removes a node from the list of the pairs of its message
+     */
+    private void unlinkMessage(Node n) {
+        if (n.msgPrev != null) {
+            n.msgPrev.msgNext = n.msgNext;
+        } else if (n.msgNext != null) {
+            this.byMessage.put(n.tuple.getKey().getKey(), n.msgNext);
+        } else {
+            this.byMessage.remove(n.tuple.getKey().getKey());
+        }
+        if (n.msgNext != null) {
+            n.msgNext.msgPrev = n.msgPrev;
+        }
+    }
+
+    /**
+     * Removes a node from the linked list. The removed node keeps its next
+     * reference so that iterators positioned at it can continue.
+     */
+    private void unlink(Node n) {
+        if (n.prev == null) {
+            this.head = n.next;
+        } else {
+            n.prev.next = n.next;
+        }
+        if (n.next == null) {
+            this.tail = n.prev;
+        } else {
+            n.next.prev = n.prev;
+        }
+        n.removed = true;
+        this.size--;
+    }
+
+    /**
+     * Returns an iterator over the pairs in the order they were added. The
+     * iterator doesn't support removing.
+     */
+    public Iterator<Tuple<Message, Connection>> iterator() {
+        return new Iterator<Tuple<Message, Connection>>() {
+            private Node next = head;
+
+            public boolean hasNext() {
+                while (this.next != null && this.next.removed) {
+                    this.next = this.next.next;
+                }
+                return this.next != null;
+            }
+
+            public Tuple<Message, Connection> next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                Tuple<Message, Connection> t = this.next.tuple;
+                this.next = this.next.next;
+                return t;
+            }
+
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    /**
+     * Node of the linked list of pairs
+     */
+    private static class Node {
+        private final Tuple<Message, Connection> tuple;
+        private Node prev, next;
+        /** previous and next pair of the same message */
+        private Node msgPrev, msgNext;
+        private boolean removed;
+
+        public Node(Tuple<Message, Connection> tuple) {
+            this.tuple = tuple;
+        }
+    }
+}
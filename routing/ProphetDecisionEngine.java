@@ -10,7 +10,7 @@ import routing.DecisionEngineRouter;
 import routing.MessageRouter;
 import routing.RoutingDecisionEngine;
 
-public class ProphetDecisionEngine implements RoutingDecisionEngine {
+public class ProphetDecisionEngine implements RoutingDecisionEngine, ScheduledUpdateEngine {
 
     protected final static String BETA_SETTING = "beta";
     protected final static String P_INIT_SETTING = "initial_p";
@@ -208,4 +208,9 @@ public class ProphetDecisionEngine implements RoutingDecisionEngine {
 
     @Override
     public void update(DTNHost thisHost) {}
+
+    @Override
+    public double getNextUpdateTime() {
+        return Double.POSITIVE_INFINITY; // update doesn't do anything
+    }
 }
@@ -1,5 +1,9 @@
 package routing;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
 import core.*;
 
 /**
@@ -88,6 +92,30 @@ public interface RoutingDecisionEngine
 	 */
 	public boolean shouldSendMessageToHost(Message m, DTNHost otherHost, DTNHost thisHost);
 	
+	/**
+	 * Called to determine which of the given Messages should be sent to the 
+	 * given host. DecisionEngineRouter uses this when it has a batch of 
+	 * messages for the same peer (e.g., the whole message store when a 
+	 * connection comes up), so an engine can compute its peer and destination
+	 * dependent metrics once per call instead of once per message. By default,
+	 * shouldSendMessageToHost() is asked for each message in turn.
+	 * 
+	 * @param messages Messages to possibly send
+	 * @param otherHost peer to potentially send the messages to.
+	 * @param thisHost The requesting host
+	 * @return The messages that should be sent, in the iteration order of 
+	 * <code>messages</code>
+	 */
+	public default List<Message> selectMessagesToSend(
+			Collection<Message> messages, DTNHost otherHost, DTNHost thisHost)
+	{
+		List<Message> toSend = new ArrayList<Message>();
+		for (Message m : messages)
+			if (shouldSendMessageToHost(m, otherHost, thisHost))
+				toSend.add(m);
+		return toSend;
+	}
+	
 	/**
 	 * Called after a message is sent to some other peer to ask if it should now
 	 * be deleted from the message store. 
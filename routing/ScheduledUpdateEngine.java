@@ -0,0 +1,20 @@
+package routing;
+
+/**
+ * Declares a RoutingDecisionEngine object to know when its
+ * {@link RoutingDecisionEngine#update(core.DTNHost)} does something.
+ * DecisionEngineRouter lets the updates of its host be skipped (see
+ * {@link MessageRouter#getNextUpdateTime()}) only if its decision engine
+ * implements this; the updates of other engines are never skipped.
+ */
+public interface ScheduledUpdateEngine
+{
+	/**
+	 * Returns the simulation time when the update of this engine does
+	 * something next, given that nothing else changes before that.
+	 *
+	 * @return The time of the next update that is needed, or
+	 * Double.POSITIVE_INFINITY if the update never does anything
+	 */
+	public double getNextUpdateTime();
+}
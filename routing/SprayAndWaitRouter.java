@@ -85,6 +85,11 @@ public class SprayAndWaitRouter extends ActiveRouter {
 		return true;
 	}
 	
+	@Override
+	public double getNextUpdateTime() {
+		return getNextTransferOrTtlCheckTime();
+	}
+	
 	@Override
 	public void update() {
 		super.update();
@@ -98,8 +103,7 @@ public class SprayAndWaitRouter extends ActiveRouter {
 		}
 		
 		/* create a list of SAWMessages that have copies left to distribute */
-		@SuppressWarnings(value = "unchecked")
-		List<Message> copiesLeft = sortByQueueMode(getMessagesWithCopiesLeft());
+		List<Message> copiesLeft = getMessagesWithCopiesLeft();
 		
 		if (copiesLeft.size() > 0) {
 			/* try to send those messages */
@@ -110,12 +114,13 @@ public class SprayAndWaitRouter extends ActiveRouter {
 	/**
 	 * Creates and returns a list of messages this router is currently
 	 * carrying and still has copies left to distribute (nrof copies > 1).
+	 * The messages are in the order of the sending queue.
 	 * @return A list of messages that have copies left
 	 */
 	protected List<Message> getMessagesWithCopiesLeft() {
 		List<Message> list = new ArrayList<Message>();
 
-		for (Message m : getMessageCollection()) {
+		for (Message m : getSendQueue()) {
 			Integer nrofCopies = (Integer)m.getProperty(MSG_COUNT_PROPERTY);
 			assert nrofCopies != null : "SnW message " + m + " didn't have " + 
 				"nrof copies property!";
@@ -137,9 +142,8 @@ public class SprayAndWaitRouter extends ActiveRouter {
 	@Override
 	protected void transferDone(Connection con) {
 		Integer nrofCopies;
-		String msgId = con.getMessage().getId();
 		/* get this router's copy of the message */
-		Message msg = getMessage(msgId);
+		Message msg = getMessage(con.getMessage().getKey());
 
 		if (msg == null) { // message has been dropped from the buffer after..
 			return; // ..start of transfer -> no need to reduce amount of copies
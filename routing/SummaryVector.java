@@ -0,0 +1,95 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package routing;
+
+import core.Message;
+
+/**
+ * Compact summary of a set of messages (a Bloom filter of the message keys,
+ * see {@link Message#getKey()}). Hosts can give each other summaries of the
+ * messages they have when they meet so that messages the peer already has
+ * don't need to be offered to it. A summary never misses a message that was
+ * added to it but it may claim to contain messages that were not added
+ * (a false positive).
+ */
+public class SummaryVector {
+	/** number of filter bits per message (about 1% false positives) */
+	public static final int BITS_PER_MESSAGE = 10;
+	/** number of bits each message sets in the filter */
+	public static final int NROF_HASHES = 7;
+
+	/** the filter bits */
+	private long[] bits;
+	/** number of message keys added to the summary */
+	private int nrofMessages;
+
+	/**
+	 * Creates an empty summary
+	 * @param capacity How many messages will be added to the summary
+	 */
+	public SummaryVector(int capacity) {
+		int nrofBits = Math.max(64, capacity * BITS_PER_MESSAGE);
+		this.bits = new long[(nrofBits + 63) / 64];
+		this.nrofMessages = 0;
+	}
+
+	/**
+	 * Adds a message to the summary
+	 * @param m The message to add
+	 */
+	public void add(Message m) {
+		long hash = hash(m.getKey());
+		for (int i=0; i < NROF_HASHES; i++) {
+			int bit = bitOf(hash, i);
+			this.bits[bit >>> 6] |= 1L << bit;
+		}
+		this.nrofMessages++;
+	}
+
+	/**
+	 * Returns true if the message may have been added to the summary and
+	 * false if it definitely wasn't
+	 * @param m The message to check
+	 * @return true if the message is probably in the summary
+	 */
+	public boolean mightContain(Message m) {
+		long hash = hash(m.getKey());
+		for (int i=0; i < NROF_HASHES; i++) {
+			int bit = bitOf(hash, i);
+			if ((this.bits[bit >>> 6] & (1L << bit)) == 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the number of messages added to the summary
+	 * @return The number of messages
+	 */
+	public int getNrofMessages() {
+		return this.nrofMessages;
+	}
+
+	/**
+	 * Returns the index of the filter bit for the given hash round
+	 * (double hashing with the two halves of the hash value)
+	 */
+	private int bitOf(long hash, int round) {
+		int h1 = (int)hash;
+		int h2 = (int)(hash >>> 32) | 1;
+		return ((h1 + round * h2) & 0x7FFFFFFF) % (this.bits.length * 64);
+	}
+
+	/**
+	 * Mixes the bits of a message key
+	 */
+	private static long hash(int key) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		h ^= h >>> 32;
+		h *= 0xD6E8FEB86659FD93L;
+		return h ^ (h >>> 32);
+	}
+}
@@ -84,6 +84,7 @@ public class BubbleRapEdit implements RoutingDecisionEngine, CommunityDetectionE
 
         CommunityDetection peerCD = this.getOtherDecisionEngine(peer).community; //added
         community.connectionLost(thisHost, peer, peerCD, history); //added
+        centrality.connectionLost(thisHost, peer, history);
 
         startTimestamps.remove(peer);
     }
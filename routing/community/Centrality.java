@@ -62,6 +62,19 @@ public interface Centrality
 	 */
 	public Centrality replicate();
 	
+	/**
+	 * Called when a connection to a peer goes down and the contact has been
+	 * added to the connection history, so that the centrality values can be
+	 * updated incrementally instead of computing them from the whole history
+	 * when they are requested. Does nothing by default.
+	 * 
+	 * @param myHost Host using this Centrality object
+	 * @param peer The peer whose connection went down
+	 * @param history Entire connection history between this host and the peer
+	 */
+	public default void connectionLost(DTNHost myHost, DTNHost peer, 
+			List<Duration> history) {}
+	
 	//Ini tambahanku sementara
 	//public int [] getGlobalArrayCentrality (Map<DTNHost, List<Duration>> connHistory);
 }
@@ -32,21 +32,27 @@ import routing.RoutingDecisionEngine;
 public class ChitChatDE implements RoutingDecisionEngine, TranscientEngine {
 
     protected Map<DTNHost, Double> startTimestamps;
-    protected Map<String, Double> connHistoryT; // save endtime with interest
+    protected double[] connHistoryT; // save endtime with interest
     protected Map<DTNHost, Double> connHistoryN; // save endtime with node
-    protected Map<String, Double> transcient;
+    protected double[] transcient; // by interest index, see InterestRegistry
     protected List<Connection> connections;
 
     protected double timeStart;
 
-    private String LOC_GEN = "Message Location Generated";
-    private String M_TOPIC = "Message Topic";
+    private static final int LOC_GEN_SLOT = Message.registerObjectProperty("Message Location Generated");
+    private static final int TOPIC_SLOT = Message.registerObjectProperty("Message Topic");
+    private static final int INTEREST_SLOT = Message.registerIntProperty("Message Interest");
 
     public static String randomContentSocial;
     public static String randomContentNonSocial;
     protected Map<String, Set<String>> topics;
     protected Map<String, Set<String>> topicsUrgent;
+    protected String[] topicKeys;
+    protected String[] topicUrgentKeys;
+    protected Map<String, String[]> topicContents;
+    private Random random;
     protected List<String> allTopics;
+    protected int[] allTopicIndexes;
 
     public ChitChatDE(Settings s) {
         topics = new HashMap<String, Set<String>>();
@@ -66,6 +72,20 @@ public class ChitChatDE implements RoutingDecisionEngine, TranscientEngine {
         allTopics.add("Traveling");
         allTopics.add("Music");
         allTopics.add("Urgent");
+
+        topicKeys = topics.keySet().toArray(new String[0]);
+        topicUrgentKeys = topicsUrgent.keySet().toArray(new String[0]);
+        topicContents = new HashMap<String, String[]>();
+        for (Map.Entry<String, Set<String>> e : topics.entrySet()) {
+            topicContents.put(e.getKey(), e.getValue().toArray(new String[0]));
+        }
+        for (Map.Entry<String, Set<String>> e : topicsUrgent.entrySet()) {
+            topicContents.put(e.getKey(), e.getValue().toArray(new String[0]));
+        }
+        allTopicIndexes = new int[allTopics.size()];
+        for (int i = 0; i < allTopicIndexes.length; i++) {
+            allTopicIndexes[i] = InterestRegistry.indexOf(allTopics.get(i));
+        }
     }
 
     /**
@@ -75,15 +95,20 @@ public class ChitChatDE implements RoutingDecisionEngine, TranscientEngine {
      */
     protected ChitChatDE(ChitChatDE r) {
         startTimestamps = new HashMap<DTNHost, Double>();
-        connHistoryT = new HashMap<String, Double>();
+        connHistoryT = InterestRegistry.newValues();
         connHistoryN = new HashMap<DTNHost, Double>();
-        this.transcient = new HashMap<String, Double>();
+        this.transcient = InterestRegistry.newValues();
         connections = new LinkedList<Connection>();
         randomContentSocial = r.randomContentSocial;
         randomContentNonSocial = r.randomContentNonSocial;
         topics = r.topics;
         topicsUrgent = r.topicsUrgent;
+        topicKeys = r.topicKeys;
+        topicUrgentKeys = r.topicUrgentKeys;
+        topicContents = r.topicContents;
         allTopics = r.allTopics;
+        allTopicIndexes = r.allTopicIndexes;
+        random = new Random();
     }
 
     @Override
@@ -96,22 +121,21 @@ public class ChitChatDE implements RoutingDecisionEngine, TranscientEngine {
 
         // ketika transcient masih kosong maka perlu diisi dulu
         ChitChatDE de = getOtherDecisionEngine(peer);
-        if (this.transcient.isEmpty()) {
-            System.out.println("first");
-            for (String i : allTopics) {
-                if (thisHost.getSocialProfile().contains(i)) {
-                    this.transcient.put(i, 0.5);
+        if (InterestRegistry.isEmpty(this.transcient)) {
+            for (int i : allTopicIndexes) {
+                if (InterestRegistry.hasInterest(thisHost, i)) {
+                    this.transcient[i] = 0.5;
                 } else {
-                    this.transcient.put(i, 0.0);
+                    this.transcient[i] = 0.0;
                 }
             }
         }
-        if (de.transcient.isEmpty()) {
-            for (String i : allTopics) {
-                if (peer.getSocialProfile().contains(i)) {
-                    de.transcient.put(i, 0.5);
+        if (InterestRegistry.isEmpty(de.transcient)) {
+            for (int i : allTopicIndexes) {
+                if (InterestRegistry.hasInterest(peer, i)) {
+                    de.transcient[i] = 0.5;
                 } else {
-                    de.transcient.put(i, 0.0);
+                    de.transcient[i] = 0.0;
                 }
             }
         }
@@ -123,18 +147,13 @@ public class ChitChatDE implements RoutingDecisionEngine, TranscientEngine {
         double etime = SimClock.getTime();
 
         ChitChatDE de = this.getOtherDecisionEngine(peer);
-        System.out.println(de.transcient);
-        for (Map.Entry<String, Double> entry : de.transcient.entrySet()) {
-            System.out.println("Interest: " + entry.getKey() + " trs: " + entry.getValue());
-            if (entry.getValue() > 0.0) {
-                String interest = entry.getKey();
-                connHistoryT.put(interest, etime);
+        for (int interest = 0; interest < InterestRegistry.size(); interest++) {
+            if (de.transcient[interest] > 0.0) {
+                connHistoryT[interest] = etime;
             }
         }
-        System.out.println("conhisT --> " + connHistoryT);
 
         connHistoryN.put(peer, etime);
-        System.out.println("conhisN --> " + connHistoryN);
 
         // Find or create the connection history list
         startTimestamps.remove(peer);
@@ -157,9 +176,12 @@ public class ChitChatDE implements RoutingDecisionEngine, TranscientEngine {
         this.connections = myHost.getConnections();
 
         //menghitung decay sebelumnya
-        for (String interest : this.transcient.keySet()) {
+        for (int interest = 0; interest < InterestRegistry.size(); interest++) {
+            if (Double.isNaN(this.transcient[interest])) {
+                continue;
+            }
             double trsNew = this.countTrsDecay(myHost, peer, interest);
-            this.transcient.put(interest, trsNew);
+            this.transcient[interest] = trsNew;
         }
 
     }
@@ -168,30 +190,16 @@ public class ChitChatDE implements RoutingDecisionEngine, TranscientEngine {
         String randomKey;
         String randomContent;
 
-        Set<String> keys;
-        Set<String> randomValue;
-
-        Random random = new Random();
-
+        String[] keys;
         if (code.equalsIgnoreCase("M")) {
-            keys = topics.keySet();
+            keys = topicKeys;
         } else {
-            keys = topicsUrgent.keySet();
+            keys = topicUrgentKeys;
         }
+        randomKey = keys[random.nextInt(keys.length)];
 
-        String[] stringArray = keys.toArray(new String[keys.size()]);
-        int randomIndex = random.nextInt(stringArray.length);
-        randomKey = stringArray[randomIndex];
-
-        if (code.equalsIgnoreCase("M")) {
-            randomValue = topics.get(randomKey);
-        } else {
-            randomValue = topicsUrgent.get(randomKey);
-        }
-
-        String[] array = randomValue.toArray(new String[randomValue.size()]);
-        int randomIndexValue = random.nextInt(array.length);
-        randomContent = array[randomIndexValue];
+        String[] contents = topicContents.get(randomKey);
+        randomContent = contents[random.nextInt(contents.length)];
 
         Tuple<String, String> content = new Tuple<String, String>(randomKey, randomContent);
         return content;
@@ -204,7 +212,7 @@ public class ChitChatDE implements RoutingDecisionEngine, TranscientEngine {
         double x = m.getFrom().getLocation().getX();
         double y = m.getFrom().getLocation().getY();
         Tuple<Double, Double> location = new Tuple<Double, Double>(x, y);
-        m.addProperty(LOC_GEN, location);
+        m.setObjectProperty(LOC_GEN_SLOT, location);
 
         //add propoerty for interest
         Tuple<String, String> topic;
@@ -213,7 +221,8 @@ public class ChitChatDE implements RoutingDecisionEngine, TranscientEngine {
         } else {
             topic = setRandomContent("S");
         }
-        m.addProperty(M_TOPIC, topic);
+        m.setObjectProperty(TOPIC_SLOT, topic);
+        m.setIntProperty(INTEREST_SLOT, InterestRegistry.indexOf(topic.getKey()));
 
         return true;
     }
@@ -236,9 +245,12 @@ public class ChitChatDE implements RoutingDecisionEngine, TranscientEngine {
     public boolean shouldSendMessageToHost(Message m, DTNHost otherHost, DTNHost thisHost) {
 
         //menghitung grow tepat sebelum ngirim aja, karena diperlukan untuk forwarding
-        for (String interest : this.transcient.keySet()) {
+        for (int interest = 0; interest < InterestRegistry.size(); interest++) {
+            if (Double.isNaN(this.transcient[interest])) {
+                continue;
+            }
             double trsNew = this.countTrsGrowth(thisHost, otherHost, interest);
-            this.transcient.put(interest, trsNew);
+            this.transcient[interest] = trsNew;
         }
 
         if (m.getTo() == otherHost) {
@@ -280,39 +292,34 @@ public class ChitChatDE implements RoutingDecisionEngine, TranscientEngine {
         return false;
     }
 
-    private double countTrsDecay(DTNHost myHost, DTNHost peer, String interest) {
+    private double countTrsDecay(DTNHost myHost, DTNHost peer, int interest) {
         double beta = 20; //bebas dicari yang paling bagus
-        double trs = this.transcient.get(interest);
+        double trs = this.transcient[interest];
         double trsNew;
 
         double stime1;
-        if (connHistoryT.containsKey(interest)) {
-            stime1 = connHistoryT.get(interest);
+        if (!Double.isNaN(connHistoryT[interest])) {
+            stime1 = connHistoryT[interest];
         } else {
             stime1 = 0;
         }
-        System.out.println("conhis --> " + connHistoryT + " interest: " + interest + " Time1: " + stime1);
         double stime2 = startTimestamps.get(peer);
 
-        if (myHost.getSocialProfile().contains(interest)) {
+        if (InterestRegistry.hasInterest(myHost, interest)) {
             trsNew = (trs - 0.5) / beta * (stime2 - stime1) + 0.5;
-            System.out.println("up");
         } else {
             trsNew = trs / beta * (stime2 - stime1);
-            System.out.println("down");
         }
 
-        System.out.println("Decay --> Trs " + trs + " Time1 " + stime1 + " Time2 " + stime2 + " New " + trsNew);
         return trsNew;
     }
 
-    private double countTrsGrowth(DTNHost myHost, DTNHost peer, String interest) {
-        double trs = this.transcient.get(interest);
+    private double countTrsGrowth(DTNHost myHost, DTNHost peer, int interest) {
+        double trs = this.transcient[interest];
 
         double delta = countDelta(myHost, peer, interest);
 
         double trsNew = trs + delta;
-        System.out.println("Growth --> Trs " + trs + " Delta " + delta + " New " + trsNew);
 
         if (trsNew >= 1) {
             return 1;
@@ -321,7 +328,7 @@ public class ChitChatDE implements RoutingDecisionEngine, TranscientEngine {
         }
     }
 
-    private double countDelta(DTNHost myHost, DTNHost peer, String interest) {
+    private double countDelta(DTNHost myHost, DTNHost peer, int interest) {
         double delta = 0.0;
 
         int damper;
@@ -333,23 +340,23 @@ public class ChitChatDE implements RoutingDecisionEngine, TranscientEngine {
             Connection c = i.next();
             de = this.getOtherDecisionEngine(c.getOtherNode(myHost));
 
-            if (myHost.getSocialProfile().contains(interest)
-                    && peer.getSocialProfile().contains(interest)) {
+            if (InterestRegistry.hasInterest(myHost, interest)
+                    && InterestRegistry.hasInterest(peer, interest)) {
                 damper = 1;
-            } else if (myHost.getSocialProfile().contains(interest)
-                    && !peer.getSocialProfile().contains(interest)) {
+            } else if (InterestRegistry.hasInterest(myHost, interest)
+                    && !InterestRegistry.hasInterest(peer, interest)) {
                 damper = 2;
-            } else if (!myHost.getSocialProfile().contains(interest)
-                    && peer.getSocialProfile().contains(interest)) {
+            } else if (!InterestRegistry.hasInterest(myHost, interest)
+                    && InterestRegistry.hasInterest(peer, interest)) {
                 damper = 3;
-            } else if (!myHost.getSocialProfile().contains(interest)
-                    && !peer.getSocialProfile().contains(interest)) {
+            } else if (!InterestRegistry.hasInterest(myHost, interest)
+                    && !InterestRegistry.hasInterest(peer, interest)) {
                 damper = 4;
-            } else if (peer.getSocialProfile().contains(interest)
-                    && this.transcient.get(interest) > de.transcient.get(interest)) {
+            } else if (InterestRegistry.hasInterest(peer, interest)
+                    && this.transcient[interest] > de.transcient[interest]) {
                 damper = 5;
-            } else if (!myHost.getSocialProfile().contains(interest)
-                    && this.transcient.containsKey(interest)) {
+            } else if (!InterestRegistry.hasInterest(myHost, interest)
+                    && !Double.isNaN(this.transcient[interest])) {
                 damper = 6;
             } else {
                 damper = 0;
@@ -358,8 +365,8 @@ public class ChitChatDE implements RoutingDecisionEngine, TranscientEngine {
             double stime1 = timeStart;
 
             double trs;
-            if (de.transcient.containsKey(interest)) {
-                trs = de.transcient.get(interest);
+            if (!Double.isNaN(de.transcient[interest])) {
+                trs = de.transcient[interest];
             } else {
                 trs = 0;
             }
@@ -368,7 +375,6 @@ public class ChitChatDE implements RoutingDecisionEngine, TranscientEngine {
             double count = trs * (stime2 - stime1) / damper;
             delta = delta + count;
 
-            System.out.println("Delta --> Trs " + trs + " Time1 " + stime1 + " Time2 " + stime2 + " Damper " + damper + " Delta " + delta);
         }
 
         return delta;
@@ -389,6 +395,6 @@ public class ChitChatDE implements RoutingDecisionEngine, TranscientEngine {
 
     @Override
     public Map<String, Double> getTranscient() {
-        return this.transcient;
+        return InterestRegistry.toMap(this.transcient);
     }
 }
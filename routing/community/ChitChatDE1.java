@@ -32,18 +32,23 @@ import routing.RoutingDecisionEngine;
 public class ChitChatDE1 implements RoutingDecisionEngine {
 
     protected Map<DTNHost, Double> startTimestamps;
-    protected Map<String, Double> connHistoryT; // save endtime with interest
+    protected double[] connHistoryT; // save endtime with interest
     protected Map<DTNHost, Double> connHistoryN; // save endtime with node
-    protected Map<String, Double> transcient;
+    protected double[] transcient; // by interest index, see InterestRegistry
     protected List<Connection> connections;
 
-    private String LOC_GEN = "Message Location Generated";
-    private String M_TOPIC = "Message Topic";
+    private static final int LOC_GEN_SLOT = Message.registerObjectProperty("Message Location Generated");
+    private static final int TOPIC_SLOT = Message.registerObjectProperty("Message Topic");
+    private static final int INTEREST_SLOT = Message.registerIntProperty("Message Interest");
 
     public static String randomContentSocial;
     public static String randomContentNonSocial;
     protected Map<String, Set<String>> topics;
     protected Map<String, Set<String>> topicsUrgent;
+    protected String[] topicKeys;
+    protected String[] topicUrgentKeys;
+    protected Map<String, String[]> topicContents;
+    private Random random;
 
     public ChitChatDE1(Settings s) {
         topics = new HashMap<String, Set<String>>();
@@ -55,6 +60,16 @@ public class ChitChatDE1 implements RoutingDecisionEngine {
 
         topicsUrgent = new HashMap<>();
         topicsUrgent.put("Urgent", new HashSet<>(Arrays.asList("Fire", "Fainting", "Chaos", "Crime", "Terrorism")));
+
+        topicKeys = topics.keySet().toArray(new String[0]);
+        topicUrgentKeys = topicsUrgent.keySet().toArray(new String[0]);
+        topicContents = new HashMap<String, String[]>();
+        for (Map.Entry<String, Set<String>> e : topics.entrySet()) {
+            topicContents.put(e.getKey(), e.getValue().toArray(new String[0]));
+        }
+        for (Map.Entry<String, Set<String>> e : topicsUrgent.entrySet()) {
+            topicContents.put(e.getKey(), e.getValue().toArray(new String[0]));
+        }
     }
 
     /**
@@ -64,14 +79,18 @@ public class ChitChatDE1 implements RoutingDecisionEngine {
      */
     protected ChitChatDE1(ChitChatDE1 r) {
         startTimestamps = new HashMap<DTNHost, Double>();
-        connHistoryT = new HashMap<String, Double>();
+        connHistoryT = InterestRegistry.newValues();
         connHistoryN = new HashMap<DTNHost, Double>();
-        this.transcient = new HashMap<String, Double>();
+        this.transcient = InterestRegistry.newValues();
         connections = new LinkedList<Connection>();
         randomContentSocial = r.randomContentSocial;
         randomContentNonSocial = r.randomContentNonSocial;
         topics = r.topics;
         topicsUrgent = r.topicsUrgent;
+        topicKeys = r.topicKeys;
+        topicUrgentKeys = r.topicUrgentKeys;
+        topicContents = r.topicContents;
+        random = new Random();
     }
 
     @Override
@@ -83,14 +102,14 @@ public class ChitChatDE1 implements RoutingDecisionEngine {
     public void connectionUp(DTNHost thisHost, DTNHost peer) {
         // ketika transcient masih kosong maka perlu diisi dulu
         ChitChatDE1 de = getOtherDecisionEngine(peer);
-        if (this.transcient.isEmpty()) {
+        if (InterestRegistry.isEmpty(this.transcient)) {
             for (String i : thisHost.getSocialProfile()) {
-                this.transcient.put(i, 0.5);
+                this.transcient[InterestRegistry.indexOf(i)] = 0.5;
             }
         }
-        if (de.transcient.isEmpty()) {
+        if (InterestRegistry.isEmpty(de.transcient)) {
             for (String i : peer.getSocialProfile()) {
-                de.transcient.put(i, 0.5);
+                de.transcient[InterestRegistry.indexOf(i)] = 0.5;
             }
         }
     }
@@ -100,10 +119,9 @@ public class ChitChatDE1 implements RoutingDecisionEngine {
         double etime = SimClock.getTime();
 
         ChitChatDE1 de = this.getOtherDecisionEngine(peer);
-        for (Map.Entry<String, Double> entry : de.transcient.entrySet()) {
-            if (entry.getValue() > 0.0) {
-                String interest = entry.getKey();
-                connHistoryT.put(interest, etime);
+        for (int interest = 0; interest < InterestRegistry.size(); interest++) {
+            if (de.transcient[interest] > 0.0) {
+                connHistoryT[interest] = etime;
             }
         }
 
@@ -123,17 +141,21 @@ public class ChitChatDE1 implements RoutingDecisionEngine {
 
         this.connections = myHost.getConnections();
 
-        for (String interest : this.transcient.keySet()) {
+        for (int interest = 0; interest < InterestRegistry.size(); interest++) {
+            if (Double.isNaN(this.transcient[interest])) {
+                continue;
+            }
             this.countTrsDecay(myHost, peer, interest);
         }
-        System.out.println(transcient);
 //        for (String interest : de.transcient.keySet()) {
 //            de.countTrsDecay(peer, myHost, interest);
 //        }
-        for (String interest : this.transcient.keySet()) {
+        for (int interest = 0; interest < InterestRegistry.size(); interest++) {
+            if (Double.isNaN(this.transcient[interest])) {
+                continue;
+            }
             this.countTrsGrowth(myHost, peer, interest);
         }
-        System.out.println(transcient);
 //        for (String interest : de.transcient.keySet()) {
 //            de.countTrsGrowth(peer, myHost, interest);
 //        }
@@ -145,30 +167,16 @@ public class ChitChatDE1 implements RoutingDecisionEngine {
         String randomKey;
         String randomContent;
 
-        Set<String> keys;
-        Set<String> randomValue;
-
-        Random random = new Random();
-
-        if (code.equalsIgnoreCase("M")) {
-            keys = topics.keySet();
-        } else {
-            keys = topicsUrgent.keySet();
-        }
-
-        String[] stringArray = keys.toArray(new String[keys.size()]);
-        int randomIndex = random.nextInt(stringArray.length);
-        randomKey = stringArray[randomIndex];
-
+        String[] keys;
         if (code.equalsIgnoreCase("M")) {
-            randomValue = topics.get(randomKey);
+            keys = topicKeys;
         } else {
-            randomValue = topicsUrgent.get(randomKey);
+            keys = topicUrgentKeys;
         }
+        randomKey = keys[random.nextInt(keys.length)];
 
-        String[] array = randomValue.toArray(new String[randomValue.size()]);
-        int randomIndexValue = random.nextInt(array.length);
-        randomContent = array[randomIndexValue];
+        String[] contents = topicContents.get(randomKey);
+        randomContent = contents[random.nextInt(contents.length)];
 
         Tuple<String, String> content = new Tuple<String, String>(randomKey, randomContent);
         return content;
@@ -181,7 +189,7 @@ public class ChitChatDE1 implements RoutingDecisionEngine {
         double x = m.getFrom().getLocation().getX();
         double y = m.getFrom().getLocation().getY();
         Tuple<Double, Double> location = new Tuple<Double, Double>(x, y);
-        m.addProperty(LOC_GEN, location);
+        m.setObjectProperty(LOC_GEN_SLOT, location);
 
         //add propoerty for interest
         Tuple<String, String> topic;
@@ -190,7 +198,8 @@ public class ChitChatDE1 implements RoutingDecisionEngine {
         } else {
             topic = setRandomContent("S");
         }
-        m.addProperty(M_TOPIC, topic);
+        m.setObjectProperty(TOPIC_SLOT, topic);
+        m.setIntProperty(INTEREST_SLOT, InterestRegistry.indexOf(topic.getKey()));
 
         return true;
     }
@@ -251,14 +260,14 @@ public class ChitChatDE1 implements RoutingDecisionEngine {
         return false;
     }
 
-    private double countTrsDecay(DTNHost myHost, DTNHost peer, String interest) {
+    private double countTrsDecay(DTNHost myHost, DTNHost peer, int interest) {
         double beta = 0.7;
-        double trs = this.transcient.get(interest);
+        double trs = this.transcient[interest];
         double trsNew;
 
         double stime1;
-        if (connHistoryT.containsKey(interest)) {
-            stime1 = connHistoryT.get(interest);
+        if (!Double.isNaN(connHistoryT[interest])) {
+            stime1 = connHistoryT[interest];
         } else {
             stime1 = 0;
         }
@@ -267,7 +276,7 @@ public class ChitChatDE1 implements RoutingDecisionEngine {
 //        System.out.println(stime1);
 //        System.out.println(stime2);
 
-        if (myHost.getSocialProfile().contains(interest)) {
+        if (InterestRegistry.hasInterest(myHost, interest)) {
             trsNew = (trs - 0.5) / beta * (stime2 - stime1) + 0.5;
 //            System.out.println("up");
         } else {
@@ -279,8 +288,8 @@ public class ChitChatDE1 implements RoutingDecisionEngine {
         return trsNew;
     }
 
-    private double countTrsGrowth(DTNHost myHost, DTNHost peer, String interest) {
-        double trs = this.transcient.get(interest);
+    private double countTrsGrowth(DTNHost myHost, DTNHost peer, int interest) {
+        double trs = this.transcient[interest];
         
         double delta = countDelta(myHost, peer, interest);
         
@@ -294,7 +303,7 @@ public class ChitChatDE1 implements RoutingDecisionEngine {
         }
     }
 
-    private double countDelta(DTNHost myHost, DTNHost peer, String interest) {
+    private double countDelta(DTNHost myHost, DTNHost peer, int interest) {
         double delta = 0.0;
         Connection c;
         ChitChatDE1 de;
@@ -306,23 +315,23 @@ public class ChitChatDE1 implements RoutingDecisionEngine {
             c = i.next();
             de = this.getOtherDecisionEngine(c.getOtherNode(myHost));
 
-            if (myHost.getSocialProfile().contains(interest)
-                    && c.getOtherNode(myHost).getSocialProfile().contains(interest)) {
+            if (InterestRegistry.hasInterest(myHost, interest)
+                    && InterestRegistry.hasInterest(c.getOtherNode(myHost), interest)) {
                 damper = 1;
-            } else if (myHost.getSocialProfile().contains(interest)
-                    && !c.getOtherNode(myHost).getSocialProfile().contains(interest)) {
+            } else if (InterestRegistry.hasInterest(myHost, interest)
+                    && !InterestRegistry.hasInterest(c.getOtherNode(myHost), interest)) {
                 damper = 2;
-            } else if (!myHost.getSocialProfile().contains(interest)
-                    && c.getOtherNode(myHost).getSocialProfile().contains(interest)) {
+            } else if (!InterestRegistry.hasInterest(myHost, interest)
+                    && InterestRegistry.hasInterest(c.getOtherNode(myHost), interest)) {
                 damper = 3;
-            } else if (!myHost.getSocialProfile().contains(interest)
-                    && !c.getOtherNode(myHost).getSocialProfile().contains(interest)) {
+            } else if (!InterestRegistry.hasInterest(myHost, interest)
+                    && !InterestRegistry.hasInterest(c.getOtherNode(myHost), interest)) {
                 damper = 4;
-            } else if (c.getOtherNode(myHost).getSocialProfile().contains(interest)
-                    && this.transcient.get(interest) > de.transcient.get(interest)) {
+            } else if (InterestRegistry.hasInterest(c.getOtherNode(myHost), interest)
+                    && this.transcient[interest] > de.transcient[interest]) {
                 damper = 5;
-            } else if (!myHost.getSocialProfile().contains(interest)
-                    && this.transcient.containsKey(interest)) {
+            } else if (!InterestRegistry.hasInterest(myHost, interest)
+                    && !Double.isNaN(this.transcient[interest])) {
                 damper = 6;
             } else {
                 damper = 0;
@@ -335,8 +344,8 @@ public class ChitChatDE1 implements RoutingDecisionEngine {
             } else {
                 stime1 = 0;
             }
-            if (de.transcient.containsKey(interest)) {
-                trs = de.transcient.get(interest);
+            if (!Double.isNaN(de.transcient[interest])) {
+                trs = de.transcient[interest];
             } else {
                 trs = 0;
             }
@@ -32,19 +32,25 @@ import routing.RoutingDecisionEngine;
 public class ChitChatDE2 implements RoutingDecisionEngine {
 
     protected Map<DTNHost, Double> startTimestamps;
-    protected Map<String, Double> connHistoryT; // save endtime with interest
+    protected double[] connHistoryT; // save endtime with interest
     protected Map<DTNHost, Double> connHistoryN; // save endtime with node
-    protected Map<String, Double> transcient;
+    protected double[] transcient; // by interest index, see InterestRegistry
     protected List<Connection> connections;
 
-    private String LOC_GEN = "Message Location Generated";
-    private String M_TOPIC = "Message Topic";
+    private static final int LOC_GEN_SLOT = Message.registerObjectProperty("Message Location Generated");
+    private static final int TOPIC_SLOT = Message.registerObjectProperty("Message Topic");
+    private static final int INTEREST_SLOT = Message.registerIntProperty("Message Interest");
 
     public static String randomContentSocial;
     public static String randomContentNonSocial;
     protected Map<String, Set<String>> topics;
     protected Map<String, Set<String>> topicsUrgent;
+    protected String[] topicKeys;
+    protected String[] topicUrgentKeys;
+    protected Map<String, String[]> topicContents;
+    private Random random;
     protected List<String> allTopics;
+    protected int[] allTopicIndexes;
 
     public ChitChatDE2(Settings s) {
         topics = new HashMap<String, Set<String>>();
@@ -64,6 +70,20 @@ public class ChitChatDE2 implements RoutingDecisionEngine {
         allTopics.add("Traveling");
         allTopics.add("Music");
         allTopics.add("Urgent");
+
+        topicKeys = topics.keySet().toArray(new String[0]);
+        topicUrgentKeys = topicsUrgent.keySet().toArray(new String[0]);
+        topicContents = new HashMap<String, String[]>();
+        for (Map.Entry<String, Set<String>> e : topics.entrySet()) {
+            topicContents.put(e.getKey(), e.getValue().toArray(new String[0]));
+        }
+        for (Map.Entry<String, Set<String>> e : topicsUrgent.entrySet()) {
+            topicContents.put(e.getKey(), e.getValue().toArray(new String[0]));
+        }
+        allTopicIndexes = new int[allTopics.size()];
+        for (int i = 0; i < allTopicIndexes.length; i++) {
+            allTopicIndexes[i] = InterestRegistry.indexOf(allTopics.get(i));
+        }
     }
 
     /**
@@ -73,15 +93,20 @@ public class ChitChatDE2 implements RoutingDecisionEngine {
      */
     protected ChitChatDE2(ChitChatDE2 r) {
         startTimestamps = new HashMap<DTNHost, Double>();
-        connHistoryT = new HashMap<String, Double>();
+        connHistoryT = InterestRegistry.newValues();
         connHistoryN = new HashMap<DTNHost, Double>();
-        this.transcient = new HashMap<String, Double>();
+        this.transcient = InterestRegistry.newValues();
         connections = new LinkedList<Connection>();
         randomContentSocial = r.randomContentSocial;
         randomContentNonSocial = r.randomContentNonSocial;
         topics = r.topics;
         topicsUrgent = r.topicsUrgent;
+        topicKeys = r.topicKeys;
+        topicUrgentKeys = r.topicUrgentKeys;
+        topicContents = r.topicContents;
         allTopics = r.allTopics;
+        allTopicIndexes = r.allTopicIndexes;
+        random = new Random();
     }
 
     @Override
@@ -91,25 +116,23 @@ public class ChitChatDE2 implements RoutingDecisionEngine {
 
     @Override
     public void connectionUp(DTNHost thisHost, DTNHost peer) {
-        System.out.println("Awal "+thisHost+" "+SimClock.getTime());
         // ketika transcient masih kosong maka perlu diisi dulu
         ChitChatDE2 de = getOtherDecisionEngine(peer);
-        if (this.transcient.isEmpty()) {
-            System.out.println("first");
-            for (String i : allTopics) {
-                if (thisHost.getSocialProfile().contains(i)) {
-                    this.transcient.put(i, 0.5);
+        if (InterestRegistry.isEmpty(this.transcient)) {
+            for (int i : allTopicIndexes) {
+                if (InterestRegistry.hasInterest(thisHost, i)) {
+                    this.transcient[i] = 0.5;
                 } else {
-                    this.transcient.put(i, 0.0);
+                    this.transcient[i] = 0.0;
                 }
             }
         }
-        if (de.transcient.isEmpty()) {
-            for (String i : allTopics) {
-                if (peer.getSocialProfile().contains(i)) {
-                    de.transcient.put(i, 0.5);
+        if (InterestRegistry.isEmpty(de.transcient)) {
+            for (int i : allTopicIndexes) {
+                if (InterestRegistry.hasInterest(peer, i)) {
+                    de.transcient[i] = 0.5;
                 } else {
-                    de.transcient.put(i, 0.0);
+                    de.transcient[i] = 0.0;
                 }
             }
         }
@@ -119,20 +142,15 @@ public class ChitChatDE2 implements RoutingDecisionEngine {
     public void connectionDown(DTNHost thisHost, DTNHost peer) {
         
         double etime = SimClock.getTime();
-        System.out.println("End "+thisHost+" "+etime);
 
         ChitChatDE2 de = this.getOtherDecisionEngine(peer);
-        System.out.println(de.transcient);
-        for (Map.Entry<String, Double> entry : de.transcient.entrySet()) {
-            if (entry.getValue() > 0.0) {
-                String interest = entry.getKey();
-                connHistoryT.put(interest, etime);
+        for (int interest = 0; interest < InterestRegistry.size(); interest++) {
+            if (de.transcient[interest] > 0.0) {
+                connHistoryT[interest] = etime;
             }
         }
-        System.out.println(connHistoryT);
 
         connHistoryN.put(peer, etime);
-        System.out.println(connHistoryN);
 
         // Find or create the connection history list
         startTimestamps.remove(peer);
@@ -150,19 +168,23 @@ public class ChitChatDE2 implements RoutingDecisionEngine {
 
         this.connections = myHost.getConnections();
 
-        for (String interest : this.transcient.keySet()) {
+        for (int interest = 0; interest < InterestRegistry.size(); interest++) {
+            if (Double.isNaN(this.transcient[interest])) {
+                continue;
+            }
             double trsNew = this.countTrsDecay(myHost, peer, interest);
-            this.transcient.put(interest, trsNew);
+            this.transcient[interest] = trsNew;
         }
-        System.out.println(transcient);
 //        for (String interest : de.transcient.keySet()) {
 //            de.countTrsDecay(peer, myHost, interest);
 //        }
-        for (String interest : this.transcient.keySet()) {
+        for (int interest = 0; interest < InterestRegistry.size(); interest++) {
+            if (Double.isNaN(this.transcient[interest])) {
+                continue;
+            }
             double trsNew = this.countTrsGrowth(myHost, peer, interest);
-            this.transcient.put(interest, trsNew);
+            this.transcient[interest] = trsNew;
         }
-        System.out.println(transcient);
 //        for (String interest : de.transcient.keySet()) {
 //            de.countTrsGrowth(peer, myHost, interest);
 //        }
@@ -174,30 +196,16 @@ public class ChitChatDE2 implements RoutingDecisionEngine {
         String randomKey;
         String randomContent;
 
-        Set<String> keys;
-        Set<String> randomValue;
-
-        Random random = new Random();
-
-        if (code.equalsIgnoreCase("M")) {
-            keys = topics.keySet();
-        } else {
-            keys = topicsUrgent.keySet();
-        }
-
-        String[] stringArray = keys.toArray(new String[keys.size()]);
-        int randomIndex = random.nextInt(stringArray.length);
-        randomKey = stringArray[randomIndex];
-
+        String[] keys;
         if (code.equalsIgnoreCase("M")) {
-            randomValue = topics.get(randomKey);
+            keys = topicKeys;
         } else {
-            randomValue = topicsUrgent.get(randomKey);
+            keys = topicUrgentKeys;
         }
+        randomKey = keys[random.nextInt(keys.length)];
 
-        String[] array = randomValue.toArray(new String[randomValue.size()]);
-        int randomIndexValue = random.nextInt(array.length);
-        randomContent = array[randomIndexValue];
+        String[] contents = topicContents.get(randomKey);
+        randomContent = contents[random.nextInt(contents.length)];
 
         Tuple<String, String> content = new Tuple<String, String>(randomKey, randomContent);
         return content;
@@ -210,7 +218,7 @@ public class ChitChatDE2 implements RoutingDecisionEngine {
         double x = m.getFrom().getLocation().getX();
         double y = m.getFrom().getLocation().getY();
         Tuple<Double, Double> location = new Tuple<Double, Double>(x, y);
-        m.addProperty(LOC_GEN, location);
+        m.setObjectProperty(LOC_GEN_SLOT, location);
 
         //add propoerty for interest
         Tuple<String, String> topic;
@@ -219,7 +227,8 @@ public class ChitChatDE2 implements RoutingDecisionEngine {
         } else {
             topic = setRandomContent("S");
         }
-        m.addProperty(M_TOPIC, topic);
+        m.setObjectProperty(TOPIC_SLOT, topic);
+        m.setIntProperty(INTEREST_SLOT, InterestRegistry.indexOf(topic.getKey()));
 
         return true;
     }
@@ -240,7 +249,6 @@ public class ChitChatDE2 implements RoutingDecisionEngine {
     // kalau otherHost adalah tujuan, pesannya dikirim
     @Override
     public boolean shouldSendMessageToHost(Message m, DTNHost otherHost, DTNHost thisHost) {
-        System.out.println("Send "+thisHost+" "+SimClock.getTime());
 //        System.out.println("Mau sent. ID "+m.getId()+" | LOC "+m.getProperty(LOC_GEN));
         if (m.getTo() == otherHost) {
             return true;
@@ -281,14 +289,14 @@ public class ChitChatDE2 implements RoutingDecisionEngine {
         return false;
     }
 
-    private double countTrsDecay(DTNHost myHost, DTNHost peer, String interest) {
+    private double countTrsDecay(DTNHost myHost, DTNHost peer, int interest) {
         double beta = 1.2;
-        double trs = this.transcient.get(interest);
+        double trs = this.transcient[interest];
         double trsNew;
 
         double stime1;
-        if (connHistoryT.containsKey(interest)) {
-            stime1 = connHistoryT.get(interest);
+        if (!Double.isNaN(connHistoryT[interest])) {
+            stime1 = connHistoryT[interest];
         } else {
             stime1 = 0;
         }
@@ -297,25 +305,21 @@ public class ChitChatDE2 implements RoutingDecisionEngine {
 //        System.out.println(stime1);
 //        System.out.println(stime2);
 
-        if (myHost.getSocialProfile().contains(interest)) {
+        if (InterestRegistry.hasInterest(myHost, interest)) {
             trsNew = (trs - 0.5) / beta * (stime2 - stime1) + 0.5;
-            System.out.println("up");
         } else {
             trsNew = trs / beta * (stime2 - stime1);
-            System.out.println("down");
         }
 
-        System.out.println("Trs "+trs+" Time1 "+stime1+" Time2 "+stime2+" Decay "+trsNew);
         return trsNew;
     }
 
-    private double countTrsGrowth(DTNHost myHost, DTNHost peer, String interest) {
-        double trs = this.transcient.get(interest);
+    private double countTrsGrowth(DTNHost myHost, DTNHost peer, int interest) {
+        double trs = this.transcient[interest];
 
         double delta = countDelta(myHost, peer, interest);
 
         double trsNew = trs + delta;
-        System.out.println("TRS "+trs+" Delta "+delta+" Growth "+trsNew);
 
         if (trsNew >= 1) {
             return 1;
@@ -324,30 +328,30 @@ public class ChitChatDE2 implements RoutingDecisionEngine {
         }
     }
 
-    private double countDelta(DTNHost myHost, DTNHost peer, String interest) {
+    private double countDelta(DTNHost myHost, DTNHost peer, int interest) {
         double delta = 0.0;
 
         int damper;
 
         ChitChatDE2 de = this.getOtherDecisionEngine(peer);
 
-        if (myHost.getSocialProfile().contains(interest)
-                && peer.getSocialProfile().contains(interest)) {
+        if (InterestRegistry.hasInterest(myHost, interest)
+                && InterestRegistry.hasInterest(peer, interest)) {
             damper = 1;
-        } else if (myHost.getSocialProfile().contains(interest)
-                && !peer.getSocialProfile().contains(interest)) {
+        } else if (InterestRegistry.hasInterest(myHost, interest)
+                && !InterestRegistry.hasInterest(peer, interest)) {
             damper = 2;
-        } else if (!myHost.getSocialProfile().contains(interest)
-                && peer.getSocialProfile().contains(interest)) {
+        } else if (!InterestRegistry.hasInterest(myHost, interest)
+                && InterestRegistry.hasInterest(peer, interest)) {
             damper = 3;
-        } else if (!myHost.getSocialProfile().contains(interest)
-                && !peer.getSocialProfile().contains(interest)) {
+        } else if (!InterestRegistry.hasInterest(myHost, interest)
+                && !InterestRegistry.hasInterest(peer, interest)) {
             damper = 4;
-        } else if (peer.getSocialProfile().contains(interest)
-                && this.transcient.get(interest) > de.transcient.get(interest)) {
+        } else if (InterestRegistry.hasInterest(peer, interest)
+                && this.transcient[interest] > de.transcient[interest]) {
             damper = 5;
-        } else if (!myHost.getSocialProfile().contains(interest)
-                && this.transcient.containsKey(interest)) {
+        } else if (!InterestRegistry.hasInterest(myHost, interest)
+                && !Double.isNaN(this.transcient[interest])) {
             damper = 6;
         } else {
             damper = 0;
@@ -360,15 +364,14 @@ public class ChitChatDE2 implements RoutingDecisionEngine {
             stime1 = 0;
         }
         double trs;
-        if (de.transcient.containsKey(interest)) {
-            trs = de.transcient.get(interest);
+        if (!Double.isNaN(de.transcient[interest])) {
+            trs = de.transcient[interest];
         } else {
             trs = 0;
         }
         double stime2 = startTimestamps.get(peer);
 
         delta = trs * (stime2 - stime1) / damper;
-        System.out.println("Trs "+trs+" Time1 "+stime1+" Time2 "+stime2+" Damper "+damper+" Delta "+delta);
         
         return delta;
     }
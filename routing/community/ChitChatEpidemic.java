@@ -1,28 +1,28 @@
 package routing.community;
 
 import core.*;
-import java.text.DecimalFormat;
 import java.util.*;
 import routing.DecisionEngineRouter;
 import routing.MessageRouter;
 import routing.RoutingDecisionEngine;
+import routing.ScheduledUpdateEngine;
 
 /**
  *
  * @author Andre
  */
-public class ChitChatEpidemic implements RoutingDecisionEngine, TranscientEngine {
+public class ChitChatEpidemic implements RoutingDecisionEngine, TranscientEngine, ScheduledUpdateEngine {
 
     protected Map<DTNHost, Double> startTimestamps;
-    protected Map<String, Double> connHistoryT; // save endtime with interest
+    protected double[] connHistoryT; // save endtime with interest
     protected Map<DTNHost, Double> connHistoryN; // save endtime with node
-    protected Map<String, Double> transcient;
+    protected double[] transcient; // by interest index, see InterestRegistry
     protected List<Connection> connections;
 
     public static final String ChitChatEpidemic = "ChitChatEpidemic";
-    private String LOC_GEN = "Message Location Generated";
-    private String M_TOPIC = "Message Topic";
-    private String PRIORITY = "Priority";
+    private static final int LOC_GEN_SLOT = Message.registerObjectProperty("Message Location Generated");
+    private static final int TOPIC_SLOT = Message.registerObjectProperty("Message Topic");
+    private static final int INTEREST_SLOT = Message.registerIntProperty("Message Interest");
 
     protected double timeStart;
 
@@ -30,17 +30,22 @@ public class ChitChatEpidemic implements RoutingDecisionEngine, TranscientEngine
     public static String randomContentNonSocial;
     protected Map<String, Set<String>> topics;
     protected Map<String, Set<String>> topicsUrgent;
+    protected String[] topicKeys;
+    protected String[] topicUrgentKeys;
+    protected Map<String, String[]> topicContents;
+    private Random random;
     private double lastCheck;
     private static int LIMIT_TW = 300;
     private Map<DTNHost, Tuple<String, List<Integer>>> idf;
     protected List<String> allTopics;
+    protected int[] allTopicIndexes;
 
     public ChitChatEpidemic(Settings s) {
 
         startTimestamps = new HashMap<DTNHost, Double>();
-        connHistoryT = new HashMap<String, Double>();
+        connHistoryT = InterestRegistry.newValues();
         connHistoryN = new HashMap<DTNHost, Double>();
-        this.transcient = new HashMap<String, Double>();
+        this.transcient = InterestRegistry.newValues();
         connections = new LinkedList<Connection>();
 
         topics = new HashMap<String, Set<String>>();
@@ -62,6 +67,20 @@ public class ChitChatEpidemic implements RoutingDecisionEngine, TranscientEngine
         allTopics.add("Traveling");
         allTopics.add("Music");
         allTopics.add("Urgent");
+
+        topicKeys = topics.keySet().toArray(new String[0]);
+        topicUrgentKeys = topicsUrgent.keySet().toArray(new String[0]);
+        topicContents = new HashMap<String, String[]>();
+        for (Map.Entry<String, Set<String>> e : topics.entrySet()) {
+            topicContents.put(e.getKey(), e.getValue().toArray(new String[0]));
+        }
+        for (Map.Entry<String, Set<String>> e : topicsUrgent.entrySet()) {
+            topicContents.put(e.getKey(), e.getValue().toArray(new String[0]));
+        }
+        allTopicIndexes = new int[allTopics.size()];
+        for (int i = 0; i < allTopicIndexes.length; i++) {
+            allTopicIndexes[i] = InterestRegistry.indexOf(allTopics.get(i));
+        }
     }
 
     /**
@@ -73,35 +92,38 @@ public class ChitChatEpidemic implements RoutingDecisionEngine, TranscientEngine
         this.startTimestamps = r.startTimestamps;
         this.connHistoryT = r.connHistoryT;
         this.connHistoryN = r.connHistoryN;
-        this.transcient = r.transcient;
+        this.transcient = InterestRegistry.newValues();
         this.connections = r.connections;
 
         this.topics = r.topics;
         this.topicsUrgent = r.topicsUrgent;
+        this.topicKeys = r.topicKeys;
+        this.topicUrgentKeys = r.topicUrgentKeys;
+        this.topicContents = r.topicContents;
         this.idf = r.idf;
         this.allTopics = r.allTopics;
+        this.allTopicIndexes = r.allTopicIndexes;
+        this.random = new Random();
     }
 
     @Override
     public void connectionUp(DTNHost thisHost, DTNHost peer) {
         // ketika transcient masih kosong maka perlu diisi dulu
         ChitChatEpidemic de = getOtherDecisionEngine(peer);
-        if (this.transcient.isEmpty()) {
-            for (String i : allTopics) {
-                if (thisHost.getSocialProfile().contains(i)) {
-                    this.transcient.put(i, 0.5);
-                } else {
-                    this.transcient.put(i, 0.0);
-                }
-            }
+        if (InterestRegistry.isEmpty(this.transcient)) {
+            this.initTranscient(thisHost);
         }
-        if (de.transcient.isEmpty()) {
-            for (String i : allTopics) {
-                if (peer.getSocialProfile().contains(i)) {
-                    de.transcient.put(i, 0.5);
-                } else {
-                    de.transcient.put(i, 0.0);
-                }
+        if (InterestRegistry.isEmpty(de.transcient)) {
+            de.initTranscient(peer);
+        }
+    }
+
+    private void initTranscient(DTNHost host) {
+        for (int i : allTopicIndexes) {
+            if (InterestRegistry.hasInterest(host, i)) {
+                this.transcient[i] = 0.5;
+            } else {
+                this.transcient[i] = 0.0;
             }
         }
     }
@@ -110,11 +132,10 @@ public class ChitChatEpidemic implements RoutingDecisionEngine, TranscientEngine
     public void connectionDown(DTNHost thisHost, DTNHost peer) {
         double etime = SimClock.getTime();
         ChitChatEpidemic de = this.getOtherDecisionEngine(peer);
-        for (Map.Entry<String, Double> entry : de.transcient.entrySet()) {
-//            System.out.println("Interest: " + entry.getKey() + " trs: " + entry.getValue());
-            if (entry.getValue() > 0.0) {
-                String interest = entry.getKey();
-                connHistoryT.put(interest, etime);
+        for (int interest = 0; interest < InterestRegistry.size(); interest++) {
+//            System.out.println("Interest: " + InterestRegistry.getInterest(interest) + " trs: " + de.transcient[interest]);
+            if (de.transcient[interest] > 0.0) {
+                connHistoryT[interest] = etime;
             }
         }
 
@@ -141,14 +162,13 @@ public class ChitChatEpidemic implements RoutingDecisionEngine, TranscientEngine
         this.connections = myHost.getConnections();
 
         //menghitung decay sebelumnya
-        for (String interest : this.transcient.keySet()) {
-            double trsNew = this.countTrsDecay(myHost, peer, interest);
-            this.transcient.put(interest, trsNew);
-        }
-
-        for (String interest : de.transcient.keySet()) {
-            double trsNew = de.countTrsDecay(peer, myHost, interest);
-            de.transcient.put(interest, trsNew);
+        for (int interest = 0; interest < InterestRegistry.size(); interest++) {
+            if (!Double.isNaN(this.transcient[interest])) {
+                this.transcient[interest] = this.countTrsDecay(myHost, peer, interest);
+            }
+            if (!Double.isNaN(de.transcient[interest])) {
+                de.transcient[interest] = de.countTrsDecay(peer, myHost, interest);
+            }
         }
 
     }
@@ -157,30 +177,16 @@ public class ChitChatEpidemic implements RoutingDecisionEngine, TranscientEngine
         String randomKey;
         String randomContent;
 
-        Set<String> keys;
-        Set<String> randomValue;
-
-        Random random = new Random();
-
-        if (code.equalsIgnoreCase("M")) {
-            keys = topics.keySet();
-        } else {
-            keys = topicsUrgent.keySet();
-        }
-
-        String[] stringArray = keys.toArray(new String[keys.size()]);
-        int randomIndex = random.nextInt(stringArray.length);
-        randomKey = stringArray[randomIndex];
-
+        String[] keys;
         if (code.equalsIgnoreCase("M")) {
-            randomValue = topics.get(randomKey);
+            keys = topicKeys;
         } else {
-            randomValue = topicsUrgent.get(randomKey);
+            keys = topicUrgentKeys;
         }
+        randomKey = keys[random.nextInt(keys.length)];
 
-        String[] array = randomValue.toArray(new String[randomValue.size()]);
-        int randomIndexValue = random.nextInt(array.length);
-        randomContent = array[randomIndexValue];
+        String[] contents = topicContents.get(randomKey);
+        randomContent = contents[random.nextInt(contents.length)];
 
         Tuple<String, String> content = new Tuple<String, String>(randomKey, randomContent);
         return content;
@@ -190,15 +196,14 @@ public class ChitChatEpidemic implements RoutingDecisionEngine, TranscientEngine
     @Override
     public boolean newMessage(Message m) {
         //add property for message priority
-        m.addProperty(PRIORITY, 0);
-        //add property for message generated location
+        m.setIntProperty(MessageRouter.PRIORITY_SLOT, 0);
+        //add property for message generated location (4 decimals)
         double x = m.getFrom().getLocation().getX();
         double y = m.getFrom().getLocation().getY();
-        DecimalFormat df = new DecimalFormat("#.####");
-        double hasilX = Double.parseDouble(df.format(x));
-        double hasilY = Double.parseDouble(df.format(y));
+        double hasilX = Math.round(x * 10000) / 10000.0;
+        double hasilY = Math.round(y * 10000) / 10000.0;
         Tuple<Double, Double> location = new Tuple<>(hasilX, hasilY);
-        m.addProperty(LOC_GEN, location);
+        m.setObjectProperty(LOC_GEN_SLOT, location);
 
         //add propoerty for interest
         Tuple<String, String> topic;
@@ -207,7 +212,8 @@ public class ChitChatEpidemic implements RoutingDecisionEngine, TranscientEngine
         } else {
             topic = setRandomContent("S");
         }
-        m.addProperty(M_TOPIC, topic);
+        m.setObjectProperty(TOPIC_SLOT, topic);
+        m.setIntProperty(INTEREST_SLOT, InterestRegistry.indexOf(topic.getKey()));
 
         return true;
     }
@@ -242,20 +248,20 @@ public class ChitChatEpidemic implements RoutingDecisionEngine, TranscientEngine
         return false;
     }
 
-    private double countTrsDecay(DTNHost myHost, DTNHost peer, String interest) {
+    private double countTrsDecay(DTNHost myHost, DTNHost peer, int interest) {
         double beta = 20; //bebas dicari yang paling bagus
-        double trs = this.transcient.get(interest);
+        double trs = this.transcient[interest];
         double trsNew;
 
         double stime1;
-        if (connHistoryT.containsKey(interest)) {
-            stime1 = connHistoryT.get(interest);
+        if (!Double.isNaN(connHistoryT[interest])) {
+            stime1 = connHistoryT[interest];
         } else {
             stime1 = 0;
         }
         double stime2 = startTimestamps.get(peer);
 
-        if (myHost.getSocialProfile().contains(interest)) {
+        if (InterestRegistry.hasInterest(myHost, interest)) {
             trsNew = (trs - 0.5) / beta * (stime2 - stime1) + 0.5;
         } else {
             trsNew = trs / beta * (stime2 - stime1);
@@ -264,8 +270,8 @@ public class ChitChatEpidemic implements RoutingDecisionEngine, TranscientEngine
         return trsNew;
     }
 
-    private double countTrsGrowth(DTNHost myHost, DTNHost peer, String interest) {
-        double trs = this.transcient.get(interest);
+    private double countTrsGrowth(DTNHost myHost, DTNHost peer, int interest) {
+        double trs = this.transcient[interest];
 
         double delta = countDelta(myHost, peer, interest);
 
@@ -278,10 +284,12 @@ public class ChitChatEpidemic implements RoutingDecisionEngine, TranscientEngine
         }
     }
 
-    private double countDelta(DTNHost myHost, DTNHost peer, String interest) {
+    private double countDelta(DTNHost myHost, DTNHost peer, int interest) {
         double delta = 0.0;
 
         int damper;
+        boolean myInterest = InterestRegistry.hasInterest(myHost, interest);
+        boolean peerInterest = InterestRegistry.hasInterest(peer, interest);
 
         ChitChatEpidemic de;
 
@@ -290,23 +298,19 @@ public class ChitChatEpidemic implements RoutingDecisionEngine, TranscientEngine
             Connection c = i.next();
             de = this.getOtherDecisionEngine(c.getOtherNode(myHost));
 
-            if (myHost.getSocialProfile().contains(interest)
-                    && peer.getSocialProfile().contains(interest)) {
+            if (myInterest && peerInterest) {
                 damper = 1;
-            } else if (myHost.getSocialProfile().contains(interest)
-                    && !peer.getSocialProfile().contains(interest)) {
+            } else if (myInterest && !peerInterest) {
                 damper = 2;
-            } else if (!myHost.getSocialProfile().contains(interest)
-                    && peer.getSocialProfile().contains(interest)) {
+            } else if (!myInterest && peerInterest) {
                 damper = 3;
-            } else if (!myHost.getSocialProfile().contains(interest)
-                    && !peer.getSocialProfile().contains(interest)) {
+            } else if (!myInterest && !peerInterest) {
                 damper = 4;
-            } else if (peer.getSocialProfile().contains(interest)
-                    && this.transcient.get(interest) > de.transcient.get(interest)) {
+            } else if (peerInterest
+                    && this.transcient[interest] > de.transcient[interest]) {
                 damper = 5;
-            } else if (!myHost.getSocialProfile().contains(interest)
-                    && this.transcient.containsKey(interest)) {
+            } else if (!myInterest
+                    && !Double.isNaN(this.transcient[interest])) {
                 damper = 6;
             } else {
                 damper = 0;
@@ -315,8 +319,8 @@ public class ChitChatEpidemic implements RoutingDecisionEngine, TranscientEngine
             double stime1 = timeStart;
 
             double trs;
-            if (de.transcient.containsKey(interest)) {
-                trs = de.transcient.get(interest);
+            if (!Double.isNaN(de.transcient[interest])) {
+                trs = de.transcient[interest];
             } else {
                 trs = 0;
             }
@@ -333,7 +337,7 @@ public class ChitChatEpidemic implements RoutingDecisionEngine, TranscientEngine
         List<Message> messagesWithTopic = new ArrayList<>();
         for (Message message : myHost.getMessageCollection()) {
             // Ambil term pesan
-            Tuple<String, String> topic = (Tuple<String, String>) message.getProperty(M_TOPIC);
+            Tuple<String, String> topic = (Tuple<String, String>) message.getObjectProperty(TOPIC_SLOT);
             if (topic.getValue().equals(term)) {
                 messagesWithTopic.add(message);
             }
@@ -375,7 +379,7 @@ public class ChitChatEpidemic implements RoutingDecisionEngine, TranscientEngine
         // Menghitung jumlah dokumen yang mengandung term
         for (DTNHost h : hosts) {
             for (Message message : h.getMessageCollection()) {
-                Tuple<String, String> topic = (Tuple<String, String>) message.getProperty(M_TOPIC);
+                Tuple<String, String> topic = (Tuple<String, String>) message.getObjectProperty(TOPIC_SLOT);
                 if (topic.getValue() != null && topic.getValue().equals(term)) {
                     n++;
                     break;
@@ -408,7 +412,7 @@ public class ChitChatEpidemic implements RoutingDecisionEngine, TranscientEngine
         List<Message> messagesWithTerm = getMessagesWithTopic(term, host);
         // Menambahkan lokasi tiap pesan yang isinya sama
         for (Message mList : messagesWithTerm) {
-            pesan.add((Tuple<Double, Double>) mList.getProperty(LOC_GEN));
+            pesan.add((Tuple<Double, Double>) mList.getObjectProperty(LOC_GEN_SLOT));
         }
         // faktorial dari jarak antar pesan yang isinya sama
         for (int j = 0; j < messagesWithTerm.size(); j++) {
@@ -454,14 +458,14 @@ public class ChitChatEpidemic implements RoutingDecisionEngine, TranscientEngine
             mt = 0;
             sumTFIDF = 0.0;
             // Ambil term pesan
-            Tuple<String, String> topic = (Tuple<String, String>) message.getProperty(M_TOPIC);
+            Tuple<String, String> topic = (Tuple<String, String>) message.getObjectProperty(TOPIC_SLOT);
             String messageTerm = topic.getValue();
             // Ambil pesan yang spesifik dengan term dan dibuat List
             List<Message> messagesWithTerm = getMessagesWithTopic(messageTerm, thisHost);
             // Hitung TF-IDF dari term yang sama
             if (messagesWithTerm.size() >= 2) {
                 for (Message m : messagesWithTerm) {
-                    Tuple<String, String> topicTerm = (Tuple<String, String>) m.getProperty(M_TOPIC);
+                    Tuple<String, String> topicTerm = (Tuple<String, String>) m.getObjectProperty(TOPIC_SLOT);
                     if (topicTerm.getValue() != null && topicTerm.getValue().equals(messageTerm)) {
                         mt++;
                         sumTFIDF += TFIDFModified(topicTerm.getValue(), thisHost);
@@ -475,10 +479,10 @@ public class ChitChatEpidemic implements RoutingDecisionEngine, TranscientEngine
                 priority = 0.0;
             }
             int priorityInt = (int) priority;
-            if (message.getProperty(PRIORITY) == null || (int) message.getProperty(PRIORITY) <= 0) {
-                message.updateProperty(PRIORITY, priorityInt);
+            if (!message.hasIntProperty(MessageRouter.PRIORITY_SLOT) || message.getIntProperty(MessageRouter.PRIORITY_SLOT) <= 0) {
+                message.setIntProperty(MessageRouter.PRIORITY_SLOT, priorityInt);
             } else {
-                message.updateProperty(PRIORITY, priorityInt);
+                message.setIntProperty(MessageRouter.PRIORITY_SLOT, priorityInt);
             }
         }
 
@@ -494,6 +498,11 @@ public class ChitChatEpidemic implements RoutingDecisionEngine, TranscientEngine
         }
     }
 
+    @Override
+    public double getNextUpdateTime() {
+        return lastCheck + LIMIT_TW; // priorities are calculated in update
+    }
+
     @Override
     public RoutingDecisionEngine replicate() {
         return new ChitChatEpidemic(this);
@@ -509,6 +518,6 @@ public class ChitChatEpidemic implements RoutingDecisionEngine, TranscientEngine
 
     @Override
     public Map<String, Double> getTranscient() {
-        return this.transcient;
+        return InterestRegistry.toMap(this.transcient);
     }
 }
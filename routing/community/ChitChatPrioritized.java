@@ -1,28 +1,28 @@
 package routing.community;
 
 import core.*;
-import java.text.DecimalFormat;
 import java.util.*;
 import routing.DecisionEngineRouter;
 import routing.MessageRouter;
 import routing.RoutingDecisionEngine;
+import routing.ScheduledUpdateEngine;
 
 /**
  *
  * @author Andre
  */
-public class ChitChatPrioritized implements RoutingDecisionEngine, TranscientEngine {
+public class ChitChatPrioritized implements RoutingDecisionEngine, TranscientEngine, ScheduledUpdateEngine {
 
     protected Map<DTNHost, Double> startTimestamps;
-    protected Map<String, Double> connHistoryT; // save endtime with interest
+    protected double[] connHistoryT; // save endtime with interest
     protected Map<DTNHost, Double> connHistoryN; // save endtime with node
-    protected Map<String, Double> trs;
+    protected double[] trs; // by interest index, see InterestRegistry
     protected List<Connection> connections;
 
     public static final String ChitChatPrioritized = "ChitChatPrioritized";
-    private String LOC_GEN = "Message Location Generated";
-    private String M_TOPIC = "Message Topic";
-    private String PRIORITY = "Priority";
+    private static final int LOC_GEN_SLOT = Message.registerObjectProperty("Message Location Generated");
+    private static final int TOPIC_SLOT = Message.registerObjectProperty("Message Topic");
+    private static final int INTEREST_SLOT = Message.registerIntProperty("Message Interest");
 
     protected double timeStart;
 
@@ -30,17 +30,22 @@ public class ChitChatPrioritized implements RoutingDecisionEngine, TranscientEng
     public static String randomContentNonSocial;
     protected Map<String, Set<String>> topics;
     protected Map<String, Set<String>> topicsUrgent;
+    protected String[] topicKeys;
+    protected String[] topicUrgentKeys;
+    protected Map<String, String[]> topicContents;
+    private Random random;
     private double lastCheck;
     private static int LIMIT_TW = 300;
 
     protected List<String> allTopics;
+    protected int[] allTopicIndexes;
 
     public ChitChatPrioritized(Settings s) {
 
         startTimestamps = new HashMap<DTNHost, Double>();
-        connHistoryT = new HashMap<String, Double>();
+        connHistoryT = InterestRegistry.newValues();
         connHistoryN = new HashMap<DTNHost, Double>();
-        this.trs = new HashMap<String, Double>();
+        this.trs = InterestRegistry.newValues();
         connections = new LinkedList<Connection>();
 
         topics = new HashMap<String, Set<String>>();
@@ -60,6 +65,20 @@ public class ChitChatPrioritized implements RoutingDecisionEngine, TranscientEng
         allTopics.add("Traveling");
         allTopics.add("Music");
         allTopics.add("Urgent");
+
+        topicKeys = topics.keySet().toArray(new String[0]);
+        topicUrgentKeys = topicsUrgent.keySet().toArray(new String[0]);
+        topicContents = new HashMap<String, String[]>();
+        for (Map.Entry<String, Set<String>> e : topics.entrySet()) {
+            topicContents.put(e.getKey(), e.getValue().toArray(new String[0]));
+        }
+        for (Map.Entry<String, Set<String>> e : topicsUrgent.entrySet()) {
+            topicContents.put(e.getKey(), e.getValue().toArray(new String[0]));
+        }
+        allTopicIndexes = new int[allTopics.size()];
+        for (int i = 0; i < allTopicIndexes.length; i++) {
+            allTopicIndexes[i] = InterestRegistry.indexOf(allTopics.get(i));
+        }
     }
 
     /**
@@ -71,12 +90,17 @@ public class ChitChatPrioritized implements RoutingDecisionEngine, TranscientEng
         this.startTimestamps = r.startTimestamps;
         this.connHistoryT = r.connHistoryT;
         this.connHistoryN = r.connHistoryN;
-        this.trs = r.trs;
+        this.trs = InterestRegistry.newValues();
         this.connections = r.connections;
 
         this.topics = r.topics;
         this.topicsUrgent = r.topicsUrgent;
+        this.topicKeys = r.topicKeys;
+        this.topicUrgentKeys = r.topicUrgentKeys;
+        this.topicContents = r.topicContents;
         this.allTopics = r.allTopics;
+        this.allTopicIndexes = r.allTopicIndexes;
+        this.random = new Random();
     }
 
     @Override
@@ -105,30 +129,39 @@ public class ChitChatPrioritized implements RoutingDecisionEngine, TranscientEng
 
         this.connections = myHost.getConnections();
 
-        if (this.trs.isEmpty()) {
-            for (String i : allTopics) {
-                if (myHost.getSocialProfile().contains(i)) {
-                    this.trs.put(i, 0.5);
-                } else {
-                    this.trs.put(i, 0.0);
-                }
-            }
+        // both ends need their TRS before the messages are compared
+        if (InterestRegistry.isEmpty(this.trs)) {
+            this.initTrs(myHost);
+        }
+        if (InterestRegistry.isEmpty(de.trs)) {
+            de.initTrs(peer);
         }
-
 
         //menghitung decay sebelumnya
-        for (String interest : this.trs.keySet()) {
+        for (int interest = 0; interest < InterestRegistry.size(); interest++) {
+            if (Double.isNaN(this.trs[interest])) {
+                continue;
+            }
             boolean connect = false;
             for (Connection conn : this.connections) {
-                double peerTrs = getOtherDecisionEngine(conn.getOtherNode(myHost)).trs.get(interest);
-                if (peerTrs > 0 && conn.getOtherNode(myHost) != peer) {
+                DTNHost other = conn.getOtherNode(myHost);
+                if (other != peer && getOtherDecisionEngine(other).trs[interest] > 0) {
                     connect = true;
                     break;
                 }
             }
             if (!connect) {
-                double trsNew = this.countTrsDecay(myHost, peer, interest);
-                this.trs.put(interest, trsNew);
+                this.trs[interest] = this.countTrsDecay(myHost, peer, interest);
+            }
+        }
+    }
+
+    private void initTrs(DTNHost host) {
+        for (int i : allTopicIndexes) {
+            if (InterestRegistry.hasInterest(host, i)) {
+                this.trs[i] = 0.5;
+            } else {
+                this.trs[i] = 0.0;
             }
         }
     }
@@ -137,30 +170,16 @@ public class ChitChatPrioritized implements RoutingDecisionEngine, TranscientEng
         String randomKey;
         String randomContent;
 
-        Set<String> keys;
-        Set<String> randomValue;
-
-        Random random = new Random();
-
+        String[] keys;
         if (code.equalsIgnoreCase("M")) {
-            keys = topics.keySet();
+            keys = topicKeys;
         } else {
-            keys = topicsUrgent.keySet();
+            keys = topicUrgentKeys;
         }
+        randomKey = keys[random.nextInt(keys.length)];
 
-        String[] stringArray = keys.toArray(new String[keys.size()]);
-        int randomIndex = random.nextInt(stringArray.length);
-        randomKey = stringArray[randomIndex];
-
-        if (code.equalsIgnoreCase("M")) {
-            randomValue = topics.get(randomKey);
-        } else {
-            randomValue = topicsUrgent.get(randomKey);
-        }
-
-        String[] array = randomValue.toArray(new String[randomValue.size()]);
-        int randomIndexValue = random.nextInt(array.length);
-        randomContent = array[randomIndexValue];
+        String[] contents = topicContents.get(randomKey);
+        randomContent = contents[random.nextInt(contents.length)];
 
         Tuple<String, String> content = new Tuple<String, String>(randomKey, randomContent);
         return content;
@@ -170,15 +189,14 @@ public class ChitChatPrioritized implements RoutingDecisionEngine, TranscientEng
     @Override
     public boolean newMessage(Message m) {
         //add property for message priority
-        m.addProperty(PRIORITY, 0);
-        //add property for message generated location
+        m.setIntProperty(MessageRouter.PRIORITY_SLOT, 0);
+        //add property for message generated location (4 decimals)
         double x = m.getFrom().getLocation().getX();
         double y = m.getFrom().getLocation().getY();
-        DecimalFormat df = new DecimalFormat("#.####");
-        double hasilX = Double.parseDouble(df.format(x));
-        double hasilY = Double.parseDouble(df.format(y));
+        double hasilX = Math.round(x * 10000) / 10000.0;
+        double hasilY = Math.round(y * 10000) / 10000.0;
         Tuple<Double, Double> location = new Tuple<>(hasilX, hasilY);
-        m.addProperty(LOC_GEN, location);
+        m.setObjectProperty(LOC_GEN_SLOT, location);
 
         //add propoerty for interest
         Tuple<String, String> topic;
@@ -187,7 +205,8 @@ public class ChitChatPrioritized implements RoutingDecisionEngine, TranscientEng
         } else {
             topic = setRandomContent("S");
         }
-        m.addProperty(M_TOPIC, topic);
+        m.setObjectProperty(TOPIC_SLOT, topic);
+        m.setIntProperty(INTEREST_SLOT, InterestRegistry.indexOf(topic.getKey()));
 
         return true;
     }
@@ -209,29 +228,26 @@ public class ChitChatPrioritized implements RoutingDecisionEngine, TranscientEng
     @Override
     public boolean shouldSendMessageToHost(Message m, DTNHost otherHost, DTNHost thisHost) {
 
-        if ((int) m.getProperty(PRIORITY) > 10) {
+        if (m.getIntProperty(MessageRouter.PRIORITY_SLOT) > 10) {
             return true;
         }
         
         Collection<Message> messages = otherHost.getMessageCollection();
         ChitChatPrioritized de = getOtherDecisionEngine(otherHost);
-        for (String i : this.trs.keySet()) {
-            double trsNew = this.countTrsGrowth(thisHost, otherHost, i);
-            Map<String, Double> newTranscient = new HashMap<>(this.trs);
-            newTranscient.put(i, trsNew);
-            this.trs = newTranscient;
-//            System.out.println(trs);
+        for (int i = 0; i < InterestRegistry.size(); i++) {
+            if (!Double.isNaN(this.trs[i])) {
+                this.trs[i] = this.countTrsGrowth(thisHost, otherHost, i);
+            }
         }
         if (messages.contains(m)) {
             return false;
         } else {
             // membandingkan prioritas dan interest
-            Tuple<String, String> topic = (Tuple<String, String>) m.getProperty(M_TOPIC);
-            String interest = topic.getKey();
+            int interest = m.getIntProperty(INTEREST_SLOT);
 
             //menghitung grow tepat sebelum ngirim aja, karena diperlukan untuk forwarding
-            double myTrs = this.trs.get(interest);
-            double peerTrs = de.trs.get(interest);
+            double myTrs = this.trs[interest];
+            double peerTrs = de.trs[interest];
             if (peerTrs > myTrs) {
                 return true;
             } else {
@@ -251,20 +267,20 @@ public class ChitChatPrioritized implements RoutingDecisionEngine, TranscientEng
         return false;
     }
 
-    private double countTrsDecay(DTNHost myHost, DTNHost peer, String interest) {
+    private double countTrsDecay(DTNHost myHost, DTNHost peer, int interest) {
         double beta = 20; //bebas dicari yang paling bagus
-        double trs = this.trs.get(interest);
+        double trs = this.trs[interest];
         double trsNew;
 
         double stime1;
-        if (connHistoryT.containsKey(interest)) {
-            stime1 = connHistoryT.get(interest);
+        if (!Double.isNaN(connHistoryT[interest])) {
+            stime1 = connHistoryT[interest];
         } else {
             stime1 = 0;
         }
         double stime2 = startTimestamps.get(peer);
 
-        if (myHost.getSocialProfile().contains(interest)) {
+        if (InterestRegistry.hasInterest(myHost, interest)) {
             trsNew = (trs - 0.5) / beta * (stime2 - stime1) + 0.5;
         } else {
             trsNew = trs / beta * (stime2 - stime1);
@@ -272,8 +288,8 @@ public class ChitChatPrioritized implements RoutingDecisionEngine, TranscientEng
         return trsNew;
     }
 
-    private double countTrsGrowth(DTNHost myHost, DTNHost peer, String interest) {
-        double trs = this.trs.get(interest);
+    private double countTrsGrowth(DTNHost myHost, DTNHost peer, int interest) {
+        double trs = this.trs[interest];
 
         double delta = countDelta(myHost, interest);
 
@@ -286,33 +302,31 @@ public class ChitChatPrioritized implements RoutingDecisionEngine, TranscientEng
         }
     }
 
-    private double countDelta(DTNHost myHost, String interest) {
+    private double countDelta(DTNHost myHost, int interest) {
         double delta = 0.0;
 
         int damper;
+        boolean myInterest = InterestRegistry.hasInterest(myHost, interest);
 
         Iterator<Connection> i = connections.iterator();
         while (i.hasNext()) {
             Connection c = i.next();
             DTNHost peer = c.getOtherNode(myHost);
             ChitChatPrioritized de = this.getOtherDecisionEngine(peer);
+            boolean peerInterest = InterestRegistry.hasInterest(peer, interest);
 
-            if (myHost.getSocialProfile().contains(interest)
-                    && peer.getSocialProfile().contains(interest)) {
+            if (myInterest && peerInterest) {
                 damper = 1;
-            } else if (myHost.getSocialProfile().contains(interest)
-                    && !peer.getSocialProfile().contains(interest)) {
+            } else if (myInterest && !peerInterest) {
                 damper = 2;
-            } else if (!myHost.getSocialProfile().contains(interest)
-                    && peer.getSocialProfile().contains(interest)) {
-                if (this.trs.get(interest) != 0) {
+            } else if (!myInterest && peerInterest) {
+                if (this.trs[interest] != 0) {
                     damper = 3;
                 } else {
                     damper = 5;
                 }
-            } else if (!myHost.getSocialProfile().contains(interest)
-                    && !peer.getSocialProfile().contains(interest)) {
-                if (this.trs.get(interest) != 0 && de.trs.get(interest) == 0) {
+            } else if (!myInterest && !peerInterest) {
+                if (this.trs[interest] != 0 && de.trs[interest] == 0) {
                     damper = 6;
                 } else {
                     damper = 4;
@@ -324,8 +338,8 @@ public class ChitChatPrioritized implements RoutingDecisionEngine, TranscientEng
             double stime1 = timeStart;
 
             double trs;
-            if (de.trs.containsKey(interest)) {
-                trs = de.trs.get(interest);
+            if (!Double.isNaN(de.trs[interest])) {
+                trs = de.trs[interest];
             } else {
                 trs = 0;
             }
@@ -342,7 +356,7 @@ public class ChitChatPrioritized implements RoutingDecisionEngine, TranscientEng
         List<Message> messagesWithTopic = new ArrayList<>();
         for (Message message : myHost.getMessageCollection()) {
             // Ambil term pesan
-            Tuple<String, String> topic = (Tuple<String, String>) message.getProperty(M_TOPIC);
+            Tuple<String, String> topic = (Tuple<String, String>) message.getObjectProperty(TOPIC_SLOT);
             if (topic.getValue().equals(term)) {
                 messagesWithTopic.add(message);
             }
@@ -384,7 +398,7 @@ public class ChitChatPrioritized implements RoutingDecisionEngine, TranscientEng
         // Menghitung jumlah dokumen yang mengandung term
         for (DTNHost h : hosts) {
             for (Message message : h.getMessageCollection()) {
-                Tuple<String, String> topic = (Tuple<String, String>) message.getProperty(M_TOPIC);
+                Tuple<String, String> topic = (Tuple<String, String>) message.getObjectProperty(TOPIC_SLOT);
                 if (topic.getValue() != null && topic.getValue().equals(term)) {
                     n++;
                     break;
@@ -417,7 +431,7 @@ public class ChitChatPrioritized implements RoutingDecisionEngine, TranscientEng
         List<Message> messagesWithTerm = getMessagesWithTopic(term, host);
         // Menambahkan lokasi tiap pesan yang isinya sama
         for (Message mList : messagesWithTerm) {
-            pesan.add((Tuple<Double, Double>) mList.getProperty(LOC_GEN));
+            pesan.add((Tuple<Double, Double>) mList.getObjectProperty(LOC_GEN_SLOT));
         }
         // faktorial dari jarak antar pesan yang isinya sama
         for (int j = 0; j < messagesWithTerm.size(); j++) {
@@ -463,14 +477,14 @@ public class ChitChatPrioritized implements RoutingDecisionEngine, TranscientEng
             mt = 0;
             sumTFIDF = 0.0;
             // Ambil term pesan
-            Tuple<String, String> topic = (Tuple<String, String>) message.getProperty(M_TOPIC);
+            Tuple<String, String> topic = (Tuple<String, String>) message.getObjectProperty(TOPIC_SLOT);
             String messageTerm = topic.getValue();
             // Ambil pesan yang spesifik dengan term dan dibuat List
             List<Message> messagesWithTerm = getMessagesWithTopic(messageTerm, thisHost);
             // Hitung TF-IDF dari term yang sama
             if (messagesWithTerm.size() >= 2) {
                 for (Message m : messagesWithTerm) {
-                    Tuple<String, String> topicTerm = (Tuple<String, String>) m.getProperty(M_TOPIC);
+                    Tuple<String, String> topicTerm = (Tuple<String, String>) m.getObjectProperty(TOPIC_SLOT);
                     if (topicTerm.getValue() != null && topicTerm.getValue().equals(messageTerm)) {
                         mt++;
                         sumTFIDF += TFIDFModified(topicTerm.getValue(), thisHost);
@@ -484,10 +498,10 @@ public class ChitChatPrioritized implements RoutingDecisionEngine, TranscientEng
                 priority = 0.0;
             }
             int priorityInt = (int) priority;
-            if (message.getProperty(PRIORITY) == null || (int) message.getProperty(PRIORITY) <= 0) {
-                message.updateProperty(PRIORITY, priorityInt);
+            if (!message.hasIntProperty(MessageRouter.PRIORITY_SLOT) || message.getIntProperty(MessageRouter.PRIORITY_SLOT) <= 0) {
+                message.setIntProperty(MessageRouter.PRIORITY_SLOT, priorityInt);
             } else {
-                message.updateProperty(PRIORITY, priorityInt);
+                message.setIntProperty(MessageRouter.PRIORITY_SLOT, priorityInt);
             }
         }
 
@@ -503,6 +517,11 @@ public class ChitChatPrioritized implements RoutingDecisionEngine, TranscientEng
         }
     }
 
+    @Override
+    public double getNextUpdateTime() {
+        return lastCheck + LIMIT_TW; // priorities are calculated in update
+    }
+
     @Override
     public RoutingDecisionEngine replicate() {
         return new ChitChatPrioritized(this);
@@ -518,6 +537,6 @@ public class ChitChatPrioritized implements RoutingDecisionEngine, TranscientEng
 
     @Override
     public Map<String, Double> getTranscient() {
-        return this.trs;
+        return InterestRegistry.toMap(this.trs);
     }
 }
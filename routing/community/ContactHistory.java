@@ -0,0 +1,447 @@
+/*
+ * @(#)ContactHistory.java
+ *
+ * Copyright 2010 by University of Pittsburgh, released under GPLv3.
+ *
+ */
+package routing.community;
+
+import java.util.*;
+
+import core.*;
+
+/**
+ * <p>Contact history of one host: the start and end times of the contacts the
+ * host has had with each peer. There is one history per host, shared by all
+ * the objects that need it (see {@link #of(DTNHost)}), so the decision
+ * engines of the host just report their connections going up and down
+ * instead of each keeping its own copy of the history.</p>
+ *
+ * <p>The times are stored in primitive arrays indexed by the peer addresses
+ * and the contact count, total contact time, sum of squared contact times and
+ * the end of the last contact are updated as contacts are added, so they can
+ * be queried in constant time. The history can also be read as a
+ * <code>Map&lt;DTNHost, List&lt;Duration&gt;&gt;</code> for the
+ * {@link Centrality} and {@link CommunityDetection} implementations.</p>
+ *
+ * <p>Optionally, contacts can be forgotten some time after they ended
+ * (setting {@value #WINDOW_S} in the {@value #CONTACT_HISTORY_NS}
+ * namespace).</p>
+ */
+public class ContactHistory
+{
+	/** Namespace of the contact history settings -setting id {@value} */
+	public static final String CONTACT_HISTORY_NS = "ContactHistory";
+	/** How long (seconds) contacts are remembered after they ended -setting
+	 * id {@value}. Contacts are remembered for the whole simulation if not
+	 * set. */
+	public static final String WINDOW_S = "window";
+
+	/** histories of the hosts indexed by their addresses */
+	private static ContactHistory[] histories;
+	/** retention window of new histories or -1 if not read yet */
+	private static double defaultWindow;
+
+	static
+	{
+		DTNSim.registerForReset(ContactHistory.class.getCanonicalName());
+		reset();
+	}
+
+	/** contacts of each peer indexed by the peer addresses */
+	private Peer[] peers;
+	/** number of peers in the map view */
+	private int nrofPeers;
+	/** retention window (seconds) or 0 for no window */
+	private final double window;
+	/** read-only map view of the history */
+	private Map<DTNHost, List<Duration>> mapView;
+
+	/**
+	 * Creates an empty history that is not shared with anyone.
+	 *
+	 * @param window How long contacts are remembered after they ended or 0 to
+	 * remember them for the whole simulation
+	 */
+	public ContactHistory(double window)
+	{
+		this.peers = new Peer[0];
+		this.nrofPeers = 0;
+		this.window = window;
+	}
+
+	/**
+	 * Creates an empty history that is not shared with anyone and remembers
+	 * the contacts for the whole simulation.
+	 */
+	public ContactHistory()
+	{
+		this(0);
+	}
+
+	/**
+	 * Returns the shared contact history of a host, creating it if needed.
+	 *
+	 * @param host The host whose history to return
+	 * @return The contact history of the host
+	 */
+	public static ContactHistory of(DTNHost host)
+	{
+		int address = host.getAddress();
+		if(address >= histories.length)
+			histories = Arrays.copyOf(histories,
+					Math.max(address + 1, histories.length * 2));
+
+		if(histories[address] == null)
+		{
+			if(defaultWindow < 0)
+			{
+				Settings s = new Settings(CONTACT_HISTORY_NS);
+				defaultWindow = s.contains(WINDOW_S) ? s.getDouble(WINDOW_S) : 0;
+			}
+			histories[address] = new ContactHistory(defaultWindow);
+		}
+		return histories[address];
+	}
+
+	/**
+	 * Forgets the shared histories of all hosts.
+	 */
+	public static void reset()
+	{
+		histories = new ContactHistory[0];
+		defaultWindow = -1;
+	}
+
+	/**
+	 * Starts timing a contact with a peer. If a contact with the peer was
+	 * already being timed, it is restarted.
+	 *
+	 * @param peer The peer
+	 * @param time Start time of the contact
+	 */
+	public void connectionUp(DTNHost peer, double time)
+	{
+		getPeer(peer, true).openStart = time;
+	}
+
+	/**
+	 * Ends the contact with a peer that was started with
+	 * {@link #connectionUp(DTNHost, double)} and adds it to the history if
+	 * it took some time. The peer is included in the history (see
+	 * {@link #asMap()}) from now on even if no contacts were added.
+	 *
+	 * @param peer The peer
+	 * @param time End time of the contact
+	 * @return The contacts with the peer
+	 */
+	public List<Duration> connectionDown(DTNHost peer, double time)
+	{
+		Peer p = getPeer(peer, true);
+		if(!p.known)
+		{
+			p.known = true;
+			nrofPeers++;
+		}
+		if(!Double.isNaN(p.openStart) && time - p.openStart > 0)
+			p.add(p.openStart, time);
+		p.openStart = Double.NaN;
+		return p;
+	}
+
+	/**
+	 * Returns true if a contact with the peer is being timed.
+	 *
+	 * @param peer The peer
+	 * @return true if the peer is connected
+	 */
+	public boolean isConnected(DTNHost peer)
+	{
+		Peer p = getPeer(peer, false);
+		return p != null && !Double.isNaN(p.openStart);
+	}
+
+	/**
+	 * Returns a read-only view of the contacts with a peer, oldest first.
+	 *
+	 * @param peer The peer
+	 * @return The contacts with the peer
+	 */
+	public List<Duration> getContacts(DTNHost peer)
+	{
+		Peer p = getPeer(peer, false);
+		if(p == null)
+			return Collections.emptyList();
+		return p;
+	}
+
+	/**
+	 * Returns the number of contacts with a peer.
+	 *
+	 * @param peer The peer
+	 * @return The number of contacts
+	 */
+	public int getNrofContacts(DTNHost peer)
+	{
+		Peer p = getPeer(peer, false);
+		return p == null ? 0 : p.size();
+	}
+
+	/**
+	 * Returns the total duration of the contacts with a peer.
+	 *
+	 * @param peer The peer
+	 * @return The total contact time
+	 */
+	public double getTotalContactTime(DTNHost peer)
+	{
+		Peer p = getPeer(peer, false);
+		return p == null ? 0 : p.total;
+	}
+
+	/**
+	 * Returns the sum of the squared durations of the contacts with a peer.
+	 *
+	 * @param peer The peer
+	 * @return The sum of squared contact times
+	 */
+	public double getSquaredContactTime(DTNHost peer)
+	{
+		Peer p = getPeer(peer, false);
+		return p == null ? 0 : p.squares;
+	}
+
+	/**
+	 * Returns the end time of the last contact with a peer.
+	 *
+	 * @param peer The peer
+	 * @return The end of the last contact or NaN if there are no contacts
+	 */
+	public double getLastContactEnd(DTNHost peer)
+	{
+		Peer p = getPeer(peer, false);
+		return p == null || p.size() == 0 ? Double.NaN : p.ends[p.last - 1];
+	}
+
+	/**
+	 * Returns a read-only view of the history as a map from the peers to
+	 * their contacts. The map contains the peers in the order of their
+	 * addresses.
+	 *
+	 * @return The history as a map
+	 */
+	public Map<DTNHost, List<Duration>> asMap()
+	{
+		if(mapView == null)
+			mapView = new MapView();
+		return mapView;
+	}
+
+	/**
+	 * Returns the contacts of a peer after forgetting the contacts that are
+	 * out of the retention window.
+	 *
+	 * @param peer The peer (may be null when asking about the destination of
+	 * a message that doesn't have one)
+	 * @param create If true, the contacts are created if they don't exist
+	 * @return The contacts or null if they don't exist and weren't created
+	 */
+	private Peer getPeer(DTNHost peer, boolean create)
+	{
+		if(peer == null && !create)
+			return null;
+		int address = peer.getAddress();
+		Peer p = address < peers.length ? peers[address] : null;
+		if(p == null)
+		{
+			if(!create)
+				return null;
+			if(address >= peers.length)
+				peers = Arrays.copyOf(peers,
+						Math.max(address + 1, peers.length * 2));
+			p = new Peer(peer);
+			peers[address] = p;
+		}
+		p.forgetOld();
+		return p;
+	}
+
+	/**
+	 * Contacts with one peer. The contacts in the window are stored in
+	 * <code>starts[first..last-1]</code> and <code>ends[first..last-1]</code>.
+	 */
+	private class Peer extends AbstractList<Duration>
+	{
+		private final DTNHost host;
+		private double[] starts = new double[4];
+		private double[] ends = new double[4];
+		private int first, last;
+		/** total and sum of squared contact durations */
+		private double total, squares;
+		/** start time of the contact being timed or NaN */
+		private double openStart = Double.NaN;
+		/** is the peer in the map view */
+		private boolean known;
+
+		private Peer(DTNHost host)
+		{
+			this.host = host;
+		}
+
+		private void add(double start, double end)
+		{
+			if(last == starts.length)
+			{
+				if(first > 0)
+				{
+					System.arraycopy(starts, first, starts, 0, last - first);
+					System.arraycopy(ends, first, ends, 0, last - first);
+					last -= first;
+					first = 0;
+				}
+				if(last > starts.length / 2)
+				{
+					starts = Arrays.copyOf(starts, starts.length * 2);
+					ends = Arrays.copyOf(ends, ends.length * 2);
+				}
+			}
+			starts[last] = start;
+			ends[last] = end;
+			last++;
+			double d = end - start;
+			total += d;
+			squares += d * d;
+		}
+
+		/**
+		 * Forgets the contacts that ended before the retention window
+		 */
+		private void forgetOld()
+		{
+			if(window <= 0 || first == last)
+				return;
+			double limit = SimClock.getTime() - window;
+			while(first < last && ends[first] < limit)
+			{
+				double d = ends[first] - starts[first];
+				total -= d;
+				squares -= d * d;
+				first++;
+			}
+			if(first == last)
+			{
+				first = last = 0;
+				total = squares = 0;
+				if(known)
+				{
+					known = false;
+					nrofPeers--;
+				}
+			}
+		}
+
+		@Override
+		public Duration get(int index)
+		{
+			if(index < 0 || index >= size())
+				throw new IndexOutOfBoundsException("Index: " + index);
+			return new Duration(starts[first + index], ends[first + index]);
+		}
+
+		@Override
+		public int size()
+		{
+			return last - first;
+		}
+	}
+
+	/**
+	 * Read-only map view of the peers that are in the history
+	 */
+	private class MapView extends AbstractMap<DTNHost, List<Duration>>
+	{
+		private final Set<Map.Entry<DTNHost, List<Duration>>> entries =
+			new AbstractSet<Map.Entry<DTNHost, List<Duration>>>()
+		{
+			@Override
+			public Iterator<Map.Entry<DTNHost, List<Duration>>> iterator()
+			{
+				return new Iterator<Map.Entry<DTNHost, List<Duration>>>()
+				{
+					private int next = findKnown(0);
+
+					public boolean hasNext()
+					{
+						return next < peers.length;
+					}
+
+					public Map.Entry<DTNHost, List<Duration>> next()
+					{
+						if(!hasNext())
+							throw new NoSuchElementException();
+						Peer p = peers[next];
+						next = findKnown(next + 1);
+						return new AbstractMap.SimpleImmutableEntry
+							<DTNHost, List<Duration>>(p.host, p);
+					}
+
+					public void remove()
+					{
+						throw new UnsupportedOperationException();
+					}
+				};
+			}
+
+			@Override
+			public int size()
+			{
+				for(Peer p : peers)
+					if(p != null)
+						p.forgetOld();
+				return nrofPeers;
+			}
+		};
+
+		/**
+		 * Returns the index of the first peer in the map view starting from
+		 * the given index or the number of peer slots if there are none
+		 */
+		private int findKnown(int from)
+		{
+			int i = from;
+			while(i < peers.length)
+			{
+				Peer p = peers[i];
+				if(p != null)
+				{
+					p.forgetOld();
+					if(p.known)
+						break;
+				}
+				i++;
+			}
+			return i;
+		}
+
+		@Override
+		public Set<Map.Entry<DTNHost, List<Duration>>> entrySet()
+		{
+			return entries;
+		}
+
+		@Override
+		public List<Duration> get(Object key)
+		{
+			if(!(key instanceof DTNHost))
+				return null;
+			Peer p = getPeer((DTNHost)key, false);
+			return p != null && p.known ? p : null;
+		}
+
+		@Override
+		public boolean containsKey(Object key)
+		{
+			return get(key) != null;
+		}
+	}
+}
@@ -62,8 +62,8 @@ public class DistributedBubbleRap implements RoutingDecisionEngine, CommunityDet
 	/** Centrality Computation Algorithm to employ -setting id {@value} */
 	public static final String CENTRALITY_ALG_SETTING = "centralityAlg";
 	
-	protected Map<DTNHost, Double> startTimestamps;
-	protected Map<DTNHost, List<Duration>> connHistory;
+	/** contact history of this host (bound in connectionUp()) */
+	protected ContactHistory contacts;
 	
 	protected CommunityDetection community;
 	protected Centrality centrality;
@@ -101,11 +101,13 @@ public class DistributedBubbleRap implements RoutingDecisionEngine, CommunityDet
 	{
 		this.community = proto.community.replicate();
 		this.centrality = proto.centrality.replicate();
-		startTimestamps = new HashMap<DTNHost, Double>();
-		connHistory = new HashMap<DTNHost, List<Duration>>();
+		contacts = new ContactHistory();
 	}
 
-	public void connectionUp(DTNHost thisHost, DTNHost peer){}
+	public void connectionUp(DTNHost thisHost, DTNHost peer)
+	{
+		contacts = ContactHistory.of(thisHost);
+	}
 
 	/**
 	 * Starts timing the duration of this new connection and informs the community
@@ -118,47 +120,24 @@ public class DistributedBubbleRap implements RoutingDecisionEngine, CommunityDet
 		DTNHost myHost = con.getOtherNode(peer);
 		DistributedBubbleRap de = this.getOtherDecisionEngine(peer);
 		
-		this.startTimestamps.put(peer, SimClock.getTime());
-		de.startTimestamps.put(myHost, SimClock.getTime());
+		ContactHistory.of(myHost).connectionUp(peer, SimClock.getTime());
+		ContactHistory.of(peer).connectionUp(myHost, SimClock.getTime());
 		
 		this.community.newConnection(myHost, peer, de.community);
 	}
 	
 	public void connectionDown(DTNHost thisHost, DTNHost peer)
 	{
-		double time = startTimestamps.get(peer);
-//		double time = cek(thisHost, peer);
-		double etime = SimClock.getTime();
-		
-		// Find or create the connection history list
-		List<Duration> history;
-		if(!connHistory.containsKey(peer))
-		{
-			history = new LinkedList<Duration>();
-			connHistory.put(peer, history);
-		}
-		else
-			history = connHistory.get(peer);
-		
-		// add this connection to the list
-		if(etime - time > 0)
-			history.add(new Duration(time, etime));
+		// add this connection to the history
+		List<Duration> history = contacts.connectionDown(peer, SimClock.getTime());
 		
 		CommunityDetection peerCD = this.getOtherDecisionEngine(peer).community;
 		
 		// inform the community detection object that a connection was lost.
 		// The object might need the whole connection history at this point.
 		community.connectionLost(thisHost, peer, peerCD, history);
-		
-		startTimestamps.remove(peer);
+		centrality.connectionLost(thisHost, peer, history);
 	}
-        
-        public double cek(DTNHost thisHost, DTNHost peer){
-            if (startTimestamps.containsKey(thisHost)) {
-                startTimestamps.get(peer);
-            }
-            return 0;
-        }
 
 	public boolean newMessage(Message m)
 	{
@@ -177,7 +156,53 @@ public class DistributedBubbleRap implements RoutingDecisionEngine, CommunityDet
 
 	public boolean shouldSendMessageToHost(Message m, DTNHost otherHost, DTNHost thisHost)
 	{
-		if(m.getTo() == otherHost) return true; // trivial to deliver to final dest
+		return shouldSendToPeer(m.getTo(), otherHost, 
+				new PeerCentralities(getOtherDecisionEngine(otherHost)));
+	}
+
+	/**
+	 * The decision only depends on the destination of the message, so it's 
+	 * made once per destination, and the centrality values are computed at 
+	 * most once for the whole batch.
+	 */
+	@Override
+	public List<Message> selectMessagesToSend(Collection<Message> messages,
+			DTNHost otherHost, DTNHost thisHost)
+	{
+		List<Message> toSend = new ArrayList<Message>();
+		if(messages.isEmpty()) return toSend;
+		
+		PeerCentralities centralities = 
+			new PeerCentralities(getOtherDecisionEngine(otherHost));
+		Map<DTNHost, Boolean> decisions = new HashMap<DTNHost, Boolean>();
+		
+		for(Message m : messages)
+		{
+			DTNHost dest = m.getTo();
+			Boolean send = decisions.get(dest);
+			if(send == null)
+			{
+				send = shouldSendToPeer(dest, otherHost, centralities);
+				decisions.put(dest, send);
+			}
+			if(send) toSend.add(m);
+		}
+		return toSend;
+	}
+	
+	/**
+	 * Decides whether a message to the given destination should be forwarded
+	 * to the peer.
+	 * 
+	 * @param dest Destination of the message
+	 * @param otherHost The peer
+	 * @param centralities Centralities of this host and the peer
+	 * @return true if the message should be forwarded to the peer
+	 */
+	private boolean shouldSendToPeer(DTNHost dest, DTNHost otherHost, 
+			PeerCentralities centralities)
+	{
+		if(dest == otherHost) return true; // trivial to deliver to final dest
 		
 		/*
 		 * Here is where we decide when to forward along a message. 
@@ -187,10 +212,8 @@ public class DistributedBubbleRap implements RoutingDecisionEngine, CommunityDet
 		 * destination as part of it's local community. At this point, it uses 
 		 * the local centrality metric to forward a message within the community. 
 		 */
-		DTNHost dest = m.getTo();
-		DistributedBubbleRap de = getOtherDecisionEngine(otherHost);
 		// Which of us has the dest in our local communities, this host or the peer
-		boolean peerInCommunity = de.commumesWithHost(dest);
+		boolean peerInCommunity = centralities.peer.commumesWithHost(dest);
 		boolean meInCommunity = this.commumesWithHost(dest);
 		
 		if(peerInCommunity && !meInCommunity) // peer is in local commun. of dest
@@ -200,16 +223,10 @@ public class DistributedBubbleRap implements RoutingDecisionEngine, CommunityDet
 		else if(peerInCommunity) // we're both in the local community of destination
 		{
 			// Forward to the one with the higher local centrality (in our community)
-			if(de.getLocalCentrality() > this.getLocalCentrality())
-				return true;
-			else
-				return false;
+			return centralities.isPeerMoreLocallyCentral();
 		}
 		// Neither in local community, forward to more globally central node
-		else if(de.getGlobalCentrality() > this.getGlobalCentrality())
-			return true;
-		
-		return false;
+		return centralities.isPeerMoreGloballyCentral();
 	}
 
 	public boolean shouldDeleteSentMessage(Message m, DTNHost otherHost)
@@ -240,12 +257,12 @@ public class DistributedBubbleRap implements RoutingDecisionEngine, CommunityDet
 	
 	protected double getLocalCentrality()
 	{
-		return this.centrality.getLocalCentrality(connHistory, community);
+		return this.centrality.getLocalCentrality(contacts.asMap(), community);
 	}
 	
 	protected double getGlobalCentrality()
 	{
-		return this.centrality.getGlobalCentrality(connHistory);
+		return this.centrality.getGlobalCentrality(contacts.asMap());
 	}
 
 	private DistributedBubbleRap getOtherDecisionEngine(DTNHost h)
@@ -257,6 +274,37 @@ public class DistributedBubbleRap implements RoutingDecisionEngine, CommunityDet
 		return (DistributedBubbleRap) ((DecisionEngineRouter)otherRouter).getDecisionEngine();
 	}
 
+	/**
+	 * Compares the centralities of this host and a peer. Each centrality is
+	 * computed only when it's first needed, and only once for all the 
+	 * decisions about the same peer.
+	 */
+	private class PeerCentralities
+	{
+		private DistributedBubbleRap peer;
+		private Boolean peerMoreLocal;
+		private Boolean peerMoreGlobal;
+		
+		public PeerCentralities(DistributedBubbleRap peer)
+		{
+			this.peer = peer;
+		}
+		
+		public boolean isPeerMoreLocallyCentral()
+		{
+			if(peerMoreLocal == null)
+				peerMoreLocal = peer.getLocalCentrality() > getLocalCentrality();
+			return peerMoreLocal;
+		}
+		
+		public boolean isPeerMoreGloballyCentral()
+		{
+			if(peerMoreGlobal == null)
+				peerMoreGlobal = peer.getGlobalCentrality() > getGlobalCentrality();
+			return peerMoreGlobal;
+		}
+	}
+
 	public Set<DTNHost> getLocalCommunity() {return this.community.getLocalCommunity();}
 
     @Override
@@ -264,6 +312,6 @@ public class DistributedBubbleRap implements RoutingDecisionEngine, CommunityDet
 
     @Override
     public Map<DTNHost, List<Duration>> getConnHistory() {
-        return this.connHistory;
+        return this.contacts.asMap();
     }
 }
\ No newline at end of file
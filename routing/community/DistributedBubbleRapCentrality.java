@@ -149,6 +149,7 @@ public class DistributedBubbleRapCentrality implements RoutingDecisionEngine, Co
 		// inform the community detection object that a connection was lost.
 		// The object might need the whole connection history at this point.
 		community.connectionLost(thisHost, peer, peerCD, history);
+		centrality.connectionLost(thisHost, peer, history);
 		
 		startTimestamps.remove(peer);
 	}
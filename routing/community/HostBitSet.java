@@ -0,0 +1,228 @@
+/*
+ * @(#)HostBitSet.java
+ *
+ * Copyright 2010 by University of Pittsburgh, released under GPLv3.
+ *
+ */
+package routing.community;
+
+import java.util.*;
+
+import core.*;
+
+/**
+ * <p>Set of hosts stored as a bitset of the host addresses. Since the
+ * addresses are small consecutive integers, the size of the intersection of
+ * two sets ({@link #intersectionSize(HostBitSet)}) and the union of two sets
+ * are computed a word (64 hosts) at a time.</p>
+ *
+ * <p>{@link #snapshot()} returns a read-only copy of the set that shares the
+ * bitset with this set until this set is modified the next time (copy on
+ * write), so handing out the current contents is cheap and the receiver
+ * never sees later changes.</p>
+ */
+public class HostBitSet extends AbstractSet<DTNHost>
+{
+	/** hosts that have been added to any set, by address */
+	private static DTNHost[] hostsByAddress;
+
+	static
+	{
+		DTNSim.registerForReset(HostBitSet.class.getCanonicalName());
+		reset();
+	}
+
+	/** the bitset */
+	private long[] words;
+	/** number of hosts in the set */
+	private int size;
+	/** is the bitset shared with a snapshot */
+	private boolean shared;
+	/** is this set a read-only snapshot */
+	private final boolean readOnly;
+	/** the latest snapshot if this set hasn't been modified after it */
+	private HostBitSet snapshot;
+
+	/**
+	 * Creates an empty set
+	 */
+	public HostBitSet()
+	{
+		this(new long[0], 0, false);
+	}
+
+	private HostBitSet(long[] words, int size, boolean readOnly)
+	{
+		this.words = words;
+		this.size = size;
+		this.readOnly = readOnly;
+		this.shared = readOnly;
+	}
+
+	/**
+	 * Forgets the hosts of the previous simulation run
+	 */
+	public static void reset()
+	{
+		hostsByAddress = new DTNHost[0];
+	}
+
+	@Override
+	public boolean add(DTNHost host)
+	{
+		int address = host.getAddress();
+		int word = address >>> 6;
+		long bit = 1L << address;
+		if(word < words.length && (words[word] & bit) != 0)
+			return false;
+
+		if(address >= hostsByAddress.length)
+			hostsByAddress = Arrays.copyOf(hostsByAddress,
+					Math.max(address + 1, hostsByAddress.length * 2));
+		hostsByAddress[address] = host;
+
+		prepareWrite(word + 1);
+		words[word] |= bit;
+		size++;
+		return true;
+	}
+
+	@Override
+	public boolean addAll(Collection<? extends DTNHost> c)
+	{
+		if(!(c instanceof HostBitSet))
+			return super.addAll(c);
+
+		long[] other = ((HostBitSet)c).words;
+		int oldSize = size;
+		for(int i = 0; i < other.length; i++)
+		{
+			if(other[i] == 0 || (i < words.length &&
+					(other[i] & ~words[i]) == 0))
+				continue;
+			prepareWrite(i + 1);
+			size += Long.bitCount(other[i] & ~words[i]);
+			words[i] |= other[i];
+		}
+		return size != oldSize;
+	}
+
+	@Override
+	public boolean contains(Object o)
+	{
+		if(!(o instanceof DTNHost))
+			return false;
+		int address = ((DTNHost)o).getAddress();
+		int word = address >>> 6;
+		return word < words.length && (words[word] & (1L << address)) != 0;
+	}
+
+	/**
+	 * Returns the number of hosts that are in both this set and the other set
+	 *
+	 * @param other The other set
+	 * @return The size of the intersection of the sets
+	 */
+	public int intersectionSize(HostBitSet other)
+	{
+		int n = Math.min(words.length, other.words.length);
+		int count = 0;
+		for(int i = 0; i < n; i++)
+			count += Long.bitCount(words[i] & other.words[i]);
+		return count;
+	}
+
+	/**
+	 * Returns a read-only set with the current contents of this set. The
+	 * snapshot doesn't change when this set is modified.
+	 *
+	 * @return A snapshot of this set
+	 */
+	public HostBitSet snapshot()
+	{
+		if(readOnly)
+			return this;
+		if(snapshot == null)
+		{
+			snapshot = new HostBitSet(words, size, true);
+			shared = true;
+		}
+		return snapshot;
+	}
+
+	@Override
+	public int size()
+	{
+		return size;
+	}
+
+	/**
+	 * Returns an iterator over the hosts in the order of their addresses.
+	 * The iterator doesn't support removing.
+	 */
+	@Override
+	public Iterator<DTNHost> iterator()
+	{
+		return new Iterator<DTNHost>()
+		{
+			private final long[] bits = words;
+			private int next = nextAddress(0);
+
+			private int nextAddress(int from)
+			{
+				int word = from >>> 6;
+				if(word >= bits.length)
+					return -1;
+				long w = bits[word] & (-1L << from);
+				while(w == 0)
+				{
+					if(++word == bits.length)
+						return -1;
+					w = bits[word];
+				}
+				return (word << 6) + Long.numberOfTrailingZeros(w);
+			}
+
+			public boolean hasNext()
+			{
+				return next >= 0;
+			}
+
+			public DTNHost next()
+			{
+				if(next < 0)
+					throw new NoSuchElementException();
+				DTNHost h = hostsByAddress[next];
+				next = nextAddress(next + 1);
+				return h;
+			}
+
+			public void remove()
+			{
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+	/**
+	 * Makes sure the bitset can be modified and has at least the given
+	 * number of words
+	 */
+	private void prepareWrite(int minWords)
+	{
+		if(readOnly)
+			throw new UnsupportedOperationException("Read-only snapshot");
+
+		if(minWords > words.length)
+		{
+			words = Arrays.copyOf(words, Math.max(minWords, words.length * 2));
+			shared = false;
+		}
+		else if(shared)
+		{
+			words = words.clone();
+			shared = false;
+		}
+		snapshot = null;
+	}
+}
@@ -0,0 +1,227 @@
+/*
+ * @(#)IncrementalCWindowCentrality.java
+ *
+ * Copyright 2010 by University of Pittsburgh, released under GPLv3.
+ *
+ */
+package routing.community;
+
+import java.util.*;
+
+import core.*;
+
+/**
+ * <p>Computes the same average number of unique encounters per time window
+ * (epoch) as {@link CWindowCentrality}, but keeps the counts up to date as
+ * contacts end (see {@link Centrality#connectionLost(DTNHost, DTNHost, List)})
+ * instead of going through the whole contact history at every computation.
+ * Reading the global or the local centrality doesn't need to look at the
+ * contact history at all.</p>
+ *
+ * <p>The epochs are consecutive intervals of simulation time (the first epoch
+ * starts at time 0) and the encounters of each epoch are stored in a bitset
+ * over the host addresses. The counts of the most recent epochs are kept in a
+ * ring of <strong>nrOfEpochsToAvg</strong> epochs and the centrality is their
+ * average over the epochs since the first encounter (or over the whole ring
+ * if the first encounter is older than that). Local centrality counts only the
+ * encounters with the members of the local community. The community
+ * detection algorithms only add hosts to the local community, so the local
+ * counts are recomputed only when the size of the community changes.</p>
+ *
+ * <p>This class uses the <strong>timeWindow</strong> and
+ * <strong>nrOfEpochsToAvg</strong> settings of {@link CWindowCentrality}. The
+ * <strong>computeInterval</strong> setting isn't needed since the values are
+ * always up to date.</p>
+ *
+ * @see CWindowCentrality
+ */
+public class IncrementalCWindowCentrality implements Centrality
+{
+	/** Width of each epoch */
+	protected final int timeWindow;
+	/** Number of epochs to average the node's degree over */
+	protected final int epochCount;
+
+	/** encountered hosts (bits by address) of each epoch in the ring */
+	private long[][] encountered;
+	/** number of encountered hosts of each epoch in the ring */
+	private int[] counts;
+	/** number of encountered local community members of each epoch */
+	private int[] localCounts;
+	/** sums of the counts in the ring */
+	private int countSum, localCountSum;
+	/** the newest epoch in the ring */
+	private long currentEpoch;
+	/** epoch of the first encounter or -1 if nothing has been encountered */
+	private long firstEpoch;
+
+	/** local community members (bits by address) the local counts are for */
+	private long[] communityBits;
+	/** size of the local community the local counts are for */
+	private int communitySize;
+
+	public IncrementalCWindowCentrality(Settings s)
+	{
+		if(s.contains(CWindowCentrality.CENTRALITY_WINDOW_SETTING))
+			this.timeWindow = s.getInt(CWindowCentrality.CENTRALITY_WINDOW_SETTING);
+		else
+			this.timeWindow = 21600; // 6 hours
+
+		if(s.contains(CWindowCentrality.EPOCH_COUNT_SETTING))
+			this.epochCount = s.getInt(CWindowCentrality.EPOCH_COUNT_SETTING);
+		else
+			this.epochCount = 787;
+
+		if(this.timeWindow <= 0 || this.epochCount <= 0)
+			throw new SettingsError("Time window and epoch count must be " +
+					"positive for " + getClass().getSimpleName());
+		init();
+	}
+
+	public IncrementalCWindowCentrality(IncrementalCWindowCentrality proto)
+	{
+		this.timeWindow = proto.timeWindow;
+		this.epochCount = proto.epochCount;
+		init();
+	}
+
+	/**
+	 * Initializes the counts to the state where nothing has been encountered
+	 */
+	private void init()
+	{
+		this.encountered = new long[epochCount][];
+		this.counts = new int[epochCount];
+		this.localCounts = new int[epochCount];
+		this.currentEpoch = 0;
+		this.firstEpoch = -1;
+		this.communityBits = new long[0];
+		this.communitySize = 0;
+	}
+
+	public void connectionLost(DTNHost myHost, DTNHost peer,
+			List<Duration> history)
+	{
+		double now = SimClock.getTime();
+
+		// contacts that didn't take any time are not in the history
+		if(history.isEmpty() || history.get(history.size() - 1).end != now)
+			return;
+
+		long epoch = (long)(now / timeWindow);
+		advanceTo(epoch);
+		if(firstEpoch < 0)
+			firstEpoch = epoch;
+
+		int slot = (int)(epoch % epochCount);
+		int address = peer.getAddress();
+		int word = address >>> 6;
+		long bit = 1L << address;
+
+		long[] bits = encountered[slot];
+		if(bits == null || word >= bits.length)
+		{
+			bits = bits == null ? new long[word + 1] :
+				Arrays.copyOf(bits, Math.max(word + 1, bits.length * 2));
+			encountered[slot] = bits;
+		}
+		if((bits[word] & bit) != 0)
+			return; // only count each node once per epoch
+
+		bits[word] |= bit;
+		counts[slot]++;
+		countSum++;
+		if(word < communityBits.length && (communityBits[word] & bit) != 0)
+		{
+			localCounts[slot]++;
+			localCountSum++;
+		}
+	}
+
+	public double getGlobalCentrality(Map<DTNHost, List<Duration>> connHistory)
+	{
+		advanceTo((long)(SimClock.getTime() / timeWindow));
+		return average(countSum);
+	}
+
+	public double getLocalCentrality(Map<DTNHost, List<Duration>> connHistory,
+			CommunityDetection cd)
+	{
+		advanceTo((long)(SimClock.getTime() / timeWindow));
+		updateCommunity(cd.getLocalCommunity());
+		return average(localCountSum);
+	}
+
+	public Centrality replicate()
+	{
+		return new IncrementalCWindowCentrality(this);
+	}
+
+	/**
+	 * Returns the average of the given sum over the epochs since the first
+	 * encounter (but at most over the whole ring)
+	 */
+	private double average(int sum)
+	{
+		if(firstEpoch < 0)
+			return 0;
+
+		long epochs = Math.min(currentEpoch - firstEpoch + 1, epochCount);
+		return ((double)sum) / epochs;
+	}
+
+	/**
+	 * Moves the ring forward to the given epoch, clearing the epochs that
+	 * fall out of it
+	 */
+	private void advanceTo(long epoch)
+	{
+		if(epoch <= currentEpoch)
+			return;
+
+		long steps = Math.min(epoch - currentEpoch, epochCount);
+		for(long e = epoch - steps + 1; e <= epoch; e++)
+		{
+			int slot = (int)(e % epochCount);
+			countSum -= counts[slot];
+			localCountSum -= localCounts[slot];
+			counts[slot] = localCounts[slot] = 0;
+			if(encountered[slot] != null)
+				Arrays.fill(encountered[slot], 0);
+		}
+		currentEpoch = epoch;
+	}
+
+	/**
+	 * Recomputes the local counts if the local community has grown
+	 */
+	private void updateCommunity(Set<DTNHost> community)
+	{
+		if(community.size() == communitySize)
+			return;
+
+		Arrays.fill(communityBits, 0);
+		for(DTNHost h : community)
+		{
+			int word = h.getAddress() >>> 6;
+			if(word >= communityBits.length)
+				communityBits = Arrays.copyOf(communityBits,
+						Math.max(word + 1, communityBits.length * 2));
+			communityBits[word] |= 1L << h.getAddress();
+		}
+		communitySize = community.size();
+
+		localCountSum = 0;
+		for(int slot = 0; slot < epochCount; slot++)
+		{
+			localCounts[slot] = 0;
+			long[] bits = encountered[slot];
+			if(bits == null)
+				continue;
+			int n = Math.min(bits.length, communityBits.length);
+			for(int i = 0; i < n; i++)
+				localCounts[slot] += Long.bitCount(bits[i] & communityBits[i]);
+			localCountSum += localCounts[slot];
+		}
+	}
+}
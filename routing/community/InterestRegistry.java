@@ -0,0 +1,177 @@
+/*
+ * @(#)InterestRegistry.java
+ *
+ * Copyright 2010 by University of Pittsburgh, released under GPLv3.
+ *
+ */
+package routing.community;
+
+import core.DTNHost;
+import core.DTNSim;
+import core.SimError;
+import java.util.*;
+
+/**
+ * Registry of the interests (topics) the ChitChat engines keep transient
+ * relationship strengths (TRS) for. Every interest string gets a small index
+ * the first time it is seen, so the TRS of a host can be stored in a
+ * <code>double[]</code> indexed by interest (see {@link #newValues()}) and
+ * the social profile of a host can be tested with a bit mask instead of
+ * searching the profile list (see {@link #profileOf(DTNHost)}).
+ */
+public class InterestRegistry {
+
+    /** Maximum number of interests that can be registered */
+    public static final int MAX_INTERESTS = 64;
+
+    private static Map<String, Integer> indexes;
+    private static List<String> interests;
+    /** profile lists the cached masks were computed from, by host address */
+    private static Object[] profiles;
+    /** cached profile masks by host address */
+    private static long[] profileMasks;
+
+    static {
+        DTNSim.registerForReset(InterestRegistry.class.getCanonicalName());
+        reset();
+    }
+
+    /**
+     * Forgets the interests and profiles of the previous simulation run
+     */
+    public static void reset() {
+        indexes = new HashMap<String, Integer>();
+        interests = new ArrayList<String>();
+        profiles = new Object[0];
+        profileMasks = new long[0];
+    }
+
+    /**
+     * Returns the index of an interest, registering the interest if it hasn't
+     * been seen before.
+     *
+     * @param interest The interest
+     * @return Index of the interest
+     * @throws SimError if there are already {@link #MAX_INTERESTS} interests
+     */
+    public static int indexOf(String interest) {
+        Integer index = indexes.get(interest);
+        if (index != null) {
+            return index;
+        }
+        if (interests.size() == MAX_INTERESTS) {
+            throw new SimError("Can't register more than " + MAX_INTERESTS
+                    + " interests");
+        }
+        index = interests.size();
+        interests.add(interest);
+        indexes.put(interest, index);
+        return index;
+    }
+
+    /**
+     * Returns the interest with the given index
+     *
+     * @param index Index of the interest
+     * @return The interest
+     */
+    public static String getInterest(int index) {
+        return interests.get(index);
+    }
+
+    /**
+     * Returns the number of registered interests. The indexes of the
+     * interests are <code>0..size()-1</code>.
+     *
+     * @return The number of interests
+     */
+    public static int size() {
+        return interests.size();
+    }
+
+    /**
+     * Returns the social profile of a host as a bit mask where the bit
+     * <code>1L &lt;&lt; indexOf(interest)</code> is set for each interest
+     * in the profile. The mask is cached until the host's profile list is
+     * replaced.
+     *
+     * @param host The host
+     * @return The profile mask of the host
+     */
+    public static long profileOf(DTNHost host) {
+        int address = host.getAddress();
+        List<String> profile = host.getSocialProfile();
+        if (address < profiles.length && profiles[address] == profile) {
+            return profileMasks[address];
+        }
+
+        if (address >= profiles.length) {
+            int length = Math.max(address + 1, profiles.length * 2);
+            profiles = Arrays.copyOf(profiles, length);
+            profileMasks = Arrays.copyOf(profileMasks, length);
+        }
+        long mask = 0;
+        for (String interest : profile) {
+            mask |= 1L << indexOf(interest);
+        }
+        profiles[address] = profile;
+        profileMasks[address] = mask;
+        return mask;
+    }
+
+    /**
+     * Returns true if the interest is in the social profile of the host
+     *
+     * @param host The host
+     * @param interest Index of the interest
+     * @return true if the host has the interest
+     */
+    public static boolean hasInterest(DTNHost host, int interest) {
+        return (profileOf(host) & (1L << interest)) != 0;
+    }
+
+    /**
+     * Returns a new array for storing a value per interest. Every interest
+     * has no value (NaN) in the returned array.
+     *
+     * @return An array of {@link #MAX_INTERESTS} NaNs
+     */
+    public static double[] newValues() {
+        double[] values = new double[MAX_INTERESTS];
+        Arrays.fill(values, Double.NaN);
+        return values;
+    }
+
+    /**
+     * Returns true if none of the interests has a value in the array
+     *
+     * @param values Values by interest index
+     * @return true if all values are NaN
+     */
+    public static boolean isEmpty(double[] values) {
+        for (int i = 0, n = size(); i < n; i++) {
+            if (!Double.isNaN(values[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the interests that have a value in the array as a map from the
+     * interests to their values. The map is a copy, so it doesn't change
+     * when the array does.
+     *
+     * @param values Values by interest index
+     * @return The values as a map
+     */
+    public static Map<String, Double> toMap(double[] values) {
+        Map<String, Double> map = new HashMap<String, Double>();
+        for (int i = 0, n = size(); i < n; i++) {
+            if (!Double.isNaN(values[i])) {
+                map.put(interests.get(i), values[i]);
+            }
+        }
+        return map;
+    }
+}
@@ -58,9 +58,11 @@ public class KCliqueCommunityDetection implements CommunityDetection
 	public static final String K_SETTING = "K";
 	public static final String FAMILIAR_SETTING = "familiarThreshold";
 	
-	protected Set<DTNHost> familiarSet;
-	protected Set<DTNHost> localCommunity;
-	protected Map<DTNHost, Set<DTNHost>> familiarsOfMyCommunity;
+	protected HostBitSet familiarSet;
+	protected HostBitSet localCommunity;
+	/** detection objects of the community members whose familiar sets are
+	 * used (see newConnection()) */
+	protected Map<DTNHost, KCliqueCommunityDetection> familiarsOfMyCommunity;
 	
 	protected double k;
 	protected double familiarThreshold;
@@ -75,9 +77,10 @@ public class KCliqueCommunityDetection implements CommunityDetection
 	{
 		this.k = proto.k;
 		this.familiarThreshold = proto.familiarThreshold;
-		familiarSet = new HashSet<DTNHost>();
-		localCommunity = new HashSet<DTNHost>();
-		this.familiarsOfMyCommunity = new HashMap<DTNHost, Set<DTNHost>>();
+		familiarSet = new HostBitSet();
+		localCommunity = new HostBitSet();
+		this.familiarsOfMyCommunity = 
+			new HashMap<DTNHost, KCliqueCommunityDetection>();
 	}
 	
 	public void newConnection(DTNHost myHost, DTNHost peer, 
@@ -98,9 +101,9 @@ public class KCliqueCommunityDetection implements CommunityDetection
 		 *      community's familiar sets
 		 * 
 		 * In both these cases, for ONE, each CommunityDetection object stores a 
-		 * reference to the familiar set of its community members. As those members
-		 * update their familiar set, others storing a reference to that set
-		 * immediately witness the reflected changes. Therefore, we don't have to 
+		 * reference to the CommunityDetection object of its community members and
+		 * reads their familiar sets from there. As those members update their
+		 * familiar set, others immediately witness the reflected changes. Therefore, we don't have to 
 		 * anything to update an "approximation" of the familiar sets. They're not
 		 * approximations here anymore. In this way, what we have in the k-Clique
 		 * community detection class is an upper bound on the performance of the
@@ -115,16 +118,13 @@ public class KCliqueCommunityDetection implements CommunityDetection
 			 */
 			
 			// compute the intersection size
-			int count=0;
-			for(DTNHost h : scd.familiarSet)
-				if(this.localCommunity.contains(h))
-					count++;
+			int count = scd.familiarSet.intersectionSize(this.localCommunity);
 			
 			// if peer familiar has K nodes in common with this host's local community
 			if(count >= this.k - 1)
 			{
 				this.localCommunity.add(peer);
-				this.familiarsOfMyCommunity.put(peer, scd.familiarSet);
+				this.familiarsOfMyCommunity.put(peer, scd);
 				
 				// search the peer's local community for other nodes with K in common
 				// (like a transitivity property)
@@ -133,10 +133,8 @@ public class KCliqueCommunityDetection implements CommunityDetection
 					if(h == myHost || h == peer) continue;
 					
 					// compute intersection size
-					count = 0;
-					for(DTNHost i : scd.familiarsOfMyCommunity.get(h))
-						if(this.localCommunity.contains(i))
-							count++;
+					count = scd.familiarsOfMyCommunity.get(h).familiarSet
+						.intersectionSize(this.localCommunity);
 					
 					// add nodes if there are K in common with this local community
 					if(count >= this.k - 1)
@@ -152,22 +150,17 @@ public class KCliqueCommunityDetection implements CommunityDetection
 		// Repeat process from peer's perspective
 		if(!scd.localCommunity.contains(myHost))
 		{
-			int count = 0;
-			for(DTNHost h : this.familiarSet)
-				if(scd.localCommunity.contains(h))
-					count++;
+			int count = this.familiarSet.intersectionSize(scd.localCommunity);
 			if(count >= scd.k - 1)
 			{
 				scd.localCommunity.add(myHost);
-				scd.familiarsOfMyCommunity.put(myHost, this.familiarSet);
+				scd.familiarsOfMyCommunity.put(myHost, this);
 				
 				for(DTNHost h : this.localCommunity)
 				{
 					if(h == myHost || h == peer) continue;
-					count = 0;
-					for(DTNHost i : this.familiarsOfMyCommunity.get(h))
-						if(scd.localCommunity.contains(i))
-							count++;
+					count = this.familiarsOfMyCommunity.get(h).familiarSet
+						.intersectionSize(scd.localCommunity);
 					if(count >= scd.k - 1)
 					{
 						scd.localCommunity.add(h);
@@ -199,7 +192,7 @@ public class KCliqueCommunityDetection implements CommunityDetection
 			KCliqueCommunityDetection scd = (KCliqueCommunityDetection)peerCD;
 			this.familiarSet.add(peer);
 			this.localCommunity.add(peer);
-			this.familiarsOfMyCommunity.put(peer, scd.familiarSet);
+			this.familiarsOfMyCommunity.put(peer, scd);
 		}
 	}
 
@@ -215,7 +208,7 @@ public class KCliqueCommunityDetection implements CommunityDetection
 
 	public Set<DTNHost> getLocalCommunity()
 	{
-		return this.localCommunity;
+		return this.localCommunity.snapshot();
 	}
 	
 }
@@ -29,10 +29,9 @@ public class PeopleRankRouting implements RoutingDecisionEngine, PeopleRankEngin
 
     public double thisRank = 0;
 
-    protected Map<DTNHost, Double> startTimestamps;
-    protected Map<DTNHost, List<Duration>> connHistory;
+    /** contact history of this host (bound in connectionUp()) */
+    protected ContactHistory contacts;
     private Map<DTNHost, Tuple<Double,Integer>> peopleRank;
-    private Map<DTNHost, Double> contactDur;
 
     protected CommunityDetection community;
     protected Centrality centrality;
@@ -69,13 +68,12 @@ public class PeopleRankRouting implements RoutingDecisionEngine, PeopleRankEngin
     public PeopleRankRouting(PeopleRankRouting proto) {
         this.community = proto.community.replicate();
         this.centrality = proto.centrality.replicate();
-        startTimestamps = new HashMap<DTNHost, Double>();
-        connHistory = new HashMap<DTNHost, List<Duration>>();
+        contacts = new ContactHistory();
         peopleRank = new HashMap<DTNHost, Tuple<Double,Integer>>();
-        contactDur = new HashMap<DTNHost, Double>();
     }
 
     public void connectionUp(DTNHost thisHost, DTNHost peer) {
+        contacts = ContactHistory.of(thisHost);
     }
 
     /**
@@ -90,8 +88,8 @@ public class PeopleRankRouting implements RoutingDecisionEngine, PeopleRankEngin
         DTNHost myHost = con.getOtherNode(peer);
         PeopleRankRouting de = this.getOtherDecisionEngine(peer);
 
-        this.startTimestamps.put(peer, SimClock.getTime());
-        de.startTimestamps.put(myHost, SimClock.getTime());
+        ContactHistory.of(myHost).connectionUp(peer, SimClock.getTime());
+        ContactHistory.of(peer).connectionUp(myHost, SimClock.getTime());
 
         //buat kalo udah temenan
         if (this.peopleRank.keySet().contains(peer)) {
@@ -105,37 +103,13 @@ public class PeopleRankRouting implements RoutingDecisionEngine, PeopleRankEngin
     }
 
     public void connectionDown(DTNHost thisHost, DTNHost peer) {
-        double time = startTimestamps.get(peer);
-//		double time = cek(thisHost, peer);
-        double etime = SimClock.getTime();
-
-        // Find or create the connection history list
-        List<Duration> history;
-        if (!connHistory.containsKey(peer)) {
-            history = new LinkedList<Duration>();
-            connHistory.put(peer, history);
-        } else {
-            history = connHistory.get(peer);
-        }
-
-        // add this connection to the list
-        if (etime - time > 0) {
-            history.add(new Duration(time, etime));
-        }
-        
-        //hitung kontak durasi
-        double timeContact = etime-time;
-        if (!contactDur.containsKey(peer)) { //kalo belum pernah ketemu
-            contactDur.put(peer, timeContact);
-        } else { //kalo udah pernah ketemu
-            double newTime = contactDur.get(peer) + timeContact;
-            contactDur.put(peer, newTime);
-        }
+        // add this connection to the history
+        List<Duration> history = contacts.connectionDown(peer, SimClock.getTime());
         
         //buat cek temen baru, apakah udah bisa jadi temen atau belum?
         PeopleRankRouting de = this.getOtherDecisionEngine(peer);
         if (!this.peopleRank.containsKey(peer)) { //kalo belum temenan
-            if (this.contactDur.get(peer) >= threshold) { //kalo udah kontak lebih dari threshold
+            if (this.totalContactTime(peer) >= threshold) { //kalo udah kontak lebih dari threshold
                 Tuple<Double,Integer> f = new Tuple<Double,Integer>(de.countRank(), de.countPeer());
                 this.peopleRank.put(peer, f);
                 this.thisRank = this.countRank();
@@ -147,17 +121,9 @@ public class PeopleRankRouting implements RoutingDecisionEngine, PeopleRankEngin
         // inform the community detection object that a connection was lost.
         // The object might need the whole connection history at this point.
         community.connectionLost(thisHost, peer, peerCD, history);
-
-        startTimestamps.remove(peer);
+        centrality.connectionLost(thisHost, peer, history);
     }
     
-    public double cek(DTNHost thisHost, DTNHost peer) {
-        if (startTimestamps.containsKey(thisHost)) {
-            startTimestamps.get(peer);
-        }
-        return 0;
-    }
-
     public boolean newMessage(Message m) {
         return true; // Always keep and attempt to forward a created message
     }
@@ -214,29 +180,7 @@ public class PeopleRankRouting implements RoutingDecisionEngine, PeopleRankEngin
     }
 
     protected double totalContactTime(DTNHost dest) {
-//        double avg = 0;
-        double totalDuration = 0;
-        for (Map.Entry<DTNHost, List<Duration>> conn : connHistory.entrySet()) {
-            if (conn.getKey() == dest) {
-                List<Duration> dur = conn.getValue();
-                Iterator<Duration> i = dur.iterator();
-//                int frek = 0;
-                double total = 0;
-
-                Duration d = new Duration(0, 0);
-                while (i.hasNext()) {
-                    i.next();
-                    total = d.end - d.start;
-                    totalDuration += total;
-//                    frek++;
-                }
-
-//                if (!dur.isEmpty()) {
-//                    avg = totalDuration / frek;
-//                }
-            }
-        }
-        return totalDuration;
+        return contacts.getTotalContactTime(dest);
     }
 
     protected double countRank() {
@@ -266,11 +210,11 @@ public class PeopleRankRouting implements RoutingDecisionEngine, PeopleRankEngin
     }
 
     protected double getLocalCentrality() {
-        return this.centrality.getLocalCentrality(connHistory, community);
+        return this.centrality.getLocalCentrality(contacts.asMap(), community);
     }
 
     protected double getGlobalCentrality() {
-        return this.centrality.getGlobalCentrality(connHistory);
+        return this.centrality.getGlobalCentrality(contacts.asMap());
     }
 
     private PeopleRankRouting getOtherDecisionEngine(DTNHost h) {
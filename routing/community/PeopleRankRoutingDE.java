@@ -20,8 +20,8 @@ public class PeopleRankRoutingDE implements RoutingDecisionEngine, PeopleRankEng
 
     public double thisRank = 0;
 
-    protected Map<DTNHost, Double> startTimestamps;
-    protected Map<DTNHost, List<Duration>> connHistory;
+    /** contact history of this host (bound in connectionUp()) */
+    protected ContactHistory contacts;
     private Map<DTNHost, Tuple<Double, Integer>> peopleRank;
 
     /**
@@ -44,12 +44,12 @@ public class PeopleRankRoutingDE implements RoutingDecisionEngine, PeopleRankEng
      * object
      */
     public PeopleRankRoutingDE(PeopleRankRoutingDE proto) {
-        startTimestamps = new HashMap<DTNHost, Double>();
-        connHistory = new HashMap<DTNHost, List<Duration>>();
+        contacts = new ContactHistory();
         peopleRank = new HashMap<DTNHost, Tuple<Double, Integer>>();
     }
 
     public void connectionUp(DTNHost thisHost, DTNHost peer) {
+        contacts = ContactHistory.of(thisHost);
     }
 
     /**
@@ -64,8 +64,8 @@ public class PeopleRankRoutingDE implements RoutingDecisionEngine, PeopleRankEng
         DTNHost myHost = con.getOtherNode(peer);
         PeopleRankRoutingDE de = this.getOtherDecisionEngine(peer);
 
-        this.startTimestamps.put(peer, SimClock.getTime());
-        de.startTimestamps.put(myHost, SimClock.getTime());
+        ContactHistory.of(myHost).connectionUp(peer, SimClock.getTime());
+        ContactHistory.of(peer).connectionUp(myHost, SimClock.getTime());
 
         //buat kalo udah temenan
         if (this.peopleRank.keySet().contains(peer)) {
@@ -79,23 +79,8 @@ public class PeopleRankRoutingDE implements RoutingDecisionEngine, PeopleRankEng
     }
 
     public void connectionDown(DTNHost thisHost, DTNHost peer) {
-        double time = startTimestamps.get(peer);
-//		double time = cek(thisHost, peer);
-        double etime = SimClock.getTime();
-
-        // Find or create the connection history list
-        List<Duration> history;
-        if (!connHistory.containsKey(peer)) {
-            history = new LinkedList<Duration>();
-            connHistory.put(peer, history);
-        } else {
-            history = connHistory.get(peer);
-        }
-
-        // add this connection to the list
-        if (etime - time > 0) {
-            history.add(new Duration(time, etime));
-        }
+        // add this connection to the history
+        contacts.connectionDown(peer, SimClock.getTime());
 
         //buat cek temen baru, apakah udah bisa jadi temen atau belum?
         PeopleRankRoutingDE de = this.getOtherDecisionEngine(peer);
@@ -106,15 +91,6 @@ public class PeopleRankRoutingDE implements RoutingDecisionEngine, PeopleRankEng
                 this.thisRank = this.countRank();
             }
         }
-
-        startTimestamps.remove(peer);
-    }
-
-    public double cek(DTNHost thisHost, DTNHost peer) {
-        if (startTimestamps.containsKey(thisHost)) {
-            startTimestamps.get(peer);
-        }
-        return 0;
     }
 
     public boolean newMessage(Message m) {
@@ -160,22 +136,7 @@ public class PeopleRankRoutingDE implements RoutingDecisionEngine, PeopleRankEng
 
     //menghitung total contact time thisHost dengan node dest yang diinginkan
     public double countTime(DTNHost h) {
-        if(this.connHistory.containsKey(h)){
-            double totalTime = 0.0;
-            List<Duration> duration = new LinkedList<>(connHistory.get(h));
-            Iterator<Duration> i = duration.iterator();
-            
-            Duration d = new Duration(0,0);
-            while(i.hasNext()){
-                d = i.next();
-                double time = d.end - d.start;
-                totalTime += time;
-            }
-            
-            return totalTime;
-        } else {
-            return 0;
-        }
+        return contacts.getTotalContactTime(h);
     }
 
     //menghitung rank dari thisHost
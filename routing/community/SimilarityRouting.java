@@ -24,8 +24,8 @@ public class SimilarityRouting implements RoutingDecisionEngine, CommunityDetect
      */
     public static final String CENTRALITY_ALG_SETTING = "centralityAlg";
 
-    protected Map<DTNHost, Double> startTimestamps;
-    protected Map<DTNHost, List<Duration>> connHistory;
+    /** contact history of this host (bound in connectionUp()) */
+    protected ContactHistory contacts;
 
     protected CommunityDetection community;
     protected Centrality centrality;
@@ -62,11 +62,11 @@ public class SimilarityRouting implements RoutingDecisionEngine, CommunityDetect
     public SimilarityRouting(SimilarityRouting proto) {
         this.community = proto.community.replicate();
         this.centrality = proto.centrality.replicate();
-        startTimestamps = new HashMap<DTNHost, Double>();
-        connHistory = new HashMap<DTNHost, List<Duration>>();
+        contacts = new ContactHistory();
     }
 
     public void connectionUp(DTNHost thisHost, DTNHost peer) {
+        contacts = ContactHistory.of(thisHost);
     }
 
     /**
@@ -81,45 +81,22 @@ public class SimilarityRouting implements RoutingDecisionEngine, CommunityDetect
         DTNHost myHost = con.getOtherNode(peer);
         SimilarityRouting de = this.getOtherDecisionEngine(peer);
 
-        this.startTimestamps.put(peer, SimClock.getTime());
-        de.startTimestamps.put(myHost, SimClock.getTime());
+        ContactHistory.of(myHost).connectionUp(peer, SimClock.getTime());
+        ContactHistory.of(peer).connectionUp(myHost, SimClock.getTime());
 
         this.community.newConnection(myHost, peer, de.community);
     }
 
     public void connectionDown(DTNHost thisHost, DTNHost peer) {
-        double time = startTimestamps.get(peer);
-//		double time = cek(thisHost, peer);
-        double etime = SimClock.getTime();
-
-        // Find or create the connection history list
-        List<Duration> history;
-        if (!connHistory.containsKey(peer)) {
-            history = new LinkedList<Duration>();
-            connHistory.put(peer, history);
-        } else {
-            history = connHistory.get(peer);
-        }
-
-        // add this connection to the list
-        if (etime - time > 0) {
-            history.add(new Duration(time, etime));
-        }
+        // add this connection to the history
+        List<Duration> history = contacts.connectionDown(peer, SimClock.getTime());
 
         CommunityDetection peerCD = this.getOtherDecisionEngine(peer).community;
 
         // inform the community detection object that a connection was lost.
         // The object might need the whole connection history at this point.
         community.connectionLost(thisHost, peer, peerCD, history);
-
-        startTimestamps.remove(peer);
-    }
-
-    public double cek(DTNHost thisHost, DTNHost peer) {
-        if (startTimestamps.containsKey(thisHost)) {
-            startTimestamps.get(peer);
-        }
-        return 0;
+        centrality.connectionLost(thisHost, peer, history);
     }
 
     public boolean newMessage(Message m) {
@@ -177,30 +154,16 @@ public class SimilarityRouting implements RoutingDecisionEngine, CommunityDetect
         return new SimilarityRouting(this);
     }
 
+    /**
+     * Returns the average duration of the contacts with the destination or
+     * 0 if there have been no contacts with it.
+     */
     protected double countSimilarity(DTNHost dest) {
-        double avg = 0;
-        for (Map.Entry<DTNHost, List<Duration>> conn : connHistory.entrySet()) {
-            if (conn.getKey() == dest) {
-                List<Duration> dur = conn.getValue();
-                Iterator<Duration> i = dur.iterator();
-                int frek = 0;
-                double totalDuration = 0;
-                double total = 0;
-
-                Duration d = new Duration(0, 0);
-                while (i.hasNext()) {
-                    i.next();
-                    total = d.end - d.start;
-                    totalDuration += total;
-                    frek++;
-                }
-
-                if (!dur.isEmpty()) {
-                    avg = totalDuration / frek;
-                }
-            }
+        int frek = contacts.getNrofContacts(dest);
+        if (frek == 0) {
+            return 0;
         }
-        return avg;
+        return contacts.getTotalContactTime(dest) / frek;
     }
 
     protected boolean commumesWithHost(DTNHost h) {
@@ -208,11 +171,11 @@ public class SimilarityRouting implements RoutingDecisionEngine, CommunityDetect
     }
 
     protected double getLocalCentrality() {
-        return this.centrality.getLocalCentrality(connHistory, community);
+        return this.centrality.getLocalCentrality(contacts.asMap(), community);
     }
 
     protected double getGlobalCentrality() {
-        return this.centrality.getGlobalCentrality(connHistory);
+        return this.centrality.getGlobalCentrality(contacts.asMap());
     }
 
     private SimilarityRouting getOtherDecisionEngine(DTNHost h) {
@@ -233,6 +196,6 @@ public class SimilarityRouting implements RoutingDecisionEngine, CommunityDetect
 
     @Override
     public Map<DTNHost, List<Duration>> getConnHistory() {
-        return this.connHistory;
+        return this.contacts.asMap();
     }
 }
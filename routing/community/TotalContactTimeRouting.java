@@ -15,8 +15,8 @@ import routing.RoutingDecisionEngine;
 
 public class TotalContactTimeRouting implements RoutingDecisionEngine {
 
-    protected Map<DTNHost, Double> startTimestamps;
-    protected Map<DTNHost, List<Duration>> connHistory;
+    /** contact history of this host (bound in connectionUp()) */
+    protected ContactHistory contacts;
 
     /**
      * Constructs a DistributedBubbleRap Decision Engine based upon the settings
@@ -38,12 +38,12 @@ public class TotalContactTimeRouting implements RoutingDecisionEngine {
      * object
      */
     public TotalContactTimeRouting(TotalContactTimeRouting proto) {
-        startTimestamps = new HashMap<DTNHost, Double>();
-        connHistory = new HashMap<DTNHost, List<Duration>>();
+        contacts = new ContactHistory();
 //        contactDur = new HashMap<DTNHost, Double>();
     }
 
     public void connectionUp(DTNHost thisHost, DTNHost peer) {
+        contacts = ContactHistory.of(thisHost);
     }
 
     /**
@@ -58,30 +58,15 @@ public class TotalContactTimeRouting implements RoutingDecisionEngine {
         DTNHost myHost = con.getOtherNode(peer);
         TotalContactTimeRouting de = this.getOtherDecisionEngine(peer);
 
-        this.startTimestamps.put(peer, SimClock.getTime());
-        de.startTimestamps.put(myHost, SimClock.getTime());
+        ContactHistory.of(myHost).connectionUp(peer, SimClock.getTime());
+        ContactHistory.of(peer).connectionUp(myHost, SimClock.getTime());
 
 //        this.community.newConnection(myHost, peer, de.community);
     }
 
     public void connectionDown(DTNHost thisHost, DTNHost peer) {
-        double time = startTimestamps.get(peer);
-//		double time = cek(thisHost, peer);
-        double etime = SimClock.getTime();
-
-        // Find or create the connection history list
-        List<Duration> history;
-        if (!connHistory.containsKey(peer)) {
-            history = new LinkedList<Duration>();
-            connHistory.put(peer, history);
-        } else {
-            history = connHistory.get(peer);
-        }
-
-        // add this connection to the list
-        if (etime - time > 0) {
-            history.add(new Duration(time, etime));
-        }
+        // add this connection to the history
+        contacts.connectionDown(peer, SimClock.getTime());
 
         //hitung kontak durasi
 //        double timeContact = etime - time;
@@ -91,15 +76,6 @@ public class TotalContactTimeRouting implements RoutingDecisionEngine {
 //            double newTime = contactDur.get(peer) + timeContact;
 //            contactDur.put(peer, newTime);
 //        }
-
-        startTimestamps.remove(peer);
-    }
-
-    public double cek(DTNHost thisHost, DTNHost peer) {
-        if (startTimestamps.containsKey(thisHost)) {
-            startTimestamps.get(peer);
-        }
-        return 0;
     }
 
     public boolean newMessage(Message m) {
@@ -160,22 +136,7 @@ public class TotalContactTimeRouting implements RoutingDecisionEngine {
     }
 
     public double countTime(DTNHost h) {
-        if(this.connHistory.containsKey(h)){
-            double totalTime = 0.0;
-            List<Duration> duration = new LinkedList<>(connHistory.get(h));
-            Iterator<Duration> i = duration.iterator();
-            
-            Duration d = new Duration(0,0);
-            while(i.hasNext()){
-                d = i.next();
-                double time = d.end - d.start;
-                totalTime += time;
-            }
-            
-            return totalTime;
-        } else {
-            return 0;
-        }
+        return contacts.getTotalContactTime(h);
     }
     
     @Override
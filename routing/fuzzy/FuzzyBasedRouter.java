@@ -9,9 +9,9 @@ import core.Connection;
 import core.DTNHost;
 import core.Message;
 import core.Settings;
+import core.SettingsError;
 import core.SimClock;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -20,33 +20,66 @@ import net.sourceforge.jFuzzyLogic.FunctionBlock;
 import net.sourceforge.jFuzzyLogic.rule.Variable;
 import routing.MessageRouter;
 import routing.RoutingDecisionEngine;
+import routing.ScheduledUpdateEngine;
 import routing.community.Duration;
 import routing.DecisionEngineRouter;
 
 /**
- * 
+ * Routes a message to a peer if the fuzzy transfer of utility of the peer
+ * towards the destination is lower than the one of this host. The inputs of
+ * the fuzzy inference are computed from the separation times between the
+ * contacts with the destination.
+ *
+ * If {@link #SURFACE_ERROR} is set, the function block is sampled once into
+ * a {@link FuzzySurface} and the decisions are interpolated from it.
+ *
  * @author Afra Rian Yudianto, Sanata Dharma University
  */
-public class FuzzyBasedRouter implements RoutingDecisionEngine{
+public class FuzzyBasedRouter implements RoutingDecisionEngine, ScheduledUpdateEngine{
 
     public static final String FCL_SIMILARITY = "fclSimilarity";
     public static final String CLOSENESS = "closeness";
     public static final String VARIANCE = "variance";
     public static final String TRANSFER_OF_UTILITY = "su";
+    /**
+     * Largest allowed error of the interpolated fuzzy output -setting id
+     * ({@value}). If not set, the function block is evaluated for every
+     * decision.
+     */
+    public static final String SURFACE_ERROR = "fuzzySurfaceError";
 
     private FIS fclSimilarity;
+    /** sampled output of the function block or null if not used */
+    private FuzzySurface surface;
     protected Map<DTNHost, Double> startTimestamps;
     protected Map<DTNHost, List<Duration>> connHistory;
-        
+    /** separation time statistics by peer */
+    protected Map<DTNHost, SeparationStats> separations;
+
     public FuzzyBasedRouter(Settings s) {
         String fclString = s.getSetting(FCL_SIMILARITY);
         fclSimilarity = FIS.load(fclString);
+        if (fclSimilarity == null) {
+            throw new SettingsError("Can't load FCL file " + fclString);
+        }
+
+        if (s.contains(SURFACE_ERROR)) {
+            double maxError = s.getDouble(SURFACE_ERROR);
+            surface = FuzzySurface.sample(fclSimilarity.getFunctionBlock(null),
+                    CLOSENESS, VARIANCE, TRANSFER_OF_UTILITY, maxError);
+            if (surface == null) {
+                throw new SettingsError("Can't sample " + fclString
+                        + " with error less than " + maxError);
+            }
+        }
     }
 
     public FuzzyBasedRouter(FuzzyBasedRouter t) {
         this.fclSimilarity = t.fclSimilarity;
+        this.surface = t.surface;
         startTimestamps = new HashMap<>();
         connHistory = new HashMap<>();
+        separations = new HashMap<>();
     }
 
     @Override
@@ -72,6 +105,12 @@ public class FuzzyBasedRouter implements RoutingDecisionEngine{
         if (currentTime - getLastDisconnect > 0) {
             history.add(new Duration(getLastDisconnect, currentTime));
 
+            SeparationStats stats = separations.get(peer);
+            if (stats == null) {
+                stats = new SeparationStats();
+                separations.put(peer, stats);
+            }
+            stats.add(currentTime - getLastDisconnect);
         }
         connHistory.put(peer, history);
         this.startTimestamps.remove(peer);
@@ -120,6 +159,13 @@ public class FuzzyBasedRouter implements RoutingDecisionEngine{
     private double Defuzzification(DTNHost nodes) {
         double closenessValue = getClosenessOfNodes(nodes);
         double varianceValue = getNormalizedVarianceOfNodes(nodes);
+        if (surface != null) {
+            double value = surface.valueAt(closenessValue, varianceValue);
+            if (!Double.isNaN(value)) {
+                return value;
+            }
+        }
+
         FunctionBlock functionBlock = fclSimilarity.getFunctionBlock(null);
 
         functionBlock.setVariable(CLOSENESS, closenessValue);
@@ -132,30 +178,11 @@ public class FuzzyBasedRouter implements RoutingDecisionEngine{
     }
 
     public double getVarianceOfNodes(DTNHost nodes) {
-        List<Duration> list = getList(nodes);
-        Iterator<Duration> duration = list.iterator();
-        double temp = 0;
-        double mean = getAverageShortestSeparationOfNodes(nodes);
-        while (duration.hasNext()) {
-            Duration d = duration.next();
-            temp += Math.pow((d.end - d.start) - mean, 2);
-        }
-        return temp / list.size();
+        return getStats(nodes).variance();
     }
 
     public double getNormalizedVarianceOfNodes(DTNHost nodes) {
-        double k = getList(nodes).size();
-        double N = 0;
-        double sigmf = 0;
-        Iterator<Duration> iterator = getList(nodes).iterator();
-        while (iterator.hasNext()) {
-            Duration duration = iterator.next();
-            double timeDuration = (duration.end - duration.start);
-            N += timeDuration;
-            sigmf += Math.pow(timeDuration, 2);
-        }
-        Double d = (k * (Math.pow(N, 2) - sigmf)) / (Math.pow(N, 2) * (k - 1));
-        return d;
+        return getStats(nodes).normalizedVariance();
     }
 
     public List<Duration> getList(DTNHost nodes) {
@@ -168,21 +195,20 @@ public class FuzzyBasedRouter implements RoutingDecisionEngine{
     }
 
     private double getClosenessOfNodes(DTNHost nodes) {
-        double rataShortestSeparation = getAverageShortestSeparationOfNodes(nodes);
-        double variansi = getVarianceOfNodes(nodes);
+        SeparationStats stats = getStats(nodes);
+        double rataShortestSeparation = stats.mean();
+        double variansi = stats.variance();
         Double c = Math.exp(-(Math.pow(rataShortestSeparation, 2) / (2 * variansi)));
         return c;
     }
 
     public double getAverageShortestSeparationOfNodes(DTNHost nodes) {
-        List<Duration> list = getList(nodes);
-        Iterator<Duration> duration = list.iterator();
-        double hasil = 0;
-        while (duration.hasNext()) {
-            Duration d = duration.next();
-            hasil += (d.end - d.start);
-        }
-        return hasil / list.size();
+        return getStats(nodes).mean();
+    }
+
+    private SeparationStats getStats(DTNHost nodes) {
+        SeparationStats stats = separations.get(nodes);
+        return stats != null ? stats : SeparationStats.EMPTY;
     }
 
     @Override
@@ -210,6 +236,48 @@ public class FuzzyBasedRouter implements RoutingDecisionEngine{
      
     @Override
     public void update(DTNHost thisHost){
-    }    
+    }
 
+    @Override
+    public double getNextUpdateTime() {
+        return Double.POSITIVE_INFINITY; // update doesn't do anything
+    }
+
+    /**
+     * Statistics of the separation times to one peer, updated one
+     * separation at a time (mean and variance with Welford's method).
+     */
+    protected static class SeparationStats {
+        static final SeparationStats EMPTY = new SeparationStats();
+
+        private int count;
+        private double mean;
+        private double m2;
+        private double sum;
+        private double sumOfSquares;
+
+        void add(double separation) {
+            count++;
+            double delta = separation - mean;
+            mean += delta / count;
+            m2 += delta * (separation - mean);
+            sum += separation;
+            sumOfSquares += separation * separation;
+        }
+
+        /** average separation, NaN if there are no separations */
+        double mean() {
+            return count == 0 ? Double.NaN : mean;
+        }
+
+        /** population variance of the separations */
+        double variance() {
+            return count == 0 ? Double.NaN : m2 / count;
+        }
+
+        double normalizedVariance() {
+            double k = count;
+            return (k * (sum * sum - sumOfSquares)) / (sum * sum * (k - 1));
+        }
+    }
 }
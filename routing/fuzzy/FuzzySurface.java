@@ -0,0 +1,139 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package routing.fuzzy;
+
+import net.sourceforge.jFuzzyLogic.FunctionBlock;
+
+/**
+ * Output of a two-input fuzzy function block sampled on a regular grid over
+ * <code>[0, 1] x [0, 1]</code>. Values between the grid points are
+ * interpolated bilinearly, so looking up a value takes a few arithmetic
+ * operations instead of a full fuzzy inference.
+ *
+ * The grid is refined until the interpolated value differs from the
+ * function block by at most the given error bound in the middle of every
+ * cell and in the middle of every cell edge. The corners of the cells are
+ * the sampled points themselves, so there is no error there; elsewhere the
+ * bound is not checked and may be exceeded if the output changes sharply
+ * within a cell. The surface is immutable and can be shared between hosts.
+ */
+public class FuzzySurface {
+
+    /** Resolution (cells per axis) the grid refinement starts from */
+    public static final int MIN_RESOLUTION = 16;
+    /** Resolution (cells per axis) after which the refinement gives up */
+    public static final int MAX_RESOLUTION = 256;
+
+    private final int resolution;
+    /** sampled outputs, row major by the first input */
+    private final double[] values;
+
+    private FuzzySurface(int resolution, double[] values) {
+        this.resolution = resolution;
+        this.values = values;
+    }
+
+    /**
+     * Samples the output of a function block over both inputs in [0, 1].
+     *
+     * @param fb The function block
+     * @param x Name of the first input variable
+     * @param y Name of the second input variable
+     * @param out Name of the output variable
+     * @param maxError Largest allowed difference between the interpolated
+     * and the real output
+     * @return The sampled surface or null if the error bound couldn't be met
+     * with {@link #MAX_RESOLUTION}
+     */
+    public static FuzzySurface sample(FunctionBlock fb, String x, String y,
+            String out, double maxError) {
+        for (int n = MIN_RESOLUTION; n <= MAX_RESOLUTION; n *= 2) {
+            double[] values = new double[(n + 1) * (n + 1)];
+            for (int i = 0; i <= n; i++) {
+                for (int j = 0; j <= n; j++) {
+                    values[i * (n + 1) + j] = evaluate(fb, x, y, out,
+                            (double) i / n, (double) j / n);
+                }
+            }
+
+            FuzzySurface surface = new FuzzySurface(n, values);
+            if (surface.maxError(fb, x, y, out) <= maxError) {
+                return surface;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Evaluates a function block for the given inputs
+     */
+    public static double evaluate(FunctionBlock fb, String x, String y,
+            String out, double xValue, double yValue) {
+        fb.setVariable(x, xValue);
+        fb.setVariable(y, yValue);
+        fb.evaluate();
+        return fb.getVariable(out).getValue();
+    }
+
+    /**
+     * Returns the interpolated output for the inputs
+     *
+     * @param x Value of the first input
+     * @param y Value of the second input
+     * @return The output or NaN if either input is outside [0, 1] (or NaN)
+     */
+    public double valueAt(double x, double y) {
+        if (!(x >= 0 && x <= 1 && y >= 0 && y <= 1)) {
+            return Double.NaN;
+        }
+
+        double fx = x * resolution;
+        double fy = y * resolution;
+        int i = Math.min((int) fx, resolution - 1);
+        int j = Math.min((int) fy, resolution - 1);
+        fx -= i;
+        fy -= j;
+
+        int row = resolution + 1;
+        int k = i * row + j;
+        double v0 = values[k] + (values[k + 1] - values[k]) * fy;
+        double v1 = values[k + row] + (values[k + row + 1] - values[k + row]) * fy;
+        return v0 + (v1 - v0) * fx;
+    }
+
+    /**
+     * Returns the number of cells per axis
+     *
+     * @return The resolution of the grid
+     */
+    public int getResolution() {
+        return resolution;
+    }
+
+    /**
+     * Returns the largest difference between the interpolated and the real
+     * output in the middles of the cells and the cell edges
+     */
+    private double maxError(FunctionBlock fb, String x, String y, String out) {
+        double max = 0;
+        int halfSteps = 2 * resolution;
+        for (int i = 0; i <= halfSteps; i++) {
+            for (int j = 0; j <= halfSteps; j++) {
+                if (i % 2 == 0 && j % 2 == 0) {
+                    continue; // sampled point
+                }
+                double xValue = (double) i / halfSteps;
+                double yValue = (double) j / halfSteps;
+                double error = Math.abs(valueAt(xValue, yValue)
+                        - evaluate(fb, x, y, out, xValue, yValue));
+                if (!(error <= max)) {
+                    max = error;
+                }
+            }
+        }
+        return max;
+    }
+}
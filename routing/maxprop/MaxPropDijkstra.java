@@ -4,36 +4,65 @@
  */
 package routing.maxprop;
 
-import java.util.Collection;
-import java.util.Comparator;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.Iterator;
 import java.util.Map;
-import java.util.PriorityQueue;
-import java.util.Queue;
 import java.util.Set;
 
 /**
  * Dijkstra's shortest path implementation for MaxProp Router module.
+ * Node distances are kept in arrays indexed by the node address and the
+ * unvisited nodes in an indexed binary heap, so updating the distance of a
+ * node doesn't require searching the queue.
+ * <P>
+ * The results of {@link #calculateCosts(int, Set)} are cached per start node.
+ * A cached result stays valid until the probability set of a node that
+ * was visited during the calculation changes; changes elsewhere in the
+ * graph can't affect the costs found.
  */
 public class MaxPropDijkstra {
 	/** Value for infinite distance  */
-	private static final Double INFINITY = Double.MAX_VALUE;
-	/** Initial size of the priority queue */
-	private static final int PQ_INIT_SIZE = 11;
-
-	/** Map of node distances from the source node */
-	private DistanceMap distancesFromStart;
-	/** Set of already visited nodes (where the shortest path is known) */
-	private Set<Integer> visited;
-	/** Priority queue of unvisited nodes discovered so far */
-	private Queue<Integer> unvisited;
-	/** Map of previous nodes on the shortest path(s) -- only used for
-	 * debugging purposes */
-	private Map<Integer, Integer> prevNodes;
+	private static final double INFINITY = Double.MAX_VALUE;
+	/** Initial size of the node arrays */
+	private static final int INIT_SIZE = 16;
+	/** Heap index of a node that is not in the heap */
+	private static final int NOT_IN_HEAP = -1;
+	/** Heap index of an already visited node */
+	private static final int VISITED = -2;
+	/** Version recorded for a visited node that had no probability set */
+	private static final long NO_PROBS = -1;
+
 	/** Mapping of to other nodes' (whom this node has met) probability sets */
 	private Map<Integer, MeetingProbabilitySet> probs;
-	
+
+	/** id of the current search; the values of the node arrays are valid
+	 * only for the nodes whose searchIds value is this */
+	private int searchId;
+	/** ids of the searches where the nodes were last seen, by address */
+	private int[] searchIds;
+	/** ids of the searches where the nodes were targets, by address */
+	private int[] targetIds;
+	/** node distances from the source node, by address */
+	private double[] distances;
+	/** positions of the nodes in the heap (or NOT_IN_HEAP/VISITED) */
+	private int[] heapIndex;
+	/** binary heap of unvisited nodes discovered so far */
+	private int[] heap;
+	private int heapSize;
+	/** visited nodes in the order they were visited */
+	private int[] visited;
+	/** versions of the probability sets of the visited nodes */
+	private long[] visitedVersions;
+	private int nrofVisited;
+	/** were all the nodes reachable from the source visited */
+	private boolean allVisited;
+
+	/** cached search results by the source node address */
+	private Map<Integer, Costs> cache;
+	/** how many times the probabilities have (possibly) changed */
+	private int probsRound;
+
 	/**
 	 * Constructor.
 	 * @param probs A reference to the mapping of the known hosts meeting
@@ -41,184 +70,334 @@ public class MaxPropDijkstra {
 	 */
 	public MaxPropDijkstra(Map<Integer, MeetingProbabilitySet> probs) {
 		this.probs = probs;
+		this.searchIds = new int[INIT_SIZE];
+		this.targetIds = new int[INIT_SIZE];
+		this.distances = new double[INIT_SIZE];
+		this.heapIndex = new int[INIT_SIZE];
+		this.heap = new int[INIT_SIZE];
+		this.visited = new int[INIT_SIZE];
+		this.visitedVersions = new long[INIT_SIZE];
+		this.cache = new HashMap<Integer, Costs>();
 	}
 
 	/**
-	 * Initializes a new search with the first hop router node
-	 * @param firstHop The first hop router node
-	 */
-	private void initWith(Integer firstHop) {
-		this.unvisited = new PriorityQueue<Integer>(PQ_INIT_SIZE, 
-				new DistanceComparator());
-		this.visited = new HashSet<Integer>();
-		this.prevNodes = new HashMap<Integer, Integer>();
-		this.distancesFromStart = new DistanceMap();
-		
-		// set distance to source 0 and initialize unvisited queue
-		this.distancesFromStart.put(firstHop, 0);
-		this.unvisited.add(firstHop);
-	}
-	
-	/**
-	 * Calculates total costs to the given set of target nodes. The cost to 
+	 * Calculates total costs to the given set of target nodes. The cost to
 	 * a node is the sum of complements of probabilities that all the links
-	 * come up as the next contact of the nodes. 
+	 * come up as the next contact of the nodes.
 	 * @param from The index (address) of the start node
 	 * @param to The address set of destination nodes
 	 * @return A map of (destination node, cost) tuples
 	 */
 	public Map<Integer, Double> getCosts(Integer from, Set<Integer> to) {
 		Map<Integer, Double> distMap = new HashMap<Integer, Double>();
+		search(from, to);
+		for (int i=0; i < nrofVisited; i++) {
+			int node = visited[i];
+			if (targetIds[node] == searchId) {
+				distMap.put(node, distances[node]);
+			}
+		}
+		return distMap;
+	}
+
+	/**
+	 * Calculates the costs to the given set of target nodes (see
+	 * {@link #getCosts(Integer, Set)}) and caches them for
+	 * {@link #getCost(int, int)}.
+	 * @param from The index (address) of the start node
+	 * @param to The address set of destination nodes
+	 */
+	public void calculateCosts(int from, Set<Integer> to) {
+		search(from, to);
+
+		Costs c = new Costs();
+		c.nodes = Arrays.copyOf(visited, nrofVisited);
+		c.versions = Arrays.copyOf(visitedVersions, nrofVisited);
+		c.allVisited = allVisited;
+		c.round = probsRound;
+		int maxNode = 0;
+		for (int node : c.nodes) {
+			maxNode = Math.max(maxNode, node);
+		}
+		c.costs = new double[maxNode + 1];
+		Arrays.fill(c.costs, Double.NaN);
+		for (int node : c.nodes) {
+			c.costs[node] = distances[node];
+		}
+		cache.put(from, c);
+	}
+
+	/**
+	 * Returns the cached cost from a node to another node.
+	 * @param from The index (address) of the start node
+	 * @param to The index (address) of the destination node
+	 * @return The cost, {@link Double#MAX_VALUE} if there is no path between
+	 * the nodes or NaN if the cost isn't known (there are no valid cached
+	 * costs from the start node or the search stopped before reaching the
+	 * destination)
+	 */
+	public double getCost(int from, int to) {
+		Costs c = cache.get(from);
+		if (c == null) {
+			return Double.NaN;
+		}
+		if (!isValid(c)) {
+			cache.remove(from);
+			return Double.NaN;
+		}
+
+		if (to < c.costs.length && !Double.isNaN(c.costs[to])) {
+			return c.costs[to];
+		}
+		return c.allVisited ? INFINITY : Double.NaN;
+	}
+
+	/**
+	 * Tells that the probability sets may have changed. Cached costs are
+	 * checked against the probability sets the next time they're used.
+	 * Costs that haven't been used since the previous change are dropped.
+	 */
+	public void probsChanged() {
+		for (Iterator<Costs> i = cache.values().iterator(); i.hasNext();) {
+			if (i.next().round < probsRound) {
+				i.remove();
+			}
+		}
+		probsRound++;
+	}
+
+	/**
+	 * Checks that none of the probability sets that were used for calculating
+	 * the costs has changed after the calculation.
+	 * @param c The costs to check
+	 * @return True if the costs are still valid
+	 */
+	private boolean isValid(Costs c) {
+		if (c.round == probsRound) {
+			return true;
+		}
+		for (int i=0; i < c.nodes.length; i++) {
+			if (versionOf(probs.get(c.nodes[i])) != c.versions[i]) {
+				return false;
+			}
+		}
+		c.round = probsRound;
+		return true;
+	}
+
+	/**
+	 * Runs the search from the given node until all the target nodes are
+	 * visited or all the reachable nodes are visited.
+	 * @param from The index (address) of the start node
+	 * @param to The address set of destination nodes
+	 */
+	private void search(int from, Set<Integer> to) {
+		if (searchId == Integer.MAX_VALUE) {
+			/* start over before the ids of old searches come around */
+			Arrays.fill(searchIds, 0);
+			Arrays.fill(targetIds, 0);
+			searchId = 0;
+		}
+		searchId++;
+		heapSize = 0;
+		nrofVisited = 0;
+		for (Integer t : to) {
+			seen(t);
+			targetIds[t] = searchId;
+		}
 		int nrofNodesToFind = to.size();
-		
-		initWith(from);
-		Integer node = null;
-		
+
+		seen(from);
+		distances[from] = 0;
+		push(from);
+
+		allVisited = true;
 		// always take the node with shortest distance
-		while ((node = unvisited.poll()) != null) {
-			if (to.contains(node)) {
+		while (heapSize > 0) {
+			int node = poll();
+			MeetingProbabilitySet mps = probs.get(node);
+			if (nrofVisited == visited.length) {
+				visited = Arrays.copyOf(visited, nrofVisited * 2);
+				visitedVersions = Arrays.copyOf(visitedVersions,
+						nrofVisited * 2);
+			}
+			visited[nrofVisited] = node;
+			visitedVersions[nrofVisited++] = versionOf(mps);
+
+			if (targetIds[node] == searchId) {
 				// found one of the requested nodes
-				distMap.put(node, distancesFromStart.get(node));
 				nrofNodesToFind--;
 				if (nrofNodesToFind == 0) {
+					allVisited = heapSize == 0;
 					break; // all requested nodes found
 				}
-			} 
-			
-			visited.add(node); // mark the node as visited
-			relax(node);       // add/update neighbor nodes' distances
+			}
+
+			if (mps != null) {
+				relax(node, mps); // add/update neighbor nodes' distances
+			}
 		}
-			
-		return distMap;
 	}
-	
+
 	/**
 	 * Relaxes the neighbors of a node (updates the shortest distances).
+	 * The "distance" between two nodes is the complement of the probability
+	 * that the next node the first node meets is the second node.
 	 * @param node The node whose neighbors are relaxed
+	 * @param mps The meeting probabilities of the node
 	 */
-	private void relax(Integer node) {
-		double nodeDist = distancesFromStart.get(node);
-		Collection<Integer> neighbors;
-		
-		if (!this.probs.containsKey(node)) {
-			return; // node's neighbors are not known
-		}
-		
-		neighbors =	this.probs.get(node).getAllProbs().keySet();
-		
-		for (Integer n : neighbors) {
-			if (visited.contains(n)) {
+	private void relax(int node, MeetingProbabilitySet mps) {
+		double nodeDist = distances[node];
+		int[] neighbors = mps.getNodeArray();
+		double[] nProbs = mps.getProbArray();
+
+		for (int i=0; i < neighbors.length; i++) {
+			int n = neighbors[i];
+			seen(n);
+			if (heapIndex[n] == VISITED) {
 				continue; // skip visited nodes
 			}
-						
+
 			// n node's distance from path's source node
-			double nDist = nodeDist + getDistance(node, n);
-			
-			if (distancesFromStart.get(n) > nDist) { 
+			double nDist = nodeDist + (1 - nProbs[i]);
+
+			if (distances[n] > nDist) {
 				// stored distance > found dist -> update
-				prevNodes.put(n, node); // for debugging
-				setDistance(n, nDist);
+				distances[n] = nDist;
+				if (heapIndex[n] == NOT_IN_HEAP) {
+					push(n);
+				} else {
+					siftUp(heapIndex[n]);
+				}
 			}
 		}
 	}
-	
-	/**
-	 * Sets the distance from source node to a node
-	 * @param n The node whose distance is set
-	 * @param distance The distance of the node from the source node
-	 */
-	private void setDistance(Integer n, double distance) {
-		unvisited.remove(n); // remove node from old place in the queue
-		distancesFromStart.put(n, distance); // update distance
-		unvisited.add(n); // insert node to the new place in the queue
-	}
-	
-	/**
-	 * Returns the "distance" between two nodes, i.e., the complement of the 
-	 * probability that the next node "from" meets is "to". Works only if there
-	 * exist a probability value for "from" meeting "to". 
-	 * @param from The first node
-	 * @param to The second node
-	 * @return The distance between the two nodes
-	 */
-	private double getDistance(Integer from, Integer to) {
-		assert probs.containsKey(from) : "Node " + from + " has not met " + to +
-			" (it has met nodes " + probs.keySet() + ")";
-		return ( 1 - probs.get(from).getProbFor(to) );
-	}
-	
-	/**
-	 * Comparator that compares two nodes by their distance from
-	 * the source node.
-	 */
-	private class DistanceComparator implements 
-		Comparator<Integer> {
-		
-		/**
-		 * Compares two map nodes by their distance from the source node
-		 * @return -1, 0 or 1 if node1's distance is smaller, equal to, or
-		 * bigger than node2's distance
-		 */
-		public int compare(Integer node1, Integer node2) {
-			double dist1 = distancesFromStart.get(node1);
-			double dist2 = distancesFromStart.get(node2);
-			
-			if (dist1 > dist2) {
-				return 1;
-			}
-			else if (dist1 < dist2) {
-				return -1;
-			}
-			else {
-				return node1.compareTo(node2);
+
+	/**
+	 * Initializes the search values of a node if the node hasn't been seen
+	 * during the current search
+	 * @param node The node
+	 */
+	private void seen(int node) {
+		if (node >= searchIds.length) {
+			int size = Math.max(node + 1, searchIds.length * 2);
+			searchIds = Arrays.copyOf(searchIds, size);
+			targetIds = Arrays.copyOf(targetIds, size);
+			distances = Arrays.copyOf(distances, size);
+			heapIndex = Arrays.copyOf(heapIndex, size);
+		}
+		if (searchIds[node] != searchId) {
+			searchIds[node] = searchId;
+			distances[node] = INFINITY;
+			heapIndex[node] = NOT_IN_HEAP;
+		}
+	}
+
+	/**
+	 * Returns the version of a probability set
+	 * @param mps The probability set or null
+	 * @return The version or NO_PROBS for null
+	 */
+	private static long versionOf(MeetingProbabilitySet mps) {
+		return mps == null ? NO_PROBS : mps.getVersion();
+	}
+
+	/**
+	 * Returns true if node1 should be visited before node2, i.e., node1 has
+	 * smaller distance from the source node, or the same distance and smaller
+	 * address
+	 */
+	private boolean isBefore(int node1, int node2) {
+		double dist1 = distances[node1];
+		double dist2 = distances[node2];
+		return dist1 < dist2 || (dist1 == dist2 && node1 < node2);
+	}
+
+	/**
+	 * Adds a node to the heap
+	 * @param node The node
+	 */
+	private void push(int node) {
+		if (heapSize == heap.length) {
+			heap = Arrays.copyOf(heap, heapSize * 2);
+		}
+		heap[heapSize] = node;
+		heapIndex[node] = heapSize;
+		siftUp(heapSize++);
+	}
+
+	/**
+	 * Removes the first node from the heap and marks it visited
+	 * @return The node with the shortest distance
+	 */
+	private int poll() {
+		int first = heap[0];
+		heapIndex[first] = VISITED;
+		heapSize--;
+		if (heapSize > 0) {
+			heap[0] = heap[heapSize];
+			heapIndex[heap[0]] = 0;
+			siftDown(0);
+		}
+		return first;
+	}
+
+	/**
+	 * Moves the node at the given heap position up until the heap is ordered
+	 */
+	private void siftUp(int pos) {
+		int node = heap[pos];
+		while (pos > 0) {
+			int parent = (pos - 1) >>> 1;
+			if (!isBefore(node, heap[parent])) {
+				break;
 			}
+			heap[pos] = heap[parent];
+			heapIndex[heap[pos]] = pos;
+			pos = parent;
 		}
+		heap[pos] = node;
+		heapIndex[node] = pos;
 	}
-	
-	/**
-	 * Simple Map implementation for storing distances. 
-	 */
-	private class DistanceMap {
-		private HashMap<Integer, Double> map;
-		
-		/**
-		 * Constructor. Creates an empty distance map
-		 */
-		public DistanceMap() {
-			this.map = new HashMap<Integer, Double>(); 
-		}
-		
-		/**
-		 * Returns the distance to a node. If no distance value
-		 * is found, returns {@link MaxPropDijkstra#INFINITY} as the value.
-		 * @param node The node whose distance is requested
-		 * @return The distance to that node
-		 */
-		public double get(Integer node) {
-			Double value = map.get(node);
-			if (value != null) {
-				return value;
+
+	/**
+	 * Moves the node at the given heap position down until the heap is
+	 * ordered
+	 */
+	private void siftDown(int pos) {
+		int node = heap[pos];
+		while (true) {
+			int child = 2 * pos + 1;
+			if (child >= heapSize) {
+				break;
 			}
-			else {
-				return INFINITY;
+			if (child + 1 < heapSize && isBefore(heap[child + 1], heap[child])) {
+				child++;
 			}
+			if (!isBefore(heap[child], node)) {
+				break;
+			}
+			heap[pos] = heap[child];
+			heapIndex[heap[pos]] = pos;
+			pos = child;
 		}
-		
-		/**
-		 * Puts a new distance value for a map node
-		 * @param node The node
-		 * @param distance Distance to that node
-		 */
-		public void  put(Integer node, double distance) {
-			map.put(node, distance);
-		}
-		
-		/**
-		 * Returns a string representation of the map's contents
-		 * @return a string representation of the map's contents
-		 */
-		public String toString() {
-			return map.toString();
-		}
-	}
-}
\ No newline at end of file
+		heap[pos] = node;
+		heapIndex[node] = pos;
+	}
+
+	/**
+	 * Cached costs from one start node
+	 */
+	private static class Costs {
+		/** costs by node address (NaN for nodes that were not visited) */
+		private double[] costs;
+		/** the visited nodes */
+		private int[] nodes;
+		/** versions of the probability sets of the visited nodes */
+		private long[] versions;
+		/** were all the nodes reachable from the start node visited */
+		private boolean allVisited;
+		/** probability change round the costs were last known valid at */
+		private int round;
+	}
+}
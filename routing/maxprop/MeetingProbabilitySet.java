@@ -4,6 +4,7 @@
  */
 package routing.maxprop;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -13,16 +14,36 @@ import core.SimClock;
 /**
  * Class for storing and manipulating the meeting probabilities for the MaxProp
  * router module.
+ * <P>
+ * The probabilities are stored in arrays sorted by the node index. A replica
+ * of a probability set ({@link #replicate()}) is read-only and shares the
+ * arrays with the original; the original copies the arrays the next time it
+ * is updated (copy on write). Since replicas never change, replicating a
+ * replica returns the replica itself, so passing probability sets from host
+ * to host only passes references.
  */
 public class MeetingProbabilitySet {
 	public static final int INFINITE_SET_SIZE = Integer.MAX_VALUE;
-	/** meeting probabilities (probability that the next node one meets is X) */
-	private Map<Integer, Double> probs;
+	/** the latest version given to any probability set */
+	private static long lastVersion = 0;
+	/** indexes of the nodes that have a probability, in ascending order */
+	private int[] nodes;
+	/** meeting probabilities of the nodes (probability that the next node
+	 * one meets is X) */
+	private double[] probs;
 	/** the time when this MPS was last updated */
 	private double lastUpdateTime;
 	/** the alpha parameter */
 	private double alpha;
     private int maxSetSize;
+	/** version of the probabilities; changes whenever they change */
+	private long version;
+	/** is this set a read-only replica */
+	private final boolean readOnly;
+	/** are the arrays shared with a replica */
+	private boolean shared;
+	/** the replica of the current version (or null if not created) */
+	private MeetingProbabilitySet replica;
 	
 	/**
 	 * Constructor. Creates a probability set with empty node-probability
@@ -32,15 +53,16 @@ public class MeetingProbabilitySet {
 	 */
 	public MeetingProbabilitySet(int maxSetSize, double alpha) {
 		this.alpha = alpha;
-		this.probs = new HashMap<Integer, Double>();
+		this.nodes = new int[0];
+		this.probs = new double[0];
         if (maxSetSize == INFINITE_SET_SIZE || maxSetSize < 1) {
-        	this.probs = new HashMap<Integer, Double>();
         	this.maxSetSize = INFINITE_SET_SIZE;
         } else {
-        	this.probs = new HashMap<Integer, Double>(maxSetSize);
             this.maxSetSize = maxSetSize;
         }
 		this.lastUpdateTime = 0;
+		this.version = ++lastVersion;
+		this.readOnly = false;
 	}
 	
 	/**
@@ -60,9 +82,23 @@ public class MeetingProbabilitySet {
 		this(INFINITE_SET_SIZE, alpha);
 		double prob = 1.0/initiallyKnownNodes.size();
 		for (Integer i : initiallyKnownNodes) {
-			this.probs.put(i, prob);
+			put(i, prob);
 		}
 	}
+
+	/**
+	 * Creates a read-only replica of the given set
+	 * @param original The set to replicate
+	 */
+	private MeetingProbabilitySet(MeetingProbabilitySet original) {
+		this.nodes = original.nodes;
+		this.probs = original.probs;
+		this.lastUpdateTime = original.lastUpdateTime;
+		this.alpha = original.alpha;
+		this.maxSetSize = original.maxSetSize;
+		this.version = original.version;
+		this.readOnly = true;
+	}
 	
 	/**
 	 * Updates meeting probability for the given node index.
@@ -70,41 +106,114 @@ public class MeetingProbabilitySet {
 	 * Normalize{P}</PRE> 
 	 * I.e., The probability of the given node index is increased by one and
 	 * then all the probabilities are normalized so that their sum equals to 1.
+	 * If the set is full, the smallest probability is dropped (of equal
+	 * probabilities, the one with the smallest node index).
 	 * @param index The node index to update the probability for
 	 */
 	public void updateMeetingProbFor(Integer index) {
-        Map.Entry<Integer, Double> smallestEntry = null;
+        int smallest = -1;
         double smallestValue = Double.MAX_VALUE;
 
 		this.lastUpdateTime = SimClock.getTime();
 		
-		if (probs.size() == 0) { // first entry
-			probs.put(index, 1.0);
+		if (nodes.length == 0) { // first entry
+			put(index, 1.0);
 			return;
 		}
 		
 		double newValue = getProbFor(index) + alpha;
-		probs.put(index, newValue);
+		put(index, newValue);
 
 		/* now the sum of all entries is 1+alpha;
 		 * normalize to one by dividing all the entries by 1+alpha */ 
-		for (Map.Entry<Integer, Double> entry : probs.entrySet()) {
-			entry.setValue(entry.getValue() / (1+alpha));
-            if (entry.getValue() < smallestValue) {
-                smallestEntry = entry;
-                smallestValue = entry.getValue();
+		for (int i=0; i < probs.length; i++) {
+			probs[i] = probs[i] / (1+alpha);
+            if (probs[i] < smallestValue) {
+                smallest = i;
+                smallestValue = probs[i];
             }
-
 		}
 
-        if (probs.size() >= maxSetSize) {
-            core.Debug.p("Probsize: " + probs.size() + " dropping " + 
-                    probs.remove(smallestEntry.getKey()));
+        if (nodes.length >= maxSetSize) {
+            core.Debug.p("Probsize: " + nodes.length + " dropping " +
+                    smallestValue);
+            remove(smallest);
         }
 	}
 	
 	public void updateMeetingProbFor(Integer index, double iet)	{
-		probs.put(index, iet);
+		put(index, iet);
+	}
+
+	/**
+	 * Sets the probability of a node. Before modifying the arrays, copies
+	 * them if they are shared with a replica.
+	 * @param index The node index
+	 * @param value The probability
+	 */
+	private void put(int index, double value) {
+		int i = Arrays.binarySearch(nodes, index);
+		if (i >= 0) {
+			prepareWrite();
+			probs[i] = value;
+			return;
+		}
+
+		/* new node -> new arrays, so there's no need to copy old ones */
+		changed();
+		i = -i - 1;
+		int[] newNodes = new int[nodes.length + 1];
+		double[] newProbs = new double[nodes.length + 1];
+		System.arraycopy(nodes, 0, newNodes, 0, i);
+		System.arraycopy(probs, 0, newProbs, 0, i);
+		newNodes[i] = index;
+		newProbs[i] = value;
+		System.arraycopy(nodes, i, newNodes, i + 1, nodes.length - i);
+		System.arraycopy(probs, i, newProbs, i + 1, probs.length - i);
+		this.nodes = newNodes;
+		this.probs = newProbs;
+		this.shared = false;
+	}
+
+	/**
+	 * Removes the probability at the given position of the arrays
+	 * @param i The position
+	 */
+	private void remove(int i) {
+		changed();
+		int[] newNodes = new int[nodes.length - 1];
+		double[] newProbs = new double[nodes.length - 1];
+		System.arraycopy(nodes, 0, newNodes, 0, i);
+		System.arraycopy(probs, 0, newProbs, 0, i);
+		System.arraycopy(nodes, i + 1, newNodes, i, newNodes.length - i);
+		System.arraycopy(probs, i + 1, newProbs, i, newProbs.length - i);
+		this.nodes = newNodes;
+		this.probs = newProbs;
+		this.shared = false;
+	}
+
+	/**
+	 * Makes the arrays safe to modify in place
+	 */
+	private void prepareWrite() {
+		changed();
+		if (shared) {
+			this.nodes = nodes.clone();
+			this.probs = probs.clone();
+			this.shared = false;
+		}
+	}
+	
+	/**
+	 * Gives the probabilities a new version
+	 */
+	private void changed() {
+		if (readOnly) {
+			throw new UnsupportedOperationException(
+					"Replicas of probability sets are read-only");
+		}
+		this.version = ++lastVersion;
+		this.replica = null;
 	}
 	
 	/**
@@ -113,8 +222,9 @@ public class MeetingProbabilitySet {
 	 * @return the current delivery probability value
 	 */
 	public double getProbFor(Integer index) {
-		if (probs.containsKey(index)) {
-			return probs.get(index);
+		int i = Arrays.binarySearch(nodes, index);
+		if (i >= 0) {
+			return probs[i];
 		}
 		else {
 			/* the node with the given index has not been met */
@@ -123,10 +233,44 @@ public class MeetingProbabilitySet {
 	}
 	
 	/**
-	 * Returns a reference to the probability map of this probability set
-	 * @return a reference to the probability map of this probability set
+	 * Returns a copy of the probabilities of this probability set as a map
+	 * @return a mapping from the node indexes to their probabilities
 	 */
 	public Map<Integer, Double> getAllProbs() {
+		Map<Integer, Double> map = new HashMap<Integer, Double>();
+		for (int i=0; i < nodes.length; i++) {
+			map.put(nodes[i], probs[i]);
+		}
+		return map;
+	}
+	
+	/**
+	 * Returns the version of the probabilities. The version changes every
+	 * time the probabilities change, and two sets with the same version
+	 * have the same probabilities (a replica gets the version of the
+	 * original).
+	 * @return the version of the probabilities
+	 */
+	public long getVersion() {
+		return this.version;
+	}
+	
+	/**
+	 * Returns the indexes of the nodes that have a probability, in ascending
+	 * order. The i:th probability of {@link #getProbArray()} belongs to the
+	 * i:th node. The array must not be modified.
+	 * @return the node indexes
+	 */
+	int[] getNodeArray() {
+		return this.nodes;
+	}
+	
+	/**
+	 * Returns the probabilities of the nodes of {@link #getNodeArray()}.
+	 * The array must not be modified.
+	 * @return the probabilities
+	 */
+	double[] getProbArray() {
 		return this.probs;
 	}
 	
@@ -146,19 +290,18 @@ public class MeetingProbabilitySet {
 	}
 	
 	/**
-	 * Returns a deep copy of the probability set
-	 * @return a deep copy of the probability set
+	 * Returns a read-only copy of the probability set. The copy doesn't
+	 * change when this set is updated.
+	 * @return a copy of the probability set
 	 */
 	public MeetingProbabilitySet replicate() {
-		MeetingProbabilitySet replica = new MeetingProbabilitySet(
-				this.maxSetSize, alpha);
-		
-		// do a deep copy
-		for (Map.Entry<Integer, Double> e : probs.entrySet()) {
-			replica.probs.put(e.getKey(), e.getValue().doubleValue());
+		if (readOnly) {
+			return this;
+		}
+		if (replica == null) {
+			replica = new MeetingProbabilitySet(this);
+			shared = true;
 		}
-		
-		replica.lastUpdateTime = this.lastUpdateTime;
 		return replica;
 	}
 	
@@ -168,6 +311,6 @@ public class MeetingProbabilitySet {
 	 */
     @Override
 	public String toString() {
-		return "probs: " +	this.probs.toString();
+		return "probs: " +	getAllProbs().toString();
 	}
-}
\ No newline at end of file
+}
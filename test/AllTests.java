@@ -49,6 +49,25 @@ public class AllTests {
 		suite.addTestSuite(ScheduledUpdatesQueueTest.class);
 		suite.addTestSuite(MessageTest.class);
 		suite.addTestSuite(ModuleCommunicationBusTest.class);
+		suite.addTestSuite(ParallelUpdateTest.class);
+		suite.addTestSuite(IdleUpdateSkippingTest.class);
+		suite.addTestSuite(PairScanTest.class);
+		suite.addTestSuite(KineticContactsTest.class);
+		suite.addTestSuite(MessageIndexTest.class);
+		suite.addTestSuite(LongHashMapTest.class);
+		suite.addTestSuite(OutgoingMessageQueueTest.class);
+		suite.addTestSuite(SummaryVectorTest.class);
+		suite.addTestSuite(MessageKeySetTest.class);
+		suite.addTestSuite(MessageHolderIndexTest.class);
+		suite.addTestSuite(ContactHistoryTest.class);
+		suite.addTestSuite(IncrementalCWindowCentralityTest.class);
+		suite.addTestSuite(HostBitSetTest.class);
+		suite.addTestSuite(FuzzyBasedRouterTest.class);
+		suite.addTestSuite(FuzzySurfaceTest.class);
+		suite.addTestSuite(InterestRegistryTest.class);
+		suite.addTestSuite(ConnectivityGridTest.class);
+		suite.addTestSuite(DistributedBubbleRapTest.class);
+		suite.addTestSuite(MessagesByDestinationTest.class);
 		//$JUnit-END$
 		return suite;
 	}
@@ -0,0 +1,152 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import interfaces.ConnectivityGrid;
+import interfaces.ConnectivityOptimizer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+import core.Coord;
+import core.DTNHost;
+import core.NetworkInterface;
+import core.SimClock;
+
+/**
+ * Tests that the connectivity grid visits the same near interfaces, in the
+ * same order, as it returns in a collection
+ */
+public class ConnectivityGridTest extends TestCase {
+	private static final double CELL_SIZE = 100;
+	/** world size of the test settings */
+	private static final double WORLD_SIZE = 1000;
+	private static final int NROF_RANDOM_HOSTS = 150;
+
+	private TestUtils utils;
+	private List<DTNHost> hosts;
+	private ConnectivityGrid grid;
+	private Random rng;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		TestSettings ts = new TestSettings();
+		SimClock.reset();
+		DTNHost.reset();
+		NetworkInterface.reset();
+		ConnectivityGrid.reset();
+		utils = new TestUtils(null, null, ts);
+		utils.setTransmitRange(CELL_SIZE);
+		hosts = new ArrayList<DTNHost>();
+		rng = new Random(7);
+
+		/* world corners and edges */
+		double[] edges = {0, WORLD_SIZE / 2, WORLD_SIZE};
+		for (double x : edges) {
+			for (double y : edges) {
+				hosts.add(utils.createHost(new Coord(x, y)));
+			}
+		}
+		/* cell borders and just next to them */
+		for (double d : new double[] {CELL_SIZE, 3 * CELL_SIZE}) {
+			hosts.add(utils.createHost(new Coord(d, d)));
+			hosts.add(utils.createHost(new Coord(d - 0.001, d)));
+			hosts.add(utils.createHost(new Coord(d, d - 0.001)));
+			hosts.add(utils.createHost(new Coord(d, 0)));
+			hosts.add(utils.createHost(new Coord(WORLD_SIZE, d)));
+		}
+		for (int i=0; i < NROF_RANDOM_HOSTS; i++) {
+			hosts.add(utils.createHost(randomCoord()));
+		}
+
+		NetworkInterface ni = hosts.get(0).getInterfaces().get(0);
+		grid = ConnectivityGrid.ConnectivityGridFactory(
+				ni.getInterfaceType().hashCode(), CELL_SIZE);
+		assertEquals(hosts.size(), grid.getAllInterfaces().size());
+		/* the interfaces were added at the hosts' locations before the
+		 * initial locations were set */
+		for (DTNHost h : hosts) {
+			grid.updateLocation(h.getInterfaces().get(0));
+		}
+	}
+
+	public void testVisitNearInterfaces() {
+		assertSameNearInterfaces();
+	}
+
+	public void testVisitAfterMoves() {
+		for (int round=0; round < 5; round++) {
+			for (int i=0; i < hosts.size(); i += 3) {
+				moveTo(hosts.get(i), randomCoord());
+			}
+			assertSameNearInterfaces();
+		}
+
+		/* to the corners and cell borders, and back inside */
+		DTNHost h = hosts.get(hosts.size() - 1);
+		Coord[] route = {new Coord(0, 0), new Coord(WORLD_SIZE, WORLD_SIZE),
+				new Coord(CELL_SIZE, CELL_SIZE),
+				new Coord(CELL_SIZE - 0.001, CELL_SIZE),
+				new Coord(WORLD_SIZE, 0), new Coord(450, 550)};
+		for (Coord c : route) {
+			moveTo(h, c);
+			assertSameNearInterfaces();
+		}
+	}
+
+	/**
+	 * Moves a host and updates the location of its interface in the grid
+	 */
+	private void moveTo(DTNHost h, Coord c) {
+		h.setLocation(c);
+		grid.updateLocation(h.getInterfaces().get(0));
+	}
+
+	private Coord randomCoord() {
+		return new Coord(rng.nextDouble() * WORLD_SIZE,
+				rng.nextDouble() * WORLD_SIZE);
+	}
+
+	/**
+	 * Asserts that, for every interface, the grid visits the interfaces it
+	 * returns as near interfaces in the same order and that those are the
+	 * interfaces in the same or neighboring cells
+	 */
+	private void assertSameNearInterfaces() {
+		for (DTNHost h : hosts) {
+			NetworkInterface ni = h.getInterfaces().get(0);
+			final List<NetworkInterface> visited =
+				new ArrayList<NetworkInterface>();
+			grid.visitNearInterfaces(ni,
+					new ConnectivityOptimizer.InterfaceVisitor() {
+				public void visit(NetworkInterface other) {
+					visited.add(other);
+				}
+			});
+			List<NetworkInterface> near =
+				new ArrayList<NetworkInterface>(grid.getNearInterfaces(ni));
+			assertEquals("Near interfaces of " + h, near, visited);
+
+			int nrofNear = 0;
+			for (DTNHost other : hosts) {
+				if (Math.abs(cellOf(h.getLocation().getX()) -
+						cellOf(other.getLocation().getX())) <= 1 &&
+						Math.abs(cellOf(h.getLocation().getY()) -
+						cellOf(other.getLocation().getY())) <= 1) {
+					assertTrue(other + " not near " + h,
+							near.contains(other.getInterfaces().get(0)));
+					nrofNear++;
+				}
+			}
+			assertEquals(nrofNear, near.size());
+		}
+	}
+
+	private static int cellOf(double coordinate) {
+		return (int)(coordinate / CELL_SIZE);
+	}
+}
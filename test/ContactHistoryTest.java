@@ -0,0 +1,138 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+import routing.community.ContactHistory;
+import routing.community.Duration;
+import core.DTNHost;
+import core.MessageListener;
+import core.SimClock;
+
+/**
+ * Tests for the shared contact history of the community routing engines
+ */
+public class ContactHistoryTest extends TestCase {
+	private SimClock clock;
+	private TestSettings ts;
+	private DTNHost h0, h1, h2;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		SimClock.reset();
+		clock = SimClock.getInstance();
+		ContactHistory.reset();
+		ts = new TestSettings();
+		TestUtils utils = new TestUtils(null, new ArrayList<MessageListener>(),
+				ts);
+		h0 = utils.createHost();
+		h1 = utils.createHost();
+		h2 = utils.createHost();
+	}
+
+	public void testAggregates() {
+		ContactHistory ch = new ContactHistory();
+		ch.connectionUp(h1, 10);
+		assertTrue(ch.isConnected(h1));
+		ch.connectionDown(h1, 15);
+		assertFalse(ch.isConnected(h1));
+		ch.connectionUp(h1, 20);
+		ch.connectionDown(h1, 23);
+		/* zero length contact is not added but the peer is still known */
+		ch.connectionUp(h2, 30);
+		List<Duration> h2Contacts = ch.connectionDown(h2, 30);
+
+		assertEquals(2, ch.getNrofContacts(h1));
+		assertEquals(8.0, ch.getTotalContactTime(h1));
+		assertEquals(25.0 + 9.0, ch.getSquaredContactTime(h1));
+		assertEquals(23.0, ch.getLastContactEnd(h1));
+		assertEquals(0, h2Contacts.size());
+		assertEquals(0, ch.getNrofContacts(h0));
+		assertEquals(0.0, ch.getTotalContactTime(h0));
+		assertTrue(Double.isNaN(ch.getLastContactEnd(h0)));
+
+		List<Duration> contacts = ch.getContacts(h1);
+		assertEquals(2, contacts.size());
+		assertEquals(10.0, contacts.get(0).start);
+		assertEquals(15.0, contacts.get(0).end);
+		assertEquals(20.0, contacts.get(1).start);
+		assertEquals(23.0, contacts.get(1).end);
+	}
+
+	public void testMapView() {
+		ContactHistory ch = new ContactHistory();
+		Map<DTNHost, List<Duration>> map = ch.asMap();
+		assertTrue(map.isEmpty());
+
+		ch.connectionUp(h2, 1);
+		ch.connectionDown(h2, 2);
+		ch.connectionUp(h1, 3);
+		assertEquals(1, map.size());
+		assertNull(map.get(h1));
+		ch.connectionDown(h1, 5);
+
+		assertEquals(2, map.size());
+		assertTrue(map.containsKey(h1));
+		assertFalse(map.containsKey(h0));
+		assertEquals(1, map.get(h1).size());
+
+		Iterator<DTNHost> i = map.keySet().iterator();
+		assertEquals(h1, i.next());
+		assertEquals(h2, i.next());
+		assertFalse(i.hasNext());
+
+		try {
+			map.get(h1).add(new Duration(6, 7));
+			fail("History view should be read-only");
+		} catch (UnsupportedOperationException e) {
+			/* expected */
+		}
+	}
+
+	public void testRetentionWindow() {
+		ContactHistory ch = new ContactHistory(100);
+		for (int i=0; i < 10; i++) {
+			ch.connectionUp(h1, i * 20);
+			ch.connectionDown(h1, i * 20 + 5);
+		}
+		assertEquals(10, ch.getNrofContacts(h1));
+		clock.setTime(185);
+		assertEquals(6, ch.getNrofContacts(h1));
+
+		/* contacts that ended before 140 are forgotten */
+		clock.setTime(240);
+		assertEquals(3, ch.getNrofContacts(h1));
+		assertEquals(15.0, ch.getTotalContactTime(h1));
+		assertEquals(75.0, ch.getSquaredContactTime(h1));
+		assertEquals(140.0, ch.getContacts(h1).get(0).start);
+		assertEquals(185.0, ch.getLastContactEnd(h1));
+
+		clock.setTime(1000);
+		assertEquals(0, ch.getNrofContacts(h1));
+		assertTrue(ch.asMap().isEmpty());
+	}
+
+	public void testSharedHistories() {
+		ts.putSetting(ContactHistory.CONTACT_HISTORY_NS + "." +
+				ContactHistory.WINDOW_S, "50");
+		ContactHistory ch0 = ContactHistory.of(h0);
+		assertSame(ch0, ContactHistory.of(h0));
+		assertNotSame(ch0, ContactHistory.of(h1));
+
+		ch0.connectionUp(h1, 0);
+		ch0.connectionDown(h1, 10);
+		clock.setTime(70);
+		assertEquals(0, ContactHistory.of(h0).getNrofContacts(h1));
+
+		ContactHistory.reset();
+		assertNotSame(ch0, ContactHistory.of(h0));
+		assertEquals(0, ContactHistory.of(h0).getNrofContacts(h1));
+	}
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+import routing.DecisionEngineRouter;
+import routing.community.DistributedBubbleRap;
+import routing.community.SimpleCommunityDetection;
+import core.Coord;
+import core.DTNHost;
+import core.Message;
+import core.MessageListener;
+import core.SimClock;
+
+/**
+ * Tests that the batch decisions of the DistributedBubbleRap engine are the
+ * same as its decisions for single messages
+ */
+public class DistributedBubbleRapTest extends TestCase {
+	private static final int NROF_HOSTS = 8;
+
+	private TestUtils utils;
+	private SimClock clock;
+	private DTNHost[] hosts;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		TestSettings ts = new TestSettings();
+		String ns = DecisionEngineRouter.PUBSUB_NS + ".";
+		ts.putSetting(ns + DecisionEngineRouter.ENGINE_SETTING,
+				"community.DistributedBubbleRap");
+		ts.putSetting(ns + SimpleCommunityDetection.LAMBDA_SETTING, "0");
+		ts.putSetting(ns + SimpleCommunityDetection.GAMMA_SETTING, "0.7");
+		ts.putSetting(ns + SimpleCommunityDetection.FAMILIAR_SETTING, "50");
+		SimClock.reset();
+		clock = SimClock.getInstance();
+		core.NetworkInterface.reset();
+		core.DTNHost.reset();
+		Message.reset();
+		utils = new TestUtils(null, new ArrayList<MessageListener>(), ts);
+		utils.setMessageRouterProto(new DecisionEngineRouter(ts));
+		hosts = new DTNHost[NROF_HOSTS];
+		for (int i=0; i < NROF_HOSTS; i++) {
+			hosts[i] = utils.createHost(new Coord(0, 0), "h" + i);
+		}
+
+		/* two groups that meet long enough to become familiar, h6 meets
+		 * everyone briefly and h7 meets no one */
+		double t = 0;
+		int[][] familiar = {{0, 1}, {1, 2}, {0, 2}, {3, 4}, {4, 5}};
+		for (int round=0; round < 2; round++) {
+			for (int[] pair : familiar) {
+				t = contact(hosts[pair[0]], hosts[pair[1]], t, 100);
+			}
+		}
+		for (int i=0; i < 6; i++) {
+			t = contact(hosts[6], hosts[i], t, 10);
+		}
+		t = contact(hosts[0], hosts[3], t, 10);
+		clock.setTime(t + 1);
+	}
+
+	public void testBatchMatchesSingleDecisions() {
+		int nrofSent = 0;
+		int nrofKept = 0;
+		for (int from=0; from < NROF_HOSTS; from++) {
+			DTNHost h = hosts[from];
+			for (int to=0; to < NROF_HOSTS; to++) {
+				if (to != from) {
+					h.createNewMessage(new Message(h, hosts[to],
+							"M" + from + "-" + to, 10));
+				}
+			}
+			List<Message> buffer = new ArrayList<Message>(
+					h.getMessageCollection());
+			DistributedBubbleRap de = engineOf(h);
+
+			for (DTNHost peer : hosts) {
+				if (peer == h) {
+					continue;
+				}
+				List<Message> single = new ArrayList<Message>();
+				for (Message m : buffer) {
+					if (de.shouldSendMessageToHost(m, peer, h)) {
+						single.add(m);
+					}
+				}
+				List<Message> batch = de.selectMessagesToSend(buffer, peer, h);
+				assertEquals(h + " to " + peer, single, batch);
+				nrofSent += batch.size();
+				nrofKept += buffer.size() - batch.size();
+			}
+		}
+
+		/* both decisions were made */
+		assertTrue(nrofSent > 0);
+		assertTrue(nrofKept > 0);
+	}
+
+	/**
+	 * Keeps two hosts connected for a while
+	 * @return The time when the connection went down
+	 */
+	private double contact(DTNHost h1, DTNHost h2, double start,
+			double duration) {
+		clock.setTime(start);
+		h1.forceConnection(h2, null, true);
+		clock.setTime(start + duration);
+		h1.forceConnection(h2, null, false);
+		return start + duration + 1;
+	}
+
+	private static DistributedBubbleRap engineOf(DTNHost h) {
+		return (DistributedBubbleRap)
+			((DecisionEngineRouter)h.getRouter()).getDecisionEngine();
+	}
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import java.util.ArrayList;
+
+import junit.framework.TestCase;
+import routing.fuzzy.FuzzyBasedRouter;
+import core.DTNHost;
+import core.MessageListener;
+import core.SimClock;
+
+/**
+ * Tests for the separation time statistics of the fuzzy based router
+ */
+public class FuzzyBasedRouterTest extends TestCase {
+	private static final String NS = "FuzzyTest";
+	private static final double DELTA = 0.00001;
+
+	private SimClock clock;
+	private DTNHost h0, h1, h2;
+	private FuzzyBasedRouter router;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		SimClock.reset();
+		clock = SimClock.getInstance();
+		TestSettings ts = new TestSettings();
+		ts.putSetting(NS + "." + FuzzyBasedRouter.FCL_SIMILARITY,
+				"fcl/Reality.fcl");
+		TestUtils utils = new TestUtils(null, new ArrayList<MessageListener>(),
+				ts);
+		h0 = utils.createHost();
+		h1 = utils.createHost();
+		h2 = utils.createHost();
+		router = (FuzzyBasedRouter)new FuzzyBasedRouter(
+				new TestSettings(NS)).replicate();
+	}
+
+	public void testSeparationStatistics() {
+		assertTrue(Double.isNaN(router.getAverageShortestSeparationOfNodes(h1)));
+
+		/* separations from the start of the simulation and between contacts */
+		contact(h1, 10, 20);
+		contact(h1, 50, 60);
+		contact(h1, 80, 90);
+		contact(h2, 40, 45);
+
+		assertEquals(20, router.getAverageShortestSeparationOfNodes(h1), DELTA);
+		assertEquals(200.0 / 3, router.getVarianceOfNodes(h1), DELTA);
+		/* k (N^2 - sum x^2) / (N^2 (k - 1)) */
+		assertEquals(3 * (3600.0 - 1400) / (3600 * 2),
+				router.getNormalizedVarianceOfNodes(h1), DELTA);
+		assertEquals(3, router.getList(h1).size());
+
+		assertEquals(40, router.getAverageShortestSeparationOfNodes(h2), DELTA);
+		assertEquals(0, router.getVarianceOfNodes(h2), DELTA);
+	}
+
+	private void contact(DTNHost peer, double start, double end) {
+		clock.setTime(start);
+		router.connectionUp(h0, peer);
+		clock.setTime(end);
+		router.connectionDown(h0, peer);
+	}
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import junit.framework.TestCase;
+import net.sourceforge.jFuzzyLogic.FunctionBlock;
+import routing.fuzzy.FuzzySurface;
+
+/**
+ * Tests for the sampled output surface of fuzzy function blocks. The function
+ * blocks are stubs whose output is an analytic function of the inputs.
+ */
+public class FuzzySurfaceTest extends TestCase {
+	private static final double DELTA = 0.0000001;
+
+	public void testSampling() {
+		/* bilinear functions are interpolated without errors */
+		FuzzySurface s = FuzzySurface.sample(new StubBlock() {
+			protected double f(double x, double y) {
+				return 0.25 + 0.5 * x + x * y;
+			}
+		}, "x", "y", "out", DELTA);
+
+		assertEquals(FuzzySurface.MIN_RESOLUTION, s.getResolution());
+		int n = s.getResolution();
+		for (int i=0; i <= n; i++) {
+			for (int j=0; j <= n; j++) {
+				double x = (double)i / n;
+				double y = (double)j / n;
+				assertEquals(0.25 + 0.5 * x + x * y, s.valueAt(x, y), DELTA);
+			}
+		}
+		assertEquals(0.25 + 0.5 * 0.3 + 0.3 * 0.71, s.valueAt(0.3, 0.71),
+				DELTA);
+
+		assertTrue(Double.isNaN(s.valueAt(-0.01, 0.5)));
+		assertTrue(Double.isNaN(s.valueAt(0.5, 1.01)));
+		assertTrue(Double.isNaN(s.valueAt(Double.NaN, 0.5)));
+	}
+
+	public void testBilinearInterpolation() {
+		FuzzySurface s = FuzzySurface.sample(new StubBlock() {
+			protected double f(double x, double y) {
+				return x * x + y;
+			}
+		}, "x", "y", "out", 0.001);
+		assertEquals(16, s.getResolution());
+
+		/* a quarter into the cell from (8/16, 4/16) to (9/16, 5/16) */
+		double x0 = 64.0 / 256;
+		double x1 = 81.0 / 256;
+		double y = (4 + 0.5) / 16;
+		assertEquals(x0 + (x1 - x0) * 0.25 + y,
+				s.valueAt((8 + 0.25) / 16, y), DELTA);
+		/* the upper edges belong to the last cells */
+		assertEquals(2, s.valueAt(1, 1), DELTA);
+	}
+
+	public void testRefinement() {
+		StubBlock square = new StubBlock() {
+			protected double f(double x, double y) {
+				return x * x;
+			}
+		};
+		/* the error in the middle of a cell of width h is h^2 / 4 */
+		assertEquals(16, FuzzySurface.sample(square, "x", "y", "out",
+				0.001).getResolution());
+		assertEquals(32, FuzzySurface.sample(square, "x", "y", "out",
+				0.0005).getResolution());
+		assertEquals(256, FuzzySurface.sample(square, "x", "y", "out",
+				0.000004).getResolution());
+
+		/* the bound can't be met -> fall back to the function block */
+		assertNull(FuzzySurface.sample(square, "x", "y", "out", 0.000001));
+	}
+
+	public void testErrorAtEdgeMiddles() {
+		/* the errors of the terms cancel out in the middles of the cells
+		 * but not in the middles of the cell edges */
+		StubBlock saddle = new StubBlock() {
+			protected double f(double x, double y) {
+				return 0.5 + x * x - y * y;
+			}
+		};
+		assertEquals(16, FuzzySurface.sample(saddle, "x", "y", "out",
+				0.001).getResolution());
+		assertNull(FuzzySurface.sample(saddle, "x", "y", "out", 0.000001));
+	}
+
+	/**
+	 * Function block whose output variable "out" is a function of the input
+	 * variables "x" and "y"
+	 */
+	private static abstract class StubBlock extends FunctionBlock {
+		public StubBlock() {
+			super(null);
+		}
+
+		@Override
+		public void evaluate() {
+			getVariable("out").setValue(f(getVariable("x").getValue(),
+					getVariable("y").getValue()));
+		}
+
+		protected abstract double f(double x, double y);
+	}
+}
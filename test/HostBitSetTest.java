@@ -0,0 +1,103 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import junit.framework.TestCase;
+import routing.community.HostBitSet;
+import core.DTNHost;
+import core.MessageListener;
+
+/**
+ * Tests for the bitset of hosts used by the community detection algorithms
+ */
+public class HostBitSetTest extends TestCase {
+	private static final int NROF_HOSTS = 70;
+	private List<DTNHost> hosts;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		HostBitSet.reset();
+		TestUtils utils = new TestUtils(null, new ArrayList<MessageListener>(),
+				new TestSettings());
+		hosts = new ArrayList<DTNHost>();
+		for (int i=0; i < NROF_HOSTS; i++) {
+			hosts.add(utils.createHost());
+		}
+	}
+
+	public void testAddAndContains() {
+		HostBitSet set = new HostBitSet();
+		assertTrue(set.isEmpty());
+		assertTrue(set.add(hosts.get(65)));
+		assertTrue(set.add(hosts.get(3)));
+		assertFalse(set.add(hosts.get(3)));
+		assertEquals(2, set.size());
+		assertTrue(set.contains(hosts.get(65)));
+		assertFalse(set.contains(hosts.get(1)));
+		assertFalse(set.contains("not a host"));
+
+		/* iteration goes in the order of the addresses */
+		Iterator<DTNHost> i = set.iterator();
+		assertEquals(hosts.get(3), i.next());
+		assertEquals(hosts.get(65), i.next());
+		assertFalse(i.hasNext());
+
+		Set<DTNHost> expected = new HashSet<DTNHost>();
+		expected.add(hosts.get(3));
+		expected.add(hosts.get(65));
+		assertEquals(expected, set);
+	}
+
+	public void testIntersectionAndUnion() {
+		HostBitSet a = new HostBitSet();
+		HostBitSet b = new HostBitSet();
+		for (int i=0; i < 10; i++) {
+			a.add(hosts.get(i));
+			b.add(hosts.get(i + 5));
+		}
+		b.add(hosts.get(66));
+		assertEquals(5, a.intersectionSize(b));
+		assertEquals(5, b.intersectionSize(a));
+
+		assertTrue(a.addAll(b));
+		assertEquals(16, a.size());
+		assertTrue(a.contains(hosts.get(66)));
+		assertFalse(a.addAll(b));
+
+		HostBitSet c = new HostBitSet();
+		List<DTNHost> others = hosts.subList(60, 70);
+		assertTrue(c.addAll(others));
+		assertEquals(10, c.size());
+		assertEquals(1, c.intersectionSize(a));
+	}
+
+	public void testSnapshot() {
+		HostBitSet set = new HostBitSet();
+		set.add(hosts.get(1));
+		HostBitSet snap = set.snapshot();
+		assertSame(snap, set.snapshot());
+
+		set.add(hosts.get(2));
+		set.add(hosts.get(68));
+		assertEquals(1, snap.size());
+		assertFalse(snap.contains(hosts.get(2)));
+		assertEquals(3, set.size());
+		assertNotSame(snap, set.snapshot());
+		assertEquals(3, set.snapshot().size());
+
+		try {
+			snap.add(hosts.get(5));
+			fail("Snapshot should be read-only");
+		} catch (UnsupportedOperationException e) {
+			/* expected */
+		}
+	}
+}
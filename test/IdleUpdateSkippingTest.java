@@ -0,0 +1,245 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import input.ConnectionEvent;
+import input.EventQueue;
+import input.ExternalEvent;
+import interfaces.SimpleBroadcastInterface;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.TestCase;
+import report.MessageStatsReport;
+import report.Report;
+import routing.DecisionEngineRouter;
+import routing.EpidemicRouter;
+import routing.MessageRouter;
+import core.Coord;
+import core.DTNHost;
+import core.Message;
+import core.MessageListener;
+import core.ModuleCommunicationBus;
+import core.NetworkInterface;
+import core.SimClock;
+import core.SimScenario;
+import core.UpdateListener;
+import core.World;
+
+/**
+ * Tests that skipping the idle update intervals gives the same results as
+ * updating every interval.
+ */
+public class IdleUpdateSkippingTest extends TestCase {
+	private static final int NROF_HOSTS = 6;
+	private static final double UP_INTERVAL = 0.5;
+	private static final double END_TIME = 2000;
+	private static final String GROUP_NS = "IdleSkipGroup";
+	private static final String IFACE_NS = "IdleSkipInterface";
+
+	private TestSettings ts;
+	private List<DTNHost> hosts;
+	private int updateCount;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		ts = new TestSettings();
+		ts.putSetting(GROUP_NS + "." + MessageRouter.SEND_QUEUE_MODE_S,
+				"" + MessageRouter.Q_MODE_FIFO);
+		ts.putSetting(GROUP_NS + "." + MessageRouter.MSG_TTL_S, "20");
+		ts.putSetting(IFACE_NS + "." + NetworkInterface.TRANSMIT_RANGE_S,
+				"10");
+		ts.putSetting(IFACE_NS + "." + NetworkInterface.TRANSMIT_SPEED_S,
+				"100");
+		ts.putSetting(SimScenario.SCENARIO_NS + "." + SimScenario.END_TIME_S,
+				"" + END_TIME);
+		/* shuffling consumes random numbers on every update */
+		ts.putSetting(World.SETTINGS_NS + "." + World.RANDOMIZE_UPDATES_S,
+				"false");
+	}
+
+	public void testSameResultsWithFewerUpdates() throws IOException {
+		checkSameResultsWithFewerUpdates(false);
+	}
+
+	public void testDecisionEngineRouter() throws IOException {
+		ts.putSetting(DecisionEngineRouter.PUBSUB_NS + "." +
+				DecisionEngineRouter.ENGINE_SETTING, "EpidemicDecisionRouter");
+		checkSameResultsWithFewerUpdates(true);
+	}
+
+	/**
+	 * Runs the scenario with and without skipping idle updates and checks
+	 * that the results are the same but fewer updates are done when skipping
+	 * @param decisionEngine Should the hosts use DecisionEngineRouter
+	 * instead of EpidemicRouter
+	 */
+	private void checkSameResultsWithFewerUpdates(boolean decisionEngine)
+			throws IOException {
+		String normal = runScenario(false, decisionEngine);
+		int normalUpdates = updateCount;
+		String skipping = runScenario(true, decisionEngine);
+		int skippingUpdates = updateCount;
+
+		assertTrue("No messages were delivered: " + normal,
+				!normal.contains("delivered: 0\n"));
+		assertEquals(normal, skipping);
+		assertTrue("Updates were not skipped (" + skippingUpdates + " vs. " +
+				normalUpdates + ")", skippingUpdates < normalUpdates / 2);
+	}
+
+	/**
+	 * Runs the test scenario from the beginning and returns the output of
+	 * message stats report
+	 * @param skipIdle Should idle update intervals be skipped
+	 * @param decisionEngine Should the hosts use DecisionEngineRouter
+	 * @return The report's output
+	 */
+	private String runScenario(boolean skipIdle, boolean decisionEngine)
+			throws IOException {
+		File outFile = File.createTempFile("idleskiptest", ".tmp");
+		outFile.deleteOnExit();
+		ts.putSetting("MessageStatsReport." + Report.OUTPUT_SETTING,
+				outFile.getAbsolutePath());
+		ts.putSetting(World.SETTINGS_NS + "." + World.SKIP_IDLE_UPDATES_S,
+				"" + skipIdle);
+
+		SimClock.reset();
+		DTNHost.reset();
+		NetworkInterface.reset();
+		Message.reset();
+
+		MessageStatsReport report = new MessageStatsReport();
+		List<MessageListener> ml = new ArrayList<MessageListener>();
+		ml.add(report);
+
+		MessageRouter routerProto;
+		if (decisionEngine) {
+			routerProto = new DecisionEngineRouter(new TestSettings(GROUP_NS));
+		} else {
+			routerProto = new EpidemicRouter(new TestSettings(GROUP_NS));
+		}
+		hosts = new ArrayList<DTNHost>();
+		for (int i=0; i < NROF_HOSTS; i++) {
+			List<NetworkInterface> li = new ArrayList<NetworkInterface>();
+			li.add(new SimpleBroadcastInterface(new TestSettings(IFACE_NS)));
+			hosts.add(new DTNHost(ml, null, "n", li,
+					new ModuleCommunicationBus(),
+					new StationaryMovement(new Coord(i * 100, 0)),
+					routerProto, new ArrayList<String>()));
+		}
+
+		List<UpdateListener> ul = new ArrayList<UpdateListener>();
+		ul.add(new UpdateListener() {
+			public void updated(List<DTNHost> hosts) {
+				updateCount++;
+			}
+		});
+		List<EventQueue> eql = new ArrayList<EventQueue>();
+		eql.add(createEvents());
+
+		World world = new World(hosts, 1000, 100, UP_INTERVAL, ul, false,
+				eql);
+		updateCount = 0;
+		while (SimClock.getTime() < END_TIME) {
+			world.update();
+		}
+		report.done();
+
+		StringBuilder sb = new StringBuilder();
+		BufferedReader reader = new BufferedReader(new FileReader(outFile));
+		for (String line = reader.readLine(); line != null;
+				line = reader.readLine()) {
+			sb.append(line).append('\n');
+		}
+		reader.close();
+
+		return sb.toString();
+	}
+
+	/**
+	 * Creates a sparse trace of messages and connections where hosts forward
+	 * the messages along a chain
+	 * @return Queue of the events
+	 */
+	private EventQueue createEvents() {
+		List<ExternalEvent> events = new ArrayList<ExternalEvent>();
+		for (int n=0; n < 15; n++) {
+			double start = 10 + n * 130.3;
+			int from = n % NROF_HOSTS;
+			int to = (n + 3) % NROF_HOSTS;
+			events.add(new MessageEvent(from, to, "M" + n, 400, start));
+			for (int hop=0; hop < 3; hop++) {
+				int a = (from + hop) % NROF_HOSTS;
+				int b = (from + hop + 1) % NROF_HOSTS;
+				double up = start + 7.1 + hop * 31;
+				events.add(new ConnectionEvent(a, b, null, true, up));
+				events.add(new ConnectionEvent(a, b, null, false, up + 12));
+			}
+		}
+		Collections.sort(events);
+
+		return new ListQueue(events);
+	}
+
+	/**
+	 * Event that creates a new message with a destination
+	 */
+	private class MessageEvent extends ExternalEvent {
+		private int from;
+		private int to;
+		private String id;
+		private int size;
+
+		public MessageEvent(int from, int to, String id, int size,
+				double time) {
+			super(time);
+			this.from = from;
+			this.to = to;
+			this.id = id;
+			this.size = size;
+		}
+
+		@Override
+		public void processEvent(World world) {
+			DTNHost f = world.getNodeByAddress(from);
+			f.createNewMessage(new Message(f, world.getNodeByAddress(to), id,
+					size));
+		}
+	}
+
+	/**
+	 * Event queue that returns events from a (sorted) list
+	 */
+	private static class ListQueue implements EventQueue {
+		private List<ExternalEvent> events;
+		private int next;
+
+		public ListQueue(List<ExternalEvent> events) {
+			this.events = events;
+			this.next = 0;
+		}
+
+		public ExternalEvent nextEvent() {
+			if (next < events.size()) {
+				return events.get(next++);
+			}
+			return new ExternalEvent(Double.MAX_VALUE);
+		}
+
+		public double nextEventsTime() {
+			if (next < events.size()) {
+				return events.get(next).getTime();
+			}
+			return Double.MAX_VALUE;
+		}
+	}
+}
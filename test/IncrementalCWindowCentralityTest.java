@@ -0,0 +1,122 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import junit.framework.TestCase;
+import routing.community.CWindowCentrality;
+import routing.community.Centrality;
+import routing.community.CommunityDetection;
+import routing.community.ContactHistory;
+import routing.community.Duration;
+import routing.community.IncrementalCWindowCentrality;
+import core.DTNHost;
+import core.MessageListener;
+import core.SimClock;
+
+/**
+ * Tests for the incrementally updated CWindow centrality
+ */
+public class IncrementalCWindowCentralityTest extends TestCase {
+	private static final String NS = "CentralityTest";
+	private static final double DELTA = 0.00001;
+
+	private SimClock clock;
+	private DTNHost h0, h1, h2, h3;
+	private ContactHistory history;
+	private Centrality centrality;
+	private Set<DTNHost> community;
+	private CommunityDetection cd;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		SimClock.reset();
+		clock = SimClock.getInstance();
+		TestSettings ts = new TestSettings();
+		ts.putSetting(NS + "." + CWindowCentrality.CENTRALITY_WINDOW_SETTING,
+				"100");
+		ts.putSetting(NS + "." + CWindowCentrality.EPOCH_COUNT_SETTING, "3");
+		TestUtils utils = new TestUtils(null, new ArrayList<MessageListener>(),
+				ts);
+		h0 = utils.createHost();
+		h1 = utils.createHost();
+		h2 = utils.createHost();
+		h3 = utils.createHost();
+
+		history = new ContactHistory();
+		centrality = new IncrementalCWindowCentrality(
+				new TestSettings(NS)).replicate();
+		community = new HashSet<DTNHost>();
+		cd = new CommunityDetection() {
+			public void newConnection(DTNHost myHost, DTNHost peer,
+					CommunityDetection peerCD) {}
+			public void connectionLost(DTNHost myHost, DTNHost peer,
+					CommunityDetection peerCD, List<Duration> history) {}
+			public boolean isHostInCommunity(DTNHost h) {
+				return community.contains(h);
+			}
+			public Set<DTNHost> getLocalCommunity() {
+				return community;
+			}
+			public CommunityDetection replicate() {
+				return this;
+			}
+		};
+	}
+
+	public void testGlobalCentrality() {
+		assertEquals(0, centrality.getGlobalCentrality(history.asMap()), DELTA);
+
+		contact(h1, 0, 10);
+		contact(h1, 15, 20);
+		contact(h2, 30, 50);
+		/* contacts that took no time are not counted */
+		contact(h3, 60, 60);
+		assertEquals(2, centrality.getGlobalCentrality(history.asMap()), DELTA);
+
+		contact(h1, 120, 150);
+		assertEquals(1.5, centrality.getGlobalCentrality(history.asMap()),
+				DELTA);
+
+		/* the first epoch is out of the window of three epochs */
+		clock.setTime(350);
+		assertEquals(1.0 / 3, centrality.getGlobalCentrality(history.asMap()),
+				DELTA);
+
+		clock.setTime(1000);
+		assertEquals(0, centrality.getGlobalCentrality(history.asMap()), DELTA);
+	}
+
+	public void testLocalCentrality() {
+		community.add(h2);
+		contact(h1, 0, 10);
+		contact(h2, 30, 50);
+		contact(h1, 120, 150);
+		contact(h3, 160, 170);
+		assertEquals(0.5, centrality.getLocalCentrality(history.asMap(), cd),
+				DELTA);
+
+		/* hosts encountered earlier count when they join the community */
+		community.add(h1);
+		assertEquals(1.5, centrality.getLocalCentrality(history.asMap(), cd),
+				DELTA);
+		contact(h3, 180, 190);
+		assertEquals(1.5, centrality.getLocalCentrality(history.asMap(), cd),
+				DELTA);
+		assertEquals(2, centrality.getGlobalCentrality(history.asMap()), DELTA);
+	}
+
+	private void contact(DTNHost peer, double start, double end) {
+		clock.setTime(start);
+		history.connectionUp(peer, start);
+		clock.setTime(end);
+		List<Duration> contacts = history.connectionDown(peer, end);
+		centrality.connectionLost(h0, peer, contacts);
+	}
+}
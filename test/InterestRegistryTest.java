@@ -0,0 +1,234 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+import routing.DecisionEngineRouter;
+import routing.MessageRouter;
+import routing.community.ChitChatPrioritized1;
+import routing.community.InterestRegistry;
+import core.Coord;
+import core.DTNHost;
+import core.Message;
+import core.SimClock;
+import core.SimError;
+
+/**
+ * Tests for the interest registry and the transient relationship strengths
+ * (TRS) the ChitChat engines store by interest index
+ */
+public class InterestRegistryTest extends TestCase {
+	private static final String[] TOPICS = {"Sport", "Cooking", "Film",
+		"Traveling", "Music", "Urgent"};
+	private static final double BETA = 20;
+
+	private TestUtils utils;
+	private SimClock clock;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		InterestRegistry.reset();
+		SimClock.reset();
+		clock = SimClock.getInstance();
+		core.NetworkInterface.reset();
+		core.DTNHost.reset();
+		utils = new TestUtils(null, null, new TestSettings());
+	}
+
+	public void testIndexOf() {
+		assertEquals(0, InterestRegistry.indexOf("Sport"));
+		assertEquals(1, InterestRegistry.indexOf("Music"));
+		assertEquals(0, InterestRegistry.indexOf("Sport"));
+		assertEquals(2, InterestRegistry.size());
+		assertEquals("Sport", InterestRegistry.getInterest(0));
+		assertEquals("Music", InterestRegistry.getInterest(1));
+
+		double[] values = InterestRegistry.newValues();
+		assertEquals(InterestRegistry.MAX_INTERESTS, values.length);
+		assertTrue(InterestRegistry.isEmpty(values));
+		values[1] = 0.25;
+		assertFalse(InterestRegistry.isEmpty(values));
+		Map<String, Double> map = InterestRegistry.toMap(values);
+		assertEquals(1, map.size());
+		assertEquals(0.25, map.get("Music").doubleValue(), 0);
+	}
+
+	public void testInterestLimit() {
+		for (int i=0; i < InterestRegistry.MAX_INTERESTS; i++) {
+			assertEquals(i, InterestRegistry.indexOf("I" + i));
+		}
+		/* already registered interests are still found */
+		assertEquals(InterestRegistry.MAX_INTERESTS - 1,
+				InterestRegistry.indexOf("I" + (InterestRegistry.MAX_INTERESTS - 1)));
+		try {
+			InterestRegistry.indexOf("one too many");
+			fail("Registered more than " + InterestRegistry.MAX_INTERESTS +
+					" interests");
+		} catch (SimError e) {
+			// expected
+		}
+		assertEquals(InterestRegistry.MAX_INTERESTS, InterestRegistry.size());
+	}
+
+	public void testProfileMask() {
+		DTNHost h = utils.createHost();
+		List<String> profile = new ArrayList<String>(
+				Arrays.asList("Film", "Sport"));
+		h.setSocialProfile(profile);
+
+		int film = InterestRegistry.indexOf("Film");
+		int music = InterestRegistry.indexOf("Music");
+		int sport = InterestRegistry.indexOf("Sport");
+		assertEquals((1L << film) | (1L << sport),
+				InterestRegistry.profileOf(h));
+		assertTrue(InterestRegistry.hasInterest(h, film));
+		assertTrue(InterestRegistry.hasInterest(h, sport));
+		assertFalse(InterestRegistry.hasInterest(h, music));
+
+		/* the mask is cached for the same profile list */
+		profile.add("Music");
+		assertFalse(InterestRegistry.hasInterest(h, music));
+
+		/* ...and computed again when the list is replaced */
+		h.setSocialProfile(new ArrayList<String>(Arrays.asList("Music")));
+		assertEquals(1L << music, InterestRegistry.profileOf(h));
+		assertFalse(InterestRegistry.hasInterest(h, sport));
+	}
+
+	/**
+	 * Runs one growth and one decay step with two connected hosts and
+	 * compares the TRS to the map-based formulas the engines used before the
+	 * TRS were stored in arrays
+	 */
+	public void testTrsGrowthAndDecay() {
+		TestSettings ts = new TestSettings();
+		ts.putSetting(DecisionEngineRouter.PUBSUB_NS + "." +
+				DecisionEngineRouter.ENGINE_SETTING,
+				"community.ChitChatPrioritized1");
+		utils.setMessageRouterProto(new DecisionEngineRouter(ts));
+		DTNHost h0 = utils.createHost(new Coord(0, 0), "h0");
+		DTNHost h1 = utils.createHost(new Coord(0, 0), "h1");
+		DTNHost h2 = utils.createHost(new Coord(0, 0), "h2");
+		List<String> p0 = new ArrayList<String>(Arrays.asList("Sport"));
+		List<String> p1 = new ArrayList<String>(Arrays.asList("Music"));
+		h0.setSocialProfile(p0);
+		h1.setSocialProfile(p1);
+		ChitChatPrioritized1 de0 = engineOf(h0);
+		ChitChatPrioritized1 de1 = engineOf(h1);
+
+		/* connection up at 0: TRS are initialized and exchange at 0 decays
+		 * nothing */
+		Map<String, Double> trs0 = initialTrs(p0);
+		Map<String, Double> trs1 = initialTrs(p1);
+		Map<String, Double> hist0 = new HashMap<String, Double>();
+		Map<String, Double> hist1 = new HashMap<String, Double>();
+		clock.setTime(0);
+		h0.forceConnection(h1, null, true);
+		assertTrs(trs0, de0);
+		assertTrs(trs1, de1);
+
+		/* growth when h0 considers sending a message to h1 at 0.3; only the
+		 * engine that did the exchange (h0's) knows its connections, so the
+		 * TRS of h1 don't grow */
+		clock.setTime(0.3);
+		Message m = new Message(h0, h2, "M1", 10);
+		m.setIntProperty(MessageRouter.PRIORITY_SLOT, 0);
+		m.setIntProperty(Message.registerIntProperty("Message Interest"),
+				InterestRegistry.indexOf("Music"));
+		de0.shouldSendMessageToHost(m, h1, h0);
+		for (String t : TOPICS) {
+			trs0.put(t, oldGrowth(trs0.get(t), p0, p1, trs1.get(t), 1, 0.3, t));
+		}
+		for (String t : TOPICS) {
+			trs1.put(t, oldGrowth(trs1.get(t), p1, p0, trs0.get(t), 0, 0.3, t));
+		}
+		assertEquals(0.05, trs0.get("Music"), 1e-12);
+		assertTrs(trs0, de0);
+		assertTrs(trs1, de1);
+
+		/* connection down at 1 and decay at the next connection at 5 */
+		clock.setTime(1);
+		h0.forceConnection(h1, null, false);
+		oldConnectionDown(hist0, trs1, 1);
+		oldConnectionDown(hist1, trs0, 1);
+		clock.setTime(5);
+		h0.forceConnection(h1, null, true);
+		for (String t : TOPICS) {
+			trs0.put(t, oldDecay(trs0.get(t), hist0, p0, 5, t));
+			trs1.put(t, oldDecay(trs1.get(t), hist1, p1, 5, t));
+		}
+		assertEquals(0.01, trs0.get("Music"), 1e-12);
+		assertTrs(trs0, de0);
+		assertTrs(trs1, de1);
+	}
+
+	private static ChitChatPrioritized1 engineOf(DTNHost h) {
+		return (ChitChatPrioritized1)
+			((DecisionEngineRouter)h.getRouter()).getDecisionEngine();
+	}
+
+	private static void assertTrs(Map<String, Double> expected,
+			ChitChatPrioritized1 de) {
+		Map<String, Double> trs = de.getTranscient();
+		assertEquals(expected.size(), trs.size());
+		for (String t : TOPICS) {
+			assertEquals(t, expected.get(t), trs.get(t), 1e-12);
+		}
+	}
+
+	/* the map-based TRS formulas of the engines for one connection */
+
+	private static Map<String, Double> initialTrs(List<String> profile) {
+		Map<String, Double> trs = new HashMap<String, Double>();
+		for (String t : TOPICS) {
+			trs.put(t, profile.contains(t) ? 0.5 : 0.0);
+		}
+		return trs;
+	}
+
+	private static double oldGrowth(double trs, List<String> myProfile,
+			List<String> peerProfile, double peerTrs, int nrofConnections,
+			double elapsed, String interest) {
+		int damper;
+		if (myProfile.contains(interest) && peerProfile.contains(interest)) {
+			damper = 1;
+		} else if (myProfile.contains(interest)) {
+			damper = 2;
+		} else if (peerProfile.contains(interest)) {
+			damper = 3;
+		} else {
+			damper = 4;
+		}
+		double trsNew = trs + nrofConnections * peerTrs * elapsed / damper;
+		return trsNew >= 1 ? 1 : trsNew;
+	}
+
+	private static void oldConnectionDown(Map<String, Double> connHistoryT,
+			Map<String, Double> peerTrs, double etime) {
+		for (Map.Entry<String, Double> e : peerTrs.entrySet()) {
+			if (e.getValue() > 0.0) {
+				connHistoryT.put(e.getKey(), etime);
+			}
+		}
+	}
+
+	private static double oldDecay(double trs,
+			Map<String, Double> connHistoryT, List<String> profile,
+			double stime2, String interest) {
+		double stime1 = connHistoryT.containsKey(interest) ?
+				connHistoryT.get(interest) : 0;
+		if (profile.contains(interest)) {
+			return (trs - 0.5) / BETA * (stime2 - stime1) + 0.5;
+		} else {
+			return trs / BETA * (stime2 - stime1);
+		}
+	}
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import input.EventQueue;
+import interfaces.ConnectivityGrid;
+import interfaces.KineticConnectivityOptimizer;
+import interfaces.SimpleBroadcastInterface;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+import movement.MovementModel;
+import movement.Path;
+import routing.EpidemicRouter;
+import routing.MessageRouter;
+import core.ConnectionListener;
+import core.Coord;
+import core.DTNHost;
+import core.MessageListener;
+import core.ModuleCommunicationBus;
+import core.NetworkInterface;
+import core.SimClock;
+import core.UpdateListener;
+import core.World;
+
+/**
+ * Tests the exact contact times of the kinetic connectivity optimizer
+ */
+public class KineticContactsTest extends TestCase {
+	private static final double UP_INTERVAL = 7;
+	private static final double DELTA = 0.000001;
+	private static final String IFACE_NS = "KineticInterface";
+
+	private TestSettings ts;
+	private List<String> events;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		ts = new TestSettings();
+		ts.putSetting(IFACE_NS + "." + NetworkInterface.TRANSMIT_RANGE_S,
+				"20");
+		ts.putSetting(IFACE_NS + "." + NetworkInterface.TRANSMIT_SPEED_S,
+				"100");
+		ts.putSetting(IFACE_NS + "." + NetworkInterface.KINETIC_CONTACTS_S,
+				"true");
+		ts.putSetting("Group." + MessageRouter.SEND_QUEUE_MODE_S,
+				"" + MessageRouter.Q_MODE_FIFO);
+
+		SimClock.reset();
+		DTNHost.reset();
+		NetworkInterface.reset();
+		ConnectivityGrid.reset();
+		KineticConnectivityOptimizer.reset();
+		events = new ArrayList<String>();
+	}
+
+	/**
+	 * Host p1 moves past p0 and turns at its location so that the first
+	 * contact (from 8 to 12 seconds) spans two path segments. After that p1
+	 * passes p2 (from 10+(100-sqrt(300))/10 to 10+(100+sqrt(300))/10 s).
+	 * All the contacts start and end between the update intervals.
+	 */
+	public void testExactContactTimes() {
+		Path p = new Path(10);
+		p.addWaypoint(new Coord(0, 100));
+		p.addWaypoint(new Coord(100, 100));
+		p.addWaypoint(new Coord(100, 300));
+
+		List<DTNHost> hosts = new ArrayList<DTNHost>();
+		hosts.add(createHost(new StationaryMovement(new Coord(100, 100))));
+		hosts.add(createHost(new PathMovement(p)));
+		hosts.add(createHost(new StationaryMovement(new Coord(110, 200))));
+
+		World world = new World(hosts, 400, 400, UP_INTERVAL,
+				new ArrayList<UpdateListener>(), true,
+				new ArrayList<EventQueue>());
+		for (int i=0; i < 6; i++) {
+			world.update();
+		}
+
+		double sqrt300 = Math.sqrt(300);
+		assertEquals(4, events.size());
+		assertEvent("up p0 p1", 8, 0);
+		assertEvent("down p0 p1", 12, 1);
+		assertEvent("up p1 p2", 10 + (100 - sqrt300) / 10, 2);
+		assertEvent("down p1 p2", 10 + (100 + sqrt300) / 10, 3);
+	}
+
+	private void assertEvent(String expected, double time, int index) {
+		String[] parts = events.get(index).split("@");
+		assertEquals(expected, parts[0]);
+		assertEquals(time, Double.parseDouble(parts[1]), DELTA);
+	}
+
+	private DTNHost createHost(MovementModel mm) {
+		SimpleBroadcastInterface ni = new SimpleBroadcastInterface(
+				new TestSettings(IFACE_NS));
+		List<ConnectionListener> cl = new ArrayList<ConnectionListener>();
+		cl.add(new ConnectionListener() {
+			public void hostsConnected(DTNHost host1, DTNHost host2) {
+				events.add("up " + host1 + " " + host2 + "@" +
+						SimClock.getTime());
+			}
+			public void hostsDisconnected(DTNHost host1, DTNHost host2) {
+				events.add("down " + host1 + " " + host2 + "@" +
+						SimClock.getTime());
+			}
+		});
+		ni.setClisteners(cl);
+		List<NetworkInterface> li = new ArrayList<NetworkInterface>();
+		li.add(ni);
+
+		return new DTNHost(new ArrayList<MessageListener>(), null, "p", li,
+				new ModuleCommunicationBus(), mm,
+				new EpidemicRouter(new TestSettings("Group")),
+				new ArrayList<String>());
+	}
+
+	/**
+	 * Movement model that moves along a single path
+	 */
+	private static class PathMovement extends MovementModel {
+		private Path path;
+
+		public PathMovement(Path path) {
+			this.path = path;
+		}
+
+		@Override
+		public Path getPath() {
+			Path p = this.path;
+			this.path = null;
+			return p;
+		}
+
+		@Override
+		public Coord getInitialLocation() {
+			return this.path.getCoords().get(0).clone();
+		}
+
+		@Override
+		public boolean isActive() {
+			return true;
+		}
+
+		@Override
+		public double nextPathAvailable() {
+			return this.path != null ? 0 : Double.MAX_VALUE;
+		}
+
+		@Override
+		public MovementModel replicate() {
+			return new PathMovement(this.path);
+		}
+	}
+}
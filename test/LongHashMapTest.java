@@ -0,0 +1,103 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import junit.framework.TestCase;
+import core.LongHashMap;
+
+/**
+ * Tests for the primitive keyed hash map
+ */
+public class LongHashMapTest extends TestCase {
+
+	public void testBasicOperations() {
+		LongHashMap<String> map = new LongHashMap<String>();
+		assertTrue(map.isEmpty());
+		assertNull(map.put(5, "a"));
+		assertNull(map.put(-1L << 40, "b"));
+		assertNull(map.put(0, "c"));
+		assertEquals("a", map.put(5, "d"));
+
+		assertEquals(3, map.size());
+		assertEquals("d", map.get(5));
+		assertEquals("b", map.get(-1L << 40));
+		assertTrue(map.containsKey(0));
+		assertFalse(map.containsKey(1));
+		assertNull(map.get(1));
+
+		assertEquals("c", map.remove(0));
+		assertNull(map.remove(0));
+		assertEquals(2, map.size());
+		map.clear();
+		assertTrue(map.isEmpty());
+		assertNull(map.get(5));
+	}
+
+	public void testInsertionOrder() {
+		LongHashMap<Integer> map = new LongHashMap<Integer>();
+		for (int i = 100; i > 0; i--) {
+			map.put(i * 31L, i);
+		}
+		map.remove(50 * 31L);
+		map.put(100 * 31L, 0); /* replacing keeps the position */
+		map.put(50 * 31L, 50);
+
+		Iterator<Integer> iter = map.values().iterator();
+		assertEquals(Integer.valueOf(0), iter.next());
+		for (int i = 99; i > 0; i--) {
+			if (i != 50) {
+				assertEquals(Integer.valueOf(i), iter.next());
+			}
+		}
+		assertEquals(Integer.valueOf(50), iter.next());
+		assertFalse(iter.hasNext());
+	}
+
+	public void testIteratorRemove() {
+		LongHashMap<Integer> map = new LongHashMap<Integer>();
+		for (int i = 0; i < 20; i++) {
+			map.put(i, i);
+		}
+		for (Iterator<Integer> i = map.values().iterator(); i.hasNext();) {
+			if (i.next() % 2 == 0) {
+				i.remove();
+			}
+		}
+		assertEquals(10, map.size());
+		assertFalse(map.containsKey(4));
+		assertEquals(Integer.valueOf(5), map.get(5));
+	}
+
+	public void testAgainstLinkedHashMap() {
+		Random rng = new Random(42);
+		LongHashMap<Long> map = new LongHashMap<Long>();
+		Map<Long, Long> ref = new LinkedHashMap<Long, Long>();
+
+		for (int round = 0; round < 20000; round++) {
+			long key = rng.nextInt(500) * 1000003L;
+			if (rng.nextInt(3) == 0) {
+				assertEquals(ref.remove(key), map.remove(key));
+			} else {
+				Long value = rng.nextLong();
+				assertEquals(ref.put(key, value), map.put(key, value));
+			}
+			assertEquals(ref.size(), map.size());
+		}
+
+		List<Long> expected = new ArrayList<Long>(ref.values());
+		List<Long> values = new ArrayList<Long>(map.values());
+		assertEquals(expected, values);
+		for (Long key : ref.keySet()) {
+			assertEquals(ref.get(key), map.get(key));
+		}
+	}
+}
@@ -123,6 +123,69 @@ public class MaxPropDijkstraTest extends TestCase {
 		assertEquals( (1-0.625)+(1-0.5), result.get(5));
 	}
 	
+	public void testCachedCosts() {
+		targets.add(2);
+		mapping.get(0).updateMeetingProbFor(1);
+		mapping.get(1).updateMeetingProbFor(2);
+		mapping.get(1).updateMeetingProbFor(3);
+		mapping.get(3).updateMeetingProbFor(4);
+		
+		assertTrue(Double.isNaN(mpd.getCost(0, 2)));
+		mpd.calculateCosts(0, targets);
+		assertEquals(0.5, mpd.getCost(0, 2), DELTA);
+		assertEquals(0.0, mpd.getCost(0, 1), DELTA);
+		/* search stopped at the target so the cost to 4 is not known */
+		assertTrue(Double.isNaN(mpd.getCost(0, 4)));
+		
+		/* node 3 was not visited -> its changes don't affect the costs */
+		mapping.get(3).updateMeetingProbFor(2);
+		mpd.probsChanged();
+		assertEquals(0.5, mpd.getCost(0, 2), DELTA);
+		
+		/* node 1 was visited -> costs must be calculated again */
+		mapping.get(1).updateMeetingProbFor(2);
+		mpd.probsChanged();
+		assertTrue(Double.isNaN(mpd.getCost(0, 2)));
+		mpd.calculateCosts(0, targets);
+		assertEquals(0.25, mpd.getCost(0, 2), DELTA);
+		
+		/* replacing a set with a replica doesn't change the costs */
+		mapping.put(1, mapping.get(1).replicate());
+		mpd.probsChanged();
+		assertEquals(0.25, mpd.getCost(0, 2), DELTA);
+		
+		/* all reachable nodes visited -> no path to unknown nodes */
+		targets.add(7);
+		mpd.calculateCosts(0, targets);
+		assertEquals(Double.MAX_VALUE, mpd.getCost(0, 7));
+		assertEquals((1 - 0.25) + (1 - 0.5), mpd.getCost(0, 4), DELTA);
+	}
+	
+	public void testReplicas() {
+		MeetingProbabilitySet mps = mapping.get(0);
+		mps.updateMeetingProbFor(1);
+		mps.updateMeetingProbFor(2);
+		
+		MeetingProbabilitySet replica = mps.replicate();
+		assertSame(replica, mps.replicate());
+		assertSame(replica, replica.replicate());
+		assertEquals(mps.getVersion(), replica.getVersion());
+		
+		/* updating the original doesn't change the replica */
+		mps.updateMeetingProbFor(2);
+		assertEquals(0.25, mps.getProbFor(1));
+		assertEquals(0.5, replica.getProbFor(1));
+		assertEquals(0.5, replica.getProbFor(2));
+		assertFalse(mps.getVersion() == replica.getVersion());
+		assertNotSame(replica, mps.replicate());
+		
+		try {
+			replica.updateMeetingProbFor(3);
+			fail("Replicas should be read-only");
+		} catch (UnsupportedOperationException e) {
+			/* expected */
+		}
+	}
 	
 	public void testProbabilitySumsToOne() {
 		double total;
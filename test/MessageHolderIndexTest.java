@@ -0,0 +1,66 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import junit.framework.TestCase;
+import routing.MessageHolderIndex;
+import core.DTNHost;
+import core.Message;
+import core.MessageListener;
+
+/**
+ * Tests for the index of the hosts that have copies of a message
+ */
+public class MessageHolderIndexTest extends TestCase {
+	private DTNHost h1, h2, h3;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		Message.reset();
+		MessageHolderIndex.reset();
+		TestUtils utils = new TestUtils(null, new ArrayList<MessageListener>(),
+				new TestSettings());
+		h1 = utils.createHost();
+		h2 = utils.createHost();
+		h3 = utils.createHost();
+	}
+
+	public void testHolders() {
+		Message m = new Message(h1, h3, "M1", 10);
+		h1.createNewMessage(m);
+		h3.createNewMessage(m.replicate());
+		h2.createNewMessage(m.replicate());
+		h2.createNewMessage(new Message(h2, h1, "M2", 10));
+
+		assertHolders("M1", h1, h3, h2);
+		assertHolders("M2", h2);
+		assertEquals(0, MessageHolderIndex.getNrofCopies("unknown"));
+
+		/* replacing a copy doesn't change the holders */
+		h3.createNewMessage(m.replicate());
+		assertHolders("M1", h1, h3, h2);
+
+		h3.deleteMessage("M1", false);
+		assertHolders("M1", h1, h2);
+		h1.deleteMessage("M1", true);
+		h2.deleteMessage("M1", false);
+		assertHolders("M1");
+		assertHolders("M2", h2);
+	}
+
+	private void assertHolders(String id, DTNHost... expected) {
+		Collection<DTNHost> holders = MessageHolderIndex.getHolders(id);
+		List<DTNHost> order = new ArrayList<DTNHost>(holders);
+		assertEquals(expected.length, MessageHolderIndex.getNrofCopies(id));
+		assertEquals(expected.length, order.size());
+		for (int i=0; i < expected.length; i++) {
+			assertEquals(expected[i], order.get(i));
+		}
+	}
+}
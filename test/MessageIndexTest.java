@@ -0,0 +1,258 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import junit.framework.TestCase;
+import routing.MessageIndex;
+import core.Message;
+import core.MessagePropertyListener;
+import core.SimClock;
+
+/**
+ * Tests for the sorted message buffer indexes
+ */
+public class MessageIndexTest extends TestCase {
+	private static final String PRIO = "Priority";
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		SimClock.reset();
+	}
+
+	public void testReceiveTimeOrder() {
+		MessageIndex index = new MessageIndex.ByReceiveTime();
+		Message m1 = newMessage("M1", 20);
+		Message m2 = newMessage("M2", 10);
+		Message m3 = newMessage("M3", 20);
+		Message m4 = newMessage("M4", 30);
+		index.add(m1);
+		index.add(m2);
+		index.add(m3);
+		index.add(m4);
+
+		/* equal keys are in the order of addition */
+		assertOrder(index, m2, m1, m3, m4);
+		index.remove(m1);
+		assertOrder(index, m2, m3, m4);
+		index.remove(m2);
+		assertEquals(m3, index.getFirst());
+		assertEquals(20.0, index.getFirstKey());
+	}
+
+	public void testTtlOrder() {
+		MessageIndex index = new MessageIndex.ByTtl();
+		Message m1 = newMessage("M1", 0);
+		Message m2 = newMessage("M2", 0);
+		Message m3 = newMessage("M3", 0);
+		m1.setTtl(10);
+		m3.setTtl(5);
+		index.add(m1);
+		index.add(m2);
+		index.add(m3);
+
+		/* infinite TTL is last */
+		assertOrder(index, m3, m1, m2);
+	}
+
+	public void testPropertyUpdates() {
+		final MessageIndex index = new MessageIndex.ByProperty(PRIO);
+		MessagePropertyListener updater = new MessagePropertyListener() {
+			public void propertyUpdated(Message m, String key) {
+				if (index.dependsOn(key)) {
+					index.update(m);
+				}
+			}
+		};
+		Message m1 = newMessage("M1", 0);
+		Message m2 = newMessage("M2", 0);
+		Message m3 = newMessage("M3", 0);
+		m1.addProperty(PRIO, 5);
+		m2.addProperty(PRIO, 3);
+		for (Message m : new Message[] {m1, m2, m3}) {
+			index.add(m);
+			m.setPropertyListener(updater);
+		}
+
+		assertOrder(index, m2, m1);
+		assertEquals(1, index.getNrofUnkeyed());
+
+		m2.updateProperty(PRIO, 7);
+		assertOrder(index, m1, m2);
+		m3.addProperty(PRIO, 1);
+		assertEquals(0, index.getNrofUnkeyed());
+		assertOrder(index, m3, m1, m2);
+		m1.addProperty("other", 0);
+		assertOrder(index, m3, m1, m2);
+
+		/* replicates don't inform the listener */
+		m1.replicate().updateProperty(PRIO, 0);
+		assertOrder(index, m3, m1, m2);
+
+		index.remove(m3);
+		index.remove(m1);
+		index.remove(m2);
+		assertNull(index.getFirst());
+		assertTrue(Double.isNaN(index.getFirstKey()));
+	}
+
+	public void testPriorityOrder() {
+		int slot = Message.registerIntProperty(PRIO);
+		MessageIndex index = new MessageIndex.ByPriority(slot);
+		Message m1 = newMessage("M1", 0);
+		Message m2 = newMessage("M2", 0);
+		Message m3 = newMessage("M3", 0);
+		Message m4 = newMessage("M4", 0);
+		m1.setIntProperty(slot, 1);
+		m2.setIntProperty(slot, 5);
+		m4.setIntProperty(slot, 1);
+		index.add(m1);
+		index.add(m2);
+		index.add(m3);
+		index.add(m4);
+
+		/* highest first, equal in the order of addition, no priority last */
+		assertOrder(index, m2, m1, m4, m3);
+		assertEquals(0, index.getNrofUnkeyed());
+	}
+
+	public void testRandomOrder() {
+		MessageIndex i1 = new MessageIndex.ByRandomOrder(1);
+		MessageIndex i2 = new MessageIndex.ByRandomOrder(1);
+		MessageIndex i3 = new MessageIndex.ByRandomOrder(2);
+		List<Message> messages = new ArrayList<Message>();
+		for (int i=0; i < 20; i++) {
+			messages.add(newMessage("M" + i, 0));
+		}
+		for (Message m : messages) {
+			i1.add(m);
+			i3.add(m);
+		}
+		for (int i = messages.size() - 1; i >= 0; i--) {
+			i2.add(messages.get(i));
+		}
+
+		/* same seed gives the same order regardless of the addition order */
+		assertOrder(i2, toArray(i1));
+		assertFalse(toList(i1).equals(toList(i3)));
+		assertFalse(toList(i1).equals(messages));
+	}
+
+	public void testRandomOrderHeadChanges() {
+		MessageIndex index = new MessageIndex.ByRandomOrder(1);
+		for (int i=0; i < 20; i++) {
+			index.add(newMessage("M" + i, 0));
+		}
+		List<Message> order = new ArrayList<Message>();
+		for (Iterator<Message> i = index.iterator(0); i.hasNext(); ) {
+			order.add(i.next());
+		}
+
+		/* every pass is a rotation of the same order... */
+		Set<Message> heads = new HashSet<Message>();
+		for (int t=0; t < 10; t++) {
+			SimClock.getInstance().setTime(t + 0.5);
+			List<Message> pass = toList(index);
+			assertEquals(toList(index), pass); /* same second, same head */
+			int offset = order.indexOf(pass.get(0));
+			Collections.rotate(order, -offset);
+			assertEquals(order, pass);
+			heads.add(pass.get(0));
+		}
+		/* ...but the head changes between the seconds */
+		assertTrue("Only " + heads.size() + " different heads", 
+				heads.size() > 5);
+	}
+
+	public void testWrapAroundIteration() {
+		MessageIndex index = new MessageIndex.ByReceiveTime();
+		Message[] m = new Message[6];
+		for (int i=0; i < m.length; i++) {
+			m[i] = newMessage("M" + i, i);
+			index.add(m[i]);
+		}
+
+		List<Message> seen = new ArrayList<Message>();
+		for (Iterator<Message> i = index.iterator(2.5); i.hasNext(); ) {
+			Message msg = i.next();
+			seen.add(msg);
+			if (msg == m[4]) {
+				index.remove(m[5]); /* one still ahead before the wrap */
+				index.remove(m[1]); /* one still ahead after the wrap */
+			}
+		}
+		assertEquals(Arrays.asList(m[3], m[4], m[0], m[2]), seen);
+
+		/* starting from the smallest key is the normal order */
+		seen.clear();
+		for (Iterator<Message> i = index.iterator(0); i.hasNext(); ) {
+			seen.add(i.next());
+		}
+		assertEquals(toList(index), seen);
+		/* starting after the largest key wraps around to the first one */
+		assertEquals(m[0], index.iterator(10).next());
+	}
+
+	public void testRemovingWhileIterating() {
+		MessageIndex index = new MessageIndex.ByReceiveTime();
+		Message[] m = new Message[6];
+		for (int i=0; i < m.length; i++) {
+			m[i] = newMessage("M" + i, i);
+			index.add(m[i]);
+		}
+
+		List<Message> seen = new ArrayList<Message>();
+		for (Message msg : index) {
+			seen.add(msg);
+			if (msg == m[1]) {
+				index.remove(m[1]); /* the current one */
+				index.remove(m[3]); /* one still ahead */
+			}
+		}
+		assertEquals(5, seen.size());
+		assertEquals(m[0], seen.get(0));
+		assertEquals(m[1], seen.get(1));
+		assertEquals(m[2], seen.get(2));
+		assertEquals(m[4], seen.get(3));
+		assertEquals(m[5], seen.get(4));
+		assertOrder(index, m[0], m[2], m[4], m[5]);
+	}
+
+	private List<Message> toList(MessageIndex index) {
+		List<Message> list = new ArrayList<Message>();
+		for (Message m : index) {
+			list.add(m);
+		}
+		return list;
+	}
+
+	private Message[] toArray(MessageIndex index) {
+		return toList(index).toArray(new Message[0]);
+	}
+
+	private Message newMessage(String id, double receiveTime) {
+		Message m = new Message(null, null, id, 10);
+		m.setReceiveTime(receiveTime);
+		return m;
+	}
+
+	private void assertOrder(MessageIndex index, Message... expected) {
+		List<Message> order = new ArrayList<Message>();
+		for (Message m : index) {
+			order.add(m);
+		}
+		assertEquals(expected.length, order.size());
+		for (int i=0; i < expected.length; i++) {
+			assertEquals(expected[i], order.get(i));
+		}
+	}
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import junit.framework.TestCase;
+import core.MessageKeySet;
+
+/**
+ * Tests for the bitmap message key sets
+ */
+public class MessageKeySetTest extends TestCase {
+
+	public void testAddAndContains() {
+		MessageKeySet set = new MessageKeySet();
+		assertTrue(set.isEmpty());
+		assertFalse(set.contains(0));
+		assertFalse(set.contains(-1));
+
+		assertTrue(set.add(0));
+		assertTrue(set.add(63));
+		assertTrue(set.add(64));
+		assertTrue(set.add(1000));
+		assertFalse(set.add(63));
+
+		assertEquals(4, set.size());
+		assertTrue(set.contains(0));
+		assertTrue(set.contains(63));
+		assertTrue(set.contains(64));
+		assertTrue(set.contains(1000));
+		assertFalse(set.contains(1));
+		assertFalse(set.contains(999));
+		assertFalse(set.contains(100000));
+
+		try {
+			set.add(-1);
+			fail("Negative key was accepted");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	public void testAddAll() {
+		MessageKeySet a = new MessageKeySet();
+		MessageKeySet b = new MessageKeySet();
+		for (int i=0; i < 200; i += 2) {
+			a.add(i);
+		}
+		for (int i=0; i < 500; i += 3) {
+			b.add(i);
+		}
+
+		assertTrue(a.addAll(b));
+		assertFalse(a.addAll(b));
+		int expected = 0;
+		for (int i=0; i < 500; i++) {
+			boolean in = (i < 200 && i % 2 == 0) || i % 3 == 0;
+			assertEquals("Key " + i, in, a.contains(i));
+			if (in) {
+				expected++;
+			}
+		}
+		assertEquals(expected, a.size());
+
+		/* union into a smaller set */
+		assertTrue(b.addAll(a));
+		assertEquals(expected, b.size());
+		assertFalse(b.addAll(new MessageKeySet()));
+	}
+}
@@ -4,6 +4,8 @@
  */
 package test;
 
+import java.util.Arrays;
+
 import junit.framework.TestCase;
 
 import org.junit.Before;
@@ -12,6 +14,7 @@ import org.junit.Test;
 import core.DTNHost;
 import core.Message;
 import core.SimClock;
+import core.SimError;
 
 public class MessageTest extends TestCase {
 
@@ -60,5 +63,65 @@ public class MessageTest extends TestCase {
 		assertEquals(value2, msg.getProperty("bar"));
 	}
 
+	@Test
+	public void testRegisteredProperties() {
+		int intSlot = Message.registerIntProperty("MessageTest.int");
+		int objSlot = Message.registerObjectProperty("MessageTest.obj");
+		assertEquals(intSlot, Message.registerIntProperty("MessageTest.int"));
+		
+		assertFalse(msg.hasIntProperty(intSlot));
+		msg.addProperty("MessageTest.int", 5);
+		msg.addProperty("MessageTest.obj", "value");
+		assertEquals(5, msg.getIntProperty(intSlot));
+		assertEquals("value", msg.getObjectProperty(objSlot));
+		
+		msg.setIntProperty(intSlot, 7);
+		assertEquals(7, msg.getProperty("MessageTest.int"));
+		try {
+			msg.addProperty("MessageTest.int", 1);
+			fail("Adding an existing property should fail");
+		} catch (SimError e) {
+			/* expected */
+		}
+		
+		Message copy = msg.replicate();
+		copy.setIntProperty(intSlot, 9);
+		copy.updateProperty("MessageTest.obj", "other");
+		assertEquals(7, msg.getIntProperty(intSlot));
+		assertEquals(9, copy.getIntProperty(intSlot));
+		assertEquals("value", msg.getProperty("MessageTest.obj"));
+		assertEquals("other", copy.getProperty("MessageTest.obj"));
+	}
+
+	@Test
+	public void testReplicatesAreIndependent() {
+		TestUtils utils = new TestUtils(null, null, new TestSettings());
+		DTNHost h1 = utils.createHost();
+		DTNHost h2 = utils.createHost();
+		DTNHost h3 = utils.createHost();
+		Message m = new Message(h1, h3, "R", 100);
+		m.setTtl(10);
+		
+		Message copy1 = m.replicate();
+		copy1.addNodeOnPath(h2);
+		Message copy2 = copy1.replicate();
+		copy2.addNodeOnPath(h3);
+		Message copy3 = m.replicate();
+		copy3.addNodeOnPath(h3);
+		copy3.setTtl(5);
+		
+		assertEquals(Arrays.asList(h1), m.getHops());
+		assertEquals(Arrays.asList(h1, h2), copy1.getHops());
+		assertEquals(Arrays.asList(h1, h2, h3), copy2.getHops());
+		assertEquals(Arrays.asList(h1, h3), copy3.getHops());
+		assertEquals(2, copy2.getHopCount());
+		
+		assertEquals(10, m.getTtl());
+		assertEquals(10, copy2.getTtl());
+		assertEquals(5, copy3.getTtl());
+		assertEquals("R", copy3.getId());
+		assertTrue(m.getUniqueId() != copy1.getUniqueId());
+	}
+
 
 }
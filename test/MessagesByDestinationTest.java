@@ -0,0 +1,193 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+
+import routing.EpidemicRouter;
+import routing.MessageRouter;
+import core.Application;
+import core.DTNHost;
+import core.Message;
+
+/**
+ * Tests that the routers' index of buffered messages by destination (see
+ * MessageRouter#getMessagesFor(DTNHost)) stays in sync with the message
+ * buffer
+ */
+public class MessagesByDestinationTest extends AbstractRouterTest {
+	private static final int TTL = 300;
+
+	@Override
+	public void setUp() throws Exception {
+		ts.putSetting(MessageRouter.MSG_TTL_S, "" + TTL);
+		ts.putSetting(MessageRouter.B_SIZE_S, "" + BUFFER_SIZE);
+		setRouterProto(new InspectableRouter(ts));
+		super.setUp();
+	}
+
+	public void testReplacingWithSameKey() {
+		h1.createNewMessage(new Message(h1, h3, msgId1, 1));
+		h1.createNewMessage(new Message(h1, h3, msgId2, 1));
+		h1.createNewMessage(new Message(h1, h4, msgId3, 1));
+		assertIndexInSync();
+		assertEquals(2, messagesFor(h1, h3).size());
+
+		/* same key and destination */
+		h1.createNewMessage(new Message(h1, h3, msgId1, 1));
+		assertIndexInSync();
+		assertEquals(2, messagesFor(h1, h3).size());
+
+		/* same key, other destination */
+		h1.createNewMessage(new Message(h1, h4, msgId2, 1));
+		assertIndexInSync();
+		assertEquals(1, messagesFor(h1, h3).size());
+		assertEquals(2, messagesFor(h1, h4).size());
+	}
+
+	public void testDeleteAndDrop() {
+		h1.createNewMessage(new Message(h1, h3, msgId1, 1));
+		h1.createNewMessage(new Message(h1, h3, msgId2, 1));
+		h1.createNewMessage(new Message(h1, h4, msgId3, 1));
+
+		h1.deleteMessage(msgId1, false);
+		assertIndexInSync();
+		h1.deleteMessage(msgId3, true);
+		assertIndexInSync();
+		assertTrue(messagesFor(h1, h4).isEmpty());
+
+		/* the buffer gets full and the oldest messages are dropped */
+		int size = BUFFER_SIZE / 3;
+		h1.createNewMessage(new Message(h1, h4, msgId3, size));
+		h1.createNewMessage(new Message(h1, h3, msgId4, size));
+		h1.createNewMessage(new Message(h1, h4, msgId5, size));
+		assertIndexInSync();
+		assertEquals(4, h1.getNrofMessages());
+		h1.createNewMessage(new Message(h1, h5, "MSG_ID6", size));
+		assertFalse(isBuffered(h1, msgId2));
+		assertFalse(isBuffered(h1, msgId3));
+		assertIndexInSync();
+		assertEquals(1, messagesFor(h1, h4).size());
+		assertEquals(1, messagesFor(h1, h5).size());
+	}
+
+	public void testApplicationRetargeting() {
+		h2.getRouter().addApplication(new Retargeter(h5));
+		h1.createNewMessage(new Message(h1, h3, msgId1, 1));
+		h1.createNewMessage(new Message(h1, h2, msgId2, 1));
+		h1.connect(h2);
+		runUpdates();
+
+		/* both messages are in h2's buffer but for h5 */
+		assertEquals(2, h2.getNrofMessages());
+		assertEquals(2, messagesFor(h2, h5).size());
+
+		/* the re-targeted messages are removed from the new destination */
+		h2.deleteMessage(msgId2, false);
+		assertIndexInSync();
+		assertEquals(1, messagesFor(h2, h5).size());
+	}
+
+	/**
+	 * Updates the hosts for a while and checks the indexes after every
+	 * update
+	 */
+	private void runUpdates() {
+		for (int i=0; i < 10; i++) {
+			clock.advance(1);
+			updateAllNodes();
+			assertIndexInSync();
+		}
+	}
+
+	private boolean isBuffered(DTNHost h, String id) {
+		for (Message m : h.getMessageCollection()) {
+			if (m.getId().equals(id)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private Collection<Message> messagesFor(DTNHost h, DTNHost to) {
+		return ((InspectableRouter)h.getRouter()).messagesFor(to);
+	}
+
+	/**
+	 * Asserts that, for every host and destination, the messages by
+	 * destination are the buffered messages for the destination
+	 */
+	private void assertIndexInSync() {
+		List<DTNHost> hosts = utils.getAllHosts();
+		for (DTNHost h : hosts) {
+			for (DTNHost to : hosts) {
+				List<Message> expected = new ArrayList<Message>();
+				for (Message m : h.getMessageCollection()) {
+					if (m.getTo() == to) {
+						expected.add(m);
+					}
+				}
+				Collection<Message> indexed = messagesFor(h, to);
+				assertEquals("Messages for " + to + " at " + h,
+						expected.size(), indexed.size());
+				assertEquals("Messages for " + to + " at " + h,
+						new HashSet<Message>(expected),
+						new HashSet<Message>(indexed));
+			}
+		}
+	}
+
+	/**
+	 * Epidemic router that exposes the messages by destination
+	 */
+	private static class InspectableRouter extends EpidemicRouter {
+		public InspectableRouter(TestSettings s) {
+			super(s);
+		}
+
+		protected InspectableRouter(InspectableRouter r) {
+			super(r);
+		}
+
+		public Collection<Message> messagesFor(DTNHost to) {
+			return getMessagesFor(to);
+		}
+
+		@Override
+		public InspectableRouter replicate() {
+			return new InspectableRouter(this);
+		}
+	}
+
+	/**
+	 * Application that changes the destination of all the messages it
+	 * handles
+	 */
+	private static class Retargeter extends Application {
+		private DTNHost newTo;
+
+		public Retargeter(DTNHost newTo) {
+			this.newTo = newTo;
+		}
+
+		@Override
+		public Message handle(Message msg, DTNHost host) {
+			return new Message(msg.getFrom(), this.newTo, msg.getId(),
+					msg.getSize());
+		}
+
+		@Override
+		public void update(DTNHost host) {
+		}
+
+		@Override
+		public Application replicate() {
+			return new Retargeter(this.newTo);
+		}
+	}
+}
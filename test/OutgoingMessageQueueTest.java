@@ -0,0 +1,108 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+import routing.OutgoingMessageQueue;
+import core.CBRConnection;
+import core.Connection;
+import core.DTNHost;
+import core.Message;
+import core.Tuple;
+
+/**
+ * Tests for the outgoing message queue of DecisionEngineRouter
+ */
+public class OutgoingMessageQueueTest extends TestCase {
+	private OutgoingMessageQueue queue;
+	private Connection c1, c2;
+	private Message m1, m2, m3;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		TestUtils utils = new TestUtils(null, null, new TestSettings());
+		DTNHost h1 = utils.createHost();
+		DTNHost h2 = utils.createHost();
+		DTNHost h3 = utils.createHost();
+		c1 = new CBRConnection(h1, h1.getInterfaces().get(0), h2,
+				h2.getInterfaces().get(0), 10);
+		c2 = new CBRConnection(h1, h1.getInterfaces().get(0), h3,
+				h3.getInterfaces().get(0), 10);
+		m1 = new Message(h1, h2, "OQ1", 10);
+		m2 = new Message(h1, h2, "OQ2", 10);
+		m3 = new Message(h1, h3, "OQ3", 10);
+
+		queue = new OutgoingMessageQueue();
+		queue.add(m1, c1);
+		queue.add(m2, c1);
+		queue.add(m1, c2);
+		queue.add(m3, c2);
+	}
+
+	public void testOrderAndDuplicates() {
+		assertFalse(queue.add(m2, c1));
+		assertEquals(4, queue.size());
+		assertContents("OQ1-1", "OQ2-1", "OQ1-2", "OQ3-2");
+	}
+
+	public void testRemovals() {
+		assertTrue(queue.remove(m2.getKey(), c1));
+		assertFalse(queue.remove(m2.getKey(), c1));
+		assertContents("OQ1-1", "OQ1-2", "OQ3-2");
+
+		queue.removeMessage(m1.getKey());
+		assertContents("OQ3-2");
+		queue.add(m1, c1);
+		queue.removeConnection(c2);
+		assertContents("OQ1-1");
+		queue.removeConnection(c1);
+		assertTrue(queue.isEmpty());
+	}
+
+	public void testRemovingMessageAfterOtherRemovals() {
+		queue.add(m2, c2);
+		assertTrue(queue.remove(m1.getKey(), c2));
+		queue.removeConnection(c1);
+		assertContents("OQ3-2", "OQ2-2");
+
+		queue.add(m1, c1);
+		queue.add(m2, c1);
+		queue.removeMessage(m2.getKey());
+		assertContents("OQ3-2", "OQ1-1");
+		queue.removeMessage(m1.getKey());
+		queue.removeMessage(m3.getKey());
+		assertTrue(queue.isEmpty());
+		assertTrue(queue.add(m3, c2));
+		assertContents("OQ3-2");
+	}
+
+	public void testRemovingWhileIterating() {
+		List<String> seen = new ArrayList<String>();
+		for (Tuple<Message, Connection> t : queue) {
+			seen.add(t.getKey().getId());
+			if (t.getKey() == m1) {
+				/* e.g., the message was deleted when trying to send it */
+				queue.removeMessage(m1.getKey());
+				queue.remove(m2.getKey(), c1);
+			}
+		}
+		assertEquals("[OQ1, OQ3]", seen.toString());
+		assertContents("OQ3-2");
+	}
+
+	private void assertContents(String... expected) {
+		List<String> contents = new ArrayList<String>();
+		for (Tuple<Message, Connection> t : queue) {
+			contents.add(t.getKey().getId() + "-" + 
+					(t.getValue() == c1 ? 1 : 2));
+		}
+		assertEquals(expected.length, queue.size());
+		assertEquals(Arrays.asList(expected), contents);
+	}
+}
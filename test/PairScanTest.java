@@ -0,0 +1,144 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import input.EventQueue;
+import interfaces.ConnectivityGrid;
+import interfaces.InterferenceLimitedInterface;
+import interfaces.SimpleBroadcastInterface;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.TestCase;
+import movement.MovementModel;
+import movement.RandomWaypoint;
+import routing.EpidemicRouter;
+import routing.MessageRouter;
+import core.Connection;
+import core.DTNHost;
+import core.Message;
+import core.MessageListener;
+import core.ModuleCommunicationBus;
+import core.NetworkInterface;
+import core.SimClock;
+import core.UpdateListener;
+import core.World;
+
+/**
+ * Tests that the connectivity grid's pair scan creates and tears down the
+ * same connections as the interfaces' own updates.
+ */
+public class PairScanTest extends TestCase {
+	private static final int NROF_HOSTS = 80;
+	private static final int WORLD_SIZE = 200;
+	private static final int NROF_ROUNDS = 400;
+	private static final String GROUP_NS = "PairScanGroup";
+	private static final String IFACE_NS = "PairScanInterface";
+
+	private TestSettings ts;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		ts = new TestSettings();
+		ts.putSetting(MovementModel.MOVEMENT_MODEL_NS + "." +
+				MovementModel.WORLD_SIZE, WORLD_SIZE + "," + WORLD_SIZE);
+		ts.putSetting(MovementModel.MOVEMENT_MODEL_NS + "." +
+				MovementModel.RNG_SEED, "3");
+		ts.putSetting(GROUP_NS + "." + MovementModel.SPEED, "1,3");
+		ts.putSetting(GROUP_NS + "." + MovementModel.WAIT_TIME, "0,10");
+		ts.putSetting(GROUP_NS + "." + MessageRouter.SEND_QUEUE_MODE_S,
+				"" + MessageRouter.Q_MODE_FIFO);
+		ts.putSetting(IFACE_NS + "." + NetworkInterface.TRANSMIT_RANGE_S,
+				"15");
+		ts.putSetting(IFACE_NS + "." + NetworkInterface.TRANSMIT_SPEED_S,
+				"100");
+	}
+
+	public void testSimpleBroadcastInterface() {
+		List<String> normal = runScenario(false, false);
+		List<String> pairScan = runScenario(true, false);
+
+		assertFalse("No connections were made",
+				normal.get(NROF_ROUNDS - 1).equals("[]"));
+		assertEquals(normal, pairScan);
+	}
+
+	public void testInterferenceLimitedInterface() {
+		List<String> normal = runScenario(false, true);
+		List<String> pairScan = runScenario(true, true);
+
+		assertFalse("No connections were made",
+				normal.get(NROF_ROUNDS - 1).equals("[]"));
+		assertEquals(normal, pairScan);
+	}
+
+	/**
+	 * Runs the test scenario from the beginning and returns the connected
+	 * host pairs after every update
+	 * @param pairScan Should pair scan be used
+	 * @param interferenceLimited Should interference limited interfaces be
+	 * used instead of simple broadcast interfaces
+	 * @return The connected pairs of every update
+	 */
+	private List<String> runScenario(boolean pairScan,
+			boolean interferenceLimited) {
+		ts.putSetting(IFACE_NS + "." + NetworkInterface.PAIR_SCAN_S,
+				"" + pairScan);
+
+		SimClock.reset();
+		DTNHost.reset();
+		NetworkInterface.reset();
+		Message.reset();
+		ConnectivityGrid.reset();
+		MovementModel.reset();
+
+		RandomWaypoint mmProto = new RandomWaypoint(new TestSettings(GROUP_NS));
+		EpidemicRouter routerProto = new EpidemicRouter(
+				new TestSettings(GROUP_NS));
+		List<DTNHost> hosts = new ArrayList<DTNHost>();
+		for (int i=0; i < NROF_HOSTS; i++) {
+			List<NetworkInterface> li = new ArrayList<NetworkInterface>();
+			if (interferenceLimited) {
+				li.add(new InterferenceLimitedInterface(
+						new TestSettings(IFACE_NS)));
+			}
+			else {
+				li.add(new SimpleBroadcastInterface(
+						new TestSettings(IFACE_NS)));
+			}
+			hosts.add(new DTNHost(new ArrayList<MessageListener>(), null, "p",
+					li, new ModuleCommunicationBus(), mmProto, routerProto,
+					new ArrayList<String>()));
+		}
+
+		World world = new World(hosts, WORLD_SIZE, WORLD_SIZE, 1.0,
+				new ArrayList<UpdateListener>(), true,
+				new ArrayList<EventQueue>());
+
+		List<String> connected = new ArrayList<String>();
+		for (int i=0; i < NROF_ROUNDS; i++) {
+			world.update();
+			/* the connections may be created in different order */
+			List<String> pairs = new ArrayList<String>();
+			for (DTNHost h : hosts) {
+				/* the host's cached connection list is kept up to date */
+				assertEquals(h.getInterfaces().get(0).getConnections(),
+						h.getConnections());
+				for (Connection con : h.getConnections()) {
+					DTNHost other = con.getOtherNode(h);
+					if (h.getAddress() < other.getAddress()) {
+						pairs.add(h + "-" + other);
+					}
+				}
+			}
+			Collections.sort(pairs);
+			connected.add(pairs.toString());
+		}
+
+		return connected;
+	}
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import input.EventQueue;
+import interfaces.ConnectivityGrid;
+import interfaces.SimpleBroadcastInterface;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+import movement.MovementModel;
+import movement.RandomWaypoint;
+import report.MessageStatsReport;
+import report.Report;
+import routing.EpidemicRouter;
+import routing.MessageRouter;
+import core.DTNHost;
+import core.Message;
+import core.MessageListener;
+import core.ModuleCommunicationBus;
+import core.NetworkInterface;
+import core.SimClock;
+import core.UpdateListener;
+import core.World;
+
+/**
+ * Tests that the parallel update engine of World gives exactly the same
+ * results as the serial engine.
+ */
+public class ParallelUpdateTest extends TestCase {
+	private static final int NROF_HOSTS = 60;
+	private static final int WORLD_SIZE = 300;
+	private static final double UP_INTERVAL = 1.0;
+	private static final int NROF_ROUNDS = 1500;
+	private static final int MSG_INTERVAL = 10;
+	private static final String GROUP_NS = "ParallelGroup";
+	private static final String IFACE_NS = "ParallelInterface";
+
+	private TestSettings ts;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		ts = new TestSettings();
+		ts.putSetting(MovementModel.MOVEMENT_MODEL_NS + "." +
+				MovementModel.WORLD_SIZE, WORLD_SIZE + "," + WORLD_SIZE);
+		ts.putSetting(MovementModel.MOVEMENT_MODEL_NS + "." +
+				MovementModel.RNG_SEED, "7");
+		ts.putSetting(GROUP_NS + "." + MovementModel.SPEED, "0.5,1.5");
+		ts.putSetting(GROUP_NS + "." + MovementModel.WAIT_TIME, "0,20");
+		ts.putSetting(GROUP_NS + "." + MessageRouter.SEND_QUEUE_MODE_S,
+				"" + MessageRouter.Q_MODE_FIFO);
+		ts.putSetting(GROUP_NS + "." + MessageRouter.MSG_TTL_S, "30");
+		ts.putSetting(IFACE_NS + "." + NetworkInterface.TRANSMIT_RANGE_S,
+				"20");
+		ts.putSetting(IFACE_NS + "." + NetworkInterface.TRANSMIT_SPEED_S,
+				"100");
+		ts.putSetting(World.SETTINGS_NS + "." + World.PARALLEL_THREADS_S, "4");
+	}
+
+	public void testSameResultsAsSerialEngine() throws IOException {
+		String serial = runScenario(false);
+		String parallel = runScenario(true);
+
+		assertTrue("No messages were delivered: " + serial,
+				!serial.contains("delivered: 0\n"));
+		assertEquals(serial, parallel);
+	}
+
+	/**
+	 * Runs the test scenario from the beginning and returns the output of
+	 * message stats report
+	 * @param parallelUpdate Should the parallel update engine be used
+	 * @return The report's output
+	 */
+	private String runScenario(boolean parallelUpdate) throws IOException {
+		File outFile = File.createTempFile("parallelupdatetest", ".tmp");
+		outFile.deleteOnExit();
+		ts.putSetting("MessageStatsReport." + Report.OUTPUT_SETTING,
+				outFile.getAbsolutePath());
+		ts.putSetting(World.SETTINGS_NS + "." + World.PARALLEL_UPDATE_S,
+				"" + parallelUpdate);
+
+		SimClock.reset();
+		DTNHost.reset();
+		NetworkInterface.reset();
+		Message.reset();
+		ConnectivityGrid.reset();
+		MovementModel.reset();
+
+		MessageStatsReport report = new MessageStatsReport();
+		List<MessageListener> ml = new ArrayList<MessageListener>();
+		ml.add(report);
+
+		RandomWaypoint mmProto = new RandomWaypoint(new TestSettings(GROUP_NS));
+		EpidemicRouter routerProto = new EpidemicRouter(
+				new TestSettings(GROUP_NS));
+		List<DTNHost> hosts = new ArrayList<DTNHost>();
+		for (int i=0; i < NROF_HOSTS; i++) {
+			List<NetworkInterface> li = new ArrayList<NetworkInterface>();
+			li.add(new SimpleBroadcastInterface(new TestSettings(IFACE_NS)));
+			hosts.add(new DTNHost(ml, null, "p", li,
+					new ModuleCommunicationBus(), mmProto, routerProto,
+					new ArrayList<String>()));
+		}
+
+		World world = new World(hosts, WORLD_SIZE, WORLD_SIZE, UP_INTERVAL,
+				new ArrayList<UpdateListener>(), true,
+				new ArrayList<EventQueue>());
+
+		for (int i=0; i < NROF_ROUNDS; i++) {
+			if (i % MSG_INTERVAL == 0) {
+				int n = i / MSG_INTERVAL;
+				DTNHost from = hosts.get((n * 7) % NROF_HOSTS);
+				DTNHost to = hosts.get((n * 13 + 5) % NROF_HOSTS);
+				if (from != to) {
+					from.createNewMessage(new Message(from, to, "M" + n, 50));
+				}
+			}
+			world.update();
+		}
+		report.done();
+
+		StringBuilder sb = new StringBuilder();
+		BufferedReader reader = new BufferedReader(new FileReader(outFile));
+		for (String line = reader.readLine(); line != null;
+				line = reader.readLine()) {
+			sb.append(line).append('\n');
+		}
+		reader.close();
+
+		return sb.toString();
+	}
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import junit.framework.TestCase;
+import routing.SummaryVector;
+import core.Message;
+
+/**
+ * Tests for the Bloom filter summaries of message sets
+ */
+public class SummaryVectorTest extends TestCase {
+	private static final int NROF_MESSAGES = 1000;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		Message.reset();
+	}
+
+	public void testEmptySummary() {
+		SummaryVector sv = new SummaryVector(0);
+		assertFalse(sv.mightContain(new Message(null, null, "M1", 1)));
+		assertEquals(0, sv.getNrofMessages());
+	}
+
+	public void testFalsePositiveRate() {
+		SummaryVector sv = new SummaryVector(NROF_MESSAGES);
+		for (int i=0; i < NROF_MESSAGES; i++) {
+			sv.add(new Message(null, null, "IN" + i, 1));
+		}
+		assertEquals(NROF_MESSAGES, sv.getNrofMessages());
+
+		/* no false negatives */
+		for (int i=0; i < NROF_MESSAGES; i++) {
+			assertTrue(sv.mightContain(new Message(null, null, "IN" + i, 1)));
+		}
+
+		int falsePositives = 0;
+		for (int i=0; i < NROF_MESSAGES * 10; i++) {
+			if (sv.mightContain(new Message(null, null, "OUT" + i, 1))) {
+				falsePositives++;
+			}
+		}
+		assertTrue("Too many false positives: " + falsePositives,
+				falsePositives < NROF_MESSAGES * 10 / 50);
+	}
+}
@@ -4,6 +4,7 @@
  */
 package test;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import routing.PassiveRouter;
@@ -36,7 +37,8 @@ public class TestDTNHost extends DTNHost {
 			ModuleCommunicationBus comBus) {
 		super(null,null,"TST", li, comBus, 
 				new StationaryMovement(new Coord(0,0)), 
-				new PassiveRouter(new TestSettings()));
+				new PassiveRouter(new TestSettings()),
+				new ArrayList<String>());
 	}
 	
 	@Override
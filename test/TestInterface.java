@@ -70,6 +70,7 @@ public class TestInterface extends NetworkInterface {
 			if (!isWithinRange(anotherInterface)) {
 				disconnect(con,anotherInterface);
 				connections.remove(i);
+				connectionsChanged();
 			}
 			else {
 				i++;